@@ -1,23 +1,35 @@
-
 package org.reactome.server.tools.reaction.exporter;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.CacheStats;
 import com.martiansoftware.jsap.*;
+import org.neo4j.driver.Record;
 import org.reactome.server.graph.domain.model.Event;
 import org.reactome.server.graph.domain.model.ReactionLikeEvent;
+import org.reactome.server.graph.domain.result.CustomQuery;
 import org.reactome.server.graph.exception.CustomQueryException;
 import org.reactome.server.graph.service.AdvancedDatabaseObjectService;
 import org.reactome.server.graph.service.DatabaseObjectService;
+import org.reactome.server.graph.service.SchemaService;
 import org.reactome.server.graph.service.util.DatabaseObjectUtils;
 import org.reactome.server.graph.utils.ReactomeGraphCore;
 import org.reactome.server.tools.diagram.data.graph.Graph;
 import org.reactome.server.tools.diagram.data.layout.Diagram;
+import org.reactome.server.tools.reaction.exporter.compartment.ReactomeCompartmentFactory;
 import org.reactome.server.tools.reaction.exporter.config.ReactomeNeo4jConfig;
 import org.reactome.server.tools.reaction.exporter.diagram.ReactionDiagramFactory;
 import org.reactome.server.tools.reaction.exporter.graph.ReactionGraphFactory;
 import org.reactome.server.tools.reaction.exporter.layout.LayoutFactory;
-import org.reactome.server.tools.reaction.exporter.layout.model.Layout;
+import org.reactome.server.tools.reaction.exporter.layout.algorithm.box.BoxAlgorithm;
+import org.reactome.server.tools.reaction.exporter.layout.compact.CompactLayout;
+import org.reactome.server.tools.reaction.exporter.layout.text.TextUtils;
+import org.reactome.server.tools.reaction.exporter.ontology.GoTreeFactory;
+import org.reactome.server.tools.reaction.exporter.snapshot.ReactionSnapshot;
+import org.reactome.server.tools.reaction.exporter.snapshot.SnapshotFactory;
+import org.reactome.server.tools.reaction.exporter.snapshot.SnapshotReader;
+import org.reactome.server.tools.reaction.exporter.snapshot.SnapshotWriter;
 import org.reactome.server.tools.reaction.exporter.util.ProgressBar;
+import org.reactome.server.tools.reaction.exporter.util.StringInterner;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -40,51 +52,90 @@ public class Main {
 
     private static final ObjectMapper mapper = new ObjectMapper();
 
+    /**
+     * Target reactions are listed by dbId and loaded in batches of this size, so only one batch of domain objects,
+     * and whatever is lazily loaded from them, is reachable at any time.
+     * <p>
+     * Nothing has to be cleared between batches: graph-core runs on Spring Data Neo4j 6, which, unlike the OGM, keeps no
+     * session cache of the loaded entities. Relationships lazily loaded by graph-core are stored in the domain objects
+     * themselves, so they go away with the batch.
+     */
+    private static final int BATCH_SIZE = 500;
+
+    //language=cypher
+    private static final String BATCH_QUERY = "" +
+            "MATCH (rle:ReactionLikeEvent) " +
+            "WHERE rle.dbId IN $dbIds " +
+            "RETURN rle " +
+            "ORDER BY rle.dbId";
+
     public static void main(String[] args) throws JSAPException {
 
         SimpleJSAP jsap = new SimpleJSAP(Main.class.getName(), "Generates an image from a single reaction in reaction. Supports png, jpg, jpeg, gif, svg and pdf.",
                 new Parameter[]{
                         // QualifiedSwitch example -t:"R-HSA-70994"
                         new QualifiedSwitch("target",   JSAP.STRING_PARSER, JSAP.NO_DEFAULT,            JSAP.NOT_REQUIRED, 't', "target",   "Target rles to convert. Use either comma separated IDs, rles for a given species (e.g. 'Homo sapiens') or 'all' for every pathway").setList(true).setListSeparator(','),
-                        new FlaggedOption(  "output",   JSAP.STRING_PARSER, JSAP.NO_DEFAULT,            JSAP.REQUIRED,     'o', "output",   "The directory where the converted files are written to."),
+                        new FlaggedOption(  "output",   JSAP.STRING_PARSER, JSAP.NO_DEFAULT,            JSAP.NOT_REQUIRED, 'o', "output",   "The directory where the converted files are written to."),
                         new FlaggedOption(  "host",     JSAP.STRING_PARSER,"bolt://localhost:7687", JSAP.NOT_REQUIRED, 'h',  "host",    "The neo4j host"),
                         new FlaggedOption(  "user",     JSAP.STRING_PARSER,  "neo4j",               JSAP.NOT_REQUIRED, 'u',  "user",    "The neo4j user"),
                         new FlaggedOption(  "password", JSAP.STRING_PARSER,  "neo4j",               JSAP.REQUIRED,     'd',  "password","The neo4j password"),
-                        new FlaggedOption(  "name",     JSAP.STRING_PARSER,  "graph.db",            JSAP.NOT_REQUIRED, 'n',  "name","The neo4j database name")
+                        new FlaggedOption(  "name",     JSAP.STRING_PARSER,  "graph.db",            JSAP.NOT_REQUIRED, 'n',  "name","The neo4j database name"),
+                        new FlaggedOption(  "snapshot", JSAP.STRING_PARSER, JSAP.NO_DEFAULT,            JSAP.NOT_REQUIRED, 's',  "snapshot", "Dumps the data of the target rles into this snapshot file instead of converting them"),
+                        new FlaggedOption(  "from-snapshot", JSAP.STRING_PARSER, JSAP.NO_DEFAULT,       JSAP.NOT_REQUIRED, 'f',  "from-snapshot", "Converts every rle in this snapshot file. The database is not used"),
+                        new FlaggedOption(  "text-cache", JSAP.STRING_PARSER, JSAP.NO_DEFAULT,          JSAP.NOT_REQUIRED, 'c',  "text-cache", "File where measured label sizes are kept between runs")
                 }
         );
 
         final JSAPResult config = jsap.parse(args);
         if (jsap.messagePrinted()) System.exit(1);
 
-        //Initialising ReactomeCore Neo4j configuration
-        ReactomeGraphCore.initialise(config.getString("host"), config.getString("user"), config.getString("password"), config.getString("name"), ReactomeNeo4jConfig.class);
+        final File textCache = config.getString("text-cache") == null ? null : new File(config.getString("text-cache"));
+        loadTextCache(textCache);
 
-        final File output = new File(config.getString("output"));
-        if (!output.exists()) {
-            if (!output.mkdirs()) {
-                System.err.println("Couldn't create path " + output);
-                return;
-            }
+        if (config.getString("from-snapshot") != null) {
+            final File output = getOutput(config);
+            if (output == null) System.exit(1);
+            generateJsonFiles(new File(config.getString("from-snapshot")), output);
+            saveTextCache(textCache);
+            printTopologyStats();
+            clearStringPool();
+            System.exit(0);
         }
 
+        //Initialising ReactomeCore Neo4j configuration
+        ReactomeGraphCore.initialise(config.getString("host"), config.getString("user"), config.getString("password"), config.getString("name"), ReactomeNeo4jConfig.class);
+
         //Check if target rles are specified
         String[] target = config.getStringArray("target");
         AdvancedDatabaseObjectService ados = ReactomeGraphCore.getService(AdvancedDatabaseObjectService.class);
         DatabaseObjectService dos = ReactomeGraphCore.getService(DatabaseObjectService.class);
+        ReactomeCompartmentFactory compartmentFactory = new ReactomeCompartmentFactory(ReactomeGraphCore.getService(SchemaService.class), ados);
+
+        if (config.getString("snapshot") != null) {
+            List<Long> targets = getTargets(target);
+            if (targets != null && !targets.isEmpty()) {
+                generateSnapshot(targets, ados, dos, compartmentFactory, new File(config.getString("snapshot")));
+            } else {
+                System.err.println("No targets found. Please check the parameters.");
+            }
+            System.exit(0);
+        }
+
+        final File output = getOutput(config);
+        if (output == null) return;
 
-        Collection<? extends ReactionLikeEvent> rles = getTargets(target);
-        if (rles != null && !rles.isEmpty()) {
+        List<Long> targets = getTargets(target);
+        if (targets != null && !targets.isEmpty()) {
             long start = System.currentTimeMillis();
-            int i = 0, tot = rles.size();
+            int tot = targets.size();
             System.out.printf("\r· Reaction exporter started:\n\t> Targeting %s reactions.\n%n", numberFormat.format(tot));
-            for (ReactionLikeEvent rle : rles) {
-                ProgressBar.updateProgressBar(rle.getStId(), i++, tot);
-                generateJsonFiles(rle, ados, dos, output);
-            }
+            generateJsonFiles(targets, ados, dos, compartmentFactory, toFiles(output));
             long time = System.currentTimeMillis() - start;
             ProgressBar.done(tot);
             System.out.printf("· Conversion finished: %s reactions have been successfully converted (%s)\n%n", numberFormat.format(tot), getTimeFormatted(time));
+            saveTextCache(textCache);
+            printTopologyStats();
+            clearStringPool();
         } else {
             System.err.println("No targets found. Please check the parameters.");
         }
@@ -92,19 +143,151 @@ public class Main {
         System.exit(0);
     }
 
-    private static void generateJsonFiles(Event rle, AdvancedDatabaseObjectService ados, DatabaseObjectService dos, File dir) {
-        LayoutFactory layoutFactory = new LayoutFactory(ados, dos);
-        ReactionGraphFactory reactionGraphFactory = new ReactionGraphFactory(ados);
-        final Layout layout = layoutFactory.getReactionLikeEventLayout(rle, LayoutFactory.Style.BOX);
+    private static void loadTextCache(File file) {
+        if (file == null || !file.exists()) return;
+        try {
+            final int size = TextUtils.loadCache(file);
+            System.out.printf("· %s label sizes loaded from %s%n", numberFormat.format(size), file);
+        } catch (IOException e) {
+            System.err.println("Couldn't read text cache " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static void saveTextCache(File file) {
+        final CacheStats stats = TextUtils.getCacheStats();
+        System.out.printf("· Label sizes: %s requests, %.1f%% hit rate%n", numberFormat.format(stats.requestCount()), 100 * stats.hitRate());
+        if (file == null) return;
+        try {
+            TextUtils.saveCache(file);
+        } catch (IOException e) {
+            System.err.println("Couldn't write text cache " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static void printTopologyStats() {
+        final CacheStats stats = BoxAlgorithm.getTopologyCacheStats();
+        System.out.printf("· Layout topologies: %s requests, %.1f%% hit rate%n", numberFormat.format(stats.requestCount()), 100 * stats.hitRate());
+    }
+
+    /**
+     * Strings are only shared within a run, the pool is emptied once every reaction has been converted
+     */
+    private static void clearStringPool() {
+        final CacheStats stats = StringInterner.getStats();
+        System.out.printf("· Shared strings: %s in pool, %.1f%% hit rate%n", numberFormat.format(StringInterner.size()), 100 * stats.hitRate());
+        StringInterner.clear();
+    }
+
+    private static File getOutput(JSAPResult config) {
+        if (config.getString("output") == null) {
+            System.err.println("Parameter 'output' is required to convert rles");
+            return null;
+        }
+        final File output = new File(config.getString("output"));
+        if (!output.exists()) {
+            if (!output.mkdirs()) {
+                System.err.println("Couldn't create path " + output);
+                return null;
+            }
+        }
+        return output;
+    }
 
-        final Diagram diagram = ReactionDiagramFactory.get(layout);
-        File rxnLayout = new File(dir.getPath() + "/" + rle.getStId() + ".json");
-        File rxnLinkedLayout = new File(dir.getPath() + "/" + rle.getDbId() + ".json");
+    private static void generateSnapshot(List<Long> targets, AdvancedDatabaseObjectService ados, DatabaseObjectService dos, ReactomeCompartmentFactory compartmentFactory, File file) {
+        final SnapshotFactory snapshotFactory = new SnapshotFactory(ados, dos);
+        long start = System.currentTimeMillis();
+        int i = 0, tot = targets.size();
+        final List<String> failed = new ArrayList<>();
+        System.out.printf("\r· Reaction snapshot started:\n\t> Targeting %s reactions.\n%n", numberFormat.format(tot));
+        try (SnapshotWriter writer = new SnapshotWriter(file, compartmentFactory.getCompartmentResults())) {
+            for (int from = 0; from < tot; from += BATCH_SIZE) {
+                // the only reference to the batch, see BATCH_SIZE
+                final Collection<ReactionLikeEvent> batch = getBatch(ados, targets, from);
+                for (ReactionLikeEvent rle : batch) {
+                    ProgressBar.updateProgressBar(rle.getStId(), i++, tot);
+                    final ReactionSnapshot snapshot = snapshotFactory.getSnapshot(rle);
+                    if (snapshot != null) writer.write(snapshot);
+                    else failed.add(rle.getStId());
+                }
+            }
+            ProgressBar.done(tot);
+            long time = System.currentTimeMillis() - start;
+            System.out.printf("· Snapshot finished: %s reactions have been written to %s (%s)\n%n", numberFormat.format(writer.getCount()), file, getTimeFormatted(time));
+            if (!failed.isEmpty())
+                System.err.printf("· %s reactions could not be extracted and are missing from the snapshot: %s%n", numberFormat.format(failed.size()), String.join(", ", failed));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void generateJsonFiles(File snapshot, File dir) {
+        final Output output = toFiles(dir);
+        long start = System.currentTimeMillis();
+        int i = 0;
+        System.out.printf("\r· Reaction exporter started:\n\t> Reading reactions from %s.\n%n", snapshot);
+        try (SnapshotReader reader = new SnapshotReader(snapshot)) {
+            GoTreeFactory.setReactomeMasterTree(reader.getMasterTree());
+            ReactionSnapshot reaction;
+            while ((reaction = reader.read()) != null) {
+                System.out.printf("\r\t%s reactions [current:%s]", numberFormat.format(i++), reaction.getStId());
+                generateJsonFiles(reaction, output);
+            }
+            long time = System.currentTimeMillis() - start;
+            System.out.printf("\n\n· Conversion finished: %s reactions have been successfully converted (%s)\n%n", numberFormat.format(i), getTimeFormatted(time));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Converts the target reactions, loaded from the database in batches. Nothing of a batch is kept once its reactions
+     * have been written to output, so a run uses the same memory for any number of reactions.
+     */
+    static void generateJsonFiles(List<Long> targets, AdvancedDatabaseObjectService ados, DatabaseObjectService dos, ReactomeCompartmentFactory compartmentFactory, Output output) {
+        int i = 0, tot = targets.size();
+        final LayoutFactory layoutFactory = new LayoutFactory(ados, dos, compartmentFactory);
+        final ReactionGraphFactory graphFactory = new ReactionGraphFactory(ados);
+        for (int from = 0; from < tot; from += BATCH_SIZE) {
+            // the only reference to the batch, see BATCH_SIZE
+            final Collection<ReactionLikeEvent> batch = getBatch(ados, targets, from);
+            for (ReactionLikeEvent rle : batch) {
+                ProgressBar.updateProgressBar(rle.getStId(), i++, tot);
+                generateJsonFiles(rle, layoutFactory, graphFactory, output);
+            }
+        }
+    }
+
+    /**
+     * Converts one reaction of a snapshot. Only the compact layout is kept once the layout is computed, and nothing is
+     * kept once the reaction is written to output, so a run uses the same memory for any number of reactions.
+     */
+    static void generateJsonFiles(ReactionSnapshot reaction, Output output) {
+        final CompactLayout layout = CompactLayout.of(LayoutFactory.getSnapshotLayout(reaction, LayoutFactory.Style.BOX));
+        final Graph graph = ReactionGraphFactory.getGraph(reaction, layout);
+        output.save(reaction.getStId(), reaction.getDbId(), ReactionDiagramFactory.get(layout), graph);
+    }
+
+    private static void generateJsonFiles(Event rle, LayoutFactory layoutFactory, ReactionGraphFactory graphFactory, Output output) {
+        // the layout holds the domain objects of the participants, the compact copy does not
+        final CompactLayout layout = CompactLayout.of(layoutFactory.getReactionLikeEventLayout(rle, LayoutFactory.Style.BOX));
+        final Graph graph = graphFactory.getGraph(rle, layout);
+        output.save(rle.getStId(), rle.getDbId(), ReactionDiagramFactory.get(layout), graph);
+    }
+
+    /**
+     * Writes the layout and graph of every reaction to dir, named after its stId, with a link named after its dbId
+     */
+    private static Output toFiles(File dir) {
+        return (stId, dbId, diagram, graph) -> saveJsonFiles(stId, dbId, diagram, graph, dir);
+    }
+
+    private static void saveJsonFiles(String stId, Long dbId, Diagram diagram, Graph graph, File dir) {
+        File rxnLayout = new File(dir.getPath() + "/" + stId + ".json");
+        File rxnLinkedLayout = new File(dir.getPath() + "/" + dbId + ".json");
         saveJson(diagram, rxnLayout, rxnLinkedLayout);
 
-        final Graph graph = reactionGraphFactory.getGraph(rle, layout);
-        File rxnGraph = new File(dir.getPath() + "/" + rle.getStId() + ".graph.json");
-        File rxnLinkedGraph = new File(dir.getPath() + "/" + rle.getDbId() + ".graph.json");
+        File rxnGraph = new File(dir.getPath() + "/" + stId + ".graph.json");
+        File rxnLinkedGraph = new File(dir.getPath() + "/" + dbId + ".graph.json");
         saveJson(graph, rxnGraph, rxnLinkedGraph);
     }
 
@@ -113,8 +296,9 @@ public class Main {
             ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
             mapper.writeValue(byteArrayOutputStream, object);
 
-            FileOutputStream fileOutputStream = new FileOutputStream(file, false);
-            byteArrayOutputStream.writeTo(fileOutputStream);
+            try (FileOutputStream fileOutputStream = new FileOutputStream(file, false)) {
+                byteArrayOutputStream.writeTo(fileOutputStream);
+            }
 
             //Create symbolicLink
             if (!Files.exists(Paths.get(linkedFile.getAbsolutePath()))) {
@@ -125,15 +309,18 @@ public class Main {
         }
     }
 
-    private static Collection<? extends ReactionLikeEvent> getTargets(String[] target) {
+    /**
+     * @return the dbIds of the target reactions, sorted
+     */
+    static List<Long> getTargets(String[] target) {
         AdvancedDatabaseObjectService ads = ReactomeGraphCore.getService(AdvancedDatabaseObjectService.class);
         String query;
         Map<String, Object> parametersMap = new HashMap<>();
         if (target.length > 1) {
             query = "MATCH (rle:ReactionLikeEvent) " +
                     "WHERE rle.dbId IN $dbIds OR rle.stId IN $stIds " +
-                    "RETURN DISTINCT rle " +
-                    "ORDER BY rle.dbId";
+                    "RETURN DISTINCT rle.dbId AS dbId " +
+                    "ORDER BY dbId";
             List<Long> dbIds = new ArrayList<>();
             List<String> stIds = new ArrayList<>();
             for (String identifier : target) {
@@ -150,30 +337,45 @@ public class Main {
             String aux = target[0];
             if (aux.equalsIgnoreCase("all")) {
                 query = "MATCH (rle:ReactionLikeEvent) " +
-                        "RETURN DISTINCT rle " +
-                        "ORDER BY rle.dbId";
+                        "RETURN DISTINCT rle.dbId AS dbId " +
+                        "ORDER BY dbId";
             } else if (DatabaseObjectUtils.isStId(aux)) {
-                query = "MATCH (rle:ReactionLikeEvent{stId:$stId}) RETURN DISTINCT rle";
+                query = "MATCH (rle:ReactionLikeEvent{stId:$stId}) RETURN DISTINCT rle.dbId AS dbId";
                 parametersMap.put("stId", DatabaseObjectUtils.getIdentifier(aux));
             } else if (DatabaseObjectUtils.isDbId(aux)) {
-                query = "MATCH (rle:ReactionLikeEvent{dbId:$dbId}) RETURN DISTINCT rle";
+                query = "MATCH (rle:ReactionLikeEvent{dbId:$dbId}) RETURN DISTINCT rle.dbId AS dbId";
                 parametersMap.put("dbId", DatabaseObjectUtils.getIdentifier(aux));
             } else {
                 query = "MATCH (rle:ReactionLikeEvent{speciesName:$speciesName}) " +
-                        "RETURN DISTINCT rle " +
-                        "ORDER BY rle.dbId";
+                        "RETURN DISTINCT rle.dbId AS dbId " +
+                        "ORDER BY dbId";
                 parametersMap.put("speciesName", aux);
             }
         }
 
         System.out.print("· Retrieving target reactions...");
-        Collection<ReactionLikeEvent> rles = null;
+        List<Long> targets = null;
+        try {
+            targets = new ArrayList<>();
+            for (Target t : ads.getCustomQueryResults(Target.class, query, parametersMap)) targets.add(t.dbId);
+        } catch (CustomQueryException e) {
+            e.printStackTrace();
+        }
+        return targets;
+    }
+
+    /**
+     * Loads, without relationships, the reactions in targets from position from, at most {@link #BATCH_SIZE}. Callers
+     * must not keep them after converting them.
+     */
+    private static Collection<ReactionLikeEvent> getBatch(AdvancedDatabaseObjectService ads, List<Long> targets, int from) {
+        final List<Long> dbIds = new ArrayList<>(targets.subList(from, Math.min(from + BATCH_SIZE, targets.size())));
         try {
-            rles = ads.getCustomQueryResults(ReactionLikeEvent.class, query, parametersMap);
+            return ads.getCustomQueryResults(ReactionLikeEvent.class, BATCH_QUERY, Map.of("dbIds", dbIds));
         } catch (CustomQueryException e) {
             e.printStackTrace();
         }
-        return rles;
+        return Collections.emptyList();
     }
 
     private static String getTimeFormatted(Long millis) {
@@ -181,4 +383,26 @@ public class Main {
                 TimeUnit.MILLISECONDS.toMinutes(millis) % TimeUnit.HOURS.toMinutes(1),
                 TimeUnit.MILLISECONDS.toSeconds(millis) % TimeUnit.MINUTES.toSeconds(1));
     }
-}
\ No newline at end of file
+
+    /**
+     * Receives the layout and graph of every converted reaction
+     */
+    interface Output {
+        void save(String stId, Long dbId, Diagram diagram, Graph graph);
+    }
+
+    /**
+     * The dbId of a target reaction, so targets can be listed without loading them
+     */
+    public static class Target implements CustomQuery {
+
+        private Long dbId;
+
+        @Override
+        public CustomQuery build(Record r) {
+            final Target target = new Target();
+            target.dbId = r.get("dbId").asLong();
+            return target;
+        }
+    }
+}
\ No newline at end of file
@@ -6,6 +6,7 @@ import org.reactome.server.tools.diagram.data.layout.Diagram;
 import org.reactome.server.tools.reaction.exporter.diagram.ReactionDiagramFactory;
 import org.reactome.server.tools.reaction.exporter.graph.ReactionGraphFactory;
 import org.reactome.server.tools.reaction.exporter.layout.LayoutFactory;
+import org.reactome.server.tools.reaction.exporter.layout.compact.CompactLayout;
 import org.reactome.server.tools.reaction.exporter.layout.model.Layout;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -31,11 +32,26 @@ public class ReactionExporter {
         return layoutFactory.getReactionLikeEventLayout(rle, style);
     }
 
+    /**
+     * Computes the layout of rle and keeps only its immutable result, which is what caches and serializers need.
+     */
+    public CompactLayout getCompactReactionLayout(ReactionLikeEvent rle, LayoutFactory.Style style){
+        return CompactLayout.of(layoutFactory.getReactionLikeEventLayout(rle, style));
+    }
+
     public Diagram getReactionDiagram(Layout layout){
         return ReactionDiagramFactory.get(layout);
     }
 
+    public Diagram getReactionDiagram(CompactLayout layout){
+        return ReactionDiagramFactory.get(layout);
+    }
+
     public Graph getReactionGraph(ReactionLikeEvent rle, Layout layout){
         return graphFactory.getGraph(rle, layout);
     }
+
+    public Graph getReactionGraph(ReactionLikeEvent rle, CompactLayout layout){
+        return graphFactory.getGraph(rle, layout);
+    }
 }
@@ -0,0 +1,61 @@
+package org.reactome.server.tools.reaction.exporter.compartment;
+
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Value;
+import org.reactome.server.graph.domain.result.CustomQuery;
+
+import java.util.List;
+
+/**
+ * A row of {@link ReactomeCompartmentFactory#HIERARCHY_QUERY}: a GO Cellular Component with the GO identifiers of
+ * its instanceOf and surroundedBy relationships.
+ */
+public class CompartmentResult implements CustomQuery {
+
+    private String id;
+    private String name;
+    private List<String> parents;
+    private List<String> surroundedBy;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public List<String> getParents() {
+        return parents;
+    }
+
+    public void setParents(List<String> parents) {
+        this.parents = parents;
+    }
+
+    public List<String> getSurroundedBy() {
+        return surroundedBy;
+    }
+
+    public void setSurroundedBy(List<String> surroundedBy) {
+        this.surroundedBy = surroundedBy;
+    }
+
+    @Override
+    public CustomQuery build(Record r) {
+        CompartmentResult cr = new CompartmentResult();
+        cr.setId(r.get("id").asString());
+        cr.setName(r.get("name").asString(null));
+        cr.setParents(r.get("parents").asList(Value::asString));
+        cr.setSurroundedBy(r.get("surroundedBy").asList(Value::asString));
+        return cr;
+    }
+}
@@ -1,32 +1,130 @@
 package org.reactome.server.tools.reaction.exporter.compartment;
 
 import org.reactome.server.graph.domain.model.GO_CellularComponent;
+import org.reactome.server.graph.exception.CustomQueryException;
+import org.reactome.server.graph.service.AdvancedDatabaseObjectService;
 import org.reactome.server.graph.service.SchemaService;
 import org.reactome.server.graph.utils.ReactomeGraphCore;
 import org.reactome.server.tools.reaction.exporter.ontology.GoTerm;
 import org.reactome.server.tools.reaction.exporter.ontology.RelationshipType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 
+/**
+ * Loads the Reactome GO Cellular Component hierarchy. The services are injected, so every caller uses the database
+ * of the factory it was given, and nothing global is changed to point a factory to another database.
+ */
 @Component
 public class ReactomeCompartmentFactory {
 
-    private static SchemaService schemaService;
+    /**
+     * Retrieves the whole GO Cellular Component hierarchy in a single round trip. Public so it can be benchmarked.
+     * <p>
+     * Parents are collected in the order of the relationships, as {@link GO_CellularComponent#getInstanceOf()} returns
+     * them, because the first parent wins when two branches of the tree are equally good.
+     */
+    //language=Cypher
+    public static final String HIERARCHY_QUERY = "" +
+            "MATCH (c:GO_CellularComponent) " +
+            "OPTIONAL MATCH (c)-[i:instanceOf]->(p:GO_CellularComponent) " +
+            "WITH c, i, p ORDER BY i.order " +
+            "WITH c, collect(DISTINCT p.databaseName + ':' + p.accession) AS parents " +
+            "OPTIONAL MATCH (c)-[sb:surroundedBy]->(s:GO_CellularComponent) " +
+            "WITH c, parents, sb, s ORDER BY sb.order " +
+            "RETURN c.databaseName + ':' + c.accession AS id, c.displayName AS name, parents, " +
+            "       collect(DISTINCT s.databaseName + ':' + s.accession) AS surroundedBy";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("reaction-exporter");
+
+    private static volatile SchemaService defaultSchemaService;
+
+    private final SchemaService schemaService;
+    private final AdvancedDatabaseObjectService ads;
+
+    @Autowired
+    public ReactomeCompartmentFactory(SchemaService schemaService, AdvancedDatabaseObjectService ads) {
+        this.schemaService = schemaService;
+        this.ads = ads;
+    }
+
+    /**
+     * @deprecated the schema service, only needed when {@link #HIERARCHY_QUERY} fails, is the one given to
+     * {@link #setSchemaService(SchemaService)} or, if none, the one of {@link ReactomeGraphCore}. Use
+     * {@link #ReactomeCompartmentFactory(SchemaService, AdvancedDatabaseObjectService)}
+     */
+    @Deprecated
+    public ReactomeCompartmentFactory(AdvancedDatabaseObjectService ads) {
+        this(null, ads);
+    }
+
+    /**
+     * @deprecated only used by the factories created with {@link #ReactomeCompartmentFactory(AdvancedDatabaseObjectService)}.
+     * Pass the schema service to {@link #ReactomeCompartmentFactory(SchemaService, AdvancedDatabaseObjectService)}
+     */
+    @Deprecated
+    public static void setSchemaService(SchemaService schemaService) {
+        ReactomeCompartmentFactory.defaultSchemaService = schemaService;
+    }
 
     /**
-     * Creates a tree from the Reactome GO Cellular Component hierarchy and connects them.
+     * Creates a tree from the Reactome GO Cellular Component hierarchy and connects them. The hierarchy is retrieved
+     * with {@link #HIERARCHY_QUERY}, instead of loading the relationships of every compartment one by one.
      *
      * @return a Reactome GO Cellular Component master containing <em>ids</em>
      */
-    public static Map<String, GoTerm> getMasterTree() {
-        if (schemaService == null) schemaService = ReactomeGraphCore.getService(SchemaService.class);
+    public Map<String, GoTerm> getMasterTree() {
+        try {
+            return getMasterTreeFromResults(queryHierarchy());
+        } catch (CustomQueryException e) {
+            LOGGER.warn("Compartment hierarchy query failed, loading compartments one by one", e);
+            return getMasterTree(getCellularComponents());
+        }
+    }
 
-        Collection<GO_CellularComponent> compartments = schemaService.getByClass(GO_CellularComponent.class);
+    /**
+     * Same hierarchy as {@link #getMasterTree()}, as rows of {@link #HIERARCHY_QUERY}, so it can be written to a
+     * snapshot.
+     *
+     * @return one row per GO Cellular Component stored in the Reactome database
+     */
+    public Collection<CompartmentResult> getCompartmentResults() {
+        try {
+            return queryHierarchy();
+        } catch (CustomQueryException e) {
+            LOGGER.warn("Compartment hierarchy query failed, loading compartments one by one", e);
+            final Collection<CompartmentResult> rtn = new ArrayList<>();
+            for (GO_CellularComponent component : getCellularComponents()) {
+                rtn.add(getCompartmentResult(component));
+            }
+            return rtn;
+        }
+    }
+
+    private Collection<CompartmentResult> queryHierarchy() throws CustomQueryException {
+        return ads.getCustomQueryResults(CompartmentResult.class, HIERARCHY_QUERY);
+    }
 
+    /**
+     * @return every GO Cellular Component stored in the Reactome database
+     */
+    public Collection<GO_CellularComponent> getCellularComponents() {
+        SchemaService service = schemaService;
+        if (service == null) service = defaultSchemaService;
+        if (service == null) service = ReactomeGraphCore.getService(SchemaService.class);
+        return service.getByClass(GO_CellularComponent.class);
+    }
+
+    /**
+     * Creates a tree from the given GO Cellular Components and connects them.
+     *
+     * @param compartments the nodes of the tree, with their instanceOf and surroundedBy relationships loaded
+     * @return a master tree containing <em>compartments</em>
+     */
+    public static Map<String, GoTerm> getMasterTree(Collection<GO_CellularComponent> compartments) {
         Map<String, GoTerm> rtn = new HashMap<>();
         for (GO_CellularComponent component : compartments) {
             rtn.put(getGoIdentifier(component), new GoTerm(component));
@@ -48,12 +146,67 @@ public class ReactomeCompartmentFactory {
         return rtn;
     }
 
-    @Autowired
-    public static void setSchemaService(SchemaService schemaService) {
-        ReactomeCompartmentFactory.schemaService = schemaService;
+    /**
+     * Creates a tree from the rows of {@link #HIERARCHY_QUERY} and connects them. Roots have no parents, and parents
+     * or surrounding compartments that are not a row themselves are skipped, as there is no term to connect to.
+     *
+     * @param compartments one row per GO Cellular Component
+     * @return a master tree containing <em>compartments</em>
+     */
+    public static Map<String, GoTerm> getMasterTreeFromResults(Collection<CompartmentResult> compartments) {
+        Map<String, GoTerm> rtn = new HashMap<>();
+        for (CompartmentResult component : compartments) {
+            final GoTerm goTerm = new GoTerm(component.getId());
+            goTerm.setNamespace("cellular_component");
+            goTerm.setName(component.getName());
+            rtn.put(component.getId(), goTerm);
+        }
+
+        for (CompartmentResult component : compartments) {
+            GoTerm goTerm = rtn.get(component.getId());
+
+            if (component.getParents() != null) {
+                for (String parent : component.getParents()) {
+                    GoTerm term = parent == null ? null : rtn.get(parent);
+                    if (term != null) goTerm.addParent(term);
+                }
+            }
+
+            if (component.getSurroundedBy() != null) {
+                for (String sb : component.getSurroundedBy()) {
+                    GoTerm term = sb == null ? null : rtn.get(sb);
+                    if (term != null) goTerm.createRelationship(GoTerm.Directionality.OUTGOING, RelationshipType.surrounded_by, term);
+                }
+            }
+        }
+
+        return rtn;
+    }
+
+    /**
+     * @param component a GO Cellular Component with its instanceOf and surroundedBy relationships loaded
+     * @return the same row {@link #HIERARCHY_QUERY} returns for <em>component</em>
+     */
+    public static CompartmentResult getCompartmentResult(GO_CellularComponent component) {
+        final CompartmentResult rtn = new CompartmentResult();
+        rtn.setId(getGoIdentifier(component));
+        rtn.setName(component.getDisplayName());
+        rtn.setParents(getGoIdentifiers(component.getInstanceOf()));
+        rtn.setSurroundedBy(getGoIdentifiers(component.getSurroundedBy()));
+        return rtn;
+    }
+
+    private static List<String> getGoIdentifiers(List<GO_CellularComponent> components) {
+        final List<String> rtn = new ArrayList<>();
+        if (components != null) {
+            for (GO_CellularComponent component : components) {
+                rtn.add(getGoIdentifier(component));
+            }
+        }
+        return rtn;
     }
 
-    private static String getGoIdentifier(GO_CellularComponent component) {
+    public static String getGoIdentifier(GO_CellularComponent component) {
         return component.getDatabaseName() + ":" + component.getAccession();
     }
 }
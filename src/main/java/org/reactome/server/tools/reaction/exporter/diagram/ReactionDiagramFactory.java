@@ -2,8 +2,8 @@ package org.reactome.server.tools.reaction.exporter.diagram;
 
 import org.reactome.server.tools.diagram.data.layout.*;
 import org.reactome.server.tools.diagram.data.layout.impl.*;
-import org.reactome.server.tools.reaction.exporter.layout.common.Bounds;
-import org.reactome.server.tools.reaction.exporter.layout.model.*;
+import org.reactome.server.tools.reaction.exporter.layout.compact.*;
+import org.reactome.server.tools.reaction.exporter.layout.model.Layout;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -15,6 +15,8 @@ import java.util.List;
  * The reaction-exporter project uses {@link Layout} objects to ease extraction and layout of reactions. Once the
  * results have to be shared with other projects (such as diagram-exporter) this needs to be shared with a common format
  * to avoid rewriting renderers.
+ * <p>
+ * Diagrams are built from the {@link CompactLayout} of a layout, so the serializers never touch the mutable model.
  *
  * @author Pascual Lorente (plorente@ebi.ac.uk)
  */
@@ -29,18 +31,22 @@ public class ReactionDiagramFactory {
     }
 
     public static Diagram get(Layout rxnLayout) {
+        return get(CompactLayout.of(rxnLayout));
+    }
+
+    public static Diagram get(CompactLayout rxnLayout) {
         final DiagramImpl diagram = new DiagramImpl();
-        final ReactionGlyph reaction = rxnLayout.getReaction();
+        final CompactReaction reaction = rxnLayout.getReaction();
         diagram.setStableId(rxnLayout.getPathway());
         diagram.setDisease(reaction.isDisease());
         diagram.setDisplayName(reaction.getName());
         diagram.setDbId(reaction.getDbId());
         diagram.setCompartments(getCompartments(rxnLayout));
         diagram.setEdges(getEdges(rxnLayout));
-        diagram.setMaxX((int) rxnLayout.getBounds().getMaxX());
-        diagram.setMaxY((int) rxnLayout.getBounds().getMaxY());
-        diagram.setMinX((int) rxnLayout.getBounds().getX());
-        diagram.setMinY((int) rxnLayout.getBounds().getY());
+        diagram.setMaxX((int) rxnLayout.getMaxX());
+        diagram.setMaxY((int) rxnLayout.getMaxY());
+        diagram.setMinX((int) rxnLayout.getX());
+        diagram.setMinY((int) rxnLayout.getY());
         diagram.setNodes(getNodes(rxnLayout));
         diagram.setNotes(Collections.emptyList());
         diagram.setShadows(Collections.emptyList());
@@ -48,45 +54,40 @@ public class ReactionDiagramFactory {
         return diagram;
     }
 
-    private static List<Compartment> getCompartments(Layout rxnLayout) {
+    private static List<Compartment> getCompartments(CompactLayout rxnLayout) {
         final List<Compartment> compartments = new ArrayList<>();
-        for (CompartmentGlyph comp : rxnLayout.getCompartments()) {
-            final List<Long> ids = new ArrayList<>();
-            for (Glyph glyph : comp.getContainedGlyphs()) {
-                ids.add(glyph.getId());
-            }
-            for (final CompartmentGlyph child : comp.getChildren()) {
-                ids.add(child.getId());
+        for (CompactCompartment comp : rxnLayout.getCompartments()) {
+            final List<Long> ids = new ArrayList<>(comp.getContentSize());
+            for (int i = 0; i < comp.getContentSize(); i++) {
+                ids.add(comp.getContent(i));
             }
             final CompartmentImpl compartment = new CompartmentImpl(ids);
             compartments.add(compartment);
             copyGlyphToDatabaseObject(comp, compartment);
-            final Bounds bounds = comp.getBounds();
-            compartment.setProp(getProp(bounds));
+            compartment.setProp(getProp(comp));
             compartment.setTextPosition(comp.getLabelPosition().minus(GWU_CORRECTION));
         }
         return compartments;
     }
 
-    private static void copyGlyphToDatabaseObject(Glyph glyph, DiagramObjectImpl object) {
-        final Bounds bounds = glyph.getBounds();
+    private static void copyGlyphToDatabaseObject(CompactGlyph glyph, DiagramObjectImpl object) {
         object.setId(glyph.getId());
-        object.setMinX(bounds.getX());
-        object.setMinY(bounds.getY());
-        object.setMaxX(bounds.getMaxX());
-        object.setMaxY(bounds.getMaxY());
+        object.setMinX(glyph.getX());
+        object.setMinY(glyph.getY());
+        object.setMaxX(glyph.getMaxX());
+        object.setMaxY(glyph.getMaxY());
         object.setDisplayName(glyph.getName());
         object.setRenderableClass(glyph.getRenderableClass().toString());
         object.setSchemaClass(glyph.getSchemaClass());
         object.setReactomeId(glyph.getDbId());
-        object.setPosition(new CoordinateImpl(bounds.getCenterX(), bounds.getCenterY()));
+        object.setPosition(new CoordinateImpl(glyph.getCenterX(), glyph.getCenterY()));
     }
 
     /**
      * Actually, get 'edge' :P
      */
-    private static List<Edge> getEdges(Layout rxnLayout) {
-        final ReactionGlyph reaction = rxnLayout.getReaction();
+    private static List<Edge> getEdges(CompactLayout rxnLayout) {
+        final CompactReaction reaction = rxnLayout.getReaction();
         final EdgeImpl edge = new EdgeImpl();
         copyGlyphToDatabaseObject(reaction, edge);
         edge.setReactionShape(getReactionShape(reaction));
@@ -97,13 +98,13 @@ public class ReactionDiagramFactory {
         final List<ReactionPart> inhibitors = new ArrayList<>();
         final List<ReactionPart> inputs = new ArrayList<>();
         final List<ReactionPart> outputs = new ArrayList<>();
-        for (EntityGlyph entity : rxnLayout.getEntities()) {
-            if (entity.isCrossed() != null && entity.isCrossed()) continue;
-            for (Role role : entity.getRoles()) {
+        for (CompactEntity entity : rxnLayout.getEntities()) {
+            if (entity.isCrossed()) continue;
+            for (int i = 0; i < entity.getRoleCount(); i++) {
                 final ReactionPartImpl reactionPart = new ReactionPartImpl();
                 reactionPart.setId(entity.getId());
-                reactionPart.setStoichiometry(role.getStoichiometry());
-                switch (role.getType()) {
+                reactionPart.setStoichiometry(entity.getStoichiometry(i));
+                switch (entity.getRole(i)) {
                     case INPUT:
                         inputs.add(reactionPart);
                         break;
@@ -132,37 +133,36 @@ public class ReactionDiagramFactory {
         return Collections.singletonList(edge);
     }
 
-    private static Shape getReactionShape(ReactionGlyph reaction) {
-        final Bounds bounds = reaction.getBounds();
+    private static Shape getReactionShape(CompactReaction reaction) {
         final Coordinate a;
         final Coordinate b;
         final Coordinate c;
         switch (reaction.getRenderableClass()) {
             case DISSOCIATION_REACTION:
-                c = new CoordinateImpl(bounds.getCenterX(), bounds.getCenterY());
+                c = new CoordinateImpl(reaction.getCenterX(), reaction.getCenterY());
                 return new DoubleCircleImpl(c, 6., 4.);
             case OMITTED_REACTION:
-                a = new CoordinateImpl(bounds.getX(), bounds.getY());
-                b = new CoordinateImpl(bounds.getMaxX(), bounds.getMaxY());
+                a = new CoordinateImpl(reaction.getX(), reaction.getY());
+                b = new CoordinateImpl(reaction.getMaxX(), reaction.getMaxY());
                 return new BoxImpl(a, b, true, "\\\\");
             case UNCERTAIN_REACTION:
-                a = new CoordinateImpl(bounds.getX(), bounds.getY());
-                b = new CoordinateImpl(bounds.getMaxX(), bounds.getMaxY());
+                a = new CoordinateImpl(reaction.getX(), reaction.getY());
+                b = new CoordinateImpl(reaction.getMaxX(), reaction.getMaxY());
                 return new BoxImpl(a, b, true, "?");
             case BINDING_REACTION:
-                c = new CoordinateImpl(bounds.getCenterX(), bounds.getCenterY());
+                c = new CoordinateImpl(reaction.getCenterX(), reaction.getCenterY());
                 return new CircleImpl(c, 6., null, null);
             case TRANSITION_REACTION:
             default:
-                a = new CoordinateImpl(bounds.getX(), bounds.getY());
-                b = new CoordinateImpl(bounds.getMaxX(), bounds.getMaxY());
+                a = new CoordinateImpl(reaction.getX(), reaction.getY());
+                b = new CoordinateImpl(reaction.getMaxX(), reaction.getMaxY());
                 return new BoxImpl(a, b, true, null);
         }
     }
 
-    private static List<Node> getNodes(Layout rxnLayout) {
+    private static List<Node> getNodes(CompactLayout rxnLayout) {
         List<Node> nodes = new ArrayList<>();
-        for (EntityGlyph entity : rxnLayout.getEntities()) {
+        for (CompactEntity entity : rxnLayout.getEntities()) {
             final NodeImpl node = new NodeImpl();
             copyGlyphToDatabaseObject(entity, node);
             node.setTrivial(entity.isTrivial() ? true : null);
@@ -170,17 +170,11 @@ public class ReactionDiagramFactory {
             node.setFadeOut(entity.isFadeOut() ? true : null);
             node.setCrossed(entity.isCrossed() ? true : null);
             node.setNeedDashBorder(entity.isDashed() ? true : null);
-            final Bounds bounds = entity.getBounds();
-            node.setProp(getProp(bounds));
-            node.setConnectors(new ArrayList<>(entity.getConnector()));
-            for (Connector c : entity.getConnector()) {
-                ConnectorImpl connector = (ConnectorImpl) c;
-                connector.setEdgeId( rxnLayout.getReaction().getId());
-                connector.setDisease(rxnLayout.getReaction().isDisease() ? true : null);
-                connector.setFadeOut(entity.isFadeOut() ? true : null);
-            }
+            node.setProp(getProp(entity));
+            // connectors were linked to the reaction when the layout was compacted
+            node.setConnectors(new ArrayList<>(entity.getConnectors()));
             List<NodeAttachment> attachments = new ArrayList<>();
-            for (AttachmentGlyph attachment : entity.getAttachments()) {
+            for (CompactAttachment attachment : entity.getAttachments()) {
                 final NodeAttachmentImpl nodeAttachment = new NodeAttachmentImpl();
                 nodeAttachment.setLabel(attachment.getName());
                 nodeAttachment.setReactomeId(attachment.getDbId());
@@ -193,14 +187,13 @@ public class ReactionDiagramFactory {
         return nodes;
     }
 
-    private static Shape getAttachmentShape(AttachmentGlyph attachment) {
-        final Bounds bounds = attachment.getBounds();
-        final Coordinate a = new CoordinateImpl(bounds.getX(), bounds.getY());
-        final Coordinate b = new CoordinateImpl(bounds.getMaxX(), bounds.getMaxY());
+    private static Shape getAttachmentShape(CompactAttachment attachment) {
+        final Coordinate a = new CoordinateImpl(attachment.getX(), attachment.getY());
+        final Coordinate b = new CoordinateImpl(attachment.getMaxX(), attachment.getMaxY());
         return new BoxImpl(a, b, true, attachment.getName());
     }
 
-    private static NodeProperties getProp(Bounds bounds) {
-        return NodePropertiesFactory.get(bounds.getX(), bounds.getY(), bounds.getWidth(), bounds.getHeight());
+    private static NodeProperties getProp(CompactGlyph glyph) {
+        return NodePropertiesFactory.get(glyph.getX(), glyph.getY(), glyph.getWidth(), glyph.getHeight());
     }
 }
@@ -10,9 +10,12 @@ import org.reactome.server.tools.diagram.data.graph.Graph;
 import org.reactome.server.tools.diagram.data.graph.impl.EntityNodeImpl;
 import org.reactome.server.tools.diagram.data.graph.impl.EventNodeImpl;
 import org.reactome.server.tools.diagram.data.graph.impl.GraphImpl;
-import org.reactome.server.tools.reaction.exporter.layout.model.EntityGlyph;
+import org.reactome.server.tools.reaction.exporter.layout.compact.CompactEntity;
+import org.reactome.server.tools.reaction.exporter.layout.compact.CompactLayout;
+import org.reactome.server.tools.reaction.exporter.layout.compact.CompactReaction;
 import org.reactome.server.tools.reaction.exporter.layout.model.Layout;
-import org.reactome.server.tools.reaction.exporter.layout.model.ReactionGlyph;
+import org.reactome.server.tools.reaction.exporter.snapshot.ReactionSnapshot;
+import org.reactome.server.tools.reaction.exporter.util.StringInterner;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -27,6 +30,66 @@ import java.util.*;
 @Component
 public class ReactionGraphFactory {
 
+    /**
+     * Retrieves the graph nodes of every physical entity involved in a reaction. Public so it can be benchmarked.
+     */
+    //language=cypher
+    public static final String ENTITY_NODES_QUERY = "" +
+            "MATCH (rle:ReactionLikeEvent{dbId:$dbId})-[:input|output|catalystActivity|physicalEntity|entityFunctionalStatus|diseaseEntity|regulatedBy|regulator|hasComponent|hasMember|hasCandidate|repeatedUnit|proteinMarker|RNAMarker*]->(pe:PhysicalEntity) " +
+            "WITH COLLECT(DISTINCT pe) AS pes " +
+            "UNWIND pes AS pe " +
+            "OPTIONAL MATCH (pe)-[:hasComponent|hasMember|hasCandidate|repeatedUnit|proteinMarker|RNAMarker]->(children:PhysicalEntity) " +
+            "OPTIONAL MATCH (parent:PhysicalEntity)-[:hasComponent|hasMember|hasCandidate|repeatedUnit|proteinMarker|RNAMarker]->(pe) " +
+            "WHERE parent IN pes " +
+            "OPTIONAL MATCH (pe)-[:referenceEntity]->(re:ReferenceEntity) " +
+            "OPTIONAL MATCH (pe)-[:species]->(s:Species) " +
+            "RETURN DISTINCT pe.dbId AS dbId, pe.stId AS stId, pe.displayName AS displayName, pe.schemaClass AS schemaClass, " +
+            "       s.dbId AS speciesID, " +
+            "       COLLECT(DISTINCT children.dbId) AS children, " +
+            "       COLLECT(DISTINCT parent.dbId) AS parents, " +
+            "       CASE WHEN re.variantIdentifier IS NULL THEN re.identifier ELSE re.variantIdentifier END AS identifier, " +
+            "       re.geneName AS geneNames";
+
+    /**
+     * Retrieves the graph node of a reaction. Public so it can be benchmarked.
+     */
+    //language=cypher
+    public static final String EVENT_NODE_QUERY = "" +
+            "MATCH (rle:ReactionLikeEvent {dbId:$dbId}) " +
+            "OPTIONAL MATCH (rle)-[:input]->(i:PhysicalEntity) " +
+            "OPTIONAL MATCH (rle)-[:output]->(o:PhysicalEntity) " +
+            "OPTIONAL MATCH (rle)-[:catalystActivity|physicalEntity*]->(c:PhysicalEntity) " +
+            "OPTIONAL MATCH (rle)-[:entityFunctionalStatus|diseaseEntity*]->(e:PhysicalEntity) " +
+            "OPTIONAL MATCH (rle)-[:regulatedBy]->(reg:Regulation)-[:regulator]->(r:PhysicalEntity) " +
+            "OPTIONAL MATCH prep=(p)-[:hasEvent*]->(pre:ReactionLikeEvent)<-[:precedingEvent]-(rle) " +
+            "  WHERE single(x IN nodes(prep) WHERE (x:Pathway AND coalesce(x.hasDiagram,false))) " +
+            "OPTIONAL MATCH folp=(p)-[:hasEvent*]->(fol:ReactionLikeEvent)-[:precedingEvent]->(rle) " +
+            "  WHERE single(x IN nodes(folp) WHERE (x:Pathway AND coalesce(x.hasDiagram,false))) " +
+            "WITH " +
+            "  rle.dbId AS dbId, " +
+            "  rle.stId AS stId, " +
+            "  rle.displayName AS displayName, " +
+            "  rle.schemaClass AS schemaClass, " +
+            "  collect(DISTINCT i.dbId) AS inputs, " +
+            "  collect(DISTINCT o.dbId) AS outputs, " +
+            "  collect(DISTINCT c.dbId) AS catalysts, " +
+            "  collect(DISTINCT e.dbId) AS efs, " +
+            "  collect(DISTINCT pre.dbId) AS preceding, " +
+            "  collect(DISTINCT fol.dbId) AS following, " +
+            "  collect(DISTINCT {type: reg.schemaClass, dbId: r.dbId}) AS regs " +
+            "RETURN " +
+            "  dbId, " +
+            "  stId, " +
+            "  displayName, " +
+            "  schemaClass, " +
+            "  inputs, " +
+            "  outputs, " +
+            "  catalysts, " +
+            "  efs, " +
+            "  CASE WHEN size(regs) = 0 THEN [] ELSE regs END AS regulations, " +
+            "  preceding, " +
+            "  following ";
+
     private final AdvancedDatabaseObjectService ads;
 
     @Autowired
@@ -35,38 +98,63 @@ public class ReactionGraphFactory {
     }
 
     public Graph getGraph(Event rle, Layout layout) {
+        return getGraph(rle, CompactLayout.of(layout));
+    }
+
+    public Graph getGraph(Event rle, CompactLayout layout) {
         return new GraphImpl(
                 rle.getDbId(),
                 rle.getStId(),
                 rle.getDisplayName(),
-                rle.getSpeciesName(),
-                getGraphNodes(rle, layout.getEntities()),
-                getGraphEdges(rle, layout.getReaction()),
+                StringInterner.intern(rle.getSpeciesName()),
+                getGraphNodes(getEntityNodes(rle), layout.getEntities()),
+                getGraphEdges(getEventNode(rle), layout.getReaction()),
                 new ArrayList<>() //A RLE does not have subpathways
         );
     }
 
-    private List<EntityNode> getGraphNodes(Event rle, Collection<EntityGlyph> entityGlyphs) {
-        //language=cypher
-        String query = "" +
-                "MATCH (rle:ReactionLikeEvent{dbId:$dbId})-[:input|output|catalystActivity|physicalEntity|entityFunctionalStatus|diseaseEntity|regulatedBy|regulator|hasComponent|hasMember|hasCandidate|repeatedUnit|proteinMarker|RNAMarker*]->(pe:PhysicalEntity) " +
-                "WITH COLLECT(DISTINCT pe) AS pes " +
-                "UNWIND pes AS pe " +
-                "OPTIONAL MATCH (pe)-[:hasComponent|hasMember|hasCandidate|repeatedUnit|proteinMarker|RNAMarker]->(children:PhysicalEntity) " +
-                "OPTIONAL MATCH (parent:PhysicalEntity)-[:hasComponent|hasMember|hasCandidate|repeatedUnit|proteinMarker|RNAMarker]->(pe) " +
-                "WHERE parent IN pes " +
-                "OPTIONAL MATCH (pe)-[:referenceEntity]->(re:ReferenceEntity) " +
-                "OPTIONAL MATCH (pe)-[:species]->(s:Species) " +
-                "RETURN DISTINCT pe.dbId AS dbId, pe.stId AS stId, pe.displayName AS displayName, pe.schemaClass AS schemaClass, " +
-                "       s.dbId AS speciesID, " +
-                "       COLLECT(DISTINCT children.dbId) AS children, " +
-                "       COLLECT(DISTINCT parent.dbId) AS parents, " +
-                "       CASE WHEN re.variantIdentifier IS NULL THEN re.identifier ELSE re.variantIdentifier END AS identifier, " +
-                "       re.geneName AS geneNames";
+    /**
+     * Same as {@link #getGraph(Event, Layout)} but taking the nodes from a snapshot, so no database access is performed.
+     */
+    public static Graph getGraph(ReactionSnapshot snapshot, Layout layout) {
+        return getGraph(snapshot, CompactLayout.of(layout));
+    }
+
+    /**
+     * Same as {@link #getGraph(ReactionSnapshot, Layout)}, from the compact copy of the layout.
+     */
+    public static Graph getGraph(ReactionSnapshot snapshot, CompactLayout layout) {
+        return new GraphImpl(
+                snapshot.getDbId(),
+                snapshot.getStId(),
+                snapshot.getDisplayName(),
+                StringInterner.intern(snapshot.getSpeciesName()),
+                getGraphNodes(snapshot.getEntityNodes(), layout.getEntities()),
+                getGraphEdges(snapshot.getEventNode(), layout.getReaction()),
+                new ArrayList<>() //A RLE does not have subpathways
+        );
+    }
+
+    private static List<EntityNode> getGraphNodes(Collection<EntityNodeImpl> nodes, Collection<CompactEntity> entityGlyphs) {
+        if (nodes == null) return null;
+        Map<Long, List<Long>> map = getMap(entityGlyphs);
+        nodes.forEach(node -> node.setDiagramIds(map.get(node.getDbId())));
+        return new ArrayList<>(nodes);
+    }
+
+    private static List<EventNode> getGraphEdges(EventNodeImpl rxn, CompactReaction rxnGlyph) {
+        if (rxn == null) return null;
+        List<Long> diagramIds = Collections.singletonList(rxnGlyph.getDbId());
+        rxn.setDiagramIds(diagramIds);
+        return Collections.singletonList(rxn);
+    }
+
+    /**
+     * @return the graph nodes of the physical entities participating in rle, without diagram ids
+     */
+    public List<EntityNodeImpl> getEntityNodes(Event rle) {
         try {
-            Collection<EntityNodeImpl> rtn = ads.getCustomQueryResults(EntityNodeImpl.class, query, Map.of("dbId", rle.getDbId()));
-            Map<Long, List<Long>> map = getMap(entityGlyphs);
-            rtn.forEach(node -> node.setDiagramIds(map.get(node.getDbId())));
+            Collection<EntityNodeImpl> rtn = ads.getCustomQueryResults(EntityNodeImpl.class, ENTITY_NODES_QUERY, Map.of("dbId", rle.getDbId()));
             return new ArrayList<>(rtn);
         } catch (CustomQueryException e) {
             e.printStackTrace();
@@ -74,48 +162,12 @@ public class ReactionGraphFactory {
         return null;
     }
 
-    private List<EventNode> getGraphEdges(Event rle, ReactionGlyph rxnGlyph) {
-        //language=cypher
-        String query = "" +
-                "MATCH (rle:ReactionLikeEvent {dbId:$dbId}) " +
-                "OPTIONAL MATCH (rle)-[:input]->(i:PhysicalEntity) " +
-                "OPTIONAL MATCH (rle)-[:output]->(o:PhysicalEntity) " +
-                "OPTIONAL MATCH (rle)-[:catalystActivity|physicalEntity*]->(c:PhysicalEntity) " +
-                "OPTIONAL MATCH (rle)-[:entityFunctionalStatus|diseaseEntity*]->(e:PhysicalEntity) " +
-                "OPTIONAL MATCH (rle)-[:regulatedBy]->(reg:Regulation)-[:regulator]->(r:PhysicalEntity) " +
-                "OPTIONAL MATCH prep=(p)-[:hasEvent*]->(pre:ReactionLikeEvent)<-[:precedingEvent]-(rle) " +
-                "  WHERE single(x IN nodes(prep) WHERE (x:Pathway AND coalesce(x.hasDiagram,false))) " +
-                "OPTIONAL MATCH folp=(p)-[:hasEvent*]->(fol:ReactionLikeEvent)-[:precedingEvent]->(rle) " +
-                "  WHERE single(x IN nodes(folp) WHERE (x:Pathway AND coalesce(x.hasDiagram,false))) " +
-                "WITH " +
-                "  rle.dbId AS dbId, " +
-                "  rle.stId AS stId, " +
-                "  rle.displayName AS displayName, " +
-                "  rle.schemaClass AS schemaClass, " +
-                "  collect(DISTINCT i.dbId) AS inputs, " +
-                "  collect(DISTINCT o.dbId) AS outputs, " +
-                "  collect(DISTINCT c.dbId) AS catalysts, " +
-                "  collect(DISTINCT e.dbId) AS efs, " +
-                "  collect(DISTINCT pre.dbId) AS preceding, " +
-                "  collect(DISTINCT fol.dbId) AS following, " +
-                "  collect(DISTINCT {type: reg.schemaClass, dbId: r.dbId}) AS regs " +
-                "RETURN " +
-                "  dbId, " +
-                "  stId, " +
-                "  displayName, " +
-                "  schemaClass, " +
-                "  inputs, " +
-                "  outputs, " +
-                "  catalysts, " +
-                "  efs, " +
-                "  CASE WHEN size(regs) = 0 THEN [] ELSE regs END AS regulations, " +
-                "  preceding, " +
-                "  following ";
+    /**
+     * @return the graph node of rle, without diagram ids
+     */
+    public EventNodeImpl getEventNode(Event rle) {
         try {
-            EventNodeImpl rxn = ads.getCustomQueryResult(EventNodeImpl.class, query, Map.of("dbId", rle.getDbId()));
-            List<Long> diagramIds = Collections.singletonList(rxnGlyph.getDbId());
-            rxn.setDiagramIds(diagramIds);
-            return Collections.singletonList(rxn);
+            return ads.getCustomQueryResult(EventNodeImpl.class, EVENT_NODE_QUERY, Map.of("dbId", rle.getDbId()));
         } catch (CustomQueryException e) {
             e.printStackTrace();
         }
@@ -126,9 +178,9 @@ public class ReactionGraphFactory {
      * @param entityGlyphs a list of entity glyphs present in the layout
      * @return a map from the entity glyph dbId (reactomeId) to the glyph(s) identifier(s) representing it in the layout
      */
-    private Map<Long, List<Long>> getMap(Collection<EntityGlyph> entityGlyphs){
+    private static Map<Long, List<Long>> getMap(Collection<CompactEntity> entityGlyphs){
         Map<Long, List<Long>> map = new HashMap<>();
-        for (EntityGlyph entity : entityGlyphs) {
+        for (CompactEntity entity : entityGlyphs) {
             map.computeIfAbsent(entity.getDbId(), k -> new ArrayList<>()).add(entity.getId());
         }
         return map;
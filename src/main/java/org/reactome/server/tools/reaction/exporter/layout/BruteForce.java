@@ -1,20 +1,18 @@
 package org.reactome.server.tools.reaction.exporter.layout;
 
-import com.google.common.collect.Collections2;
 import org.reactome.server.tools.diagram.data.layout.Connector;
-import org.reactome.server.tools.diagram.data.layout.Coordinate;
 import org.reactome.server.tools.diagram.data.layout.Segment;
-import org.reactome.server.tools.diagram.data.layout.impl.CoordinateImpl;
 import org.reactome.server.tools.reaction.exporter.layout.algorithm.box.*;
 import org.reactome.server.tools.reaction.exporter.layout.algorithm.common.*;
 import org.reactome.server.tools.reaction.exporter.layout.common.Bounds;
 import org.reactome.server.tools.reaction.exporter.layout.common.EntityRole;
 import org.reactome.server.tools.reaction.exporter.layout.common.GlyphUtils;
 import org.reactome.server.tools.reaction.exporter.layout.model.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 import static org.reactome.server.tools.reaction.exporter.layout.algorithm.box.Place.BOTTOM;
 import static org.reactome.server.tools.reaction.exporter.layout.algorithm.box.Place.TOP;
@@ -26,14 +24,15 @@ import static org.reactome.server.tools.reaction.exporter.layout.common.GlyphUti
 
 /**
  * NOTE: Lab class. Given a Grid, plus all of the elements of a reaction. Tries all of the possible combinations of
- * elements in the grid, testing every time all of the elements have a new position in the grid. Return the first
- * combination that passes the validation.
+ * elements in the grid, and returns the first combination that passes the validation.
  * <p>
- * This algorithm has a very high cost, but, if there is one valid combination, it will find it.
+ * This algorithm has a very high cost, but, if there is one valid combination, it will find it. Combinations are
+ * explored by {@link GridSearch}, that places elements one by one, prunes branches as soon as they break a rule and
+ * explores the remaining branches in parallel.
  * </p>
  * <p>
- * <b>To do: </b>The algorithm can benefit of the restrictions of the problem, since most of the branches can be pruned before
- * placing all of the elements.
+ * With a time limit, the search returns the best combination found in time. When there is no valid combination, the
+ * closest one is used, so this algorithm always produces a layout.
  * </p>
  *
  * @author Pascual Lorente (plorente@ebi.ac.uk)
@@ -41,11 +40,32 @@ import static org.reactome.server.tools.reaction.exporter.layout.common.GlyphUti
 @SuppressWarnings("Duplicates")
 public class BruteForce {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger("reaction-converter");
+
     private final Layout layout;
     private final LayoutIndex index;
+    private final Duration timeLimit;
+    private volatile boolean cancelled;
 
+    /**
+     * Exact mode: the first valid combination is used. There is no time limit, so only reactions with few elements are
+     * searched, see {@link GridSearch#MAX_EXACT_DIVS}. Bigger ones are approximated.
+     */
     public BruteForce(Layout layout) {
+        this(layout, null);
+    }
+
+    /**
+     * Anytime mode: combinations are scored (broken rules, compartment area and crossings) and the best valid one
+     * found within <em>timeLimit</em> is used. The search gets half of the time and the approximation, when no valid
+     * combination is found, a quarter. The last quarter is the margin to place the grid. Reactions too big for the
+     * search are always approximated.
+     *
+     * @param timeLimit maximum time to search for (or approximate) a combination, null for exact mode
+     */
+    public BruteForce(Layout layout, Duration timeLimit) {
         this.layout = layout;
+        this.timeLimit = timeLimit;
         DuplicateManager.addDuplicates(layout);
         index = new LayoutIndex(layout);
         fixReactionWithNoCompartment(layout);
@@ -62,9 +82,45 @@ public class BruteForce {
     }
 
     public void compute() {
+        final GridSearch search = new GridSearch(getDivs(), layout.getCompartmentRoot(), this::testGrid, () -> cancelled);
+        final long start = System.nanoTime();
+        Grid<Div> grid = null;
+        final boolean searched = timeLimit == null ? search.canSearchExactly() : search.canSearch();
+        if (searched) {
+            grid = timeLimit == null
+                    ? search.run()
+                    : search.run(start + timeLimit.toNanos() / 2);
+        }
+        if (cancelled) return;
+        if (grid == null) {
+            if (!searched)
+                LOGGER.debug("Too many elements to search a combination for " + layout.getReaction().getStId() + ", approximating");
+            else if (search.isExhausted())
+                LOGGER.warn("No valid combination found for " + layout.getReaction().getStId() + ", some rules are broken");
+            else LOGGER.debug("No valid combination found in time for " + layout.getReaction().getStId() + ", approximating");
+            grid = timeLimit == null
+                    ? search.approximate()
+                    : search.approximate(start + timeLimit.toNanos() / 4 * 3);
+        }
+        if (grid != null && !cancelled) placeGrid(grid);
+    }
+
+    /**
+     * Stops {@link #compute()}, that can be running in another thread. The search, the approximation and the compaction
+     * of the grid stop as soon as they notice, so the layout is left incomplete.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * One div with the reaction, and one div per compartment and place with the entities in that place. Package
+     * private so it can be tested.
+     */
+    List<Div> getDivs() {
         final List<Div> divList = new ArrayList<>();
         for (final CompartmentGlyph compartment : layout.getCompartments()) {
-            final Map<Place, Set<EntityGlyph>> glyphMap = new HashMap<>();
+            final Map<Place, Set<EntityGlyph>> glyphMap = new EnumMap<>(Place.class);
             for (final Glyph glyph : compartment.getContainedGlyphs()) {
                 if (glyph instanceof ReactionGlyph) {
                     final HorizontalLayout reactionDiv = new HorizontalLayout(Arrays.asList(glyph));
@@ -75,7 +131,7 @@ public class BruteForce {
                     final EntityGlyph entity = (EntityGlyph) glyph;
                     for (final Role role : entity.getRoles()) {
                         final Place place = PlacePositioner.getPlace(role.getType());
-                        glyphMap.computeIfAbsent(place, p -> new HashSet<>()).add(entity);
+                        glyphMap.computeIfAbsent(place, p -> new LinkedHashSet<>()).add(entity);
                     }
                 }
             }
@@ -92,27 +148,15 @@ public class BruteForce {
                 }
             });
         }
-        final int size = divList.size();
-        final List<Integer> integers = IntStream.range(0, size).boxed().collect(Collectors.toList());
-        // combinations, no repetition, with order of size elements, twice (vertical and horizontal)
-        final List<List<Integer>> permutations = new ArrayList<>(Collections2.permutations(integers));
-        for (int i = 0; i < permutations.size(); i++) {
-            for (int j = 0; j < permutations.size(); j++) {
-                final Grid<Div> grid = new Grid<>(Div.class, size, size);
-                for (int k = 0; k < divList.size(); k++) {
-                    final Div div = divList.get(k);
-                    grid.set(permutations.get(i).get(k), permutations.get(j).get(k), div);
-                }
-                if (testGrid(grid)) {
-                    placeGrid(grid);
-                    return;
-                }
-            }
-        }
-        System.out.println("Couldn't create diagram for");
+        return divList;
     }
 
-    private boolean testGrid(Grid<Div> grid) {
+    /**
+     * Package private so it can be tested.
+     *
+     * @return true if every div is in its compartment and the roles are in the right side of the reaction
+     */
+    boolean testGrid(Grid<Div> grid) {
         final Grid<CompartmentGlyph> compartmentGrid = new Grid<>(CompartmentGlyph.class, grid.getRows(), grid.getColumns());
         try {
             computeCompartment(layout.getCompartmentRoot(), grid, compartmentGrid);
@@ -131,23 +175,21 @@ public class BruteForce {
                 // test everything is in its compartment
                 final CompartmentGlyph compartment = compartmentGrid.get(r, c);
                 if (div.getCompartment() != compartment) return false;
-                for (final Place place : div.getBusyPlaces()) {
-                    if (place == Place.LEFT) maxLeftCol = Integer.max(maxLeftCol, c + 1);
-                    if (place == Place.RIGHT) minRightCol = Integer.min(minRightCol, c - 1);
-                    if (place == TOP) maxTopRow = Integer.max(maxTopRow, r + 1);
-                    if (place == BOTTOM) minBottomRow = Integer.min(minBottomRow, r - 1);
-                }
+                final int places = div.getOccupancy();
+                if (Occupancy.contains(places, Place.LEFT)) maxLeftCol = Integer.max(maxLeftCol, c + 1);
+                if (Occupancy.contains(places, Place.RIGHT)) minRightCol = Integer.min(minRightCol, c - 1);
+                if (Occupancy.contains(places, TOP)) maxTopRow = Integer.max(maxTopRow, r + 1);
+                if (Occupancy.contains(places, BOTTOM)) minBottomRow = Integer.min(minBottomRow, r - 1);
             }
         for (int r = 0; r < grid.getRows(); r++) {
             for (int c = 0; c < grid.getColumns(); c++) {
                 final Div div = grid.get(r, c);
                 if (div == null) continue;
-                for (final Place place : div.getBusyPlaces()) {
-                    if (place == Place.LEFT && (c > minRightCol || c >= point.getCol())) return false;
-                    if (place == Place.RIGHT && (c < maxLeftCol || c <= point.getCol())) return false;
-                    if (place == TOP && (r > minBottomRow || r >= point.getRow())) return false;
-                    if (place == BOTTOM && (r < maxTopRow || r <= point.getRow())) return false;
-                }
+                final int places = div.getOccupancy();
+                if (Occupancy.contains(places, Place.LEFT) && (c > minRightCol || c >= point.getCol())) return false;
+                if (Occupancy.contains(places, Place.RIGHT) && (c < maxLeftCol || c <= point.getCol())) return false;
+                if (Occupancy.contains(places, TOP) && (r > minBottomRow || r >= point.getRow())) return false;
+                if (Occupancy.contains(places, BOTTOM) && (r < maxTopRow || r <= point.getRow())) return false;
             }
         }
         return true;
@@ -163,6 +205,8 @@ public class BruteForce {
         compactRight(grid, reactionPosition);
         compactTop(grid, reactionPosition);
         compactBottom(grid, reactionPosition);
+        // compaction is the slow part on big grids
+        if (cancelled) return;
 
         removeEmptyRows(grid);
         removeEmptyCols(grid);
@@ -184,28 +228,28 @@ public class BruteForce {
         // Add extra spacing for catalysts and regulators
         reactionPosition = getReactionPosition(grid);
         for (int r = reactionPosition.getRow() - 1; r >= 0; r--) {
-            if (containsRole(grid.getRow(r), Collections.singletonList(CATALYST))) {
+            if (containsRole(grid.getRow(r), Occupancy.of(CATALYST))) {
                 heights[r] += Constants.VERTICAL_PADDING;
                 verticalPadding[r] -= Constants.VERTICAL_PADDING;
                 break;
             }
         }
         for (int r = reactionPosition.getRow() + 1; r < grid.getRows(); r++) {
-            if (containsRole(grid.getRow(r), Arrays.asList(NEGATIVE_REGULATOR, POSITIVE_REGULATOR))) {
+            if (containsRole(grid.getRow(r), Occupancy.of(NEGATIVE_REGULATOR) | Occupancy.of(POSITIVE_REGULATOR))) {
                 heights[r] += Constants.VERTICAL_PADDING;
                 verticalPadding[r] += Constants.VERTICAL_PADDING;
                 break;
             }
         }
         for (int c = reactionPosition.getCol() - 1; c >= 0; c--) {
-            if (containsRole(grid.getColumn(c), Collections.singletonList(INPUT))) {
+            if (containsRole(grid.getColumn(c), Occupancy.of(INPUT))) {
                 widths[c] += Constants.HORIZONTAL_PADDING;
                 horizontalPadding[c] -= Constants.HORIZONTAL_PADDING;
                 break;
             }
         }
         for (int c = reactionPosition.getCol() + 1; c < grid.getColumns(); c++) {
-            if (containsRole(grid.getColumn(c), Collections.singletonList(OUTPUT))) {
+            if (containsRole(grid.getColumn(c), Occupancy.of(OUTPUT))) {
                 widths[c] += Constants.HORIZONTAL_PADDING;
                 horizontalPadding[c] += Constants.HORIZONTAL_PADDING;
                 break;
@@ -248,13 +292,13 @@ public class BruteForce {
                 for (int r = 0; r < grid.getRows(); r++) {
                     final Div div = grid.get(r, c);
                     if (div == null) continue;
-                    final Collection<EntityRole> roles = PlacePositioner.simplify(div.getContainedRoles());
+                    final int roles = Occupancy.simplify(div.getOccupancy());
                     // Don't allow inputs to reach reaction column
-                    if (roles.contains(INPUT) && c + 1 == reactionPosition.getCol()) continue;
+                    if (Occupancy.contains(roles, INPUT) && c + 1 == reactionPosition.getCol()) continue;
                     // Don't allow catalysts or regulators to overlap
-                    if (roles.contains(CATALYST) && containsRole(grid.getColumn(c + 1), Collections.singletonList(CATALYST)))
+                    if (Occupancy.contains(roles, CATALYST) && containsRole(grid.getColumn(c + 1), Occupancy.of(CATALYST)))
                         continue;
-                    if (roles.contains(NEGATIVE_REGULATOR) && containsRole(grid.getColumn(c + 1), Collections.singletonList(NEGATIVE_REGULATOR)))
+                    if (Occupancy.contains(roles, NEGATIVE_REGULATOR) && containsRole(grid.getColumn(c + 1), Occupancy.of(NEGATIVE_REGULATOR)))
                         continue;
                     if (canMove(grid, new Point(r, c), new Point(r, c + 1))) {
                         grid.set(r, c + 1, div);
@@ -263,7 +307,7 @@ public class BruteForce {
                     }
                 }
             }
-        } while (hasMoved);
+        } while (hasMoved && !cancelled);
     }
 
     private void compactRight(Grid<Div> grid, Point reactionPosition) {
@@ -275,13 +319,13 @@ public class BruteForce {
                 for (int r = 0; r < grid.getRows(); r++) {
                     final Div div = grid.get(r, c);
                     if (div == null) continue;
-                    final Collection<EntityRole> roles = PlacePositioner.simplify(div.getContainedRoles());
+                    final int roles = Occupancy.simplify(div.getOccupancy());
                     // Don't allow outputs to reach reaction column
-                    if (roles.contains(OUTPUT) && c - 1 == reactionPosition.getCol()) continue;
+                    if (Occupancy.contains(roles, OUTPUT) && c - 1 == reactionPosition.getCol()) continue;
                     // Don't allow catalysts or regulators to overlap
-                    if (roles.contains(CATALYST) && containsRole(grid.getColumn(c - 1), Collections.singletonList(CATALYST)))
+                    if (Occupancy.contains(roles, CATALYST) && containsRole(grid.getColumn(c - 1), Occupancy.of(CATALYST)))
                         continue;
-                    if (roles.contains(NEGATIVE_REGULATOR) && containsRole(grid.getColumn(c - 1), Collections.singletonList(NEGATIVE_REGULATOR)))
+                    if (Occupancy.contains(roles, NEGATIVE_REGULATOR) && containsRole(grid.getColumn(c - 1), Occupancy.of(NEGATIVE_REGULATOR)))
                         continue;
                     if (canMove(grid, new Point(r, c), new Point(r, c - 1))) {
                         grid.set(r, c - 1, div);
@@ -291,7 +335,7 @@ public class BruteForce {
                 }
                 c--;
             }
-        } while (hasMoved);
+        } while (hasMoved && !cancelled);
 
     }
 
@@ -303,12 +347,12 @@ public class BruteForce {
                 for (int c = 0; c < grid.getColumns(); c++) {
                     final Div div = grid.get(r, c);
                     if (div == null) continue;
-                    Collection<EntityRole> roles = div.getContainedRoles();
+                    int roles = div.getOccupancy();
                     // Don't allow inputs to reach reaction column
-                    if (roles.contains(CATALYST) && r + 1 == reactionPosition.getRow()) continue;
+                    if (Occupancy.contains(roles, CATALYST) && r + 1 == reactionPosition.getRow()) continue;
                     // Don't allow inputs or outputs to occupy the same row
-                    roles = PlacePositioner.simplify(roles);
-                    if ((roles.contains(INPUT) || roles.contains(OUTPUT)) && containsRole(grid.getRow(r + 1), roles))
+                    roles = Occupancy.simplify(roles) & Occupancy.ROLES_MASK;
+                    if ((Occupancy.contains(roles, INPUT) || Occupancy.contains(roles, OUTPUT)) && containsRole(grid.getRow(r + 1), roles))
                         continue;
                     if (canMove(grid, new Point(r, c), new Point(r + 1, c))) {
                         grid.set(r + 1, c, div);
@@ -318,7 +362,7 @@ public class BruteForce {
 
                 }
             }
-        } while (hasMoved);
+        } while (hasMoved && !cancelled);
     }
 
     private void compactBottom(Grid<Div> grid, Point reactionPosition) {
@@ -329,11 +373,11 @@ public class BruteForce {
                 for (int c = 0; c < grid.getColumns(); c++) {
                     final Div div = grid.get(r, c);
                     if (div == null) continue;
-                    final Collection<EntityRole> roles = PlacePositioner.simplify(div.getContainedRoles());
+                    final int roles = Occupancy.simplify(div.getOccupancy()) & Occupancy.ROLES_MASK;
                     // Don't allow regulators to reach reaction row
-                    if (roles.contains(NEGATIVE_REGULATOR) && r - 1 == reactionPosition.getRow()) continue;
+                    if (Occupancy.contains(roles, NEGATIVE_REGULATOR) && r - 1 == reactionPosition.getRow()) continue;
                     // Don't allow inputs or outputs to occupy the same row
-                    if ((roles.contains(INPUT) || roles.contains(OUTPUT)) && containsRole(grid.getRow(r - 1), roles))
+                    if ((Occupancy.contains(roles, INPUT) || Occupancy.contains(roles, OUTPUT)) && containsRole(grid.getRow(r - 1), roles))
                         continue;
                     if (canMove(grid, new Point(r, c), new Point(r - 1, c))) {
                         grid.set(r - 1, c, div);
@@ -343,7 +387,7 @@ public class BruteForce {
 
                 }
             }
-        } while (hasMoved);
+        } while (hasMoved && !cancelled);
     }
 
     private boolean canMove(Grid<Div> grid, Point source, Point target) {
@@ -370,16 +414,8 @@ public class BruteForce {
         return true;
     }
 
-    private boolean containsRole(Div[] divs, Collection<EntityRole> roles) {
-        for (final Div div : divs) {
-            if (div != null) {
-                final Collection<EntityRole> containedRoles = PlacePositioner.simplify(div.getContainedRoles());
-                for (final EntityRole role : roles) {
-                    if (containedRoles.contains(role)) return true;
-                }
-            }
-        }
-        return false;
+    private boolean containsRole(Grid.Line<Div> divs, int roles) {
+        return (Occupancy.simplify(divs.getOccupancy()) & roles) != 0;
     }
 
     /**
@@ -565,7 +601,7 @@ public class BruteForce {
     private void removeEmptyRows(Grid<Div> divs) {
         int r = 0;
         while (r < divs.getRows()) {
-            if (Arrays.stream(divs.getRow(r)).allMatch(Objects::isNull)) {
+            if (divs.getRow(r).isEmpty()) {
                 divs.removeRows(r, 1);
             } else r++;
         }
@@ -574,7 +610,7 @@ public class BruteForce {
     private void removeEmptyCols(Grid<Div> divs) {
         int c = 0;
         while (c < divs.getColumns()) {
-            if (Arrays.stream(divs.getColumn(c)).allMatch(Objects::isNull)) {
+            if (divs.getColumn(c).isEmpty()) {
                 divs.removeColumns(c, 1);
             } else c++;
         }
@@ -584,27 +620,28 @@ public class BruteForce {
         // this is something that happens in the reaction column
         // When the compartment of the reaction has children with regulators, more than one regulator appear in this
         // column (R-HSA-425661)
-        Div[] column = grid.getColumn(reactionPosition.getCol());
+        final Grid.Line<Div> column = grid.getColumn(reactionPosition.getCol());
         int regulators = countRegulators(reactionPosition, column);
         while (regulators > 1) {
             grid.insertColumns(reactionPosition.getCol() + 1, 1);
             // move the closest to the bottom
             for (int r = grid.getRows() - 1; r > reactionPosition.getRow(); r--) {
-                if (column[r] != null && PlacePositioner.simplify(column[r].getContainedRoles()).contains(NEGATIVE_REGULATOR)) {
-                    grid.set(r, reactionPosition.getCol() + 1, column[r]);
+                final Div div = column.get(r);
+                if (div != null && Occupancy.contains(Occupancy.simplify(div.getOccupancy()), NEGATIVE_REGULATOR)) {
+                    grid.set(r, reactionPosition.getCol() + 1, div);
                     grid.set(r, reactionPosition.getCol(), null);
                     break;
                 }
             }
-            column = grid.getColumn(reactionPosition.getCol());
             regulators = countRegulators(reactionPosition, column);
         }
     }
 
-    private int countRegulators(Point reactionPosition, Div[] column) {
+    private int countRegulators(Point reactionPosition, Grid.Line<Div> column) {
         int regulators = 0;
-        for (int r = reactionPosition.getRow() + 1; r < column.length; r++) {
-            if (column[r] != null && PlacePositioner.simplify(column[r].getContainedRoles()).contains(NEGATIVE_REGULATOR))
+        for (int r = reactionPosition.getRow() + 1; r < column.size(); r++) {
+            final Div div = column.get(r);
+            if (div != null && Occupancy.contains(Occupancy.simplify(div.getOccupancy()), NEGATIVE_REGULATOR))
                 regulators++;
         }
         return regulators;
@@ -668,8 +705,7 @@ public class BruteForce {
         final double y = roles.contains(CATALYST)
                 ? b.getY() + 0.5 * textHeight
                 : b.getMaxY() + 0.5 * textHeight - Constants.COMPARTMENT_PADDING;
-        final Coordinate coordinate = new CoordinateImpl(x, y);
-        compartment.setLabelPosition(coordinate);
+        compartment.setLabelPosition(x, y);
         compartment.setBounds(b);
     }
 
@@ -715,9 +751,8 @@ public class BruteForce {
     private void moveToOrigin() {
         final double dx = -layout.getBounds().getX();
         final double dy = -layout.getBounds().getY();
-        final Coordinate delta = new CoordinateImpl(dx, dy);
         layout.getBounds().move(dx, dy);
-        move(layout.getCompartmentRoot(), delta, true);
+        move(layout.getCompartmentRoot(), dx, dy, true);
     }
 
 }
@@ -39,11 +39,49 @@ public class DiagramTest {
 
     public void runTests(String name) {
         this.name = name;
-        notInCompartment();
-        crossingSegments();
+        notInCompartment(true);
+        crossingSegments(true);
         manyChildren();
     }
 
+    /**
+     * Logs, as errors, every pair of overlapping elements. It is not part of {@link #runTests(String)}, so the errors
+     * of those tests can still be compared with previous runs.
+     */
+    public void runOverlapTest(String name) {
+        this.name = name;
+        overlappingElements(true);
+    }
+
+    /**
+     * Runs the tests, and the overlap test, without logging. It can be called any number of times, before or after
+     * {@link #runTests(String)}.
+     *
+     * @return the number of errors: overlapping elements, elements outside their compartment, segment intersections
+     * and elements crossed by segments. The lower the better.
+     */
+    public int score() {
+        return overlappingElements(false) + notInCompartment(false) + crossingSegments(false);
+    }
+
+    private int overlappingElements(boolean report) {
+        final List<DiagramObject> objects = new ArrayList<>(diagram.getNodes());
+        objects.addAll(diagram.getEdges());
+        int errors = 0;
+        for (int i = 0; i < objects.size(); i++) {
+            final Rectangle2D.Double a = getBounds(objects.get(i));
+            for (int j = i + 1; j < objects.size(); j++) {
+                if (a.intersects(getBounds(objects.get(j)))) {
+                    errors++;
+                    if (report) log(Level.ERROR, String.format("[%s %d %s] overlaps with [%s %d %s]",
+                            objects.get(i).getRenderableClass(), objects.get(i).getId(), objects.get(i).getDisplayName(),
+                            objects.get(j).getRenderableClass(), objects.get(j).getId(), objects.get(j).getDisplayName()));
+                }
+            }
+        }
+        return errors;
+    }
+
     private void manyChildren() {
         for (final Compartment compartment : diagram.getCompartments()) {
             final long count = compartment.getComponentIds().stream().filter(compartmentIndex::containsKey).count();
@@ -51,22 +89,28 @@ public class DiagramTest {
         }
     }
 
-    private void notInCompartment() {
+    private int notInCompartment(boolean report) {
+        int errors = 0;
         for (final Compartment compartment : diagram.getCompartments()) {
             final Rectangle2D.Double box = toRectangle(compartment.getProp());
             for (final Node node : diagram.getNodes()) {
-                testBounds(compartment, box, node);
+                if (!testBounds(compartment, box, node, report)) errors++;
             }
             for (final Edge edge : diagram.getEdges()) {
-                testBounds(compartment, box, edge);
+                if (!testBounds(compartment, box, edge, report)) errors++;
             }
         }
+        return errors;
     }
 
-    private void testBounds(Compartment compartment, Rectangle2D compartmentBox, DiagramObject object) {
+    /**
+     * @return true if object is inside compartment, or outside, as it should be
+     */
+    private boolean testBounds(Compartment compartment, Rectangle2D compartmentBox, DiagramObject object, boolean report) {
         final boolean expected = isInside(compartment, object);
         final Rectangle2D.Double bounds = getBounds(object);
         final boolean intersects = compartmentBox.intersects(bounds);
+        if (!report) return intersects == expected;
         if (intersects == expected) {
             log(Level.PASSED, String.format("[%s %d %s] intersects with [compartment %d %s]",
                     object.getRenderableClass(), object.getId(), object.getDisplayName(),
@@ -80,6 +124,7 @@ public class DiagramTest {
                     object.getRenderableClass(), object.getId(), object.getDisplayName(), compartment.getId(),
                     compartment.getDisplayName()));
         }
+        return intersects == expected;
     }
 
     private void testSegments(Compartment compartment, Rectangle2D.Double box, Edge edge) {
@@ -125,7 +170,10 @@ public class DiagramTest {
         return new Rectangle2D.Double(object.getMinX(), object.getMinY(), width, height);
     }
 
-    private void crossingSegments() {
+    /**
+     * @return the number of segment intersections plus the number of nodes crossed by a segment
+     */
+    private int crossingSegments(boolean report) {
         final List<Line2D> lines = diagram.getNodes().stream()
                 .flatMap(node -> node.getConnectors().stream())
                 .flatMap(connector -> connector.getSegments().stream())
@@ -140,18 +188,21 @@ public class DiagramTest {
                     intersections++;
             }
         }
-        if (intersections > 0) {
+        if (report && intersections > 0) {
             log(Level.ERROR, String.format("contains %d segment intersections", intersections));
         }
+        int crossed = 0;
         for (final Node node : diagram.getNodes()) {
             final Rectangle2D.Double box = getBounds(node);
             for (final Line2D line : lines) {
                 if (CoordinateUtils.intersects(line, box)) {
-                    log(Level.ERROR, String.format("[%s %d %s] intersects with a segment",
+                    crossed++;
+                    if (report) log(Level.ERROR, String.format("[%s %d %s] intersects with a segment",
                             node.getRenderableClass(), node.getId(), node.getDisplayName()));
                 }
             }
         }
+        return intersections + crossed;
     }
 
     private Line2D.Double toLine(Segment segment) {
@@ -0,0 +1,692 @@
+package org.reactome.server.tools.reaction.exporter.layout;
+
+import org.reactome.server.tools.reaction.exporter.layout.algorithm.box.Div;
+import org.reactome.server.tools.reaction.exporter.layout.algorithm.box.Grid;
+import org.reactome.server.tools.reaction.exporter.layout.algorithm.box.Occupancy;
+import org.reactome.server.tools.reaction.exporter.layout.algorithm.box.Place;
+import org.reactome.server.tools.reaction.exporter.layout.model.CompartmentGlyph;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Exact search used by {@link BruteForce}. Every div gets its own row and its own column of a square grid, so a
+ * solution is a pair of permutations. Instead of generating every pair of permutations and testing the full grid, divs
+ * are placed one at a time and a branch is abandoned as soon as the partial grid breaks a rule:
+ * <ul>
+ *     <li>inputs left of the reaction and of every output, outputs right of the reaction and of every input</li>
+ *     <li>catalysts above the reaction and every regulator, regulators below the reaction and every catalyst</li>
+ *     <li>no div inside the rectangle of a compartment that is not its own compartment or an ancestor of it</li>
+ *     <li>rectangles of unrelated compartments do not overlap</li>
+ *     <li>there are enough free rows and columns left for the divs that still have to be placed</li>
+ * </ul>
+ * Compartment rectangles are estimated with the divs still to place, e.g. a compartment with inputs and outputs will
+ * cover, at least, the column of the reaction. The estimation only grows when divs are added, so a partial grid
+ * breaking a rule can never be fixed by placing more divs, and pruning never discards a valid grid.
+ * <p>
+ * The reaction is placed first. Each of its positions is searched as an independent subtree in a fork/join pool. The
+ * result is deterministic: the first valid grid in lexicographic order of (row, column) of each div. Subtrees after a
+ * successful one are cancelled, subtrees before it are always completed.
+ * <p>
+ * For latency bound callers, {@link #run(long)} keeps looking for cheaper grids until a deadline, and
+ * {@link #approximate(long)} builds a grid, maybe breaking rules, when there is no valid one. Rows and columns are kept
+ * in bit masks, so the search is limited to {@link Long#SIZE} divs. The approximation works with any number of divs.
+ * Without a deadline, {@link #run()} only accepts {@link #MAX_EXACT_DIVS} divs, as the tree grows too fast to be fully
+ * explored beyond that.
+ * <p>
+ * Both can be cancelled from another thread. Interrupting the calling thread does not stop the fork/join tasks, so
+ * every branch checks the cancellation flag, as it checks the deadline.
+ */
+class GridSearch {
+
+    private static final int LEFT = Occupancy.of(Place.LEFT);
+    private static final int RIGHT = Occupancy.of(Place.RIGHT);
+    private static final int TOP = Occupancy.of(Place.TOP);
+    private static final int BOTTOM = Occupancy.of(Place.BOTTOM);
+    private static final int CENTER = Occupancy.of(Place.CENTER);
+    /** order matters, see {@link State#compartmentsFit(int)} */
+    private static final int[] SIDES = {LEFT, RIGHT, TOP, BOTTOM};
+    /** a broken rule costs more than the crossings and area of any grid */
+    static final long VIOLATION_COST = 1L << 32;
+    static final long CROSSING_COST = 16;
+    /**
+     * Largest number of divs {@link #run()} accepts. When there is no valid grid the whole tree is explored, which takes
+     * a couple of seconds on a single core with 8 divs and more than 5 seconds with 9
+     */
+    static final int MAX_EXACT_DIVS = 8;
+
+    private final Div[] divs;
+    private final int n;
+    /** occupancy of each div */
+    private final int[] places;
+    /** compartment index of each div */
+    private final int[] compartment;
+    /** parent index of each compartment, -1 for the root */
+    private final int[] parent;
+    /** ancestorOrSelf[a][b] is true if a is b or an ancestor of b */
+    private final boolean[][] ancestorOrSelf;
+    private final int compartments;
+    private final Predicate<Grid<Div>> validator;
+    private final BooleanSupplier cancelled;
+    private volatile boolean timedOut;
+    private volatile boolean exhausted;
+
+    /**
+     * @param divs      divs to place. The one with the reaction is placed first
+     * @param root      root of the compartment tree
+     * @param validator final test for complete grids. Pruning makes every complete grid valid, so this is only a
+     *                  safety net, and it can be called from several threads at the same time
+     */
+    GridSearch(List<Div> divs, CompartmentGlyph root, Predicate<Grid<Div>> validator) {
+        this(divs, root, validator, () -> false);
+    }
+
+    /**
+     * @param cancelled checked by every branch of the search. Once it returns true, the search and the approximation
+     *                  return null as soon as possible
+     */
+    GridSearch(List<Div> divs, CompartmentGlyph root, Predicate<Grid<Div>> validator, BooleanSupplier cancelled) {
+        this.validator = validator;
+        this.cancelled = cancelled;
+        this.n = divs.size();
+        final List<Div> sorted = new ArrayList<>(divs);
+        sorted.sort(Comparator.comparing(div -> (div.getOccupancy() & CENTER) == 0));
+        this.divs = sorted.toArray(new Div[0]);
+
+        final List<CompartmentGlyph> list = new ArrayList<>();
+        final List<Integer> parents = new ArrayList<>();
+        final Map<CompartmentGlyph, Integer> index = new IdentityHashMap<>();
+        if (root != null) collect(root, -1, list, parents, index);
+        compartments = list.size();
+        parent = new int[compartments];
+        for (int i = 0; i < compartments; i++) parent[i] = parents.get(i);
+        ancestorOrSelf = new boolean[compartments][compartments];
+        for (int i = 0; i < compartments; i++)
+            for (int a = i; a >= 0; a = parent[a]) ancestorOrSelf[a][i] = true;
+
+        places = new int[n];
+        compartment = new int[n];
+        for (int k = 0; k < n; k++) {
+            places[k] = this.divs[k].getOccupancy();
+            final Integer c = index.get(this.divs[k].getCompartment());
+            compartment[k] = c == null ? -1 : c;
+        }
+    }
+
+    private static void collect(CompartmentGlyph compartment, int parent, List<CompartmentGlyph> list, List<Integer> parents, Map<CompartmentGlyph, Integer> index) {
+        final int i = list.size();
+        list.add(compartment);
+        parents.add(parent);
+        index.put(compartment, i);
+        for (final CompartmentGlyph child : compartment.getChildren()) collect(child, i, list, parents, index);
+    }
+
+    /**
+     * @return true if there are few enough divs, {@link Long#SIZE} at most, to run a search. Any number of divs can be
+     * approximated
+     */
+    boolean canSearch() {
+        return n <= Long.SIZE;
+    }
+
+    /**
+     * @return true if there are few enough divs, {@link #MAX_EXACT_DIVS} at most, to run a search with no deadline
+     */
+    boolean canSearchExactly() {
+        return n <= MAX_EXACT_DIVS;
+    }
+
+    /**
+     * @return the first valid grid, or null if there is none or the search was cancelled
+     * @throws IllegalArgumentException if there are more than {@link #MAX_EXACT_DIVS} divs, see
+     *                                  {@link #canSearchExactly()}
+     */
+    Grid<Div> run() {
+        if (n > MAX_EXACT_DIVS) throw new IllegalArgumentException("Too many divs for an exact search: " + n);
+        return search(false, 0);
+    }
+
+    /**
+     * Anytime search. Instead of stopping at the first valid grid, keeps looking for valid grids with a lower
+     * {@link #cost(int[], int[], int)} until the whole tree is explored or the deadline is reached. Partial grids
+     * whose compartments already cover more area than the best grid found are abandoned.
+     * <p>
+     * If the tree is completely explored, the result is deterministic. If the deadline is reached, the result depends
+     * on how far each branch got.
+     *
+     * @param deadline limit in {@link System#nanoTime()} units
+     * @return the valid grid with the lowest cost found before the deadline, or null if none was found, there are
+     * more than {@link Long#SIZE} divs or the search was cancelled
+     */
+    Grid<Div> run(long deadline) {
+        if (n > Long.SIZE) {
+            exhausted = false;
+            return null;
+        }
+        return search(true, deadline);
+    }
+
+    /**
+     * @return true if the last search explored every combination, so a null result means there is no valid grid, and
+     * not that the deadline was reached, the search was cancelled or there were too many divs to search
+     */
+    boolean isExhausted() {
+        return exhausted;
+    }
+
+    private Grid<Div> search(boolean optimise, long deadline) {
+        timedOut = false;
+        // nothing to search, no grid can be built
+        exhausted = true;
+        if (n == 0 || (places[0] & CENTER) == 0) return null;
+        for (int k = 0; k < n; k++) if (compartment[k] < 0) return null;
+        exhausted = false;
+        final AtomicInteger found = new AtomicInteger(Integer.MAX_VALUE);
+        final AtomicLong bestCost = new AtomicLong(Long.MAX_VALUE);
+        final List<Branch> branches = new ArrayList<>();
+        for (int r = 0; r < n; r++)
+            for (int c = 0; c < n; c++)
+                branches.add(optimise
+                        ? new Branch(r * n + c, found, bestCost, deadline)
+                        : new Branch(r * n + c, found));
+        final Grid<Div> grid = ForkJoinPool.commonPool().invoke(new RecursiveTask<Grid<Div>>() {
+            @Override
+            protected Grid<Div> compute() {
+                invokeAll(branches);
+                Grid<Div> best = null;
+                long cost = Long.MAX_VALUE;
+                for (final Branch branch : branches) {
+                    final Grid<Div> grid = branch.join();
+                    if (grid == null) continue;
+                    if (!optimise) return grid;
+                    if (branch.cost < cost) {
+                        cost = branch.cost;
+                        best = grid;
+                    }
+                }
+                return best;
+            }
+        });
+        if (cancelled.getAsBoolean()) return null;
+        exhausted = !timedOut;
+        return grid;
+    }
+
+    /**
+     * Greedy placement for when no valid grid exists, or none was found in time. The reaction is placed leaving room
+     * for every input and catalyst, then every div is placed, in turn, in the free cell that minimises the cost of the
+     * partial grid. The result can break rules, but it has as few violations as the greedy choice can get.
+     *
+     * @return a grid with every div, or null if there is no reaction or the approximation was cancelled
+     */
+    Grid<Div> approximate() {
+        return approximate(false, 0);
+    }
+
+    /**
+     * Same as {@link #approximate()}, but evaluating the cost of every free cell is quadratic for each div, so once
+     * the deadline is reached the remaining divs go, with no evaluation, to the free row and column closest to the
+     * reaction at their side of it.
+     *
+     * @param deadline limit in {@link System#nanoTime()} units
+     * @return a grid with every div, or null if there is no reaction or the approximation was cancelled
+     */
+    Grid<Div> approximate(long deadline) {
+        return approximate(true, deadline);
+    }
+
+    private Grid<Div> approximate(boolean bounded, long deadline) {
+        if (n == 0 || (places[0] & CENTER) == 0) return null;
+        final int[] row = new int[n];
+        final int[] col = new int[n];
+        final boolean[] usedRows = new boolean[n];
+        final boolean[] usedCols = new boolean[n];
+        for (int k = 1; k < n; k++) {
+            if ((places[k] & LEFT) != 0) col[0]++;
+            if ((places[k] & TOP) != 0) row[0]++;
+        }
+        usedRows[row[0]] = true;
+        usedCols[col[0]] = true;
+        for (int k = 1; k < n; k++) {
+            if (cancelled.getAsBoolean()) return null;
+            if (bounded && System.nanoTime() - deadline >= 0) {
+                row[k] = free(usedRows, row[0], places[k], TOP, BOTTOM);
+                col[k] = free(usedCols, col[0], places[k], LEFT, RIGHT);
+            } else {
+                long best = Long.MAX_VALUE;
+                int bestRow = -1;
+                int bestCol = -1;
+                for (int r = 0; r < n; r++) {
+                    if (usedRows[r]) continue;
+                    // keeps the best cell found so far
+                    if (bounded && bestRow >= 0 && System.nanoTime() - deadline >= 0) break;
+                    for (int c = 0; c < n; c++) {
+                        if (usedCols[c]) continue;
+                        row[k] = r;
+                        col[k] = c;
+                        final long cost = cost(row, col, k + 1);
+                        if (cost < best) {
+                            best = cost;
+                            bestRow = r;
+                            bestCol = c;
+                        }
+                    }
+                }
+                row[k] = bestRow;
+                col[k] = bestCol;
+            }
+            usedRows[row[k]] = true;
+            usedCols[col[k]] = true;
+        }
+        final Grid<Div> grid = new Grid<>(Div.class, n, n);
+        for (int k = 0; k < n; k++) grid.set(row[k], col[k], divs[k]);
+        return grid;
+    }
+
+    /**
+     * @return the free position closest to <em>center</em>, before it if <em>place</em> has any of the
+     * <em>before</em> places, after it for the <em>after</em> places, or the first free one if there is none
+     */
+    private static int free(boolean[] used, int center, int place, int before, int after) {
+        if ((place & before) != 0)
+            for (int i = center - 1; i >= 0; i--) if (!used[i]) return i;
+        if ((place & after) != 0)
+            for (int i = center + 1; i < used.length; i++) if (!used[i]) return i;
+        // there are as many rows and columns as divs, so there is always a free one
+        int i = 0;
+        while (used[i]) i++;
+        return i;
+    }
+
+    /**
+     * Cost of the first <em>placed</em> divs in the given positions, the reaction being the first one. The lower the
+     * better:
+     * <ul>
+     *     <li>each broken rule costs {@link #VIOLATION_COST}, so any valid grid is better than any invalid one</li>
+     *     <li>each crossing costs {@link #CROSSING_COST}. A crossing is the straight line from a div to the reaction
+     *     going through a compartment border or through another div</li>
+     *     <li>the area, in cells, of every compartment rectangle</li>
+     * </ul>
+     *
+     * @return the cost of the (partial) grid
+     */
+    long cost(int[] row, int[] col, int placed) {
+        final int[] minRow = new int[compartments];
+        final int[] maxRow = new int[compartments];
+        final int[] minCol = new int[compartments];
+        final int[] maxCol = new int[compartments];
+        Arrays.fill(minRow, Integer.MAX_VALUE);
+        Arrays.fill(maxRow, -1);
+        Arrays.fill(minCol, Integer.MAX_VALUE);
+        Arrays.fill(maxCol, -1);
+        for (int k = 0; k < placed; k++)
+            for (int y = compartment[k]; y >= 0; y = parent[y]) {
+                minRow[y] = Math.min(minRow[y], row[k]);
+                maxRow[y] = Math.max(maxRow[y], row[k]);
+                minCol[y] = Math.min(minCol[y], col[k]);
+                maxCol[y] = Math.max(maxCol[y], col[k]);
+            }
+        long violations = 0;
+        long crossings = 0;
+        long area = 0;
+        // roles
+        for (int i = 1; i < placed; i++) {
+            final int p = places[i];
+            if ((p & LEFT) != 0 && col[i] >= col[0]) violations++;
+            if ((p & RIGHT) != 0 && col[i] <= col[0]) violations++;
+            if ((p & TOP) != 0 && row[i] >= row[0]) violations++;
+            if ((p & BOTTOM) != 0 && row[i] <= row[0]) violations++;
+            for (int j = 1; j < placed; j++) {
+                if ((p & LEFT) != 0 && (places[j] & RIGHT) != 0 && col[i] >= col[j]) violations++;
+                if ((p & TOP) != 0 && (places[j] & BOTTOM) != 0 && row[i] >= row[j]) violations++;
+            }
+        }
+        // compartments
+        for (int z = 0; z < compartments; z++) {
+            if (minRow[z] > maxRow[z]) continue;
+            area += (long) (maxRow[z] - minRow[z] + 1) * (maxCol[z] - minCol[z] + 1);
+            for (int k = 0; k < placed; k++) {
+                final boolean inside = inside(z, row[k], col[k], minRow, maxRow, minCol, maxCol);
+                if (inside && !ancestorOrSelf[z][compartment[k]]) violations++;
+                if (k > 0 && inside != inside(z, row[0], col[0], minRow, maxRow, minCol, maxCol)) crossings++;
+            }
+            for (int w = 0; w < z; w++) {
+                if (ancestorOrSelf[z][w] || ancestorOrSelf[w][z] || minRow[w] > maxRow[w]) continue;
+                if (minRow[z] <= maxRow[w] && minRow[w] <= maxRow[z] && minCol[z] <= maxCol[w] && minCol[w] <= maxCol[z])
+                    violations++;
+            }
+        }
+        // divs in the way of other divs
+        for (int i = 1; i < placed; i++)
+            for (int j = 1; j < placed; j++)
+                if (i != j && between(row[j], col[j], row[i], col[i], row[0], col[0])) crossings++;
+        return violations * VIOLATION_COST + crossings * CROSSING_COST + area;
+    }
+
+    private static boolean inside(int z, int r, int c, int[] minRow, int[] maxRow, int[] minCol, int[] maxCol) {
+        return minRow[z] <= r && r <= maxRow[z] && minCol[z] <= c && c <= maxCol[z];
+    }
+
+    /**
+     * @return true if (r, c) lies on the segment from (r0, c0) to (r1, c1), excluding the ends
+     */
+    private static boolean between(int r, int c, int r0, int c0, int r1, int c1) {
+        if ((long) (r - r0) * (c1 - c0) != (long) (c - c0) * (r1 - r0)) return false;
+        return Math.min(r0, r1) <= r && r <= Math.max(r0, r1) && Math.min(c0, c1) <= c && c <= Math.max(c0, c1)
+                && !(r == r0 && c == c0) && !(r == r1 && c == c1);
+    }
+
+    /**
+     * Subtree with the reaction in a fixed position. Every position gets a branch before the search starts, so the
+     * partial grid is only allocated while the branch runs.
+     */
+    private class Branch extends RecursiveTask<Grid<Div>> {
+
+        private final int ordinal;
+        private final AtomicInteger found;
+        private State state;
+        // anytime search only
+        private final boolean optimise;
+        private final AtomicLong bestCost;
+        private final long deadline;
+        private long cost = Long.MAX_VALUE;
+        private Grid<Div> best;
+
+        Branch(int ordinal, AtomicInteger found) {
+            this.ordinal = ordinal;
+            this.found = found;
+            this.optimise = false;
+            this.bestCost = null;
+            this.deadline = 0;
+        }
+
+        Branch(int ordinal, AtomicInteger found, AtomicLong bestCost, long deadline) {
+            this.ordinal = ordinal;
+            this.found = found;
+            this.optimise = true;
+            this.bestCost = bestCost;
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected Grid<Div> compute() {
+            if (found.get() < ordinal || cancelled.getAsBoolean()) return null;
+            if (optimise && System.nanoTime() - deadline >= 0) {
+                timedOut = true;
+                return null;
+            }
+            state = new State();
+            try {
+                if (!state.place(0, ordinal / n, ordinal % n)) return null;
+                if (optimise) {
+                    search(1);
+                    return best;
+                }
+                if (search(1) && !cancelled.getAsBoolean()) {
+                    found.accumulateAndGet(ordinal, Math::min);
+                    return state.toGrid();
+                }
+                return null;
+            } finally {
+                state = null;
+            }
+        }
+
+        /**
+         * @return true to stop searching
+         */
+        private boolean search(int k) {
+            if (cancelled.getAsBoolean()) return true;
+            if (optimise) {
+                if (System.nanoTime() - deadline >= 0) {
+                    timedOut = true;
+                    return true;
+                }
+                // ties are kept, whichever branch set the bound first, so the first branch with the lowest cost wins
+                if (state.area() > bestCost.get()) return false;
+            } else if (found.get() < ordinal) return false;
+            if (k == n) {
+                final Grid<Div> grid = state.toGrid();
+                if (!validator.test(grid)) return false;
+                if (!optimise) return true;
+                final long c = cost(state.row, state.col, n);
+                if (c < cost) {
+                    cost = c;
+                    best = grid;
+                    bestCost.accumulateAndGet(c, Math::min);
+                }
+                return false;
+            }
+            for (int r = 0; r < n; r++) {
+                if ((state.usedRows & 1L << r) != 0) continue;
+                for (int c = 0; c < n; c++) {
+                    if ((state.usedCols & 1L << c) != 0) continue;
+                    state.save(k);
+                    if (state.place(k, r, c) && search(k + 1)) return true;
+                    state.restore(k);
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Partial grid. Rows and columns of placed divs, free rows and columns, the rectangle of each compartment and how
+     * many divs of each side are still to be placed in each compartment.
+     */
+    private class State {
+
+        final int[] row = new int[n];
+        final int[] col = new int[n];
+        long usedRows;
+        long usedCols;
+        // limits imposed by placed divs
+        int maxLeftCol = -1;
+        int minRightCol = Integer.MAX_VALUE;
+        int maxTopRow = -1;
+        int minBottomRow = Integer.MAX_VALUE;
+        // compartment rectangles of placed divs, empty when minRow > maxRow
+        final int[] minRow = new int[compartments];
+        final int[] maxRow = new int[compartments];
+        final int[] minCol = new int[compartments];
+        final int[] maxCol = new int[compartments];
+        // divs still to place in each compartment, including sub compartments, indexed by compartment and side
+        final int[] remaining = new int[SIDES.length * compartments];
+        // rectangles every compartment will cover, at least, once all divs are placed
+        final int[] lowRow = new int[compartments];
+        final int[] highRow = new int[compartments];
+        final int[] lowCol = new int[compartments];
+        final int[] highCol = new int[compartments];
+        // saved state before placing each div, to backtrack without allocating
+        final int[][] stack = new int[n][4 + (4 + SIDES.length) * compartments];
+        final long[] savedRows = new long[n];
+        final long[] savedCols = new long[n];
+
+        State() {
+            Arrays.fill(minRow, Integer.MAX_VALUE);
+            Arrays.fill(maxRow, -1);
+            Arrays.fill(minCol, Integer.MAX_VALUE);
+            Arrays.fill(maxCol, -1);
+            for (int k = 0; k < n; k++)
+                for (int y = compartment[k]; y >= 0; y = parent[y])
+                    for (int side = 0; side < SIDES.length; side++)
+                        if ((places[k] & SIDES[side]) != 0) remaining[SIDES.length * y + side]++;
+        }
+
+        /**
+         * Places div k in (r, c). State is modified even if the placement is not valid, use {@link #save(int)} and
+         * {@link #restore(int)} to go back.
+         *
+         * @return false if the placement breaks any rule
+         */
+        boolean place(int k, int r, int c) {
+            final int p = places[k];
+            final int reactionRow = row[0];
+            final int reactionCol = col[0];
+            if (k > 0) {
+                if ((p & LEFT) != 0 && (c >= reactionCol || c >= minRightCol)) return false;
+                if ((p & RIGHT) != 0 && (c <= reactionCol || c <= maxLeftCol)) return false;
+                if ((p & TOP) != 0 && (r >= reactionRow || r >= minBottomRow)) return false;
+                if ((p & BOTTOM) != 0 && (r <= reactionRow || r <= maxTopRow)) return false;
+            }
+            row[k] = r;
+            col[k] = c;
+            usedRows |= 1L << r;
+            usedCols |= 1L << c;
+            if ((p & LEFT) != 0) maxLeftCol = Math.max(maxLeftCol, c);
+            if ((p & RIGHT) != 0) minRightCol = Math.min(minRightCol, c);
+            if ((p & TOP) != 0) maxTopRow = Math.max(maxTopRow, r);
+            if ((p & BOTTOM) != 0) minBottomRow = Math.min(minBottomRow, r);
+            for (int y = compartment[k]; y >= 0; y = parent[y]) {
+                minRow[y] = Math.min(minRow[y], r);
+                maxRow[y] = Math.max(maxRow[y], r);
+                minCol[y] = Math.min(minCol[y], c);
+                maxCol[y] = Math.max(maxCol[y], c);
+                for (int side = 0; side < SIDES.length; side++)
+                    if ((p & SIDES[side]) != 0) remaining[SIDES.length * y + side]--;
+            }
+            return enoughSpace() && compartmentsFit(k);
+        }
+
+        /**
+         * Computes the rectangle each compartment will cover, at least, when every div is placed, and tests that no
+         * placed div falls into a compartment that is not its own or an ancestor, and that rectangles of unrelated
+         * compartments do not overlap.
+         * <p>
+         * Besides the placed divs, a compartment with inputs still to place will reach, at least, the column before the
+         * reaction or the first output, whatever comes first. The same applies to outputs, catalysts and regulators.
+         * When a compartment has no placed divs, its rows (or columns) are only known if it has divs to place at both
+         * sides of the reaction.
+         */
+        private boolean compartmentsFit(int k) {
+            final int leftBound = Math.min(col[0], minRightCol) - 1;
+            final int rightBound = Math.max(col[0], maxLeftCol) + 1;
+            final int topBound = Math.min(row[0], minBottomRow) - 1;
+            final int bottomBound = Math.max(row[0], maxTopRow) + 1;
+            for (int z = 0; z < compartments; z++) {
+                final int i = SIDES.length * z;
+                int lr = minRow[z], hr = maxRow[z], lc = minCol[z], hc = maxCol[z];
+                if (lr > hr) {
+                    if (remaining[i + 2] > 0 && remaining[i + 3] > 0) {
+                        lr = topBound;
+                        hr = bottomBound;
+                    }
+                } else {
+                    if (remaining[i + 2] > 0) lr = Math.min(lr, topBound);
+                    if (remaining[i + 3] > 0) hr = Math.max(hr, bottomBound);
+                }
+                if (lc > hc) {
+                    if (remaining[i] > 0 && remaining[i + 1] > 0) {
+                        lc = leftBound;
+                        hc = rightBound;
+                    }
+                } else {
+                    if (remaining[i] > 0) lc = Math.min(lc, leftBound);
+                    if (remaining[i + 1] > 0) hc = Math.max(hc, rightBound);
+                }
+                lowRow[z] = lr;
+                highRow[z] = hr;
+                lowCol[z] = lc;
+                highCol[z] = hc;
+                if (lr > hr || lc > hc) continue;
+                for (int j = 0; j <= k; j++)
+                    if (!ancestorOrSelf[z][compartment[j]] && lr <= row[j] && row[j] <= hr && lc <= col[j] && col[j] <= hc)
+                        return false;
+                for (int w = 0; w < z; w++) {
+                    if (ancestorOrSelf[z][w] || ancestorOrSelf[w][z]) continue;
+                    if (lowRow[w] > highRow[w] || lowCol[w] > highCol[w]) continue;
+                    if (lr <= highRow[w] && lowRow[w] <= hr && lc <= highCol[w] && lowCol[w] <= hc) return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Area of the rectangles every compartment will cover, at least, when the grid is complete. Only valid after a
+         * successful {@link #place(int, int, int)}. It never decreases as divs are placed, so it is a lower bound of
+         * the cost of any complete grid in this branch.
+         */
+        long area() {
+            long area = 0;
+            for (int z = 0; z < compartments; z++)
+                if (lowRow[z] <= highRow[z] && lowCol[z] <= highCol[z])
+                    area += (long) (highRow[z] - lowRow[z] + 1) * (highCol[z] - lowCol[z] + 1);
+            return area;
+        }
+
+        /**
+         * Remaining inputs need free columns left of the reaction and of every output, and so on.
+         */
+        private boolean enoughSpace() {
+            final int reactionRow = row[0];
+            final int reactionCol = col[0];
+            final long freeCols = ~usedCols & mask(n);
+            final long freeRows = ~usedRows & mask(n);
+            // root holds the totals
+            final int lefts = remaining[0], rights = remaining[1], tops = remaining[2], bottoms = remaining[3];
+            if (lefts > 0 && Long.bitCount(freeCols & mask(Math.min(reactionCol, minRightCol))) < lefts) return false;
+            if (rights > 0 && Long.bitCount(freeCols & ~mask(Math.max(reactionCol, maxLeftCol) + 1)) < rights) return false;
+            if (tops > 0 && Long.bitCount(freeRows & mask(Math.min(reactionRow, minBottomRow))) < tops) return false;
+            return bottoms <= 0 || Long.bitCount(freeRows & ~mask(Math.max(reactionRow, maxTopRow) + 1)) >= bottoms;
+        }
+
+        /**
+         * @return a mask with the bits [0, i) set
+         */
+        private long mask(int i) {
+            if (i <= 0) return 0;
+            if (i >= Long.SIZE) return -1L;
+            return (1L << i) - 1;
+        }
+
+        /**
+         * Saves everything that placing div k can modify. Only one save per div is kept.
+         */
+        void save(int k) {
+            final int[] saved = stack[k];
+            saved[0] = maxLeftCol;
+            saved[1] = minRightCol;
+            saved[2] = maxTopRow;
+            saved[3] = minBottomRow;
+            int i = 4;
+            for (int y = compartment[k]; y >= 0; y = parent[y]) {
+                saved[i++] = minRow[y];
+                saved[i++] = maxRow[y];
+                saved[i++] = minCol[y];
+                saved[i++] = maxCol[y];
+                for (int side = 0; side < SIDES.length; side++) saved[i++] = remaining[SIDES.length * y + side];
+            }
+            savedRows[k] = usedRows;
+            savedCols[k] = usedCols;
+        }
+
+        void restore(int k) {
+            final int[] saved = stack[k];
+            maxLeftCol = saved[0];
+            minRightCol = saved[1];
+            maxTopRow = saved[2];
+            minBottomRow = saved[3];
+            int i = 4;
+            for (int y = compartment[k]; y >= 0; y = parent[y]) {
+                minRow[y] = saved[i++];
+                maxRow[y] = saved[i++];
+                minCol[y] = saved[i++];
+                maxCol[y] = saved[i++];
+                for (int side = 0; side < SIDES.length; side++) remaining[SIDES.length * y + side] = saved[i++];
+            }
+            usedRows = savedRows[k];
+            usedCols = savedCols[k];
+        }
+
+        Grid<Div> toGrid() {
+            final Grid<Div> grid = new Grid<>(Div.class, n, n);
+            for (int k = 0; k < n; k++) grid.set(row[k], col[k], divs[k]);
+            return grid;
+        }
+    }
+}
@@ -4,19 +4,25 @@ import org.reactome.server.graph.domain.model.Event;
 import org.reactome.server.graph.exception.CustomQueryException;
 import org.reactome.server.graph.service.AdvancedDatabaseObjectService;
 import org.reactome.server.graph.service.DatabaseObjectService;
+import org.reactome.server.tools.reaction.exporter.compartment.ReactomeCompartmentFactory;
 import org.reactome.server.tools.reaction.exporter.layout.algorithm.box.BoxAlgorithm;
 import org.reactome.server.tools.reaction.exporter.layout.model.EntityGlyph;
 import org.reactome.server.tools.reaction.exporter.layout.model.Layout;
 import org.reactome.server.tools.reaction.exporter.layout.model.Role;
 import org.reactome.server.tools.reaction.exporter.layout.result.LayoutParticipants;
 import org.reactome.server.tools.reaction.exporter.layout.result.LayoutResult;
+import org.reactome.server.tools.reaction.exporter.ontology.GoTreeFactory;
+import org.reactome.server.tools.reaction.exporter.snapshot.EntitySnapshot;
+import org.reactome.server.tools.reaction.exporter.snapshot.ReactionSnapshot;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.function.Consumer;
+import java.util.function.BiConsumer;
 
 /**
  * Factory for single reaction {@link Layout}. Layout is computed with positions and dimensions already set for each
@@ -28,8 +34,11 @@ import java.util.function.Consumer;
 @Component
 public class LayoutFactory {
 
+    /**
+     * Retrieves the pathway, the reaction and its participants. Public so it can be benchmarked.
+     */
     //language=Cypher
-    private static final String QUERY = "" +
+    public static final String QUERY = "" +
             "MATCH (rle:ReactionLikeEvent{stId:$stId}) " +
             "OPTIONAL MATCH (rle)-[:normalReaction]->(nr:ReactionLikeEvent) " +
             "WHERE (rle:FailedReaction)" +
@@ -156,10 +165,41 @@ public class LayoutFactory {
 
     private final AdvancedDatabaseObjectService ads;
     private final DatabaseObjectService ds;
+    private final ReactomeCompartmentFactory compartmentFactory;
+    private final Duration portfolioTimeLimit;
 
+    /**
+     * @deprecated the compartment hierarchy is loaded through ads and the schema service given to
+     * {@link ReactomeCompartmentFactory#setSchemaService(org.reactome.server.graph.service.SchemaService)} or, if none,
+     * the one of ReactomeGraphCore. Use
+     * {@link #LayoutFactory(AdvancedDatabaseObjectService, DatabaseObjectService, ReactomeCompartmentFactory)}
+     */
+    @Deprecated
     public LayoutFactory(AdvancedDatabaseObjectService ads, DatabaseObjectService ds) {
+        this(ads, ds, new ReactomeCompartmentFactory(ads));
+    }
+
+    /**
+     * The constructor used by Spring, with the default time limit of {@link Style#PORTFOLIO}.
+     *
+     * @param compartmentFactory where the Reactome compartment hierarchy is loaded from, the first time a layout needs it
+     */
+    @Autowired
+    public LayoutFactory(AdvancedDatabaseObjectService ads, DatabaseObjectService ds, ReactomeCompartmentFactory compartmentFactory) {
+        this(ads, ds, compartmentFactory, Portfolio.DEFAULT_TIME_LIMIT);
+    }
+
+    /**
+     * @param compartmentFactory where the Reactome compartment hierarchy is loaded from, the first time a layout needs it
+     * @param portfolioTimeLimit how long {@link Style#PORTFOLIO} waits for the search. The box result is always waited
+     *                           for, so this is the extra latency of each layout at most
+     * @throws IllegalArgumentException if portfolioTimeLimit is null or negative
+     */
+    public LayoutFactory(AdvancedDatabaseObjectService ads, DatabaseObjectService ds, ReactomeCompartmentFactory compartmentFactory, Duration portfolioTimeLimit) {
         this.ads = ads;
         this.ds = ds;
+        this.compartmentFactory = compartmentFactory;
+        this.portfolioTimeLimit = checkTimeLimit(portfolioTimeLimit);
     }
 
     /**
@@ -174,14 +214,12 @@ public class LayoutFactory {
 
 //        DatabaseObjectService ds = ReactomeGraphCore.getService(DatabaseObjectService.class);
 
-        Map<String, Object> params = new HashMap<>();
-        params.put("stId", rle.getStId());
         try {
             // Query returns simple values rather than full objects
-            final LayoutResult layoutResult = ads.getCustomQueryResult(LayoutResult.class, QUERY, params);
+            final LayoutResult layoutResult = getLayoutResult(rle);
 
             // Create Layout and load minimum necessary information and let Lazy-fetch take care of the rest.
-            Layout layout = new Layout();
+            Layout layout = new Layout(GoTreeFactory.getReactomeRelease(compartmentFactory));
             layout.setPathway(layoutResult.getPathwayStId());
             layout.setReactionLikeEvent(ds.findByIdNoRelations(layoutResult.getReactionStId()));
 
@@ -195,7 +233,7 @@ public class LayoutFactory {
                 participants.add(a);
             }
             layout.setParticipants(participants);
-            style.apply(layout);
+            style.apply(layout, portfolioTimeLimit);
 
             return layout;
         } catch (CustomQueryException e) {
@@ -204,18 +242,94 @@ public class LayoutFactory {
         }
     }
 
+    /**
+     * Gets the {@link Layout} of a reaction previously extracted into a {@link ReactionSnapshot}. As the snapshot
+     * already contains all the needed data, no database access is performed. The compartment hierarchy of the snapshot
+     * must have been published with {@link GoTreeFactory#setReactomeMasterTree(java.util.Map)}.
+     *
+     * @param snapshot the extracted reaction like event
+     * @return the corresponding layout of the reaction
+     * @throws NullPointerException if snapshot is null
+     */
+    public static Layout getSnapshotLayout(ReactionSnapshot snapshot, Style style) {
+        return getSnapshotLayout(snapshot, style, Portfolio.DEFAULT_TIME_LIMIT);
+    }
+
+    /**
+     * Same as {@link #getSnapshotLayout(ReactionSnapshot, Style)}
+     *
+     * @param portfolioTimeLimit how long {@link Style#PORTFOLIO} waits for the search
+     * @throws IllegalArgumentException if portfolioTimeLimit is null or negative
+     */
+    public static Layout getSnapshotLayout(ReactionSnapshot snapshot, Style style, Duration portfolioTimeLimit) {
+        if (snapshot == null) throw new NullPointerException("snapshot cannot be null");
+        checkTimeLimit(portfolioTimeLimit);
+
+        Layout layout = new Layout();
+        layout.setPathway(snapshot.getPathway());
+        layout.setReaction(snapshot);
+
+        Collection<EntityGlyph> participants = new ArrayList<>();
+        for (EntitySnapshot participant : snapshot.getParticipants()) {
+            EntityGlyph a = new EntityGlyph();
+            a.setDrug(participant.isDrug());
+            a.setDashed(participant.isDashed());
+            a.setEntity(participant);
+            a.setRole(new Role(participant.getRoleType(), participant.getStoichiometry()));
+            participants.add(a);
+        }
+        layout.setParticipants(participants);
+        style.apply(layout, portfolioTimeLimit);
+
+        return layout;
+    }
+
+    /**
+     * Runs the layout query for rle. The result only contains identifiers and flags, the participants still need to be
+     * retrieved from the database.
+     */
+    public LayoutResult getLayoutResult(Event rle) throws CustomQueryException {
+        return getLayoutResult(ads, rle);
+    }
+
+    /**
+     * Same as {@link #getLayoutResult(Event)}, for callers that only run the query
+     */
+    public static LayoutResult getLayoutResult(AdvancedDatabaseObjectService ads, Event rle) throws CustomQueryException {
+        Map<String, Object> params = new HashMap<>();
+        params.put("stId", rle.getStId());
+        return ads.getCustomQueryResult(LayoutResult.class, QUERY, params);
+    }
+
+    /**
+     * @return how long {@link Style#PORTFOLIO} waits for the search in the layouts of this factory
+     */
+    public Duration getPortfolioTimeLimit() {
+        return portfolioTimeLimit;
+    }
+
+    private static Duration checkTimeLimit(Duration timeLimit) {
+        if (timeLimit == null || timeLimit.isNegative())
+            throw new IllegalArgumentException("Portfolio time limit cannot be null or negative: " + timeLimit);
+        return timeLimit;
+    }
+
     public enum Style {
-        BOX(layout -> new BoxAlgorithm(layout).compute()),
-        BRUTE_FORCE(layout -> new BruteForce(layout).compute());
+        BOX((layout, timeLimit) -> new BoxAlgorithm(layout).compute()),
+        BRUTE_FORCE((layout, timeLimit) -> new BruteForce(layout).compute()),
+        PORTFOLIO((layout, timeLimit) -> new Portfolio(layout, timeLimit).compute());
 
-        private final Consumer<Layout> consumer;
+        private final BiConsumer<Layout, Duration> consumer;
 
-        Style(Consumer<Layout> consumer) {
+        Style(BiConsumer<Layout, Duration> consumer) {
             this.consumer = consumer;
         }
 
-        void apply(Layout layout) {
-            consumer.accept(layout);
+        /**
+         * @param portfolioTimeLimit only used by {@link #PORTFOLIO}
+         */
+        void apply(Layout layout, Duration portfolioTimeLimit) {
+            consumer.accept(layout, portfolioTimeLimit);
         }
 
     }
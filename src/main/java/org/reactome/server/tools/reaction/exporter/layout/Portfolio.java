@@ -0,0 +1,79 @@
+package org.reactome.server.tools.reaction.exporter.layout;
+
+import org.reactome.server.tools.reaction.exporter.diagram.ReactionDiagramFactory;
+import org.reactome.server.tools.reaction.exporter.layout.algorithm.box.BoxAlgorithm;
+import org.reactome.server.tools.reaction.exporter.layout.model.Layout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+
+/**
+ * Runs {@link BoxAlgorithm} and a time limited {@link BruteForce} at the same time, each one on its own copy of the
+ * layout, and keeps the one with the best {@link DiagramTest#score()}. The box result is always available, so the
+ * search only replaces it when it finishes in time with fewer errors. On ties, the box result is kept.
+ * <p>
+ * Small reactions, where the search explores every combination in a few milliseconds, get the best layout without
+ * waiting for anything but the box algorithm. When the time is over, or its result is not kept, the search is
+ * cancelled, so it does not keep using a thread after the layout is done.
+ * <p>
+ * The search runs on a thread of its own, not on the common pool: {@link GridSearch} waits on the common pool for its
+ * branches, so a search running in one of its threads would hold a thread the branches need.
+ */
+public class Portfolio {
+
+    public static final Duration DEFAULT_TIME_LIMIT = Duration.ofMillis(500);
+    private static final Logger LOGGER = LoggerFactory.getLogger("reaction-converter");
+    private static final ExecutorService SEARCHES = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "portfolio-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Layout layout;
+    private final Duration timeLimit;
+
+    public Portfolio(Layout layout) {
+        this(layout, DEFAULT_TIME_LIMIT);
+    }
+
+    /**
+     * @param timeLimit maximum time to wait for the search. The box algorithm is always waited for
+     */
+    public Portfolio(Layout layout, Duration timeLimit) {
+        this.layout = layout;
+        this.timeLimit = timeLimit;
+    }
+
+    public void compute() {
+        final long deadline = System.nanoTime() + timeLimit.toNanos();
+        final Layout box = layout.copy();
+        final Layout search = layout.copy();
+        final BruteForce bruteForce = new BruteForce(search, timeLimit);
+        final Future<Layout> searchResult = CompletableFuture.supplyAsync(() -> {
+            bruteForce.compute();
+            return search;
+        }, SEARCHES);
+        new BoxAlgorithm(box).compute();
+        Layout best = box;
+        try {
+            final Layout candidate = searchResult.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            if (score(candidate) < score(box)) best = candidate;
+        } catch (TimeoutException e) {
+            LOGGER.debug("Search timed out for " + layout.getReaction().getStId());
+        } catch (ExecutionException e) {
+            LOGGER.debug("Search failed for " + layout.getReaction().getStId(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // the future does not interrupt the search, it must be told to stop
+            if (best != search) bruteForce.cancel();
+        }
+        layout.adopt(best);
+    }
+
+    private static int score(Layout layout) {
+        return new DiagramTest(ReactionDiagramFactory.get(layout)).score();
+    }
+}
@@ -3,7 +3,6 @@ package org.reactome.server.tools.reaction.exporter.layout.algorithm.box;
 import org.reactome.server.tools.reaction.exporter.layout.algorithm.common.Constants;
 import org.reactome.server.tools.reaction.exporter.layout.algorithm.common.LayoutIndex;
 import org.reactome.server.tools.reaction.exporter.layout.common.Bounds;
-import org.reactome.server.tools.reaction.exporter.layout.common.EntityRole;
 import org.reactome.server.tools.reaction.exporter.layout.model.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,7 +15,6 @@ import java.util.stream.Collectors;
 
 import static org.apache.commons.lang3.text.WordUtils.initials;
 import static org.reactome.server.tools.reaction.exporter.layout.common.EntityRole.*;
-import static org.reactome.server.tools.reaction.exporter.layout.common.GlyphUtils.hasRole;
 
 /**
  * This is the main gear of the {@link BoxAlgorithm}. It finds a place for every participant so that every elements
@@ -112,16 +110,18 @@ public class Box implements Div {
     private final static Comparator<Boolean> TRUE_FIRST = (a, b) -> a == b ? 0 : a ? -1 : 1;
     private final static Comparator<Boolean> FALSE_FIRST = TRUE_FIRST.reversed();
     private static final Logger LOGGER = LoggerFactory.getLogger("reaction-converter");
+    private static final int UNKNOWN = -1;
 
     private int columns;
     private int rows;
     private CompartmentGlyph compartment;
     private LayoutIndex index;
-    private Map<Integer, Map<Integer, Div>> divs = new HashMap<>();
+    private final Grid<Div> divs = new Grid<>(Div.class);
     private double horizontalPadding;
     private double verticalPadding;
     private List<Box> boxes;
     private Box[][] boxOrder;
+    private int occupancy = UNKNOWN;
 
     Box(CompartmentGlyph compartment, LayoutIndex index) {
         this.compartment = compartment;
@@ -180,9 +180,9 @@ public class Box implements Div {
             // TODO: 04/12/18 go for the smart way, use a grid, you coward
             // Top down
             boxes.sort(Comparator
-                    .comparing((Box c) -> c.getContainedRoles().contains(CATALYST), TRUE_FIRST)
-                    .thenComparing(c -> c.getContainedRoles().contains(NEGATIVE_REGULATOR), FALSE_FIRST)
-                    .thenComparing(c -> c.getContainedRoles().contains(POSITIVE_REGULATOR), FALSE_FIRST)
+                    .comparing((Box c) -> Occupancy.contains(c.getOccupancy(), CATALYST), TRUE_FIRST)
+                    .thenComparing(c -> Occupancy.contains(c.getOccupancy(), NEGATIVE_REGULATOR), FALSE_FIRST)
+                    .thenComparing(c -> Occupancy.contains(c.getOccupancy(), POSITIVE_REGULATOR), FALSE_FIRST)
                     .thenComparingInt(c -> c.getChildren().size()));
             int mc = 0;
             int mr = 0;
@@ -278,7 +278,8 @@ public class Box implements Div {
     }
 
     private void set(int row, int col, Div div) {
-        divs.computeIfAbsent(row, r -> new HashMap<>()).put(col, div);
+        divs.set(row, col, div);
+        occupancy = UNKNOWN;
     }
 
     private void set(Point point, Div div) {
@@ -298,10 +299,7 @@ public class Box implements Div {
                 final Point reactionPosition = getReactionPosition();
                 // this will happen if reaction must placed inside an inner compartment
                 if (reactionPosition == null) break;
-                final Div reactionDiv = new HorizontalLayout(Collections.singletonList(glyph));
-                reactionDiv.setHorizontalPadding(Constants.HORIZONTAL_PADDING);
-                reactionDiv.setVerticalPadding(Constants.VERTICAL_PADDING);
-                set(reactionPosition, reactionDiv);
+                set(reactionPosition, createReactionDiv(glyph));
                 return reactionPosition;
             }
         }
@@ -319,6 +317,13 @@ public class Box implements Div {
         return p.get();
     }
 
+    static Div createReactionDiv(Glyph reaction) {
+        final Div reactionDiv = new HorizontalLayout(Collections.singletonList(reaction));
+        reactionDiv.setHorizontalPadding(Constants.HORIZONTAL_PADDING);
+        reactionDiv.setVerticalPadding(Constants.VERTICAL_PADDING);
+        return reactionDiv;
+    }
+
     private Point getReactionPosition() {
         final List<Div> children = getChildren().stream().filter(Box.class::isInstance).collect(Collectors.toList());
         if (children.isEmpty()) {
@@ -390,6 +395,15 @@ public class Box implements Div {
         div.getCompartment().getContainedGlyphs().add(reaction);
         LOGGER.info(String.format("(%s) Moving reaction to: %s", reaction.getStId(), div.getCompartment().getName()));
         reaction.setCompartment(compartment);
+        occupancy = UNKNOWN;
+        if (div instanceof Box) {
+            final Box box = (Box) div;
+            box.occupancy = UNKNOWN;
+            // the grid keeps the occupancy of the box when it was set
+            forEach((child, point) -> {
+                if (child == box) set(point, box);
+            });
+        }
     }
 
     @Override
@@ -462,39 +476,24 @@ public class Box implements Div {
 
     }
 
+    /**
+     * Occupancy of a box is the occupancy of the glyphs of its compartment plus the occupancy of its children. As
+     * children are built from the glyphs in the compartment tree, it only changes when the reaction is moved to a
+     * child, but it is cleared every time a child is set, to be on the safe side.
+     */
     @Override
-    public Collection<EntityRole> getContainedRoles() {
-        final EnumSet<EntityRole> roles = EnumSet.noneOf(EntityRole.class);
-        for (final Div div : getChildren()) {
-            roles.addAll(div.getContainedRoles());
-        }
-        compartment.getContainedGlyphs().stream()
-                .filter(EntityGlyph.class::isInstance)
-                .flatMap(e -> ((EntityGlyph) e).getRoles().stream())
-                .map(Role::getType)
-                .forEach(roles::add);
-        return roles;
-    }
-
-    @Override
-    public Collection<Place> getBusyPlaces() {
-        final EnumSet<Place> places = EnumSet.noneOf(Place.class);
-        for (final Glyph glyph : compartment.getContainedGlyphs()) {
-            places.addAll(places(glyph));
+    public int getOccupancy() {
+        if (occupancy == UNKNOWN) {
+            int mask = Occupancy.NONE;
+            for (final Glyph glyph : compartment.getContainedGlyphs()) {
+                if (glyph instanceof ReactionGlyph) mask |= Occupancy.of(Place.CENTER);
+                else for (final Role role : ((EntityGlyph) glyph).getRoles())
+                    mask |= Occupancy.withPlace(role.getType());
+            }
+            for (int r = 0; r < divs.getRows(); r++) mask |= divs.getRow(r).getOccupancy();
+            occupancy = mask;
         }
-        for (final Div child : getChildren())
-            places.addAll(child.getBusyPlaces());
-        return places;
-    }
-
-    private Collection<Place> places(Glyph glyph) {
-        if (glyph instanceof ReactionGlyph)
-            return EnumSet.of(Place.CENTER);
-        final EntityGlyph entityGlyph = (EntityGlyph) glyph;
-        return entityGlyph.getRoles().stream()
-                .map(Role::getType)
-                .map(PlacePositioner::getPlace)
-                .collect(Collectors.toSet());
+        return occupancy;
     }
 
     @Override
@@ -503,91 +502,107 @@ public class Box implements Div {
     }
 
     private Collection<Div> getChildren() {
-        return divs.values().stream()
-                .flatMap(map -> map.values().stream())
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+        final List<Div> children = new ArrayList<>();
+        for (int r = 0; r < divs.getRows(); r++) {
+            for (int c = 0; c < divs.getColumns(); c++) {
+                final Div div = divs.get(r, c);
+                if (div != null) children.add(div);
+            }
+        }
+        return children;
     }
 
+    /**
+     * Calls function with every non null div and its position, in row order.
+     */
     private void forEach(BiConsumer<Div, Point> function) {
-        divs.forEach((row, map) -> map.forEach((col, div) -> function.accept(div, new Point(row, col))));
+        for (int r = 0; r < divs.getRows(); r++) {
+            for (int c = 0; c < divs.getColumns(); c++) {
+                final Div div = divs.get(r, c);
+                if (div != null) function.accept(div, new Point(r, c));
+            }
+        }
     }
 
     /**
      * Set the grid position of each element
+     *
+     * @param reactionPosition position of the reaction, relative to this box
+     * @param divs             a grid to hold the content of this box before placing the elements, overwritten by every
+     *                         box
      */
-    void placeElements(Point reactionPosition) {
+    void placeElements(Point reactionPosition, Grid<Div> divs) {
         // call sub compartments
         forEach((div, point) -> {
             if (div instanceof Box) {
                 final Box box = (Box) div;
                 final Point newPoint = new Point(reactionPosition.getRow() - point.getRow(), reactionPosition.getCol() - point.getCol());
-                box.placeElements(newPoint);
+                box.placeElements(newPoint, divs);
             }
         });
-        final Div[][] divs = getDivs();
+        getDivs(divs);
         final List<EntityGlyph> inputs = index.filterInputs(compartment);
         final List<EntityGlyph> outputs = index.filterOutputs(compartment);
         final List<EntityGlyph> catalysts = index.filterCatalysts(compartment);
         final List<EntityGlyph> regulators = index.filterRegulators(compartment);
 
         if (inputs.size() > 0) {
-            final boolean hasCatalyst = inputs.stream().anyMatch(entityGlyph -> hasRole(entityGlyph, CATALYST));
-            final boolean catalystInInputs = index.getInputs().stream().anyMatch(entityGlyph -> hasRole(entityGlyph, CATALYST));
+            final boolean hasCatalyst = index.hasCatalystInInputs(compartment);
+            final boolean catalystInInputs = index.hasCatalystInInputs();
             int row;
-            if (hasCatalyst) row = getFreeRow(divs, EnumSet.of(INPUT), reactionPosition.getRow(), true, false);
+            if (hasCatalyst) row = getFreeRow(divs, Occupancy.of(INPUT), reactionPosition.getRow(), true, false);
             else if (boxes.size() > 0 && reactionPosition.getCol() > columns / 2) {
                 // These inputs will probably cause their segments to cross a child, so let's move to the bottom
-                final Set<EntityRole> roles = boxes.stream().map(Box::getContainedRoles).map(PlacePositioner::simplify).flatMap(Collection::stream).collect(Collectors.toSet());
-                if (!roles.contains(NEGATIVE_REGULATOR)) row = rows - 1;
-                else if (!roles.contains(CATALYST)) row = 0;
+                final int roles = childrenRoles();
+                if (!Occupancy.contains(roles, NEGATIVE_REGULATOR)) row = rows - 1;
+                else if (!Occupancy.contains(roles, CATALYST)) row = 0;
                 else if (catalystInInputs)
-                    row = getFreeRow(divs, EnumSet.of(INPUT), reactionPosition.getRow(), false, true);
-                else row = getFreeRow(divs, EnumSet.of(INPUT), reactionPosition.getRow(), false, false);
+                    row = getFreeRow(divs, Occupancy.of(INPUT), reactionPosition.getRow(), false, true);
+                else row = getFreeRow(divs, Occupancy.of(INPUT), reactionPosition.getRow(), false, false);
             } else if (catalystInInputs)
-                row = getFreeRow(divs, EnumSet.of(INPUT), reactionPosition.getRow(), false, true);
-            else row = getFreeRow(divs, EnumSet.of(INPUT), reactionPosition.getRow(), false, false);
+                row = getFreeRow(divs, Occupancy.of(INPUT), reactionPosition.getRow(), false, true);
+            else row = getFreeRow(divs, Occupancy.of(INPUT), reactionPosition.getRow(), false, false);
 
             final VerticalLayout layout = new VerticalLayout(inputs);
             set(row, 0, layout);
         }
         if (outputs.size() > 0) {
-            final boolean catalystInInputs = index.getInputs().stream().anyMatch(entityGlyph -> hasRole(entityGlyph, CATALYST));
+            final boolean catalystInInputs = index.hasCatalystInInputs();
             int row;
             if (boxes.size() > 0 && reactionPosition.getCol() < columns / 2) {
-                final Set<EntityRole> roles = boxes.stream().map(Div::getContainedRoles).map(PlacePositioner::simplify).flatMap(Collection::stream).collect(Collectors.toSet());
-                if (!roles.contains(NEGATIVE_REGULATOR)) row = rows - 1;
-                else if (!roles.contains(CATALYST)) row = 0;
+                final int roles = childrenRoles();
+                if (!Occupancy.contains(roles, NEGATIVE_REGULATOR)) row = rows - 1;
+                else if (!Occupancy.contains(roles, CATALYST)) row = 0;
                 else if (catalystInInputs)
-                    row = getFreeRow(divs, EnumSet.of(OUTPUT), reactionPosition.getRow(), false, true);
-                else row = getFreeRow(divs, EnumSet.of(OUTPUT), reactionPosition.getRow(), false, false);
+                    row = getFreeRow(divs, Occupancy.of(OUTPUT), reactionPosition.getRow(), false, true);
+                else row = getFreeRow(divs, Occupancy.of(OUTPUT), reactionPosition.getRow(), false, false);
             } else if (catalystInInputs) {
-                row = getFreeRow(divs, EnumSet.of(OUTPUT), reactionPosition.getRow(), false, true);
-            } else row = getFreeRow(divs, EnumSet.of(OUTPUT), reactionPosition.getRow(), false, false);
+                row = getFreeRow(divs, Occupancy.of(OUTPUT), reactionPosition.getRow(), false, true);
+            } else row = getFreeRow(divs, Occupancy.of(OUTPUT), reactionPosition.getRow(), false, false);
 
 
             final VerticalLayout layout = new VerticalLayout(outputs);
             set(row, columns - 1, layout);
         }
         if (catalysts.size() > 0) {
-            final int column = getFreeColumn(divs, EnumSet.of(CATALYST), reactionPosition.getCol());
+            final int column = getFreeColumn(divs, Occupancy.of(CATALYST), reactionPosition.getCol());
             final HorizontalLayout layout = new HorizontalLayout(catalysts);
             set(0, column, layout);
         }
         if (regulators.size() > 0) {
-            final int column = getFreeColumn(divs, EnumSet.of(NEGATIVE_REGULATOR, POSITIVE_REGULATOR), reactionPosition.getCol());
+            final int column = getFreeColumn(divs, Occupancy.of(NEGATIVE_REGULATOR) | Occupancy.of(POSITIVE_REGULATOR), reactionPosition.getCol());
             final HorizontalLayout layout = new HorizontalLayout(regulators);
             set(rows - 1, column, layout);
         }
     }
 
-    private int getFreeRow(Div[][] divs, Collection<EntityRole> roles, int reactionRow, boolean up, boolean down) {
+    private int getFreeRow(Grid<Div> divs, int roles, int reactionRow, boolean up, boolean down) {
         // reaction is under this box
         if (reactionRow >= rows) return rows - 2;
             // reaction is on top of this compartment
         else if (reactionRow < 0) return 1;
         else if (reactionRow < rows) {
-            if (rowIsFree(divs[reactionRow], roles)) return reactionRow;
+            if (rowIsFree(divs, roles, reactionRow)) return reactionRow;
         }
         // reaction is at the top of this compartment
         else if (reactionRow == 1) return 1;
@@ -601,31 +616,25 @@ public class Box implements Div {
         else return freeRowUp;
     }
 
-    private int getFreeRowUp(Div[][] divs, Collection<EntityRole> roles, int start) {
+    private int getFreeRowUp(Grid<Div> divs, int roles, int start) {
         for (int i = start; i > 1; i--) {
-            if (rowIsFree(divs[i], roles)) return i;
+            if (rowIsFree(divs, roles, i)) return i;
         }
         return 1;
     }
 
-    private int getFreeRowDown(Div[][] divs, Collection<EntityRole> roles, int start) {
+    private int getFreeRowDown(Grid<Div> divs, int roles, int start) {
         for (int i = start; i < rows - 1; i++) {
-            if (rowIsFree(divs[i], roles)) return i;
+            if (rowIsFree(divs, roles, i)) return i;
         }
         return rows - 1;
     }
 
-    private boolean rowIsFree(Div[] divs, Collection<EntityRole> roles) {
-        for (int col = 0; col < columns; col++) {
-            final Div div = divs[col];
-            if (div != null && div.getContainedRoles().stream().anyMatch(roles::contains)) {
-                return false;
-            }
-        }
-        return true;
+    private boolean rowIsFree(Grid<Div> divs, int roles, int row) {
+        return (divs.getRow(row).getOccupancy() & roles) == 0;
     }
 
-    private int getFreeColumn(Div[][] divs, Collection<EntityRole> roles, int reactionColumn) {
+    private int getFreeColumn(Grid<Div> divs, int roles, int reactionColumn) {
         // reaction is right of this box
         if (reactionColumn >= columns) return columns - 2;
             // reaction is left of this compartment
@@ -644,38 +653,43 @@ public class Box implements Div {
         return col;
     }
 
-    private boolean colIsBusy(Div[][] divs, Collection<EntityRole> roles, int col) {
-        for (int row = 0; row < rows; row++) {
-            final Div div = divs[row][col];
-            if (div != null && div.getContainedRoles().stream().anyMatch(roles::contains)) {
-                return true;
-            }
-        }
-        return false;
+    private boolean colIsBusy(Grid<Div> divs, int roles, int col) {
+        return (divs.getColumn(col).getOccupancy() & roles) != 0;
+    }
+
+    /**
+     * @return simplified roles of the children boxes
+     */
+    private int childrenRoles() {
+        int roles = Occupancy.NONE;
+        for (final Box box : boxes) roles |= box.getOccupancy();
+        return Occupancy.simplify(roles & Occupancy.ROLES_MASK);
     }
 
     @Override
     public String toString() {
         final StringJoiner builder = new StringJoiner(", ");
-        divs.forEach((row, map) -> map.forEach((column, div) -> {
-            builder.add(String.format("(%d,%d)->%s", row, column, div));
-        }));
+        forEach((div, point) -> builder.add(String.format("(%d,%d)->%s", point.getRow(), point.getCol(), div)));
         return String.format("%s(%d,%d)[%s]", initials(compartment.getName()), rows, columns, builder.toString());
     }
 
-    Div[][] getDivs() {
-        final Div[][] rtn = new Div[rows][columns];
-        forEach((div, point) -> {
-            if (div instanceof GlyphsLayout) rtn[point.getRow()][point.getCol()] = div;
-            else if (div instanceof Box) {
-                final Box box = (Box) div;
-                final Div[][] divs = box.getDivs();
-                for (int i = 0; i < box.rows; i++) {
-                    System.arraycopy(divs[i], 0, rtn[point.getRow() + i], point.getCol(), box.columns);
-                }
+    /**
+     * Writes the content of this box into grid, which is resized to the size of this box. The content of sub boxes is
+     * written instead of the sub boxes themselves.
+     */
+    void getDivs(Grid<Div> grid) {
+        grid.reset(rows, columns);
+        setDivs(grid, 0, 0);
+    }
+
+    private void setDivs(Grid<Div> grid, int row, int col) {
+        for (int r = 0; r < divs.getRows(); r++) {
+            for (int c = 0; c < divs.getColumns(); c++) {
+                final Div div = divs.get(r, c);
+                if (div instanceof GlyphsLayout) grid.set(row + r, col + c, div);
+                else if (div instanceof Box) ((Box) div).setDivs(grid, row + r, col + c);
             }
-        });
-        return rtn;
+        }
     }
 
     @Override
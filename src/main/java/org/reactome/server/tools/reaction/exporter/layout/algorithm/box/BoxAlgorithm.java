@@ -1,19 +1,18 @@
 package org.reactome.server.tools.reaction.exporter.layout.algorithm.box;
 
+import com.google.common.cache.CacheStats;
 import org.reactome.server.tools.diagram.data.layout.Connector;
-import org.reactome.server.tools.diagram.data.layout.Coordinate;
 import org.reactome.server.tools.diagram.data.layout.Segment;
-import org.reactome.server.tools.diagram.data.layout.impl.CoordinateImpl;
 import org.reactome.server.tools.reaction.exporter.layout.algorithm.common.*;
 import org.reactome.server.tools.reaction.exporter.layout.common.Bounds;
 import org.reactome.server.tools.reaction.exporter.layout.common.EntityRole;
 import org.reactome.server.tools.reaction.exporter.layout.common.GlyphUtils;
 import org.reactome.server.tools.reaction.exporter.layout.model.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Objects;
+import java.util.List;
 
 import static org.reactome.server.tools.reaction.exporter.layout.algorithm.box.Place.*;
 import static org.reactome.server.tools.reaction.exporter.layout.algorithm.common.Transformer.getBounds;
@@ -51,6 +50,7 @@ public class BoxAlgorithm {
 
     private final Layout layout;
     private final LayoutIndex index;
+    private LayoutScratch scratch;
 
     /**
      * Creates a BoxAlgorithm and prepares it to compute a layout. Use only one {@link BoxAlgorithm} per layout and call
@@ -89,57 +89,28 @@ public class BoxAlgorithm {
      * Computes the position (dimension and coordinate) of every element in the Layout.
      */
     public void compute() {
-        // This is the main algorithm, divided into 3 steps: positioning, compaction and sizing
-        // Due to the high dependence of variables between the steps, everything happens int this method
-
-        // 1. POSITIONING
-
-        // a) compartments are placed based on their content and, of course, their hierarchy
-        final Box box = new Box(layout.getCompartmentRoot(), index);
-        // b) reaction is placed, also based on its surrounding content
-        Point reactionPosition = box.placeReaction();
-        // c) participants are placed, they have to avoid being in the same row or column as similar participants
-        box.placeElements(reactionPosition);
-
-        // 2. COMPACTION
-
-        final Div[][] preDivs = box.getDivs();
-        final Grid<Div> grid = new Grid<>(Div.class, preDivs);
-
-        // a) empty rows and columns are removed
-        removeEmptyRows(grid);
-        removeEmptyCols(grid);
-
-        // artifact: having participants with the same role in the same row or column
-        reactionPosition = getReactionPosition(grid);
-        expandSameRoleSameColumn(grid, reactionPosition);
-
-        reactionPosition = getReactionPosition(grid);
-        expandSameRoleSameRow(grid, reactionPosition);
-
-        // b) some helper methods to fix artifacts
-        reactionPosition = getReactionPosition(grid);
-
-        // these 2 methods force elements to be divided by imaginary limits
-        //     | C |
-        //  ---+---+---
-        //   I | X | O
-        //  ---+---+---
-        //     | R |
-        // although previous steps are supposed to avoid this, sometimes it happens
-        forceDiagonalTopDown(grid, reactionPosition);
-        forceDiagonalLeftRight(grid, reactionPosition);
+        scratch = LayoutScratch.acquire();
+        try {
+            computeLayout();
+        } finally {
+            scratch.release();
+            scratch = null;
+        }
+    }
 
-        // c) elements are moved closer to the center
-        // this part has serious problems when the reaction is not in the center
-        reactionPosition = getReactionPosition(grid);
-        compactLeft(grid, reactionPosition);
-        compactRight(grid, reactionPosition);
-        compactTop(grid, reactionPosition);
-        compactBottom(grid, reactionPosition);
+    /**
+     * @return hits, misses and evictions of the cache of topologies, shared by every layout, since the start of the
+     * program
+     */
+    public static CacheStats getTopologyCacheStats() {
+        return Topology.getCacheStats();
+    }
 
-        removeEmptyRows(grid);
-        removeEmptyCols(grid);
+    private void computeLayout() {
+        // This is the main algorithm, divided into 3 steps: positioning, compaction and sizing
+        // Positioning and compaction give the topology of the layout, that does not depend on sizes
+        final Grid<Div> grid = scratch.grid;
+        computeTopology(grid);
 
         // 3. SIZING
 
@@ -148,39 +119,41 @@ public class BoxAlgorithm {
         // width and height represent the size of the square,
         // vertical and horizontal padding the position where elements are placed inside the square
         // padding is necessary when participants are close to a compartment border (very often)
-        final double[] heights = new double[grid.getRows()];
-        final double[] verticalPadding = new double[grid.getRows()];
-        final double[] widths = new double[grid.getColumns()];
-        final double[] horizontalPadding = new double[grid.getColumns()];
+        // arrays are reused between layouts, so they can be longer than the grid
+        scratch.resetSizes(grid.getRows(), grid.getColumns());
+        final double[] heights = scratch.getHeights();
+        final double[] verticalPadding = scratch.getVerticalPadding();
+        final double[] widths = scratch.getWidths();
+        final double[] horizontalPadding = scratch.getHorizontalPadding();
 
         // sizing is done through compartment tree, since every compartment size depends also on its sub-compartment
         size(layout.getCompartmentRoot(), grid, heights, widths, horizontalPadding, verticalPadding);
 
         // b) Add extra spaces around the reaction
-        reactionPosition = getReactionPosition(grid);
+        final Point reactionPosition = getReactionPosition(grid);
         for (int r = reactionPosition.getRow() - 1; r >= 0; r--) {
-            if (containsRole(grid.getRow(r), Collections.singletonList(CATALYST))) {
+            if (containsRole(grid.getRow(r), Occupancy.of(CATALYST))) {
                 heights[r] += Constants.VERTICAL_PADDING;
                 verticalPadding[r] -= Constants.VERTICAL_PADDING;
                 break;
             }
         }
         for (int r = reactionPosition.getRow() + 1; r < grid.getRows(); r++) {
-            if (containsRole(grid.getRow(r), Arrays.asList(NEGATIVE_REGULATOR, POSITIVE_REGULATOR))) {
+            if (containsRole(grid.getRow(r), Occupancy.of(NEGATIVE_REGULATOR) | Occupancy.of(POSITIVE_REGULATOR))) {
                 heights[r] += Constants.VERTICAL_PADDING;
                 verticalPadding[r] += Constants.VERTICAL_PADDING;
                 break;
             }
         }
         for (int c = reactionPosition.getCol() - 1; c >= 0; c--) {
-            if (containsRole(grid.getColumn(c), Collections.singletonList(INPUT))) {
+            if (containsRole(grid.getColumn(c), Occupancy.of(INPUT))) {
                 widths[c] += Constants.HORIZONTAL_PADDING;
                 horizontalPadding[c] -= Constants.HORIZONTAL_PADDING;
                 break;
             }
         }
         for (int c = reactionPosition.getCol() + 1; c < grid.getColumns(); c++) {
-            if (containsRole(grid.getColumn(c), Collections.singletonList(OUTPUT))) {
+            if (containsRole(grid.getColumn(c), Occupancy.of(OUTPUT))) {
                 widths[c] += Constants.HORIZONTAL_PADDING;
                 horizontalPadding[c] += Constants.HORIZONTAL_PADDING;
                 break;
@@ -188,8 +161,8 @@ public class BoxAlgorithm {
         }
 
         // c) place things (wheeeee!!)
-        final double[] cy = getCenters(heights, verticalPadding);
-        final double[] cx = getCenters(widths, horizontalPadding);
+        final double[] cy = getCenters(heights, verticalPadding, grid.getRows(), scratch.getCy());
+        final double[] cx = getCenters(widths, horizontalPadding, grid.getColumns(), scratch.getCx());
 
         for (int row = 0; row < grid.getRows(); row++) {
             for (int col = 0; col < grid.getColumns(); col++) {
@@ -210,21 +183,91 @@ public class BoxAlgorithm {
         moveToOrigin();
     }
 
+    /**
+     * Steps 1 and 2 of the algorithm: writes into grid the content of every cell. They only depend on the structure of
+     * the reaction, so their result is kept as a {@link Topology}, and reactions with the same structure, like the
+     * inferred ones, rebuild the grid from it instead.
+     */
+    private void computeTopology(Grid<Div> grid) {
+        final List<CompartmentGlyph> compartments = new ArrayList<>();
+        final Topology.Key key = Topology.key(layout.getCompartmentRoot(), layout.getReaction(), index, compartments);
+        final Topology topology = Topology.get(key);
+        if (topology != null) {
+            topology.apply(grid, compartments, layout.getReaction(), index);
+            return;
+        }
+        placeAndCompact(grid);
+        final Topology computed = Topology.of(grid, compartments, layout.getReaction(), index);
+        if (computed != null) Topology.put(key, computed);
+    }
+
+    private void placeAndCompact(Grid<Div> grid) {
+        // 1. POSITIONING
+
+        // a) compartments are placed based on their content and, of course, their hierarchy
+        final Box box = new Box(layout.getCompartmentRoot(), index);
+        // b) reaction is placed, also based on its surrounding content
+        Point reactionPosition = box.placeReaction();
+        // c) participants are placed, they have to avoid being in the same row or column as similar participants
+        box.placeElements(reactionPosition, grid);
+
+        // 2. COMPACTION
+
+        box.getDivs(grid);
+
+        // a) empty rows and columns are removed
+        removeEmptyRows(grid);
+        removeEmptyCols(grid);
+
+        // artifact: having participants with the same role in the same row or column
+        reactionPosition = getReactionPosition(grid);
+        expandSameRoleSameColumn(grid, reactionPosition);
+
+        reactionPosition = getReactionPosition(grid);
+        expandSameRoleSameRow(grid, reactionPosition);
+
+        // b) some helper methods to fix artifacts
+        reactionPosition = getReactionPosition(grid);
+
+        // these 2 methods force elements to be divided by imaginary limits
+        //     | C |
+        //  ---+---+---
+        //   I | X | O
+        //  ---+---+---
+        //     | R |
+        // although previous steps are supposed to avoid this, sometimes it happens
+        forceDiagonalTopDown(grid, reactionPosition);
+        forceDiagonalLeftRight(grid, reactionPosition);
+
+        // c) elements are moved closer to the center
+        // this part has serious problems when the reaction is not in the center
+        reactionPosition = getReactionPosition(grid);
+        compactLeft(grid, reactionPosition);
+        compactRight(grid, reactionPosition);
+        compactTop(grid, reactionPosition);
+        compactBottom(grid, reactionPosition);
+
+        removeEmptyRows(grid);
+        removeEmptyCols(grid);
+    }
+
     /**
      * Returns the absolute center of each element. The absolute center depends on the previous sizes, the size of the
      * current element and its padding.
      *
      * @param sizes    size of each element (widths or heights)
      * @param paddings padding of each element (vertical or horizontal)
-     * @return an array containing the exact center for each element
+     * @param length   number of elements
+     * @param centers  where to write the centers
+     * @return centers, containing the exact center for each element
      */
-    private double[] getCenters(double[] sizes, double[] paddings) {
-        final double[] cy = new double[sizes.length];
-        for (int i = 0; i < sizes.length; i++) {
-            for (int j = 0; j < i; j++) cy[i] += sizes[j];
-            cy[i] += 0.5 * (paddings[i] + sizes[i]);
+    private double[] getCenters(double[] sizes, double[] paddings, int length, double[] centers) {
+        double start = 0;
+        for (int i = 0; i < length; i++) {
+            centers[i] = start + 0.5 * (paddings[i] + sizes[i]);
+            start += sizes[i];
         }
-        return cy;
+        return centers;
     }
 
     private void compactLeft(Grid<Div> grid, Point reactionPosition) {
@@ -238,21 +281,21 @@ public class BoxAlgorithm {
                     final Div div = grid.get(row, col);
                     if (div == null || grid.get(row, to) != null) continue;
 
-                    final Collection<Place> places = div.getBusyPlaces();
+                    final int places = div.getOccupancy();
                     // Inputs cannot share column with reaction
 
-                    if (places.contains(LEFT) && to == reactionPosition.getCol()) continue;
+                    if (Occupancy.contains(places, LEFT) && to == reactionPosition.getCol()) continue;
 
-                    final Div[] column = grid.getColumn(to);
+                    final Grid.Line<Div> column = grid.getColumn(to);
                     // Inputs cannot share column with catalysts neither regulators
-                    if (places.contains(LEFT) && (hasPlace(column, TOP) || hasPlace(column, BOTTOM))) continue;
+                    if (Occupancy.contains(places, LEFT) && (hasPlace(column, TOP) || hasPlace(column, BOTTOM))) continue;
 
                     // Two catalysts cannot share column
-                    if (places.contains(TOP) && hasPlace(column, TOP)) continue;
+                    if (Occupancy.contains(places, TOP) && hasPlace(column, TOP)) continue;
                     // Two regulators cannot share column
-                    if (places.contains(BOTTOM) && hasPlace(column, BOTTOM)) continue;
+                    if (Occupancy.contains(places, BOTTOM) && hasPlace(column, BOTTOM)) continue;
 
-                    if (canMove(grid, new Point(row, col), new Point(row, to))) {
+                    if (canMove(grid, row, col, row, to)) {
                         grid.set(row, to, div);
                         grid.set(row, col, null);
                         hasMoved = true;
@@ -274,21 +317,21 @@ public class BoxAlgorithm {
                     final Div div = grid.get(r, c);
                     if (div == null || grid.get(r, to) != null) continue;
 
-                    final Collection<Place> places = div.getBusyPlaces();
+                    final int places = div.getOccupancy();
 
                     // Outputs cannot share column with reaction
-                    if (places.contains(RIGHT) && reactionPosition.getCol() == to) continue;
+                    if (Occupancy.contains(places, RIGHT) && reactionPosition.getCol() == to) continue;
 
                     // Outputs cannot share column with catalysts or regulators
-                    final Div[] column = grid.getColumn(to);
-                    if (places.contains(RIGHT) && (hasPlace(column, TOP) || hasPlace(column, BOTTOM))) continue;
+                    final Grid.Line<Div> column = grid.getColumn(to);
+                    if (Occupancy.contains(places, RIGHT) && (hasPlace(column, TOP) || hasPlace(column, BOTTOM))) continue;
 
                     // Two catalysts cannot share column
-                    if (places.contains(TOP) && hasPlace(column, TOP)) continue;
+                    if (Occupancy.contains(places, TOP) && hasPlace(column, TOP)) continue;
                     // Two regulators cannot share column
-                    if (places.contains(BOTTOM) && hasPlace(column, BOTTOM)) continue;
+                    if (Occupancy.contains(places, BOTTOM) && hasPlace(column, BOTTOM)) continue;
 
-                    if (canMove(grid, new Point(r, c), new Point(r, to))) {
+                    if (canMove(grid, r, c, r, to)) {
                         grid.set(r, to, div);
                         grid.set(r, c, null);
                         hasMoved = true;
@@ -309,21 +352,21 @@ public class BoxAlgorithm {
                     final Div div = grid.get(r, c);
                     if (div == null || grid.get(to, c) != null) continue;
 
-                    final Collection<Place> places = div.getBusyPlaces();
+                    final int places = div.getOccupancy();
 
                     // Catalysts cannot share row with reaction
-                    if (places.contains(TOP) && reactionPosition.getRow() == to) continue;
+                    if (Occupancy.contains(places, TOP) && reactionPosition.getRow() == to) continue;
 
                     // Catalysts cannot share row with inputs or outputs
-                    final Div[] row = grid.getRow(to);
-                    if (places.contains(TOP) && (hasPlace(row, LEFT) || hasPlace(row, RIGHT))) continue;
+                    final Grid.Line<Div> row = grid.getRow(to);
+                    if (Occupancy.contains(places, TOP) && (hasPlace(row, LEFT) || hasPlace(row, RIGHT))) continue;
 
                     // Two inputs cannot share row
-                    if (places.contains(LEFT) && hasPlace(row, LEFT)) continue;
+                    if (Occupancy.contains(places, LEFT) && hasPlace(row, LEFT)) continue;
                     // Two outputs cannot share column
-                    if (places.contains(RIGHT) && hasPlace(row, RIGHT)) continue;
+                    if (Occupancy.contains(places, RIGHT) && hasPlace(row, RIGHT)) continue;
 
-                    if (canMove(grid, new Point(r, c), new Point(to, c))) {
+                    if (canMove(grid, r, c, to, c)) {
                         grid.set(to, c, div);
                         grid.set(r, c, null);
                         hasMoved = true;
@@ -345,19 +388,19 @@ public class BoxAlgorithm {
                     if (div == null || grid.get(to, c) != null) continue;
 
                     // Regulators cannot share row with reaction
-                    final Collection<Place> places = div.getBusyPlaces();
-                    if (places.contains(BOTTOM) && reactionPosition.getRow() == to) continue;
+                    final int places = div.getOccupancy();
+                    if (Occupancy.contains(places, BOTTOM) && reactionPosition.getRow() == to) continue;
 
                     // Regulators cannot share row with inputs or outputs
-                    final Div[] row = grid.getRow(to);
-                    if (places.contains(BOTTOM) && (hasPlace(row, LEFT) || hasPlace(row, RIGHT))) continue;
+                    final Grid.Line<Div> row = grid.getRow(to);
+                    if (Occupancy.contains(places, BOTTOM) && (hasPlace(row, LEFT) || hasPlace(row, RIGHT))) continue;
 
                     // Two inputs cannot share row
-                    if (places.contains(LEFT) && hasPlace(row, LEFT)) continue;
+                    if (Occupancy.contains(places, LEFT) && hasPlace(row, LEFT)) continue;
                     // Two outputs cannot share column
-                    if (places.contains(RIGHT) && hasPlace(row, RIGHT)) continue;
+                    if (Occupancy.contains(places, RIGHT) && hasPlace(row, RIGHT)) continue;
 
-                    if (canMove(grid, new Point(r, c), new Point(to, c))) {
+                    if (canMove(grid, r, c, to, c)) {
                         grid.set(to, c, div);
                         grid.set(r, c, null);
                         hasMoved = true;
@@ -367,25 +410,30 @@ public class BoxAlgorithm {
         } while (hasMoved);
     }
 
-    private boolean hasPlace(Div[] divs, Place place) {
-        return Arrays.stream(divs).filter(Objects::nonNull).anyMatch(div -> div.getBusyPlaces().contains(place));
+    private boolean hasPlace(Grid.Line<Div> divs, Place place) {
+        return Occupancy.contains(divs.getOccupancy(), place);
     }
 
     /**
      * Tests if the content in source can be moved to target without breaking the diagram. Returns false as soon as it
      * meets the false condition.
      *
-     * @param grid   current grid
-     * @param source position where the current content is
-     * @param target desired position where to move the content
+     * @param grid      current grid
+     * @param sourceRow row where the current content is
+     * @param sourceCol column where the current content is
+     * @param targetRow desired row where to move the content
+     * @param targetCol desired column where to move the content
      * @return true if, and only if, moving the content from source to target generated a valid diagram
      */
-    private boolean canMove(Grid<Div> grid, Point source, Point target) {
-        if (grid.get(target.getRow(), target.getCol()) != null) return false;
-        final Grid<Div> gridCopy = new Grid<>(grid);
-        gridCopy.set(target.getRow(), target.getCol(), grid.get(source.getRow(), source.getCol()));
-        gridCopy.set(source.getRow(), source.getCol(), null);
-        final Grid<CompartmentGlyph> compartmentGridCopy = new Grid<>(CompartmentGlyph.class, grid.getRows(), grid.getColumns());
+    private boolean canMove(Grid<Div> grid, int sourceRow, int sourceCol, int targetRow, int targetCol) {
+        if (grid.get(targetRow, targetCol) != null) return false;
+        // the copies are overwritten on every call
+        final Grid<Div> gridCopy = scratch.divs;
+        gridCopy.copy(grid);
+        gridCopy.set(targetRow, targetCol, grid.get(sourceRow, sourceCol));
+        gridCopy.set(sourceRow, sourceCol, null);
+        final Grid<CompartmentGlyph> compartmentGridCopy = scratch.compartments;
+        compartmentGridCopy.reset(grid.getRows(), grid.getColumns());
         if (!computeCompartment(layout.getCompartmentRoot(), gridCopy, compartmentGridCopy)) return false;
         return elementsInCompartments(gridCopy, compartmentGridCopy);
     }
@@ -413,16 +461,8 @@ public class BoxAlgorithm {
         return true;
     }
 
-    private boolean containsRole(Div[] divs, Collection<EntityRole> roles) {
-        for (final Div div : divs) {
-            if (div != null) {
-                final Collection<EntityRole> containedRoles = PlacePositioner.simplify(div.getContainedRoles());
-                for (final EntityRole role : roles) {
-                    if (containedRoles.contains(role)) return true;
-                }
-            }
-        }
-        return false;
+    private boolean containsRole(Grid.Line<Div> divs, int roles) {
+        return (Occupancy.simplify(divs.getOccupancy()) & roles) != 0;
     }
 
     /**
@@ -557,7 +597,8 @@ public class BoxAlgorithm {
     }
 
     /**
-     * Calculates the absolute position of the reaction in the grid
+     * Calculates the absolute position of the reaction in the grid. A new point is returned on every call, so callers
+     * can keep it while the grid changes.
      */
     private Point getReactionPosition(Grid<Div> grid) {
         for (int r = 0; r < grid.getRows(); r++) {
@@ -637,7 +678,7 @@ public class BoxAlgorithm {
     private void removeEmptyRows(Grid<Div> divs) {
         int r = 0;
         while (r < divs.getRows()) {
-            if (Arrays.stream(divs.getRow(r)).allMatch(Objects::isNull)) {
+            if (divs.getRow(r).isEmpty()) {
                 divs.removeRows(r, 1);
             } else r++;
         }
@@ -646,7 +687,7 @@ public class BoxAlgorithm {
     private void removeEmptyCols(Grid<Div> divs) {
         int c = 0;
         while (c < divs.getColumns()) {
-            if (Arrays.stream(divs.getColumn(c)).allMatch(Objects::isNull)) {
+            if (divs.getColumn(c).isEmpty()) {
                 divs.removeColumns(c, 1);
             } else c++;
         }
@@ -664,13 +705,13 @@ public class BoxAlgorithm {
         // This always happens in the center row
         final int r = reactionPosition.getRow();
         for (final Place place : Arrays.asList(LEFT, RIGHT)) {
-            final Div[] row = grid.getRow(r);
+            final Grid.Line<Div> row = grid.getRow(r);
             long count = count(row, place);
             while (count > 1) {
                 grid.insertRow(r + 1);
-                for (int col = 0; col < row.length; col++) {
-                    final Div div = row[col];
-                    if (div != null && div.getBusyPlaces().contains(place)) {
+                for (int col = 0; col < row.size(); col++) {
+                    final Div div = row.get(col);
+                    if (div != null && Occupancy.contains(div.getOccupancy(), place)) {
                         grid.set(r + 1, col, div);
                         grid.set(r, col, null);
                         break;
@@ -687,35 +728,25 @@ public class BoxAlgorithm {
         // column (R-HSA-425661)
         final int c = reactionPosition.getCol();
         for (final Place place : Arrays.asList(TOP, BOTTOM)) {
-            Div[] column = grid.getColumn(c);
+            final Grid.Line<Div> column = grid.getColumn(c);
             long count = count(column, place);
             while (count > 1) {
                 grid.insertColumn(c + 1);
-                for (int row = 0; row < column.length; row++) {
-                    final Div div = column[row];
-                    if (div != null && div.getBusyPlaces().contains(place)) {
+                for (int row = 0; row < column.size(); row++) {
+                    final Div div = column.get(row);
+                    if (div != null && Occupancy.contains(div.getOccupancy(), place)) {
                         grid.set(row, c + 1, div);
                         grid.set(row, c, null);
                         break;
                     }
                 }
-                column = grid.getColumn(c);  // Column must be generated again
                 count = count(column, place);
             }
         }
     }
 
-    private long count(Div[] row, Place place) {
-        return Arrays.stream(row).filter(Objects::nonNull).filter(div -> div.getBusyPlaces().contains(place)).count();
-    }
-
-    private int countRegulators(Point reactionPosition, Div[] column) {
-        int regulators = 0;
-        for (int r = reactionPosition.getRow() + 1; r < column.length; r++) {
-            if (column[r] != null && PlacePositioner.simplify(column[r].getContainedRoles()).contains(NEGATIVE_REGULATOR))
-                regulators++;
-        }
-        return regulators;
+    private long count(Grid.Line<Div> line, Place place) {
+        return line.count(Occupancy.of(place));
     }
 
     private void layoutCompartments() {
@@ -776,8 +807,7 @@ public class BoxAlgorithm {
         final double y = roles.contains(CATALYST)
                 ? b.getY() + 0.5 * textHeight
                 : b.getMaxY() + 0.5 * textHeight - Constants.COMPARTMENT_PADDING;
-        final Coordinate coordinate = new CoordinateImpl(x, y);
-        compartment.setLabelPosition(coordinate);
+        compartment.setLabelPosition(x, y);
         compartment.setBounds(b);
     }
 
@@ -824,8 +854,7 @@ public class BoxAlgorithm {
     private void moveToOrigin() {
         final double dx = -layout.getBounds().getX();
         final double dy = -layout.getBounds().getY();
-        final Coordinate delta = new CoordinateImpl(dx, dy);
         layout.getBounds().move(dx, dy);
-        move(layout.getCompartmentRoot(), delta, true);
+        move(layout.getCompartmentRoot(), dx, dy, true);
     }
 }
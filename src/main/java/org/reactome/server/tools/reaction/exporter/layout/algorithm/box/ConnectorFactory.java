@@ -117,8 +117,8 @@ public class ConnectorFactory {
         );
     }
 
-    private static boolean hasRole(Div[] divs, EntityRole role) {
-        return Arrays.stream(divs).filter(Objects::nonNull).anyMatch(div -> div.getContainedRoles().contains(role));
+    private static boolean hasRole(Grid.Line<Div> divs, EntityRole role) {
+        return Occupancy.contains(divs.getOccupancy(), role);
     }
 
     private static void inputs(LayoutIndex index, double x, double rx, double cy, double cx) {
@@ -16,6 +16,8 @@ import java.util.Collection;
  *     <dd>set of roles that are inside this Div. It should be recursive.</dd>
  *     <dt>busy places</dt>
  *     <dd>set of places this Div occupies. It should be recursive.</dd>
+ *     <dt>occupancy</dt>
+ *     <dd>contained roles and busy places as a bit mask, see {@link Occupancy}. Implementations should cache it.</dd>
  *     <dt>compartment</dt>
  *     <dd>compartment around this Div. Only the top one.</dd>
  *     <dt>padding (left, right, top, bottom)</dt>
@@ -25,7 +27,7 @@ import java.util.Collection;
  *
  * @author Pascual Lorente (plorente@ebi.ac.uk)
  */
-public interface Div extends HasInitial {
+public interface Div extends HasInitial, HasOccupancy {
 
     Bounds getBounds();
 
@@ -55,9 +57,19 @@ public interface Div extends HasInitial {
 
     void move(double dx, double dy);
 
-    Collection<EntityRole> getContainedRoles();
-
-    Collection<Place> getBusyPlaces();
+    /**
+     * @return a new set with the roles inside this div. Prefer {@link #getOccupancy()} for simple questions
+     */
+    default Collection<EntityRole> getContainedRoles() {
+        return Occupancy.getRoles(getOccupancy());
+    }
+
+    /**
+     * @return a new set with the places this div occupies. Prefer {@link #getOccupancy()} for simple questions
+     */
+    default Collection<Place> getBusyPlaces() {
+        return Occupancy.getPlaces(getOccupancy());
+    }
 
     CompartmentGlyph getCompartment();
 }
@@ -1,16 +1,10 @@
 package org.reactome.server.tools.reaction.exporter.layout.algorithm.box;
 
-import org.reactome.server.tools.diagram.data.layout.impl.CoordinateImpl;
 import org.reactome.server.tools.reaction.exporter.layout.algorithm.common.Transformer;
 import org.reactome.server.tools.reaction.exporter.layout.common.Bounds;
-import org.reactome.server.tools.reaction.exporter.layout.common.EntityRole;
 import org.reactome.server.tools.reaction.exporter.layout.model.*;
 
-import java.util.Collection;
-import java.util.EnumSet;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
 
 /**
  * Common class for divs that contain glyph groups.
@@ -19,6 +13,8 @@ import java.util.stream.Collectors;
  */
 public abstract class GlyphsLayout implements Div {
 
+    private static final int UNKNOWN = -1;
+
     private List<? extends Glyph> glyphs;
     private double leftPadding = 10;
     private double rightPadding = 10;
@@ -26,6 +22,7 @@ public abstract class GlyphsLayout implements Div {
     private double bottomPadding = 10;
     private double separation = 5;
     private Bounds bounds;
+    private int occupancy = UNKNOWN;
 
     GlyphsLayout(List<? extends Glyph> glyphs) {
         this.glyphs = glyphs;
@@ -75,32 +72,28 @@ public abstract class GlyphsLayout implements Div {
     @Override
     public void move(double dx, double dy) {
         final Bounds bounds = getBounds();
-        final CoordinateImpl delta = new CoordinateImpl(dx, dy);
-        for (final Glyph glyph : glyphs) Transformer.move(glyph, delta);
+        for (final Glyph glyph : glyphs) Transformer.move(glyph, dx, dy);
         bounds.move(dx, dy);
     }
 
     @Override
-    public Set<EntityRole> getContainedRoles() {
-        return glyphs.stream()
-                .filter(EntityGlyph.class::isInstance)
-                .map(EntityGlyph.class::cast)
-                .flatMap(entityGlyph -> entityGlyph.getRoles().stream())
-                .map(Role::getType)
-                .collect(Collectors.toSet());
-    }
-
-    @Override
-    public Collection<Place> getBusyPlaces() {
-        final Glyph glyph = glyphs.get(0);
-        if (glyph instanceof ReactionGlyph)
-            return EnumSet.of(Place.CENTER);
-        return glyphs.stream()
-                .map(EntityGlyph.class::cast)
-                .flatMap(entiyt -> entiyt.getRoles().stream())
-                .map(Role::getType)
-                .map(PlacePositioner::getPlace)
-                .collect(Collectors.toSet());
+    public int getOccupancy() {
+        // glyphs and their roles do not change, so occupancy is computed only once
+        if (occupancy == UNKNOWN) {
+            int roles = Occupancy.NONE;
+            int places = Occupancy.NONE;
+            for (final Glyph glyph : glyphs) {
+                if (glyph instanceof EntityGlyph) {
+                    for (final Role role : ((EntityGlyph) glyph).getRoles()) {
+                        roles |= Occupancy.of(role.getType());
+                        places |= Occupancy.of(PlacePositioner.getPlace(role.getType()));
+                    }
+                }
+            }
+            if (!glyphs.isEmpty() && glyphs.get(0) instanceof ReactionGlyph) places = Occupancy.of(Place.CENTER);
+            occupancy = roles | places;
+        }
+        return occupancy;
     }
 
     double getSeparation() {
@@ -1,11 +1,24 @@
 package org.reactome.server.tools.reaction.exporter.layout.algorithm.box;
 
 import java.lang.reflect.Array;
+import java.util.Arrays;
 import java.util.StringJoiner;
 
 /**
- * Generic matrix, indexed by row and col. All rows have the same number of columns. It wraps an Array of Arrays, and
- * contain operations to add or remove rows and columns and work with columns as rows.
+ * Generic matrix, indexed by row and col. All rows have the same number of columns. It contains operations to add or
+ * remove rows and columns and work with columns as rows.
+ * <p>
+ * Rows and columns are not stored in order. Cells live in a physical matrix, and two index maps translate logical rows
+ * and columns into physical ones. Inserting or removing rows or columns only shifts the index maps: new rows and
+ * columns take unused physical slots and removed ones are just forgotten. The physical matrix is compacted, and
+ * grown if needed, only when it runs out of free slots, so the cost of copying is amortized among insertions.
+ * <p>
+ * When elements implement {@link HasOccupancy}, the grid also keeps the occupancy of every row and column. For each
+ * line it counts how many elements have each bit, so the occupancy of a line is updated in constant time when an
+ * element is set, and asking for it does not need to scan the line. Counting starts the first time an occupancy is
+ * requested, so grids that are never asked, like temporary copies, do not pay for it. The occupancy of an element is
+ * read when it is counted: elements that change their occupancy must be set again. Counting tables are kept when the
+ * physical matrix is compacted or the grid is {@link #reset(int, int)}, and only reallocated if they are too small.
  *
  * @param <T> type of elements in grid
  *
@@ -13,16 +26,46 @@ import java.util.StringJoiner;
  */
 public class Grid<T extends HasInitial> {
 
+    private static final int MIN_CAPACITY = 4;
+    private static final int BITS = Integer.SIZE;
+    private static final Line<?>[] NO_LINES = new Line[0];
+
+    private final Class<?> clz;
     private int rows;
     private int columns;
-    private T[][] grid;
-    private Class<?> clz;
+    private Object[][] cells;
+    /** logical row to physical row */
+    private int[] rowIndex;
+    /** logical column to physical column */
+    private int[] colIndex;
+    /** physical rows already handed out, live or removed. Physical rows above this are empty */
+    private int usedRows;
+    /** physical columns already handed out, live or removed. Physical columns above this are empty */
+    private int usedColumns;
+    /** views, indexed by physical row or column */
+    private Line<?>[] rowLines = NO_LINES;
+    private Line<?>[] colLines = NO_LINES;
+    /** true when the tables below are up to date. They are not counted until first requested */
+    private boolean counted;
+    /** occupancy of each cell, indexed as cells, but can be bigger */
+    private int[][] occupancy;
+    /** number of elements with each occupancy bit, in position physical * BITS + bit */
+    private int[] rowCounts;
+    private int[] colCounts;
+    /** occupancy of each line, indexed by physical row or column */
+    private int[] rowOccupancy;
+    private int[] colOccupancy;
 
+    /**
+     * Wraps grid, without copying it. grid must be rectangular, with at least one row.
+     */
     Grid(Class<T> clz, T[][] grid) {
         this.clz = clz;
-        this.grid = grid;
-        rows = grid.length;
-        columns = grid[0].length;
+        this.cells = grid;
+        this.rows = this.usedRows = grid.length;
+        this.columns = this.usedColumns = grid[0].length;
+        this.rowIndex = identity(rows);
+        this.colIndex = identity(columns);
     }
 
     public Grid(Class<T> clz) {
@@ -31,21 +74,74 @@ public class Grid<T extends HasInitial> {
 
     public Grid(Class<T> clz, int rows, int columns) {
         this.clz = clz;
-        this.rows = rows;
-        this.columns = columns;
-        this.grid = createGrid(rows, columns);
+        this.rows = this.usedRows = rows;
+        this.columns = this.usedColumns = columns;
+        this.cells = new Object[Math.max(rows, MIN_CAPACITY)][Math.max(columns, MIN_CAPACITY)];
+        this.rowIndex = identity(Math.max(rows, MIN_CAPACITY));
+        this.colIndex = identity(Math.max(columns, MIN_CAPACITY));
     }
 
+    /**
+     * Creates a compact copy of that. Views are not shared.
+     */
     public Grid(Grid<T> that) {
         this.clz = that.clz;
-        this.rows = that.rows;
-        this.columns = that.columns;
-        this.grid = createGrid(rows, columns);
+        this.rows = this.usedRows = that.rows;
+        this.columns = this.usedColumns = that.columns;
+        this.cells = that.compacted(Math.max(rows, 1), Math.max(columns, 1));
+        this.rowIndex = identity(Math.max(rows, 1));
+        this.colIndex = identity(Math.max(columns, 1));
+    }
+
+    /**
+     * Empties this grid and gives it rows and columns, reusing the physical matrix when it is big enough. Views of the
+     * previous rows and columns are not valid anymore.
+     */
+    void reset(int rows, int columns) {
+        // only the physical rows and columns handed out can contain elements
+        if (cells.length < rows || cells[0].length < columns) {
+            cells = new Object[capacity(rows)][capacity(columns)];
+        } else {
+            for (int r = 0; r < usedRows; r++) Arrays.fill(cells[r], 0, usedColumns, null);
+        }
+        if (rowIndex.length < rows) rowIndex = new int[cells.length];
+        if (colIndex.length < columns) colIndex = new int[cells[0].length];
+        for (int r = 0; r < rows; r++) rowIndex[r] = r;
+        for (int c = 0; c < columns; c++) colIndex[c] = c;
+        this.rows = this.usedRows = rows;
+        this.columns = this.usedColumns = columns;
+        invalidate(rowLines);
+        invalidate(colLines);
+        counted = false;
+    }
+
+    /**
+     * Makes this grid a compact copy of that, like {@link #Grid(Grid)}, but reusing the memory of this grid.
+     */
+    void copy(Grid<T> that) {
+        reset(that.rows, that.columns);
         for (int r = 0; r < rows; r++) {
-            System.arraycopy(that.grid[r], 0, this.grid[r], 0, columns);
+            final Object[] source = that.cells[that.rowIndex[r]];
+            final Object[] target = cells[r];
+            for (int c = 0; c < columns; c++) target[c] = source[that.colIndex[c]];
         }
     }
 
+    private static void invalidate(Line<?>[] lines) {
+        for (int i = 0; i < lines.length; i++) {
+            if (lines[i] != null) {
+                lines[i].physical = -1;
+                lines[i] = null;
+            }
+        }
+    }
+
+    private static int[] identity(int n) {
+        final int[] rtn = new int[n];
+        for (int i = 0; i < n; i++) rtn[i] = i;
+        return rtn;
+    }
+
     public int getColumns() {
         return columns;
     }
@@ -54,12 +150,22 @@ public class Grid<T extends HasInitial> {
         return rows;
     }
 
+    /**
+     * @return a copy of the content of this grid as an array of rows
+     */
+    @SuppressWarnings("unchecked")
     public T[][] getGrid() {
-        return grid;
+        final T[][] rtn = (T[][]) Array.newInstance(clz, rows, columns);
+        for (int r = 0; r < rows; r++) {
+            final Object[] row = cells[rowIndex[r]];
+            for (int c = 0; c < columns; c++) rtn[r][c] = (T) row[colIndex[c]];
+        }
+        return rtn;
     }
 
+    @SuppressWarnings("unchecked")
     public T get(int row, int column) {
-        return grid[row][column];
+        return (T) cells[rowIndex[row]][colIndex[column]];
     }
 
     public void set(int row, int column, T element) {
@@ -67,7 +173,22 @@ public class Grid<T extends HasInitial> {
             insertRows(rows, row - rows + 1);
         if (columns <= column)
             insertColumns(columns, column - columns + 1);
-        grid[row][column] = element;
+        final int r = rowIndex[row];
+        final int c = colIndex[column];
+        cells[r][c] = element;
+        if (!counted) return;
+        final int old = occupancy[r][c];
+        final int mask = occupancy(element);
+        if (old == mask) return;
+        occupancy[r][c] = mask;
+        if (old != 0) {
+            rowOccupancy[r] = remove(rowCounts, r, rowOccupancy[r], old);
+            colOccupancy[c] = remove(colCounts, c, colOccupancy[c], old);
+        }
+        if (mask != 0) {
+            rowOccupancy[r] = add(rowCounts, r, rowOccupancy[r], mask);
+            colOccupancy[c] = add(colCounts, c, colOccupancy[c], mask);
+        }
     }
 
     /**
@@ -78,11 +199,11 @@ public class Grid<T extends HasInitial> {
      */
     public void insertRows(int index, int n) {
         if (n <= 0) return;
-        final T[][] rtn = createGrid(rows + n, columns);
-        if (index >= 0) System.arraycopy(grid, 0, rtn, 0, index);
-        if (rows - index >= 0) System.arraycopy(grid, index, rtn, index + n, rows - index);
+        if (usedRows + n > cells.length) rebuild(capacity(rows + n), cells[0].length);
+        if (rowIndex.length < rows + n) rowIndex = Arrays.copyOf(rowIndex, capacity(rows + n));
+        System.arraycopy(rowIndex, index, rowIndex, index + n, rows - index);
+        for (int i = 0; i < n; i++) rowIndex[index + i] = usedRows++;
         rows += n;
-        grid = rtn;
     }
 
     /**
@@ -93,14 +214,11 @@ public class Grid<T extends HasInitial> {
      */
     public void insertColumns(int index, int n) {
         if (n <= 0) return;
-        final T[][] rtn = createGrid(rows, columns + n);
-        for (int r = 0; r < rows; r++) {
-            if (index >= 0) System.arraycopy(grid[r], 0, rtn[r], 0, index);
-            if (columns - index >= 0)
-                System.arraycopy(grid[r], index, rtn[r], index + n, columns - index);
-        }
+        if (usedColumns + n > cells[0].length) rebuild(cells.length, capacity(columns + n));
+        if (colIndex.length < columns + n) colIndex = Arrays.copyOf(colIndex, capacity(columns + n));
+        System.arraycopy(colIndex, index, colIndex, index + n, columns - index);
+        for (int i = 0; i < n; i++) colIndex[index + i] = usedColumns++;
         columns += n;
-        grid = rtn;
     }
 
     /**
@@ -121,55 +239,179 @@ public class Grid<T extends HasInitial> {
         insertColumns(index, 1);
     }
 
-
-    public T[] getRow(int row) {
-        return row < rows ? grid[row] : null;
+    public void removeRows(int index, int n) {
+        n = Math.min(n, rows - index);
+        if (n <= 0) return;
+        // columns lose the elements in the removed rows
+        if (counted) for (int r = index; r < index + n; r++) {
+            final int[] row = occupancy[rowIndex[r]];
+            for (int c = 0; c < columns; c++) {
+                final int p = colIndex[c];
+                if (row[p] != 0) colOccupancy[p] = remove(colCounts, p, colOccupancy[p], row[p]);
+            }
+        }
+        System.arraycopy(rowIndex, index + n, rowIndex, index, rows - index - n);
+        rows -= n;
     }
 
-    public T[] getColumn(int col) {
-        if (col < columns) {
-            final T[] rtn = createArray(rows);
-            for (int i = 0; i < grid.length; i++) {
-                final T[] row = grid[i];
-                rtn[i] = row[col];
+    public void removeColumns(int index, int n) {
+        n = Math.min(n, columns - index);
+        if (n <= 0) return;
+        // rows lose the elements in the removed columns
+        if (counted) for (int c = index; c < index + n; c++) {
+            final int p = colIndex[c];
+            for (int r = 0; r < rows; r++) {
+                final int q = rowIndex[r];
+                final int mask = occupancy[q][p];
+                if (mask != 0) rowOccupancy[q] = remove(rowCounts, q, rowOccupancy[q], mask);
             }
-            return rtn;
         }
-        return null;
+        System.arraycopy(colIndex, index + n, colIndex, index, columns - index - n);
+        columns -= n;
     }
 
+    /**
+     * Live view of a row. The view follows its row when rows are inserted or removed before it, and reflects every
+     * change in the grid, so there is no need to request it again after modifying the grid. Views are created once per
+     * row, so calling this method does not allocate memory.
+     *
+     * @return a view of row, or null if row is out of the grid
+     */
     @SuppressWarnings("unchecked")
-    private T[] createArray(int n) {
-        return (T[]) Array.newInstance(clz, n);
+    public Line<T> getRow(int row) {
+        if (row >= rows) return null;
+        final int physical = rowIndex[row];
+        if (rowLines.length <= physical) rowLines = Arrays.copyOf(rowLines, cells.length);
+        if (rowLines[physical] == null) rowLines[physical] = new Line<>(this, true, physical);
+        return (Line<T>) rowLines[physical];
     }
 
+    /**
+     * Live view of a column. Same as {@link #getRow(int)}, but for columns.
+     *
+     * @return a view of col, or null if col is out of the grid
+     */
     @SuppressWarnings("unchecked")
-    private T[][] createGrid(int rows, int cols) {
-        return (T[][]) Array.newInstance(clz, rows, cols);
+    public Line<T> getColumn(int col) {
+        if (col >= columns) return null;
+        final int physical = colIndex[col];
+        if (colLines.length <= physical) colLines = Arrays.copyOf(colLines, cells[0].length);
+        if (colLines[physical] == null) colLines[physical] = new Line<>(this, false, physical);
+        return (Line<T>) colLines[physical];
     }
 
-    public void removeRows(int index, int n) {
-        n = Math.min(n, rows - index);
-        if (n <= 0) return;
-        int p = index + n;
-        final T[][] rtn = createGrid(rows - n, columns);
-        if (index >= 0) System.arraycopy(grid, 0, rtn, 0, index);
-        if (p < rows) System.arraycopy(grid, p, rtn, index, rows - p);
-        rows -= n;
-        grid = rtn;
+    /**
+     * @return the occupancy of the elements in row
+     */
+    public int getRowOccupancy(int row) {
+        count();
+        return rowOccupancy[rowIndex[row]];
     }
 
-    public void removeColumns(int index, int n) {
-        n = Math.min(n, columns - index);
-        if (n <= 0) return;
-        int p = index + n;
-        final T[][] rtn = createGrid(rows, columns - n);
+    /**
+     * @return the occupancy of the elements in column
+     */
+    public int getColumnOccupancy(int column) {
+        count();
+        return colOccupancy[colIndex[column]];
+    }
+
+    private static int occupancy(Object element) {
+        return element instanceof HasOccupancy ? ((HasOccupancy) element).getOccupancy() : 0;
+    }
+
+    private static int add(int[] counts, int line, int occupancy, int mask) {
+        final int offset = line * BITS;
+        for (int bits = mask; bits != 0; bits &= bits - 1) counts[offset + Integer.numberOfTrailingZeros(bits)]++;
+        return occupancy | mask;
+    }
+
+    private static int remove(int[] counts, int line, int occupancy, int mask) {
+        final int offset = line * BITS;
+        for (int bits = mask; bits != 0; bits &= bits - 1) {
+            final int bit = Integer.numberOfTrailingZeros(bits);
+            if (--counts[offset + bit] == 0) occupancy &= ~(1 << bit);
+        }
+        return occupancy;
+    }
+
+    /**
+     * Computes the occupancy of every cell, row and column from scratch, if not computed yet.
+     */
+    private void count() {
+        if (counted) return;
+        final int rowCapacity = cells.length;
+        final int columnCapacity = cells[0].length;
+        if (occupancy == null || occupancy.length < rowCapacity || occupancy[0].length < columnCapacity) {
+            occupancy = new int[rowCapacity][columnCapacity];
+            rowCounts = new int[rowCapacity * BITS];
+            colCounts = new int[columnCapacity * BITS];
+            rowOccupancy = new int[rowCapacity];
+            colOccupancy = new int[columnCapacity];
+        } else {
+            for (int[] row : occupancy) Arrays.fill(row, 0);
+            Arrays.fill(rowCounts, 0);
+            Arrays.fill(colCounts, 0);
+            Arrays.fill(rowOccupancy, 0);
+            Arrays.fill(colOccupancy, 0);
+        }
+        counted = true;
+        for (int i = 0; i < rows; i++) {
+            final int r = rowIndex[i];
+            for (int j = 0; j < columns; j++) {
+                final int c = colIndex[j];
+                final int mask = occupancy(cells[r][c]);
+                if (mask == 0) continue;
+                occupancy[r][c] = mask;
+                rowOccupancy[r] = add(rowCounts, r, rowOccupancy[r], mask);
+                colOccupancy[c] = add(colCounts, c, colOccupancy[c], mask);
+            }
+        }
+    }
+
+    private static int capacity(int size) {
+        return Math.max(2 * size, MIN_CAPACITY);
+    }
+
+    /**
+     * Moves live rows and columns to the beginning of a new physical matrix, in logical order, dropping removed ones.
+     */
+    private void rebuild(int rowCapacity, int columnCapacity) {
+        cells = compacted(rowCapacity, columnCapacity);
+        rowLines = remap(rowLines, rowIndex, rows, rowCapacity);
+        colLines = remap(colLines, colIndex, columns, columnCapacity);
+        for (int r = 0; r < rows; r++) rowIndex[r] = r;
+        for (int c = 0; c < columns; c++) colIndex[c] = c;
+        usedRows = rows;
+        usedColumns = columns;
+        // occupancy will be counted again when needed
+        counted = false;
+    }
+
+    private Object[][] compacted(int rowCapacity, int columnCapacity) {
+        final Object[][] rtn = new Object[rowCapacity][columnCapacity];
         for (int r = 0; r < rows; r++) {
-            if (index >= 0) System.arraycopy(grid[r], 0, rtn[r], 0, index);
-            if (p < columns) System.arraycopy(grid[r], p, rtn[r], index, columns - p);
+            final Object[] source = cells[rowIndex[r]];
+            final Object[] target = rtn[r];
+            for (int c = 0; c < columns; c++) target[c] = source[colIndex[c]];
         }
-        columns -= n;
-        grid = rtn;
+        return rtn;
+    }
+
+    private static Line<?>[] remap(Line<?>[] lines, int[] index, int size, int capacity) {
+        if (lines.length == 0) return lines;
+        final Line<?>[] rtn = new Line[capacity];
+        for (int i = 0; i < size; i++) {
+            final int physical = index[i];
+            if (physical < lines.length && lines[physical] != null) {
+                rtn[i] = lines[physical];
+                rtn[i].physical = i;
+                lines[physical] = null;
+            }
+        }
+        // views of removed lines are not valid anymore
+        for (Line<?> line : lines) if (line != null) line.physical = -1;
+        return rtn;
     }
 
     @Override
@@ -178,11 +420,79 @@ public class Grid<T extends HasInitial> {
         for (int r = 0; r < rows; r++) {
             final StringJoiner line = new StringJoiner(" ");
             for (int c = 0; c < columns; c++) {
-                if (grid[r][c] == null) line.add("-");
-                else line.add(String.valueOf(grid[r][c].getInitial()));
+                final T element = get(r, c);
+                if (element == null) line.add("-");
+                else line.add(String.valueOf(element.getInitial()));
             }
             rtn.add(line.toString());
         }
         return rtn.toString();
     }
+
+    /**
+     * A row or a column of a {@link Grid}. It does not copy any data, it reads directly from the grid.
+     *
+     * @param <T> type of elements in grid
+     */
+    public static final class Line<T extends HasInitial> {
+
+        private final Grid<T> grid;
+        private final boolean row;
+        private int physical;
+
+        private Line(Grid<T> grid, boolean row, int physical) {
+            this.grid = grid;
+            this.row = row;
+            this.physical = physical;
+        }
+
+        /**
+         * @return number of elements in the line: columns for a row, rows for a column
+         */
+        public int size() {
+            return row ? grid.columns : grid.rows;
+        }
+
+        @SuppressWarnings("unchecked")
+        public T get(int i) {
+            return (T) (row
+                    ? grid.cells[physical][grid.colIndex[i]]
+                    : grid.cells[grid.rowIndex[i]][physical]);
+        }
+
+        /**
+         * @return the occupancy of the elements in the line, see {@link HasOccupancy}
+         */
+        public int getOccupancy() {
+            grid.count();
+            return row ? grid.rowOccupancy[physical] : grid.colOccupancy[physical];
+        }
+
+        /**
+         * @return how many elements in the line have all the bits in mask
+         */
+        public int count(int mask) {
+            grid.count();
+            if (Integer.bitCount(mask) == 1) {
+                final int[] counts = row ? grid.rowCounts : grid.colCounts;
+                return counts[physical * BITS + Integer.numberOfTrailingZeros(mask)];
+            }
+            int count = 0;
+            for (int i = 0; i < size(); i++) {
+                final int occupancy = row
+                        ? grid.occupancy[physical][grid.colIndex[i]]
+                        : grid.occupancy[grid.rowIndex[i]][physical];
+                if ((occupancy & mask) == mask) count++;
+            }
+            return count;
+        }
+
+        /**
+         * @return true if all the elements in the line are null
+         */
+        public boolean isEmpty() {
+            for (int i = 0; i < size(); i++) if (get(i) != null) return false;
+            return true;
+        }
+    }
 }
@@ -0,0 +1,14 @@
+package org.reactome.server.tools.reaction.exporter.layout.algorithm.box;
+
+/**
+ * Elements that know which roles and places they occupy. When elements in a {@link Grid} implement this interface,
+ * the grid keeps the occupancy of each row and column, so questions like "is there any input in this column?" do not
+ * need to scan the column.
+ */
+public interface HasOccupancy {
+
+    /**
+     * @return a bit mask with the roles and places occupied by this element, as built by {@link Occupancy}
+     */
+    int getOccupancy();
+}
@@ -1,6 +1,5 @@
 package org.reactome.server.tools.reaction.exporter.layout.algorithm.box;
 
-import org.reactome.server.tools.diagram.data.layout.impl.CoordinateImpl;
 import org.reactome.server.tools.reaction.exporter.layout.algorithm.common.Transformer;
 import org.reactome.server.tools.reaction.exporter.layout.common.Bounds;
 import org.reactome.server.tools.reaction.exporter.layout.model.Glyph;
@@ -28,7 +27,7 @@ public class HorizontalLayout extends GlyphsLayout {
         for (final Glyph glyph : getGlyphs()) {
             final double width = Transformer.getBounds(glyph).getWidth();
             final double cx = x + 0.5 * width;
-            Transformer.center(glyph, new CoordinateImpl(cx, cy));
+            Transformer.center(glyph, cx, cy);
             x += getSeparation() + width;
         }
         return new Bounds(0d, 0d, x - getSeparation() + getRightPadding(), height + getBottomPadding() + getTopPadding());
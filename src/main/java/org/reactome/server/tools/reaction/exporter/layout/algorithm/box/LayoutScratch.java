@@ -0,0 +1,101 @@
+package org.reactome.server.tools.reaction.exporter.layout.algorithm.box;
+
+import org.reactome.server.tools.reaction.exporter.layout.model.CompartmentGlyph;
+
+import java.util.Arrays;
+
+/**
+ * Working memory of {@link BoxAlgorithm}. Compaction works on a grid with the content of every box, and tries hundreds
+ * of moves per layout, each of them needing a copy of the grid and a grid of compartments, while sizing needs a few
+ * arrays as long as the rows and columns of the grid. Instead of allocating them on every move and layout, every thread
+ * keeps one instance of this class and {@link BoxAlgorithm#compute()} resets it before using it. Grids keep their
+ * occupancy tables too.
+ * <p>
+ * Arrays only grow, so they can be longer than the grid. Nothing in here can be kept after the layout is computed.
+ */
+final class LayoutScratch {
+
+    private static final int MIN_LENGTH = 16;
+    private static final ThreadLocal<LayoutScratch> SCRATCH = ThreadLocal.withInitial(LayoutScratch::new);
+
+    /** the grid of the layout, where compaction happens */
+    final Grid<Div> grid = new Grid<>(Div.class);
+    /** copy of the grid where moves are tested */
+    final Grid<Div> divs = new Grid<>(Div.class);
+    /** compartments of the copy of the grid */
+    final Grid<CompartmentGlyph> compartments = new Grid<>(CompartmentGlyph.class);
+
+    private double[] heights = new double[MIN_LENGTH];
+    private double[] verticalPadding = new double[MIN_LENGTH];
+    private double[] widths = new double[MIN_LENGTH];
+    private double[] horizontalPadding = new double[MIN_LENGTH];
+    private double[] cy = new double[MIN_LENGTH];
+    private double[] cx = new double[MIN_LENGTH];
+    private boolean inUse;
+
+    private LayoutScratch() {
+    }
+
+    /**
+     * @return the scratch of the current thread, or a new one if the current thread is already using it
+     */
+    static LayoutScratch acquire() {
+        final LayoutScratch scratch = SCRATCH.get();
+        if (scratch.inUse) return new LayoutScratch();
+        scratch.inUse = true;
+        return scratch;
+    }
+
+    /**
+     * Gives back the scratch, so the next layout in this thread can use it. Grids are emptied, so they do not keep the
+     * glyphs of the layout alive.
+     */
+    void release() {
+        grid.reset(0, 0);
+        divs.reset(0, 0);
+        compartments.reset(0, 0);
+        inUse = false;
+    }
+
+    /**
+     * Sets every sizing array to 0 and makes them, at least, as long as rows or columns.
+     */
+    void resetSizes(int rows, int columns) {
+        heights = clear(heights, rows);
+        verticalPadding = clear(verticalPadding, rows);
+        cy = clear(cy, rows);
+        widths = clear(widths, columns);
+        horizontalPadding = clear(horizontalPadding, columns);
+        cx = clear(cx, columns);
+    }
+
+    private static double[] clear(double[] array, int length) {
+        if (array.length < length) return new double[Math.max(2 * length, MIN_LENGTH)];
+        Arrays.fill(array, 0);
+        return array;
+    }
+
+    double[] getHeights() {
+        return heights;
+    }
+
+    double[] getVerticalPadding() {
+        return verticalPadding;
+    }
+
+    double[] getWidths() {
+        return widths;
+    }
+
+    double[] getHorizontalPadding() {
+        return horizontalPadding;
+    }
+
+    double[] getCy() {
+        return cy;
+    }
+
+    double[] getCx() {
+        return cx;
+    }
+}
@@ -0,0 +1,76 @@
+package org.reactome.server.tools.reaction.exporter.layout.algorithm.box;
+
+import org.reactome.server.tools.reaction.exporter.layout.common.EntityRole;
+
+import java.util.Collection;
+import java.util.EnumSet;
+
+/**
+ * Bit masks to summarize the roles and places occupied by a {@link Div}, or by a whole row or column of a {@link Grid}.
+ * Each {@link EntityRole} has one bit, starting at bit 0, and each {@link Place} has one bit, starting after the
+ * roles. Masks of several elements are merged with a bitwise or.
+ */
+public final class Occupancy {
+
+    private static final EntityRole[] ROLES = EntityRole.values();
+    private static final Place[] PLACES = Place.values();
+    private static final int PLACE_SHIFT = ROLES.length;
+
+    public static final int NONE = 0;
+    public static final int ROLES_MASK = (1 << ROLES.length) - 1;
+    public static final int PLACES_MASK = ((1 << PLACES.length) - 1) << PLACE_SHIFT;
+
+    private Occupancy() {
+    }
+
+    public static int of(EntityRole role) {
+        return 1 << role.ordinal();
+    }
+
+    public static int of(Place place) {
+        return 1 << (PLACE_SHIFT + place.ordinal());
+    }
+
+    /**
+     * @return the mask of the role plus the mask of the place of the role
+     */
+    public static int withPlace(EntityRole role) {
+        return of(role) | of(PlacePositioner.getPlace(role));
+    }
+
+    public static int ofRoles(Collection<EntityRole> roles) {
+        int mask = NONE;
+        for (final EntityRole role : roles) mask |= of(role);
+        return mask;
+    }
+
+    public static boolean contains(int mask, EntityRole role) {
+        return (mask & of(role)) != 0;
+    }
+
+    public static boolean contains(int mask, Place place) {
+        return (mask & of(place)) != 0;
+    }
+
+    /**
+     * Same as {@link PlacePositioner#simplify(Collection)}, but for masks: POSITIVE_REGULATOR is replaced by
+     * NEGATIVE_REGULATOR.
+     */
+    public static int simplify(int mask) {
+        final int positive = of(EntityRole.POSITIVE_REGULATOR);
+        if ((mask & positive) == 0) return mask;
+        return (mask & ~positive) | of(EntityRole.NEGATIVE_REGULATOR);
+    }
+
+    public static EnumSet<EntityRole> getRoles(int mask) {
+        final EnumSet<EntityRole> roles = EnumSet.noneOf(EntityRole.class);
+        for (final EntityRole role : ROLES) if (contains(mask, role)) roles.add(role);
+        return roles;
+    }
+
+    public static EnumSet<Place> getPlaces(int mask) {
+        final EnumSet<Place> places = EnumSet.noneOf(Place.class);
+        for (final Place place : PLACES) if (contains(mask, place)) places.add(place);
+        return places;
+    }
+}
@@ -0,0 +1,233 @@
+package org.reactome.server.tools.reaction.exporter.layout.algorithm.box;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.reactome.server.tools.reaction.exporter.layout.algorithm.common.LayoutIndex;
+import org.reactome.server.tools.reaction.exporter.layout.model.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Result of the positioning and compaction steps of {@link BoxAlgorithm}: the size of the grid and which group of
+ * glyphs goes in every cell. Both steps only look at the compartment tree, which compartment contains the reaction and
+ * which roles are in each compartment, never at names or sizes, so reactions with the same structure get the same
+ * grid. This is the case of the reactions inferred from the same reaction in every species.
+ * <p>
+ * Instead of glyphs, cells point to a compartment, by its position in the compartment tree, and one of the groups
+ * that {@link Box} creates for it (the reaction, inputs, outputs, catalysts or regulators), so the grid can be rebuilt
+ * for any reaction with the same {@link Key}. Topologies are immutable and kept in a bounded cache shared by all
+ * threads.
+ */
+final class Topology {
+
+    private static final int CACHE_SIZE = 50_000;
+    private static final Cache<Key, Topology> CACHE = CacheBuilder.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .recordStats()
+            .build();
+
+    private static final int REACTION = 0;
+    private static final int INPUTS = 1;
+    private static final int OUTPUTS = 2;
+    private static final int CATALYSTS = 3;
+    private static final int REGULATORS = 4;
+
+    private final int rows;
+    private final int columns;
+    /** row, column, compartment and group of every non empty cell */
+    private final int[] cells;
+    /** the compartment that contains the reaction after positioning, which can move it to a sub compartment */
+    private final int reactionContainer;
+    private final int reactionCompartment;
+
+    private Topology(int rows, int columns, int[] cells, int reactionContainer, int reactionCompartment) {
+        this.rows = rows;
+        this.columns = columns;
+        this.cells = cells;
+        this.reactionContainer = reactionContainer;
+        this.reactionCompartment = reactionCompartment;
+    }
+
+    static Topology get(Key key) {
+        return CACHE.getIfPresent(key);
+    }
+
+    static void put(Key key, Topology topology) {
+        CACHE.put(key, topology);
+    }
+
+    /**
+     * @return hits, misses and evictions of the cache since the start of the program
+     */
+    static CacheStats getCacheStats() {
+        return CACHE.stats();
+    }
+
+    /**
+     * Empties the cache, its statistics are kept
+     */
+    static void clearCache() {
+        CACHE.invalidateAll();
+    }
+
+    /**
+     * Computes the structural signature of a layout, everything positioning and compaction depend on. For every
+     * compartment, in pre-order: number of children, roles of its glyphs and roles of each of its groups, as the
+     * occupancy masks of the divs that {@link Box} creates from them. Then, the compartment of the reaction and whether
+     * any input is also a catalyst.
+     *
+     * @param compartments filled with the compartments of the tree, in the same order as in the key
+     */
+    static Key key(CompartmentGlyph root, ReactionGlyph reaction, LayoutIndex index, List<CompartmentGlyph> compartments) {
+        addCompartments(root, compartments);
+        final int[] signature = new int[6 * compartments.size() + 2];
+        int i = 0;
+        for (final CompartmentGlyph compartment : compartments) {
+            int contained = Occupancy.NONE;
+            for (final Glyph glyph : compartment.getContainedGlyphs()) {
+                if (glyph instanceof ReactionGlyph) contained |= Occupancy.of(Place.CENTER);
+                else for (final Role role : ((EntityGlyph) glyph).getRoles())
+                    contained |= Occupancy.withPlace(role.getType());
+            }
+            signature[i++] = compartment.getChildren().size();
+            signature[i++] = contained;
+            signature[i++] = occupancy(index.filterInputs(compartment));
+            signature[i++] = occupancy(index.filterOutputs(compartment));
+            signature[i++] = occupancy(index.filterCatalysts(compartment));
+            signature[i++] = occupancy(index.filterRegulators(compartment));
+        }
+        signature[i++] = indexOf(compartments, reaction.getCompartment());
+        signature[i] = index.hasCatalystInInputs() ? 1 : 0;
+        return new Key(signature);
+    }
+
+    private static void addCompartments(CompartmentGlyph compartment, List<CompartmentGlyph> compartments) {
+        compartments.add(compartment);
+        for (final CompartmentGlyph child : compartment.getChildren()) addCompartments(child, compartments);
+    }
+
+    /**
+     * Same mask as {@link GlyphsLayout#getOccupancy()} for a div with these entities
+     */
+    private static int occupancy(List<EntityGlyph> entities) {
+        int mask = Occupancy.NONE;
+        for (final EntityGlyph entity : entities)
+            for (final Role role : entity.getRoles())
+                mask |= Occupancy.of(role.getType()) | Occupancy.of(PlacePositioner.getPlace(role.getType()));
+        return mask;
+    }
+
+    /**
+     * Records the grid once compaction is finished.
+     *
+     * @param compartments the compartments, in the order given by {@link #key(CompartmentGlyph, ReactionGlyph,
+     *                     LayoutIndex, List)}
+     * @return the topology of grid, or null if any cell cannot be described
+     */
+    static Topology of(Grid<Div> grid, List<CompartmentGlyph> compartments, ReactionGlyph reaction, LayoutIndex index) {
+        final int[] cells = new int[4 * grid.getRows() * grid.getColumns()];
+        int n = 0;
+        for (int r = 0; r < grid.getRows(); r++) {
+            for (int c = 0; c < grid.getColumns(); c++) {
+                final Div div = grid.get(r, c);
+                if (div == null) continue;
+                if (!(div instanceof GlyphsLayout)) return null;
+                final List<? extends Glyph> glyphs = ((GlyphsLayout) div).getGlyphs();
+                final CompartmentGlyph compartment = div.getCompartment();
+                final int group = glyphs.size() == 1 && glyphs.get(0) == reaction ? REACTION : getGroup(glyphs, compartment, index);
+                final int position = indexOf(compartments, compartment);
+                if (group < 0 || position < 0) return null;
+                cells[n++] = r;
+                cells[n++] = c;
+                cells[n++] = position;
+                cells[n++] = group;
+            }
+        }
+        int container = -1;
+        for (int i = 0; i < compartments.size(); i++) {
+            if (compartments.get(i).getContainedGlyphs().contains(reaction)) {
+                container = i;
+                break;
+            }
+        }
+        final int compartment = indexOf(compartments, reaction.getCompartment());
+        if (container < 0 || compartment < 0) return null;
+        return new Topology(grid.getRows(), grid.getColumns(), Arrays.copyOf(cells, n), container, compartment);
+    }
+
+    private static int getGroup(List<? extends Glyph> glyphs, CompartmentGlyph compartment, LayoutIndex index) {
+        // Box uses the lists of the index as they are
+        if (glyphs == index.filterInputs(compartment)) return INPUTS;
+        if (glyphs == index.filterOutputs(compartment)) return OUTPUTS;
+        if (glyphs == index.filterCatalysts(compartment)) return CATALYSTS;
+        if (glyphs == index.filterRegulators(compartment)) return REGULATORS;
+        return -1;
+    }
+
+    /**
+     * Writes into grid the same content that positioning and compaction would, and moves the reaction to the same
+     * compartment.
+     *
+     * @param compartments the compartments of the layout, in the order given by {@link #key(CompartmentGlyph,
+     *                     ReactionGlyph, LayoutIndex, List)}
+     */
+    void apply(Grid<Div> grid, List<CompartmentGlyph> compartments, ReactionGlyph reaction, LayoutIndex index) {
+        final CompartmentGlyph container = compartments.get(reactionContainer);
+        if (!container.getContainedGlyphs().contains(reaction)) {
+            for (final CompartmentGlyph compartment : compartments) compartment.getContainedGlyphs().remove(reaction);
+            container.getContainedGlyphs().add(reaction);
+        }
+        reaction.setCompartment(compartments.get(reactionCompartment));
+        grid.reset(rows, columns);
+        for (int i = 0; i < cells.length; i += 4) {
+            final CompartmentGlyph compartment = compartments.get(cells[i + 2]);
+            grid.set(cells[i], cells[i + 1], createDiv(cells[i + 3], compartment, reaction, index));
+        }
+    }
+
+    private static Div createDiv(int group, CompartmentGlyph compartment, ReactionGlyph reaction, LayoutIndex index) {
+        switch (group) {
+            case REACTION:
+                return Box.createReactionDiv(reaction);
+            case INPUTS:
+                return new VerticalLayout(index.filterInputs(compartment));
+            case OUTPUTS:
+                return new VerticalLayout(index.filterOutputs(compartment));
+            case CATALYSTS:
+                return new HorizontalLayout(index.filterCatalysts(compartment));
+            default:
+                return new HorizontalLayout(index.filterRegulators(compartment));
+        }
+    }
+
+    private static int indexOf(List<CompartmentGlyph> compartments, CompartmentGlyph compartment) {
+        for (int i = 0; i < compartments.size(); i++) if (compartments.get(i) == compartment) return i;
+        return -1;
+    }
+
+    /**
+     * Structural signature of a layout.
+     */
+    static final class Key {
+
+        private final int[] signature;
+        private final int hash;
+
+        private Key(int[] signature) {
+            this.signature = signature;
+            this.hash = Arrays.hashCode(signature);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || o instanceof Key && hash == ((Key) o).hash && Arrays.equals(signature, ((Key) o).signature);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package org.reactome.server.tools.reaction.exporter.layout.algorithm.box;
 
-import org.reactome.server.tools.diagram.data.layout.impl.CoordinateImpl;
 import org.reactome.server.tools.reaction.exporter.layout.algorithm.common.Transformer;
 import org.reactome.server.tools.reaction.exporter.layout.common.Bounds;
 import org.reactome.server.tools.reaction.exporter.layout.common.EntityRole;
@@ -36,7 +35,7 @@ public class VerticalLayout extends GlyphsLayout {
         for (final Glyph glyph : getGlyphs()) {
             final double height = Transformer.getBounds(glyph).getHeight();
             final double cy = y + 0.5 * height;
-            Transformer.center(glyph, new CoordinateImpl(cx, cy));
+            Transformer.center(glyph, cx, cy);
             y += getSeparation() + height;
         }
         return new Bounds(0d, 0d, width + getLeftPadding() + getRightPadding(), y - getSeparation() + getBottomPadding());
@@ -71,7 +70,7 @@ public class VerticalLayout extends GlyphsLayout {
             final Glyph glyph = getGlyphs().get(i);
             y += step;
             final double x = xs[i % columns];
-            Transformer.center(glyph, new CoordinateImpl(x, y));
+            Transformer.center(glyph, x, y);
             limits.union(Transformer.getBounds(glyph));
         }
         return limits;
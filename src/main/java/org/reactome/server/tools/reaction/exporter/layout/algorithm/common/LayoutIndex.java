@@ -4,14 +4,13 @@ import org.reactome.server.tools.reaction.exporter.layout.common.EntityRole;
 import org.reactome.server.tools.reaction.exporter.layout.common.RenderableClass;
 import org.reactome.server.tools.reaction.exporter.layout.model.*;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.*;
 
 /**
  * Complementary class to layout. It allows quick access to element.
+ * <p>
+ * Participants are sorted and split by compartment once, when the index is created, so the lists returned by this
+ * class are immutable views that can be requested any number of times.
  *
  * @author Pascual Lorente (plorente@ebi.ac.uk)
  */
@@ -32,88 +31,102 @@ public class LayoutIndex {
             RenderableClass.CELL,
             RenderableClass.ENTITY);
     /**
-     * Comparator that puts false (and null) elements before true elements.
+     * Position of every {@link RenderableClass} in {@link #CLASS_ORDER}, by ordinal. Classes not in the list go first.
      */
-    private static final Comparator<Boolean> FALSE_FIRST = Comparator.nullsFirst((o1, o2) -> o1.equals(o2) ? 0 : o1 ? 1 : -1);
-    private static final Comparator<Boolean> TRUE_FIRST = Comparator.nullsLast(((o1, o2) -> o1.equals(o2) ? 0 : o1 ? -1 : 1));
+    private static final int[] CLASS_RANK = new int[RenderableClass.values().length];
 
+    static {
+        Arrays.fill(CLASS_RANK, -1);
+        for (int i = 0; i < CLASS_ORDER.size(); i++) CLASS_RANK[CLASS_ORDER.get(i).ordinal()] = i;
+    }
+
+    private static final int INPUTS = 0;
+    private static final int OUTPUTS = 1;
+    private static final int CATALYSTS = 2;
+    private static final int REGULATORS = 3;
 
-    private List<EntityGlyph> inputs = new ArrayList<>();
-    private List<EntityGlyph> outputs = new ArrayList<>();
-    private List<EntityGlyph> catalysts = new ArrayList<>();
-    private List<EntityGlyph> regulators = new ArrayList<>();
-    private ReactionGlyph reaction;
+    private final List<EntityGlyph> inputs;
+    private final List<EntityGlyph> outputs;
+    private final List<EntityGlyph> catalysts;
+    private final List<EntityGlyph> regulators;
+    private final boolean catalystInInputs;
+    /**
+     * Inputs, outputs, catalysts and regulators of every compartment, in the same order as in the whole lists
+     */
+    private final Map<CompartmentGlyph, Bucket> buckets = new IdentityHashMap<>();
+    private final ReactionGlyph reaction;
 
     public LayoutIndex(Layout layout) {
         reaction = layout.getReaction();
-        final List<EntityGlyph> activators = new ArrayList<>();
-        final List<EntityGlyph> inhibitors = new ArrayList<>();
+        final List<Ranked> inputs = new ArrayList<>();
+        final List<Ranked> outputs = new ArrayList<>();
+        final List<Ranked> catalysts = new ArrayList<>();
+        final List<Ranked> activators = new ArrayList<>();
+        final List<Ranked> inhibitors = new ArrayList<>();
+        boolean catalystInInputs = false;
         for (EntityGlyph entity : layout.getEntities()) {
+            // sort keys are computed once per entity, not on every comparison
+            boolean input = false;
+            boolean catalyst = false;
+            boolean negative = false;
+            for (Role role : entity.getRoles()) {
+                if (role.getType() == EntityRole.INPUT) input = true;
+                else if (role.getType() == EntityRole.CATALYST) catalyst = true;
+                else if (role.getType() == EntityRole.NEGATIVE_REGULATOR) negative = true;
+            }
+            if (input && catalyst) catalystInInputs = true;
+            final Ranked ranked = new Ranked(entity, negative, input && catalyst);
             for (Role role : entity.getRoles()) {
                 switch (role.getType()) {
                     case INPUT:
-                        inputs.add(entity);
+                        inputs.add(ranked);
                         break;
                     case OUTPUT:
-                        outputs.add(entity);
+                        outputs.add(ranked);
                         break;
                     case CATALYST:
-                        catalysts.add(entity);
+                        // input/catalysts are placed with the inputs
+                        if (!input) catalysts.add(ranked);
                         break;
                     case NEGATIVE_REGULATOR:
-                        inhibitors.add(entity);
+                        inhibitors.add(ranked);
                         break;
                     case POSITIVE_REGULATOR:
-                        activators.add(entity);
+                        activators.add(ranked);
                         break;
                 }
             }
         }
-        regulators.addAll(inhibitors);
+        final List<Ranked> regulators = new ArrayList<>(inhibitors);
         regulators.addAll(activators);
+        this.catalystInInputs = catalystInInputs;
+
+        // List.sort is stable, so entities with the same keys keep the order of the layout
+        inputs.sort(Ranked.ORDER);
+        outputs.sort(Ranked.ORDER);
+        catalysts.sort(Ranked.ORDER);
+        regulators.sort(Ranked.REGULATOR_ORDER);
+
+        this.inputs = split(inputs, INPUTS);
+        this.outputs = split(outputs, OUTPUTS);
+        this.catalysts = split(catalysts, CATALYSTS);
+        this.regulators = split(regulators, REGULATORS);
+    }
 
-        inputs.sort(Comparator
-                // input/catalysts first
-                .comparing((EntityGlyph e) -> e.getRoles().size()).reversed()
-                // .thenComparing(EntityGlyph::isDashed, TRUE_FIRST)
-                // .thenComparing(EntityGlyph::isDisease, TRUE_FIRST)
-                // .thenComparing(EntityGlyph::isFadeOut, FALSE_FIRST)
-                .thenComparing(EntityGlyph::isTrivial, FALSE_FIRST)
-                // and sorted by RenderableClass
-                .thenComparingInt(e -> CLASS_ORDER.indexOf(e.getRenderableClass()))
-                // and finally by name
-                .thenComparing(EntityGlyph::getName));
-
-        outputs.sort(Comparator
-                .comparingInt((EntityGlyph e) -> e.getRoles().size()).reversed()
-                // .thenComparing(EntityGlyph::isDashed, TRUE_FIRST)
-                // .thenComparing(EntityGlyph::isDisease, TRUE_FIRST)
-                // .thenComparing(EntityGlyph::isFadeOut, FALSE_FIRST)
-                .thenComparing(EntityGlyph::isTrivial, FALSE_FIRST)
-                .thenComparingInt(e -> CLASS_ORDER.indexOf(e.getRenderableClass()))
-                .thenComparing(EntityGlyph::getName));
-
-        catalysts.sort(Comparator
-                .comparingInt((EntityGlyph e) -> e.getRoles().size()).reversed()
-                // .thenComparing(EntityGlyph::isDashed, TRUE_FIRST)
-                // .thenComparing(EntityGlyph::isDisease, TRUE_FIRST)
-                // .thenComparing(EntityGlyph::isFadeOut, FALSE_FIRST)
-                .thenComparing(EntityGlyph::isTrivial, FALSE_FIRST)
-                .thenComparingInt(e -> CLASS_ORDER.indexOf(e.getRenderableClass()))
-                .thenComparing(EntityGlyph::getName));
-
-        regulators.sort(Comparator
-                .comparingInt((EntityGlyph e) -> e.getRoles().size()).reversed()
-                // negatives first
-                .thenComparing(e -> e.getRoles().stream().anyMatch(role -> role.getType() == EntityRole.NEGATIVE_REGULATOR), TRUE_FIRST)
-                // .thenComparing(EntityGlyph::isDashed, TRUE_FIRST)
-                // .thenComparing(EntityGlyph::isDisease, TRUE_FIRST)
-                // .thenComparing(EntityGlyph::isFadeOut, FALSE_FIRST)
-                .thenComparing(EntityGlyph::isTrivial, FALSE_FIRST)
-                .thenComparingInt(e -> CLASS_ORDER.indexOf(e.getRenderableClass()))
-                .thenComparing(EntityGlyph::getName));
-
-        catalysts.removeIf(entityGlyph -> entityGlyph.getRoles().stream().anyMatch(role -> role.getType() == EntityRole.INPUT));
+    /**
+     * Adds every entity of sorted to the bucket of its compartment.
+     *
+     * @return the entities of sorted, as an immutable list
+     */
+    private List<EntityGlyph> split(List<Ranked> sorted, int role) {
+        final List<EntityGlyph> entities = new ArrayList<>(sorted.size());
+        for (Ranked ranked : sorted) {
+            entities.add(ranked.entity);
+            final Bucket bucket = buckets.computeIfAbsent(ranked.entity.getCompartment(), c -> new Bucket());
+            bucket.entities.get(role).add(ranked.entity);
+            if (role == INPUTS && ranked.catalystInput) bucket.catalystInInputs = true;
+        }
+        return Collections.unmodifiableList(entities);
     }
 
     public List<EntityGlyph> getCatalysts() {
@@ -132,29 +145,99 @@ public class LayoutIndex {
         return regulators;
     }
 
+    /**
+     * @return true if any input is also a catalyst
+     */
+    public boolean hasCatalystInInputs() {
+        return catalystInInputs;
+    }
+
+    /**
+     * @return true if any input in compartment is also a catalyst
+     */
+    public boolean hasCatalystInInputs(CompartmentGlyph compartment) {
+        final Bucket bucket = buckets.get(compartment);
+        return bucket != null && bucket.catalystInInputs;
+    }
+
     public List<EntityGlyph> filterInputs(CompartmentGlyph compartment) {
-        return inputs.stream()
-                .filter(entity -> entity.getCompartment() == compartment)
-                .collect(Collectors.toList());
+        return filter(compartment, INPUTS);
     }
 
     public List<EntityGlyph> filterOutputs(CompartmentGlyph compartment) {
-        return outputs.stream()
-                .filter(entity -> entity.getCompartment() == compartment)
-                .collect(Collectors.toList());
+        return filter(compartment, OUTPUTS);
     }
+
     public List<EntityGlyph> filterCatalysts(CompartmentGlyph compartment) {
-        return catalysts.stream()
-                .filter(entity -> entity.getCompartment() == compartment)
-                .collect(Collectors.toList());
+        return filter(compartment, CATALYSTS);
     }
+
     public List<EntityGlyph> filterRegulators(CompartmentGlyph compartment) {
-        return regulators.stream()
-                .filter(entity -> entity.getCompartment() == compartment)
-                .collect(Collectors.toList());
+        return filter(compartment, REGULATORS);
+    }
+
+    private List<EntityGlyph> filter(CompartmentGlyph compartment, int role) {
+        final Bucket bucket = buckets.get(compartment);
+        return bucket == null ? Collections.emptyList() : bucket.views.get(role);
     }
 
     public ReactionGlyph getReaction() {
         return reaction;
     }
+
+    private static final class Bucket {
+        private final List<List<EntityGlyph>> entities = List.of(new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        private final List<List<EntityGlyph>> views = List.of(
+                Collections.unmodifiableList(entities.get(INPUTS)),
+                Collections.unmodifiableList(entities.get(OUTPUTS)),
+                Collections.unmodifiableList(entities.get(CATALYSTS)),
+                Collections.unmodifiableList(entities.get(REGULATORS)));
+        private boolean catalystInInputs;
+    }
+
+    /**
+     * An entity with its sort keys. Entities are sorted by
+     * <ol>
+     * <li>number of roles, more roles first (input/catalysts first)</li>
+     * <li>only regulators: negatives first</li>
+     * <li>trivial, null and false first</li>
+     * <li>{@link RenderableClass}, in the order of {@link #CLASS_ORDER}</li>
+     * <li>name</li>
+     * </ol>
+     */
+    private static final class Ranked {
+
+        private static final Comparator<Ranked> ORDER = (a, b) -> {
+            final int c = Long.compare(a.key, b.key);
+            return c != 0 ? c : a.name.compareTo(b.name);
+        };
+        private static final Comparator<Ranked> REGULATOR_ORDER = (a, b) -> {
+            int c = Integer.compare(b.roles, a.roles);
+            if (c == 0) c = Boolean.compare(b.negative, a.negative);
+            return c != 0 ? c : ORDER.compare(a, b);
+        };
+
+        private final EntityGlyph entity;
+        private final String name;
+        private final int roles;
+        private final boolean negative;
+        private final boolean catalystInput;
+        /**
+         * Roles (descending), trivial and class rank in a single number
+         */
+        private final long key;
+
+        private Ranked(EntityGlyph entity, boolean negative, boolean catalystInput) {
+            this.entity = entity;
+            this.name = entity.getName();
+            this.roles = entity.getRoles().size();
+            this.negative = negative;
+            this.catalystInput = catalystInput;
+            final Boolean trivial = entity.isTrivial();
+            final int trivialRank = trivial == null ? 0 : trivial ? 2 : 1;
+            final RenderableClass renderableClass = entity.getRenderableClass();
+            final int classRank = renderableClass == null ? -1 : CLASS_RANK[renderableClass.ordinal()];
+            key = (long) (Integer.MAX_VALUE - roles) << 32 | trivialRank << 16 | classRank + 1;
+        }
+    }
 }
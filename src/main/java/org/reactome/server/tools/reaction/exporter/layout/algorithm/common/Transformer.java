@@ -48,35 +48,33 @@ public class Transformer {
      * Moves the given glyph, and content, adding dx and dy to {@link Glyph#getBounds()}
      */
     public static void move(Glyph glyph, double dx, double dy) {
-        move(glyph, new CoordinateImpl(dx, dy));
-    }
-
-    public static void move(Glyph glyph, Coordinate delta) {
+        if (dx == 0 && dy == 0) return;
         if (glyph instanceof EntityGlyph)
-            move((EntityGlyph) glyph, delta);
+            move((EntityGlyph) glyph, dx, dy);
         else if (glyph instanceof ReactionGlyph)
-            move((ReactionGlyph) glyph, delta);
+            move((ReactionGlyph) glyph, dx, dy);
         else if (glyph instanceof CompartmentGlyph)
-            move((CompartmentGlyph) glyph, delta);
+            move((CompartmentGlyph) glyph, dx, dy, false);
         else throw new UnsupportedOperationException();
     }
 
+    public static void move(Glyph glyph, Coordinate delta) {
+        move(glyph, delta.getX(), delta.getY());
+    }
+
     /**
      * moves the {@link EntityGlyph#getBounds()} and its connector (segments and shapes)
      */
-    private static void move(EntityGlyph entity, Coordinate delta) {
-        entity.getBounds().move(delta.getX(), delta.getY());
+    private static void move(EntityGlyph entity, double dx, double dy) {
+        entity.getBounds().move(dx, dy);
         for (AttachmentGlyph attachment : entity.getAttachments()) {
-            attachment.getBounds().move(delta.getX(), delta.getY());
+            attachment.getBounds().move(dx, dy);
         }
         for (Connector connector : entity.getConnector()) {
-            for (Segment segment : connector.getSegments()) {
-                ((SegmentImpl) segment).setFrom(segment.getFrom().add(delta));
-                ((SegmentImpl) segment).setTo(segment.getTo().add(delta));
-            }
-            moveShape(connector.getEndShape(), delta);
+            for (Segment segment : connector.getSegments()) move(segment, dx, dy);
+            moveShape(connector.getEndShape(), dx, dy);
             if (connector.getStoichiometry() != null) {
-                moveShape(connector.getStoichiometry().getShape(), delta);
+                moveShape(connector.getStoichiometry().getShape(), dx, dy);
             }
         }
     }
@@ -84,41 +82,54 @@ public class Transformer {
     /**
      * This is for stoichiometries and connectors shapes
      */
-    private static void moveShape(Shape s, Coordinate delta) {
+    private static void moveShape(Shape s, double dx, double dy) {
         if (s != null) {
             final ShapeImpl shape = (ShapeImpl) s;
-            if (shape.getA() != null) shape.setA(shape.getA().add(delta));
-            if (shape.getB() != null) shape.setB(shape.getB().add(delta));
-            if (shape.getC() != null) shape.setC(shape.getC().add(delta));
+            if (shape.getA() != null) shape.setA(move(shape.getA(), dx, dy));
+            if (shape.getB() != null) shape.setB(move(shape.getB(), dx, dy));
+            if (shape.getC() != null) shape.setC(move(shape.getC(), dx, dy));
         }
     }
 
     /**
      * moves the reaction and its segments
      */
-    private static void move(ReactionGlyph reactionGlyph, Coordinate delta) {
-        reactionGlyph.getBounds().move(delta.getX(), delta.getY());
+    private static void move(ReactionGlyph reactionGlyph, double dx, double dy) {
+        reactionGlyph.getBounds().move(dx, dy);
+        for (Segment segment : reactionGlyph.getSegments()) move(segment, dx, dy);
+    }
 
-        for (Segment segment : reactionGlyph.getSegments()) {
-            ((SegmentImpl) segment).setFrom(segment.getFrom().add(delta));
-            ((SegmentImpl) segment).setTo(segment.getTo().add(delta));
-        }
+    private static void move(Segment segment, double dx, double dy) {
+        ((SegmentImpl) segment).setFrom(move(segment.getFrom(), dx, dy));
+        ((SegmentImpl) segment).setTo(move(segment.getTo(), dx, dy));
     }
 
-    private static void move(CompartmentGlyph compartment, Coordinate delta) {
-        move(compartment, delta, false);
+    /**
+     * Coordinates are immutable, so this is the only allocation of a move
+     */
+    private static Coordinate move(Coordinate coordinate, double dx, double dy) {
+        return new CoordinateImpl(coordinate.getX() + dx, coordinate.getY() + dy);
     }
 
     /**
      * moves the compartment and everything inside it if moveContent is true
      */
     public static void move(CompartmentGlyph compartment, Coordinate delta, boolean moveContent) {
-        compartment.getBounds().move(delta.getX(), delta.getY());
-        if (compartment.getLabelPosition() != null)
-            compartment.setLabelPosition(compartment.getLabelPosition().add(delta));
+        move(compartment, delta.getX(), delta.getY(), moveContent);
+    }
+
+    /**
+     * moves the compartment and everything inside it if moveContent is true. Content is moved straight away, one
+     * glyph at a time: compartments are only moved with their content once per layout, when the layout is moved to
+     * the origin, so there are no pending offsets to resolve when the coordinates are read.
+     */
+    public static void move(CompartmentGlyph compartment, double dx, double dy, boolean moveContent) {
+        if (dx == 0 && dy == 0) return;
+        compartment.getBounds().move(dx, dy);
+        compartment.moveLabelPosition(dx, dy);
         if (moveContent) {
-            for (Glyph glyph : compartment.getContainedGlyphs()) move(glyph, delta);
-            for (CompartmentGlyph child : compartment.getChildren()) move(child, delta, true);
+            for (Glyph glyph : compartment.getContainedGlyphs()) move(glyph, dx, dy);
+            for (CompartmentGlyph child : compartment.getChildren()) move(child, dx, dy, true);
         }
     }
 
@@ -160,8 +171,11 @@ public class Transformer {
     }
 
     public static void center(Glyph glyph, Coordinate center) {
-        final Coordinate diff = center.minus(new CoordinateImpl(glyph.getBounds().getCenterX(), glyph.getBounds().getCenterY()));
-        move(glyph, diff);
+        center(glyph, center.getX(), center.getY());
+    }
+
+    public static void center(Glyph glyph, double x, double y) {
+        move(glyph, x - glyph.getBounds().getCenterX(), y - glyph.getBounds().getCenterY());
     }
 
     public static void setSize(ReactionGlyph reaction) {
@@ -108,8 +108,7 @@ public class Bounds {
     }
 
     public void move(double dx, double dy) {
-        setX(x + dx);
-        setY(y + dy);
+        set(x + dx, y + dy, width, height);
     }
     /**
      * Creates the union between <em>this</em> and <em>that</em> and sets the result into this. The union of two
@@ -123,17 +122,32 @@ public class Bounds {
         final double minY = Math.min(this.y, that.y);
         final double maxX = Math.max(this.mx, that.mx);
         final double maxY = Math.max(this.my, that.my);
-        setX(minX);
-        setY(minY);
-        setWidth(maxX - minX);
-        setHeight(maxY - minY);
+        set(minX, minY, maxX - minX, maxY - minY);
     }
 
     public void set(Bounds bounds) {
         this.x = bounds.x;
         this.y = bounds.y;
-        setWidth(bounds.width);
-        setHeight(bounds.height);
+        this.width = bounds.width;
+        this.height = bounds.height;
+        this.cx = bounds.cx;
+        this.cy = bounds.cy;
+        this.mx = bounds.mx;
+        this.my = bounds.my;
+    }
+
+    /**
+     * Sets position and dimension at once, so derived values are computed only once
+     */
+    public void set(double x, double y, double width, double height) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.cx = x + 0.5 * width;
+        this.cy = y + 0.5 * height;
+        this.mx = x + width;
+        this.my = y + height;
     }
 
     @Override
@@ -0,0 +1,13 @@
+package org.reactome.server.tools.reaction.exporter.layout.compact;
+
+import org.reactome.server.tools.reaction.exporter.layout.model.AttachmentGlyph;
+
+/**
+ * Immutable copy of an {@link AttachmentGlyph}.
+ */
+public final class CompactAttachment extends CompactGlyph {
+
+    CompactAttachment(AttachmentGlyph attachment) {
+        super(attachment);
+    }
+}
@@ -0,0 +1,55 @@
+package org.reactome.server.tools.reaction.exporter.layout.compact;
+
+import org.reactome.server.tools.diagram.data.layout.Coordinate;
+import org.reactome.server.tools.diagram.data.layout.impl.CoordinateImpl;
+import org.reactome.server.tools.reaction.exporter.layout.model.CompartmentGlyph;
+import org.reactome.server.tools.reaction.exporter.layout.model.Glyph;
+import org.reactome.server.tools.reaction.exporter.util.StringInterner;
+
+/**
+ * Immutable copy of a {@link CompartmentGlyph}. The hierarchy is kept as the identifiers of the contained glyphs and
+ * children, instead of references to other compartments.
+ */
+public final class CompactCompartment extends CompactGlyph {
+
+    private final String accession;
+    private final boolean hasLabelPosition;
+    private final double labelX;
+    private final double labelY;
+    private final long[] content;
+
+    CompactCompartment(CompartmentGlyph compartment) {
+        super(compartment);
+        accession = StringInterner.intern(compartment.getAccession());
+        final Coordinate labelPosition = compartment.getLabelPosition();
+        hasLabelPosition = labelPosition != null;
+        labelX = hasLabelPosition ? labelPosition.getX() : 0;
+        labelY = hasLabelPosition ? labelPosition.getY() : 0;
+        content = new long[compartment.getContainedGlyphs().size() + compartment.getChildren().size()];
+        int i = 0;
+        for (Glyph glyph : compartment.getContainedGlyphs()) content[i++] = glyph.getId();
+        for (CompartmentGlyph child : compartment.getChildren()) content[i++] = child.getId();
+    }
+
+    public String getAccession() {
+        return accession;
+    }
+
+    public Coordinate getLabelPosition() {
+        return hasLabelPosition ? new CoordinateImpl(labelX, labelY) : null;
+    }
+
+    /**
+     * @return number of contained glyphs plus children
+     */
+    public int getContentSize() {
+        return content.length;
+    }
+
+    /**
+     * @return the identifier of the i-th contained glyph or, after them, of the i-th child
+     */
+    public long getContent(int i) {
+        return content[i];
+    }
+}
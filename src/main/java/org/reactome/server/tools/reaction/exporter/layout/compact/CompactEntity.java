@@ -0,0 +1,118 @@
+package org.reactome.server.tools.reaction.exporter.layout.compact;
+
+import org.reactome.server.tools.diagram.data.layout.Connector;
+import org.reactome.server.tools.diagram.data.layout.impl.ConnectorImpl;
+import org.reactome.server.tools.reaction.exporter.layout.common.EntityRole;
+import org.reactome.server.tools.reaction.exporter.layout.model.AttachmentGlyph;
+import org.reactome.server.tools.reaction.exporter.layout.model.EntityGlyph;
+import org.reactome.server.tools.reaction.exporter.layout.model.Role;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable copy of an {@link EntityGlyph}, without its compartments.
+ */
+public final class CompactEntity extends CompactGlyph {
+
+    private final String stId;
+    private final boolean trivial;
+    private final boolean disease;
+    private final boolean crossed;
+    private final boolean dashed;
+    private final EntityRole[] roles;
+    private final Integer[] stoichiometries;
+    private final List<CompactAttachment> attachments;
+    private final List<Connector> connectors;
+
+    CompactEntity(EntityGlyph entity, CompactReaction reaction) {
+        super(entity);
+        stId = entity.getStId();
+        trivial = Boolean.TRUE.equals(entity.isTrivial());
+        crossed = Boolean.TRUE.equals(entity.isCrossed());
+        dashed = Boolean.TRUE.equals(entity.isDashed());
+        disease = entity.isDisease();
+        roles = new EntityRole[entity.getRoles().size()];
+        stoichiometries = new Integer[roles.length];
+        int i = 0;
+        for (Role role : entity.getRoles()) {
+            roles[i] = role.getType();
+            stoichiometries[i++] = role.getStoichiometry();
+        }
+        if (entity.getAttachments().isEmpty()) attachments = Collections.emptyList();
+        else {
+            final List<CompactAttachment> list = new ArrayList<>(entity.getAttachments().size());
+            for (AttachmentGlyph attachment : entity.getAttachments()) list.add(new CompactAttachment(attachment));
+            attachments = Collections.unmodifiableList(list);
+        }
+        final List<Connector> connectors = new ArrayList<>(entity.getConnector().size());
+        for (Connector connector : entity.getConnector()) connectors.add(link(connector, reaction));
+        this.connectors = Collections.unmodifiableList(connectors);
+    }
+
+    /**
+     * @return a copy of connector, linked to the reaction. The connector of the layout is not modified
+     */
+    private Connector link(Connector connector, CompactReaction reaction) {
+        final ConnectorImpl copy = new ConnectorImpl();
+        copy.setType(connector.getType());
+        copy.setSegments(connector.getSegments());
+        copy.setEndShape(connector.getEndShape());
+        copy.setStoichiometry(connector.getStoichiometry());
+        copy.setEdgeId(reaction.getId());
+        copy.setDisease(reaction.isDisease() ? true : null);
+        copy.setFadeOut(isFadeOut() ? true : null);
+        return copy;
+    }
+
+    public String getStId() {
+        return stId;
+    }
+
+    public boolean isTrivial() {
+        return trivial;
+    }
+
+    public boolean isDisease() {
+        return disease;
+    }
+
+    public boolean isCrossed() {
+        return crossed;
+    }
+
+    public boolean isDashed() {
+        return dashed;
+    }
+
+    public boolean isFadeOut() {
+        return crossed;
+    }
+
+    /**
+     * @return number of roles of this entity
+     */
+    public int getRoleCount() {
+        return roles.length;
+    }
+
+    public EntityRole getRole(int i) {
+        return roles[i];
+    }
+
+    public Integer getStoichiometry(int i) {
+        return stoichiometries[i];
+    }
+
+    public List<CompactAttachment> getAttachments() {
+        return attachments;
+    }
+
+    /**
+     * @return copies of the connectors of the entity, already linked to the reaction
+     */
+    public List<Connector> getConnectors() {
+        return connectors;
+    }
+}
@@ -0,0 +1,97 @@
+package org.reactome.server.tools.reaction.exporter.layout.compact;
+
+import org.reactome.server.tools.reaction.exporter.layout.common.Bounds;
+import org.reactome.server.tools.reaction.exporter.layout.common.RenderableClass;
+import org.reactome.server.tools.reaction.exporter.layout.model.Glyph;
+import org.reactome.server.tools.reaction.exporter.util.StringInterner;
+
+/**
+ * Immutable copy of the attributes common to every {@link Glyph}, once the layout is computed. Bounds are copied as
+ * numbers, including the derived ones, so they are exactly the same as in the glyph.
+ */
+public abstract class CompactGlyph {
+
+    private final long id;
+    private final Long dbId;
+    private final String name;
+    private final String schemaClass;
+    private final RenderableClass renderableClass;
+
+    private final double x;
+    private final double y;
+    private final double width;
+    private final double height;
+    private final double centerX;
+    private final double centerY;
+    private final double maxX;
+    private final double maxY;
+
+    CompactGlyph(Glyph glyph) {
+        id = glyph.getId();
+        dbId = glyph.getDbId();
+        name = glyph.getName();
+        schemaClass = StringInterner.intern(glyph.getSchemaClass());
+        renderableClass = glyph.getRenderableClass();
+        final Bounds bounds = glyph.getBounds();
+        x = bounds.getX();
+        y = bounds.getY();
+        width = bounds.getWidth();
+        height = bounds.getHeight();
+        centerX = bounds.getCenterX();
+        centerY = bounds.getCenterY();
+        maxX = bounds.getMaxX();
+        maxY = bounds.getMaxY();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Long getDbId() {
+        return dbId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSchemaClass() {
+        return schemaClass;
+    }
+
+    public RenderableClass getRenderableClass() {
+        return renderableClass;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+
+    public double getCenterX() {
+        return centerX;
+    }
+
+    public double getCenterY() {
+        return centerY;
+    }
+
+    public double getMaxX() {
+        return maxX;
+    }
+
+    public double getMaxY() {
+        return maxY;
+    }
+}
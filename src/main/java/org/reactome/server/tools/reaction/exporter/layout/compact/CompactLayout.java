@@ -0,0 +1,89 @@
+package org.reactome.server.tools.reaction.exporter.layout.compact;
+
+import org.reactome.server.tools.reaction.exporter.layout.common.Bounds;
+import org.reactome.server.tools.reaction.exporter.layout.model.CompartmentGlyph;
+import org.reactome.server.tools.reaction.exporter.layout.model.EntityGlyph;
+import org.reactome.server.tools.reaction.exporter.layout.model.Layout;
+import org.reactome.server.tools.reaction.exporter.util.StringInterner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable result of a layout. The {@link Layout} model is mutable and linked to the database objects, the compartment
+ * trees and the ontology release it was built from, which are needed by the algorithms but not by the serializers. Once
+ * the layout is computed, it is copied into this class, which only keeps numbers, enums, strings, copies of the
+ * connectors and the segments that are written as they are, so layouts can be kept in caches or queues without pinning
+ * anything else.
+ * <p>
+ * Compartments are in the same order as {@link Layout#getCompartments()} and entities as {@link Layout#getEntities()},
+ * so the output does not change. Schema classes and accessions go through {@link StringInterner}, as every layout repeats them.
+ */
+public final class CompactLayout {
+
+    private final String pathway;
+    private final double x;
+    private final double y;
+    private final double maxX;
+    private final double maxY;
+    private final CompactReaction reaction;
+    private final List<CompactEntity> entities;
+    private final List<CompactCompartment> compartments;
+
+    private CompactLayout(Layout layout) {
+        pathway = layout.getPathway();
+        final Bounds bounds = layout.getBounds();
+        x = bounds.getX();
+        y = bounds.getY();
+        maxX = bounds.getMaxX();
+        maxY = bounds.getMaxY();
+        reaction = new CompactReaction(layout.getReaction());
+        final List<CompactEntity> entities = new ArrayList<>(layout.getEntities().size());
+        for (EntityGlyph entity : layout.getEntities()) entities.add(new CompactEntity(entity, reaction));
+        this.entities = Collections.unmodifiableList(entities);
+        final List<CompactCompartment> compartments = new ArrayList<>(layout.getCompartments().size());
+        for (CompartmentGlyph compartment : layout.getCompartments()) compartments.add(new CompactCompartment(compartment));
+        this.compartments = Collections.unmodifiableList(compartments);
+    }
+
+    /**
+     * Copies a computed layout. Connectors are copied and linked to the reaction, so layout is not modified, but their
+     * segments, shapes and stoichiometries are shared, so they must not be modified afterwards.
+     */
+    public static CompactLayout of(Layout layout) {
+        return new CompactLayout(layout);
+    }
+
+    public String getPathway() {
+        return pathway;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getMaxX() {
+        return maxX;
+    }
+
+    public double getMaxY() {
+        return maxY;
+    }
+
+    public CompactReaction getReaction() {
+        return reaction;
+    }
+
+    public List<CompactEntity> getEntities() {
+        return entities;
+    }
+
+    public List<CompactCompartment> getCompartments() {
+        return compartments;
+    }
+}
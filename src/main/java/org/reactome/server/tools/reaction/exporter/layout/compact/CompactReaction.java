@@ -0,0 +1,35 @@
+package org.reactome.server.tools.reaction.exporter.layout.compact;
+
+import org.reactome.server.tools.diagram.data.layout.Segment;
+import org.reactome.server.tools.reaction.exporter.layout.model.ReactionGlyph;
+
+import java.util.List;
+
+/**
+ * Immutable copy of a {@link ReactionGlyph}.
+ */
+public final class CompactReaction extends CompactGlyph {
+
+    private final String stId;
+    private final boolean disease;
+    private final List<Segment> segments;
+
+    CompactReaction(ReactionGlyph reaction) {
+        super(reaction);
+        stId = reaction.getStId();
+        disease = reaction.isDisease();
+        segments = List.copyOf(reaction.getSegments());
+    }
+
+    public String getStId() {
+        return stId;
+    }
+
+    public boolean isDisease() {
+        return disease;
+    }
+
+    public List<Segment> getSegments() {
+        return segments;
+    }
+}
@@ -2,30 +2,33 @@ package org.reactome.server.tools.reaction.exporter.layout.model;
 
 import org.reactome.server.tools.reaction.exporter.layout.common.Bounds;
 
-import java.util.Objects;
-import java.util.concurrent.atomic.AtomicLong;
-
 /**
- * Common attributes and methods to all glyphs
+ * Common attributes and methods to all glyphs.
+ * <p>
+ * Identifiers are given by the {@link Layout} the glyph belongs to, in the order glyphs are added to it, so the same
+ * reaction always gets the same identifiers. As identifiers are only unique inside a layout, two glyphs are equal only
+ * if they are the same object.
  *
  * @author Antonio Fabregat (fabregat@ebi.ac.uk)
  * @author Pascual Lorente (plorente@ebi.ac.uk)
  */
 public abstract class AbstractGlyph implements Glyph{
 
-    private final static AtomicLong NEXT_ID = new AtomicLong();
-    private final long id;
+    private long id;
 
     private Bounds bounds = new Bounds();
 
     AbstractGlyph() {
-        id = NEXT_ID.incrementAndGet();
     }
 
     public Long getId() {
         return id;
     }
 
+    void setId(long id) {
+        this.id = id;
+    }
+
     @Override
     public Bounds getBounds() {
         return bounds;
@@ -35,16 +38,4 @@ public abstract class AbstractGlyph implements Glyph{
         this.bounds = bounds;
     }
 
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        AbstractGlyph that = (AbstractGlyph) o;
-        return id == that.id;
-    }
-
-    @Override
-    public int hashCode() {
-        return Objects.hash(id);
-    }
 }
@@ -1,7 +1,8 @@
 package org.reactome.server.tools.reaction.exporter.layout.model;
 
-import org.reactome.server.graph.domain.model.TranslationalModification;
 import org.reactome.server.tools.reaction.exporter.layout.common.RenderableClass;
+import org.reactome.server.tools.reaction.exporter.snapshot.EntitySnapshot;
+import org.reactome.server.tools.reaction.exporter.util.StringInterner;
 
 /**
  * Small boxes that appear in the proteins with any kind of modification
@@ -15,11 +16,11 @@ public class AttachmentGlyph extends AbstractGlyph {
     private String schemaClass;
     private String name;
 
-    AttachmentGlyph(TranslationalModification amr) {
+    AttachmentGlyph(EntitySnapshot.Attachment attachment) {
         super();
-        dbId = amr.getDbId();
-        schemaClass = amr.getSchemaClass();
-        name = amr.getLabel();
+        dbId = attachment.getDbId();
+        schemaClass = StringInterner.intern(attachment.getSchemaClass());
+        name = StringInterner.intern(attachment.getLabel());
     }
 
     AttachmentGlyph(AttachmentGlyph attachment) {
@@ -3,12 +3,15 @@ package org.reactome.server.tools.reaction.exporter.layout.model;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.reactome.server.graph.domain.model.Compartment;
 import org.reactome.server.tools.diagram.data.layout.Coordinate;
+import org.reactome.server.tools.diagram.data.layout.impl.CoordinateImpl;
 import org.reactome.server.tools.reaction.exporter.layout.algorithm.box.HasInitial;
 import org.reactome.server.tools.reaction.exporter.layout.common.RenderableClass;
 import org.reactome.server.tools.reaction.exporter.ontology.GoTerm;
+import org.reactome.server.tools.reaction.exporter.snapshot.CompartmentSnapshot;
+import org.reactome.server.tools.reaction.exporter.util.StringInterner;
 
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
@@ -23,24 +26,35 @@ public class CompartmentGlyph extends AbstractGlyph implements HasInitial {
     private String accession;
 
     private CompartmentGlyph parent = null;
-    private Set<CompartmentGlyph> children = new HashSet<>();
+    private Set<CompartmentGlyph> children = new LinkedHashSet<>();
 
-    private Collection<Glyph> containedGlyphs = new HashSet<>();
+    private Collection<Glyph> containedGlyphs = new LinkedHashSet<>();
 
-    private Coordinate labelPosition;
+    /**
+     * The label position is kept as primitives, as it is moved with the compartment
+     */
+    private boolean hasLabelPosition;
+    private double labelX;
+    private double labelY;
 
-    public CompartmentGlyph(Compartment compartment) {
+    public CompartmentGlyph(CompartmentSnapshot compartment) {
         super();
         dbId = compartment.getDbId();
-        schemaClass = compartment.getSchemaClass();
-        name = compartment.getDisplayName();
-        accession = compartment.getAccession();
+        schemaClass = Compartment.class.getSimpleName();
+        name = StringInterner.intern(compartment.getName());
+        accession = StringInterner.intern(compartment.getAccession());
     }
 
     public CompartmentGlyph(GoTerm term) {
         super();
         name = term.getName();
-        accession = term.getId().replaceAll("GO:", "");
+        accession = StringInterner.intern(term.getId().replaceAll("GO:", ""));
+    }
+
+    CompartmentGlyph(String accession, String name) {
+        super();
+        this.name = name;
+        this.accession = accession;
     }
 
     public String getAccession() {
@@ -92,11 +106,27 @@ public class CompartmentGlyph extends AbstractGlyph implements HasInitial {
     }
 
     public Coordinate getLabelPosition() {
-        return labelPosition;
+        return hasLabelPosition ? new CoordinateImpl(labelX, labelY) : null;
     }
 
     public void setLabelPosition(Coordinate labelPosition) {
-        this.labelPosition = labelPosition;
+        if (labelPosition == null) hasLabelPosition = false;
+        else setLabelPosition(labelPosition.getX(), labelPosition.getY());
+    }
+
+    public void setLabelPosition(double x, double y) {
+        labelX = x;
+        labelY = y;
+        hasLabelPosition = true;
+    }
+
+    /**
+     * Adds dx and dy to the label position, if it has been set
+     */
+    public void moveLabelPosition(double dx, double dy) {
+        if (!hasLabelPosition) return;
+        labelX += dx;
+        labelY += dy;
     }
 
     @Override
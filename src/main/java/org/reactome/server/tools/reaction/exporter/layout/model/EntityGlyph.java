@@ -1,13 +1,16 @@
 package org.reactome.server.tools.reaction.exporter.layout.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
-import org.reactome.server.graph.domain.model.*;
+import org.reactome.server.graph.domain.model.PhysicalEntity;
 import org.reactome.server.tools.diagram.data.layout.Connector;
 import org.reactome.server.tools.reaction.exporter.layout.common.RenderableClass;
+import org.reactome.server.tools.reaction.exporter.snapshot.CompartmentSnapshot;
+import org.reactome.server.tools.reaction.exporter.snapshot.EntitySnapshot;
+import org.reactome.server.tools.reaction.exporter.util.StringInterner;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 
 /**
@@ -17,7 +20,7 @@ import java.util.List;
 public class EntityGlyph extends AbstractGlyph {
 
     //From the query
-    private Collection<Role> roles = new HashSet<>();
+    private Collection<Role> roles = new LinkedHashSet<>();
     private transient Boolean drug = false;
     private Boolean crossed = false;
     private Boolean dashed = false;
@@ -28,7 +31,7 @@ public class EntityGlyph extends AbstractGlyph {
     private String name;
     private Boolean inDisease;
     private String schemaClass;
-    private List<Compartment> compartments;
+    private List<CompartmentSnapshot> compartments;
     private Collection<AttachmentGlyph> attachments = new ArrayList<>();
     private RenderableClass renderableClass;
     private Boolean trivial = false;
@@ -65,7 +68,7 @@ public class EntityGlyph extends AbstractGlyph {
     }
 
     @JsonIgnore
-    List<Compartment> getCompartments() {
+    List<CompartmentSnapshot> getCompartments() {
         return compartments;
     }
 
@@ -128,28 +131,25 @@ public class EntityGlyph extends AbstractGlyph {
     // This setter is called automatically by the graph-core marshaller
     @SuppressWarnings("unused")
     public void setPhysicalEntity(PhysicalEntity pe) {
-        this.dbId = pe.getDbId();
-        this.stId = pe.getStId();
-        this.name = pe.getName().get(0);
-        this.inDisease = pe.getInDisease();
-        this.compartments = pe.getCompartment();
-        this.schemaClass = pe.getSchemaClass();
-
-        ReferenceEntity re = pe.fetchSingleValue("getReferenceEntity");
-        if (re instanceof ReferenceMolecule){
-            ReferenceMolecule rm = (ReferenceMolecule) re;
-            //trivial ONLY true for trivial molecules. NULL in any other case (never false)
-            if(rm.getTrivial() != null && rm.getTrivial()) trivial = true;
-        }
+        setEntity(new EntitySnapshot(pe, drug));
+    }
 
-        Collection<AbstractModifiedResidue> modifiedResidues = pe.fetchMultiValue("getHasModifiedResidue");
-        for (AbstractModifiedResidue modifiedResidue : modifiedResidues) {
-            if(modifiedResidue instanceof TranslationalModification) {
-                attachments.add(new AttachmentGlyph((TranslationalModification) modifiedResidue));
-            }
+    /**
+     * Populates this glyph with the data previously extracted from a physical entity, either straight from the
+     * database or read from a snapshot file.
+     */
+    public void setEntity(EntitySnapshot entity) {
+        this.dbId = entity.getDbId();
+        this.stId = StringInterner.intern(entity.getStId());
+        this.name = StringInterner.intern(entity.getName());
+        this.inDisease = entity.getInDisease();
+        this.compartments = entity.getCompartments();
+        this.schemaClass = StringInterner.intern(entity.getSchemaClass());
+        if (entity.isTrivial()) trivial = true;
+        for (EntitySnapshot.Attachment attachment : entity.getAttachments()) {
+            attachments.add(new AttachmentGlyph(attachment));
         }
-
-        renderableClass = RenderableClass.getRenderableClass(pe, drug);
+        renderableClass = entity.getRenderableClass();
     }
 
     // This setter is called automatically by the graph-core marshaller
@@ -1,12 +1,14 @@
 package org.reactome.server.tools.reaction.exporter.layout.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
-import org.reactome.server.graph.domain.model.Compartment;
 import org.reactome.server.graph.domain.model.ReactionLikeEvent;
 import org.reactome.server.tools.reaction.exporter.layout.common.Bounds;
-import org.reactome.server.tools.reaction.exporter.ontology.GoTerm;
+import org.reactome.server.tools.reaction.exporter.ontology.CompartmentTree;
 import org.reactome.server.tools.reaction.exporter.ontology.GoTreeFactory;
 import org.reactome.server.tools.reaction.exporter.ontology.GoTreeFactory.Source;
+import org.reactome.server.tools.reaction.exporter.ontology.OntologyRelease;
+import org.reactome.server.tools.reaction.exporter.snapshot.CompartmentSnapshot;
+import org.reactome.server.tools.reaction.exporter.snapshot.ReactionSnapshot;
 
 import java.util.*;
 
@@ -20,6 +22,12 @@ public class Layout implements HasBounds {
 
     private Source goTreeSource = Source.REACTOME;
 
+    /**
+     * The release of the GO tree is taken once, so the layout and its copies use the same hierarchy even if a new
+     * release is published meanwhile
+     */
+    private OntologyRelease ontologyRelease;
+
     private String pathway;
 
     private Bounds bounds;
@@ -32,17 +40,30 @@ public class Layout implements HasBounds {
 
     private Map<String, CompartmentGlyph> compartments;
 
+    private ReactionSnapshot reaction;
+
+    private long lastId;
+
 
     public Layout() {
         this.bounds = new Bounds();
-        this.compartments = new HashMap<>();
+        this.compartments = new LinkedHashMap<>();
+    }
+
+    /**
+     * @param release the hierarchy used to build the compartment tree of this layout, instead of the current release
+     */
+    public Layout(OntologyRelease release) {
+        this(release.getSource());
+        this.ontologyRelease = release;
     }
 
   /**
    *
    * @param source
    *          defines source of Go tree hierarchy that should be used when layout
-   *          is generated
+   *          is generated. The Reactome one must have been loaded before the
+   *          participants are set, see {@link GoTreeFactory#getRelease(Source)}
    */
     public Layout(Source source) {
       this();
@@ -50,7 +71,17 @@ public class Layout implements HasBounds {
     }
 
     public void add(EntityGlyph entityGlyph) {
-        entities.add(entityGlyph);
+        entities.add(register(entityGlyph));
+    }
+
+    /**
+     * Gives the next identifiers of this layout to glyph and its attachments.
+     */
+    private <T extends AbstractGlyph> T register(T glyph) {
+        glyph.setId(++lastId);
+        if (glyph instanceof EntityGlyph)
+            for (AttachmentGlyph attachment : ((EntityGlyph) glyph).getAttachments()) attachment.setId(++lastId);
+        return glyph;
     }
 
     public Collection<CompartmentGlyph> getCompartments() {
@@ -83,12 +114,21 @@ public class Layout implements HasBounds {
     // This setter is called automatically by the graph-core marshaller
     @SuppressWarnings("unused")
     public void setReactionLikeEvent(ReactionLikeEvent rle) {
-        reactionGlyph = new ReactionGlyph(rle);
+        setReaction(new ReactionSnapshot(rle));
+    }
+
+    /**
+     * Sets the reaction of this layout from the data previously extracted from a reaction like event, either straight
+     * from the database or read from a snapshot file.
+     */
+    public void setReaction(ReactionSnapshot rle) {
+        reaction = rle;
+        reactionGlyph = register(new ReactionGlyph(rle));
 
         //noinspection LoopStatementThatDoesntLoop
-        for (Compartment compartment : rle.getCompartment()) {
+        for (CompartmentSnapshot compartment : rle.getCompartments()) {
             String acc = compartment.getAccession();
-            CompartmentGlyph cg = compartments.computeIfAbsent(acc, i -> new CompartmentGlyph(compartment));
+            CompartmentGlyph cg = compartments.computeIfAbsent(acc, i -> register(new CompartmentGlyph(compartment)));
             cg.addGlyph(reactionGlyph);
             reactionGlyph.setCompartment(cg);
             break; //We only want to assign the reaction to the first compartment in the list
@@ -99,7 +139,8 @@ public class Layout implements HasBounds {
     // This setter is called automatically by the graph-core marshaller
     @SuppressWarnings("unused")
     public void setParticipants(Collection<EntityGlyph> participants) {
-        Map<String, EntityGlyph> entities = new HashMap<>();
+        // participants keep their order, so identifiers and output do not change between runs
+        Map<String, EntityGlyph> entities = new LinkedHashMap<>();
 
         for (EntityGlyph participant : participants) {
             EntityGlyph g = entities.get(participant.getIdentifier());
@@ -112,16 +153,17 @@ public class Layout implements HasBounds {
         }
 
         for (EntityGlyph participant : entities.values()) {
+            register(participant);
             //noinspection LoopStatementThatDoesntLoop
-            for (Compartment compartment : participant.getCompartments()) {
+            for (CompartmentSnapshot compartment : participant.getCompartments()) {
                 String acc = compartment.getAccession();
-                CompartmentGlyph cg = compartments.computeIfAbsent(acc, i -> new CompartmentGlyph(compartment));
+                CompartmentGlyph cg = compartments.computeIfAbsent(acc, i -> register(new CompartmentGlyph(compartment)));
                 cg.addGlyph(participant);
                 participant.setCompartment(cg);
                 break; //We only want to assign the participant to the first compartment in the list
             }
         }
-        this.entities = new HashSet<>(entities.values());
+        this.entities = new LinkedHashSet<>(entities.values());
 
         createCompartmentsStructure();
     }
@@ -132,22 +174,57 @@ public class Layout implements HasBounds {
             compartments.add("GO:" + compartment.getAccession());
         }
 
-        GoTerm treeRoot = GoTreeFactory.getTreeWithIntermediateNodes(compartments, goTreeSource);
-        compartmentRoot = this.compartments.computeIfAbsent(treeRoot.getAccession(), a -> new CompartmentGlyph(treeRoot));
+        if (ontologyRelease == null) ontologyRelease = GoTreeFactory.getRelease(goTreeSource);
+        final CompartmentTree tree = GoTreeFactory.getCompartmentTree(compartments, ontologyRelease);
+        // the tree is in pre-order, so parents are always created before their children
+        final CompartmentGlyph[] glyphs = new CompartmentGlyph[tree.size()];
+        for (int i = 0; i < tree.size(); i++) {
+            final int node = i;
+            glyphs[i] = this.compartments.computeIfAbsent(tree.getAccession(i), a -> register(new CompartmentGlyph(tree.getAccession(node), tree.getName(node))));
+            final int parent = tree.getParent(i);
+            if (parent >= 0) {
+                glyphs[parent].addChild(glyphs[i]);
+                glyphs[i].setParent(glyphs[parent]);
+            }
+        }
+        compartmentRoot = glyphs[0];
+    }
 
-        buildCompartmentHierarchy(compartmentRoot, treeRoot);
+    public void setPathway(String pathway) {
+        this.pathway = pathway;
     }
 
-    private void buildCompartmentHierarchy(CompartmentGlyph cg, GoTerm term) {
-        for (GoTerm goTerm : term.getIncomingTerms()) {
-            CompartmentGlyph aux = compartments.computeIfAbsent(goTerm.getAccession(), a -> new CompartmentGlyph(goTerm));
-            cg.addChild(aux);
-            aux.setParent(cg);
-            buildCompartmentHierarchy(aux, goTerm);
+    /**
+     * Creates a copy of this layout with the same reaction and participants, but new glyphs and compartments, so the
+     * copy can be laid out independently, even in another thread. Must be called before any layout algorithm is
+     * applied to this layout.
+     */
+    public Layout copy() {
+        final Layout copy = new Layout(goTreeSource);
+        copy.ontologyRelease = ontologyRelease;
+        copy.pathway = pathway;
+        copy.setReaction(reaction);
+        final List<EntityGlyph> participants = new ArrayList<>();
+        for (EntityGlyph entity : entities) {
+            final EntityGlyph participant = new EntityGlyph(entity);
+            for (Role role : entity.getRoles()) participant.addRole(role);
+            participants.add(participant);
         }
+        copy.setParticipants(participants);
+        return copy;
     }
 
-    public void setPathway(String pathway) {
-        this.pathway = pathway;
+    /**
+     * Replaces the content of this layout with the glyphs, compartments and bounds of a copy.
+     *
+     * @param copy a copy of this layout, created by {@link #copy()}, already laid out
+     */
+    public void adopt(Layout copy) {
+        bounds = copy.bounds;
+        reactionGlyph = copy.reactionGlyph;
+        entities = copy.entities;
+        compartmentRoot = copy.compartmentRoot;
+        compartments = copy.compartments;
+        lastId = copy.lastId;
     }
 }
@@ -1,9 +1,10 @@
 package org.reactome.server.tools.reaction.exporter.layout.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
-import org.reactome.server.graph.domain.model.ReactionLikeEvent;
 import org.reactome.server.tools.diagram.data.layout.Segment;
 import org.reactome.server.tools.reaction.exporter.layout.common.RenderableClass;
+import org.reactome.server.tools.reaction.exporter.snapshot.ReactionSnapshot;
+import org.reactome.server.tools.reaction.exporter.util.StringInterner;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -24,14 +25,14 @@ public class ReactionGlyph extends AbstractGlyph {
     private List<Segment> segments = new ArrayList<>();
     private CompartmentGlyph compartment;
 
-    ReactionGlyph(ReactionLikeEvent rle) {
+    ReactionGlyph(ReactionSnapshot rle) {
         super();
         dbId = rle.getDbId();
         stId = rle.getStId();
-        schemaClass = rle.getSchemaClass();
+        schemaClass = StringInterner.intern(rle.getSchemaClass());
         name = rle.getDisplayName();
-        disease = rle.getIsInDisease() != null && rle.getIsInDisease();
-        renderableClass = RenderableClass.getRenderableClass(rle);
+        disease = rle.isDisease();
+        renderableClass = rle.getRenderableClass();
     }
 
     public String getStId() {
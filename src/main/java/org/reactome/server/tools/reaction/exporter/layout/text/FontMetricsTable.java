@@ -0,0 +1,240 @@
+package org.reactome.server.tools.reaction.exporter.layout.text;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Text metrics read directly from a TrueType file, without AWT. The advance of every character of the Basic
+ * Multilingual Plane is computed once, for one pixel size, into a table indexed by char, so measuring a text is a sum of
+ * array lookups.
+ * <p>
+ * Advances are the ones in the <code>hmtx</code> table scaled to the pixel size. Font hinting changes the advance of
+ * some glyphs at small sizes (in Arial Bold 8px, 'W' is 9 pixels instead of 7.55), and hinting instructions are not
+ * interpreted here. Instead, the hinted advances that differ from the scaled ones are read from a hinting file, with
+ * lines like
+ * <pre>8 0057 9</pre>
+ * meaning that, at 8 pixels, the character U+0057 is 9 pixels wide. Lines for other sizes are ignored. With the hinting
+ * file, widths and height are the same as the ones of java.awt.FontMetrics with a default Graphics2D.
+ */
+public class FontMetricsTable {
+
+    /**
+     * The same value that AWT uses to round ascent and descent.
+     */
+    private static final float ROUNDING_UP_VALUE = 0.95f;
+
+    public static final String DEFAULT_FONT = "/fonts/arialbd.ttf";
+    public static final String DEFAULT_HINTING = "/fonts/arialbd.hinting";
+    public static final int DEFAULT_SIZE = 8;
+
+    private final String name;
+    private final int size;
+    private final short[] advances = new short[Character.MAX_VALUE + 1];
+    private final int missingAdvance;
+    private final int ascent;
+    private final int descent;
+    private final int height;
+
+    private FontMetricsTable(String name, int size, ByteBuffer font, Map<Character, Integer> hinted) {
+        this.name = name;
+        this.size = size;
+        final Map<String, Integer> tables = readTableDirectory(font);
+        final int head = table(tables, "head");
+        final int hhea = table(tables, "hhea");
+        final int maxp = table(tables, "maxp");
+        final int hmtx = table(tables, "hmtx");
+        final int cmap = table(tables, "cmap");
+
+        final float scale = (float) size / (font.getShort(head + 18) & 0xffff);
+        final float ascender = font.getShort(hhea + 4) * scale;
+        final float descender = -font.getShort(hhea + 6) * scale;
+        final float lineGap = font.getShort(hhea + 8) * scale;
+        ascent = (int) (ROUNDING_UP_VALUE + ascender);
+        descent = (int) (ROUNDING_UP_VALUE + descender);
+        height = ascent + (int) (ROUNDING_UP_VALUE + descender + lineGap);
+
+        // advances by glyph, the last horizontal metric applies to the rest of glyphs
+        final int glyphs = font.getShort(maxp + 4) & 0xffff;
+        final int metrics = font.getShort(hhea + 34) & 0xffff;
+        final int[] glyphAdvance = new int[glyphs];
+        for (int g = 0; g < glyphs; g++) {
+            final int units = font.getShort(hmtx + 4 * Math.min(g, metrics - 1)) & 0xffff;
+            glyphAdvance[g] = Math.round(units * scale);
+        }
+        missingAdvance = glyphAdvance[0];
+
+        final char[] glyph = readCharacterMap(font, cmap);
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            final Integer advance = hinted.get((char) c);
+            advances[c] = (short) (advance != null ? advance : glyphAdvance[glyph[c]]);
+        }
+    }
+
+    /**
+     * @return the metrics of the font used for every text in the diagrams, Arial Bold 8px
+     */
+    public static FontMetricsTable getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Reads the metrics of a TrueType font resource.
+     *
+     * @param font    classpath resource of the TrueType file
+     * @param hinting classpath resource with the hinted advances, or null to use the scaled ones
+     * @param size    size of the font in pixels
+     */
+    public static FontMetricsTable fromResource(String font, String hinting, int size) {
+        try (InputStream fontStream = resource(font);
+             InputStream hintingStream = hinting == null ? null : resource(hinting)) {
+            return read(font, fontStream, hintingStream, size);
+        } catch (IOException e) {
+            // resources shouldn't throw exceptions
+            throw new IllegalArgumentException(font + " could not be read", e);
+        }
+    }
+
+    /**
+     * @param name    name of the font, only used to identify the table
+     * @param font    content of the TrueType file
+     * @param hinting content of the hinting file, or null to use the scaled advances
+     * @param size    size of the font in pixels
+     */
+    public static FontMetricsTable read(String name, InputStream font, InputStream hinting, int size) throws IOException {
+        final Map<Character, Integer> hinted = hinting == null ? Map.of() : readHinting(hinting, size);
+        return new FontMetricsTable(name, size, ByteBuffer.wrap(font.readAllBytes()), hinted);
+    }
+
+    private static InputStream resource(String path) throws IOException {
+        final InputStream stream = FontMetricsTable.class.getResourceAsStream(path);
+        if (stream == null) throw new FileNotFoundException(path);
+        return stream;
+    }
+
+    private static Map<Character, Integer> readHinting(InputStream hinting, int size) throws IOException {
+        final Map<Character, Integer> hinted = new HashMap<>();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(hinting, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            final String[] fields = line.split("\\s+");
+            if (fields.length != 3) throw new IOException("Wrong hinting line: " + line);
+            if (Integer.parseInt(fields[0]) != size) continue;
+            hinted.put((char) Integer.parseInt(fields[1], 16), Integer.parseInt(fields[2]));
+        }
+        return hinted;
+    }
+
+    private static Map<String, Integer> readTableDirectory(ByteBuffer font) {
+        final Map<String, Integer> tables = new HashMap<>();
+        final int numTables = font.getShort(4) & 0xffff;
+        final byte[] tag = new byte[4];
+        for (int i = 0; i < numTables; i++) {
+            final int record = 12 + 16 * i;
+            font.get(record, tag);
+            tables.put(new String(tag, StandardCharsets.ISO_8859_1), font.getInt(record + 8));
+        }
+        return tables;
+    }
+
+    private static int table(Map<String, Integer> tables, String tag) {
+        final Integer offset = tables.get(tag);
+        if (offset == null) throw new IllegalArgumentException("Font has no " + tag + " table");
+        return offset;
+    }
+
+    /**
+     * Reads the Unicode BMP subtable (format 4) of the cmap. Characters not in the font are mapped to glyph 0.
+     */
+    private static char[] readCharacterMap(ByteBuffer font, int cmap) {
+        int subtable = -1;
+        final int numTables = font.getShort(cmap + 2) & 0xffff;
+        for (int i = 0; i < numTables; i++) {
+            final int record = cmap + 4 + 8 * i;
+            final int platform = font.getShort(record);
+            final int encoding = font.getShort(record + 2);
+            if ((platform == 3 && encoding == 1) || (platform == 0 && subtable == -1))
+                subtable = cmap + font.getInt(record + 4);
+        }
+        if (subtable == -1 || font.getShort(subtable) != 4)
+            throw new IllegalArgumentException("Font has no Unicode BMP character map");
+        final char[] glyph = new char[Character.MAX_VALUE + 1];
+        final int segX2 = font.getShort(subtable + 6) & 0xffff;
+        final int ends = subtable + 14;
+        final int starts = ends + segX2 + 2;
+        final int deltas = starts + segX2;
+        final int rangeOffsets = deltas + segX2;
+        for (int s = 0; s < segX2; s += 2) {
+            final int end = font.getShort(ends + s) & 0xffff;
+            final int start = font.getShort(starts + s) & 0xffff;
+            final int delta = font.getShort(deltas + s);
+            final int rangeOffset = font.getShort(rangeOffsets + s) & 0xffff;
+            for (int c = start; c <= end && c != 0xffff; c++) {
+                if (rangeOffset == 0) glyph[c] = (char) (c + delta);
+                else {
+                    final int index = font.getShort(rangeOffsets + s + rangeOffset + 2 * (c - start)) & 0xffff;
+                    if (index != 0) glyph[c] = (char) (index + delta);
+                }
+            }
+        }
+        return glyph;
+    }
+
+    /**
+     * @return the width in pixels of text in a single line. Supplementary characters are not in the font and count as
+     * one missing glyph.
+     */
+    public int stringWidth(String text) {
+        int width = 0;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                width += missingAdvance;
+                i++;
+            } else width += advances[c];
+        }
+        return width;
+    }
+
+    public int charWidth(char c) {
+        return advances[c];
+    }
+
+    /**
+     * @return the width of a Unicode code point, supplementary characters are not in the font
+     */
+    public int codePointWidth(int codePoint) {
+        return codePoint <= Character.MAX_VALUE ? advances[codePoint] : missingAdvance;
+    }
+
+    public int getAscent() {
+        return ascent;
+    }
+
+    public int getDescent() {
+        return descent;
+    }
+
+    /**
+     * @return the distance between the baselines of two lines of text
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    private static final class DefaultHolder {
+        private static final FontMetricsTable INSTANCE = fromResource(DEFAULT_FONT, DEFAULT_HINTING, DEFAULT_SIZE);
+    }
+}
@@ -1,143 +1,407 @@
 package org.reactome.server.tools.reaction.exporter.layout.text;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
 import java.awt.*;
 import java.awt.geom.Dimension2D;
 import java.awt.image.BufferedImage;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntUnaryOperator;
 
 /**
  * Utility to calculate the size of the text based of a Font and a width/height ratio.
+ * <p>
+ * Computed dimensions are kept in a bounded cache shared by all threads, as the same names (ATP, H2O, cytosol...) are
+ * measured in most reactions. The cache can be saved to a file and loaded in the next run.
+ * <p>
+ * The default font is measured with {@link FontMetricsTable}, so it does not need AWT nor depend on the fonts installed
+ * in the host.
  *
  * @author Pascual Lorente (plorente@ebi.ac.uk)
  */
 public class TextUtils {
 
-	private static final List<Character> WORD_SPLIT_CHARS = Arrays.asList(':', '.', '-', ',', ')', '/', '+');
-	private static final Font DEFAULT_FONT = new Font("arial", Font.BOLD, 8);
-	private static final Graphics2D GRAPHICS = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+	private static final String WORD_SPLIT_CHARS = ":.-,)/+";
+	/**
+	 * Graphics2D is not thread safe, so it is only used to create the metrics of each font, which can be shared. Only
+	 * used for fonts other than the default one.
+	 */
+	private static final Map<Font, FontMetrics> METRICS = new ConcurrentHashMap<>();
 
 	public static final double RATIO = 7. / 3;  // (4 / 3) ^ 3
 	private static final double MIN_HEIGHT = 15;
 
+	private static final int CACHE_SIZE = 100_000;
+	/**
+	 * "RXTC", first bytes of a saved cache
+	 */
+	private static final int CACHE_MAGIC = 0x52585443;
+	private static final int CACHE_VERSION = 1;
+	private static final Cache<Key, Dimension> CACHE = CacheBuilder.newBuilder()
+			.maximumSize(CACHE_SIZE)
+			.recordStats()
+			.build();
+
 
 	private TextUtils() {
 	}
 
 	/**
-	 * Computes the dimension of the text using 'Arial (8px)' as font and 7/3 as ratio
+	 * Computes the dimension of the text using 'Arial Bold (8px)' as font and 7/3 as ratio
 	 *
 	 * @param text text to compute its width and height
 	 * @return width and height of the text once split to meet ration
 	 */
 	public static Dimension2D textDimension(String text) {
-		return textDimension(text, DEFAULT_FONT, RATIO);
+		final FontMetricsTable metrics = FontMetricsTable.getDefault();
+		return textDimension(new Key(text, metrics.getName(), Font.BOLD, metrics.getSize(), RATIO), metrics::codePointWidth, metrics.getHeight());
 	}
 
 	/**
-	 * Computes the dimension of the text using 'Arial (8px)' as font and 7/3 as ratio
+	 * Computes the dimension of the text using any font, measured with AWT
 	 * @param text text to compute its width and height
 	 * @param font font to use for the computation
 	 * @return width and height of the text once split to meet ration
 	 */
 	public static Dimension2D textDimension(String text, Font font, double ratio) {
-		// width = max of
-		// (i) constant minimum,
-		// (ii) length of largest text fragment after splitting text by separators, or
-		// (iii) a nice width
-		final int height = GRAPHICS.getFontMetrics(font).getHeight();
-		double h = 2 * height;
-		double w = h * ratio;
-		while (fit(text, font, w, h) == null) {
-			h += height;
-			w = h * ratio;
+		final FontMetrics metrics = metrics(font);
+		if (font.getSize() < 1) {
+			// text can't be shown, so it takes the minimum size
+			final int height = 2 * metrics.getHeight();
+			return new Dimension((int) Math.ceil(height * ratio), height);
+		}
+		final Key key = new Key(text, font.getName(), font.getStyle(), font.getSize2D(), ratio);
+		return textDimension(key, metrics::charWidth, metrics.getHeight());
+	}
+
+	private static Dimension2D textDimension(Key key, IntUnaryOperator width, int height) {
+		Dimension dimension = CACHE.getIfPresent(key);
+		if (dimension == null) {
+			dimension = computeDimension(key.text, width, height, key.ratio);
+			CACHE.put(key, dimension);
 		}
+		// Dimension is mutable, callers get their own copy
+		return new Dimension(dimension);
+	}
+
+	/**
+	 * The box has a height of a number of lines, at least 2, and a width of height * ratio. Its width is large enough for
+	 * the text in one line, or for the widest fragment of text once split into words and fragments. If the text fits in
+	 * a box, it also fits in any bigger box, so the smallest number of lines is searched with a binary search, starting
+	 * at the width of the widest fragment.
+	 *
+	 * @param width  width in pixels of a code point
+	 * @param height height in pixels of one line
+	 */
+	private static Dimension computeDimension(String text, IntUnaryOperator width, int height, double ratio) {
+		final Tokens tokens = new Tokens(text, width);
+		int lines = Math.max(2, (int) Math.ceil(tokens.widestPart / (height * ratio)));
+		// in case of rounding errors, must be the first number of lines with enough width
+		while (lines > 2 && tokens.widestPart <= (lines - 1) * height * ratio) lines--;
+		while (tokens.widestPart > lines * height * ratio) lines++;
+		if (!fit(tokens, height, lines, ratio)) {
+			// the widest fragment fits, but not the whole text: look for a number of lines that fits, then narrow down
+			int fail = lines;
+			int step = 1;
+			while (!fit(tokens, height, lines + step, ratio)) {
+				fail = lines + step;
+				step *= 2;
+			}
+			int success = lines + step;
+			while (success - fail > 1) {
+				final int middle = (fail + success) >>> 1;
+				if (fit(tokens, height, middle, ratio)) success = middle;
+				else fail = middle;
+			}
+			lines = success;
+		}
+		final double h = (double) lines * height;
 		// if (h < MIN_HEIGHT) h = MIN_HEIGHT;
 		// Add 1 pixel top, 1 pixel bottom for rounding problems
-		w = h * ratio;
+		final double w = h * ratio;
 		return new Dimension((int) Math.ceil(w), (int) Math.ceil(h));
 	}
 
 	/**
-	 * Will split a word by any character in WORD_SPLIT_CHARS
-	 * <pre>:.-,)/+</pre>
-	 * The split characters are inserted as the last character of the fragment
-	 * <p>
-	 * For example <pre>splitWord("p-T402-PAK2(213-524)")</pre> will result in
-	 * <pre>{"p-", "T402-", "PAK2(", "213-", "524)"}</pre>
+	 * Fills lines with words while they are narrower than the box. When a word does not fit in the current line, it is
+	 * split into fragments, and as many fragments as possible are added to the line before starting a new one.
+	 *
+	 * @return true if text can be fit inside a box of the given number of lines, false otherwise
 	 */
-	private static List<String> split(String word) {
-		final List<String> strings = new LinkedList<>();
-		int start = 0;
-		for (int i = 0; i < word.length(); i++) {
-			if (WORD_SPLIT_CHARS.contains(word.charAt(i))) {
-				strings.add(word.substring(start, i + 1));
-				start = i + 1;
+	private static boolean fit(Tokens tokens, int height, int maxLines, double ratio) {
+		final double maxWidth = (double) maxLines * height * ratio;
+		// Test if text fits in 1 line
+		if (tokens.width < maxWidth) return true;
+		// If any part can't fit a line, the text won't fit
+		if (tokens.widestPart > maxWidth) return false;
+		int lines = 0;
+		int line = 0;
+		boolean empty = true;
+		for (int word = 0; word < tokens.words.length; word++) {
+			final int temp = empty ? tokens.words[word] : line + tokens.space + tokens.words[word];
+			if (temp < maxWidth) {
+				line = temp;
+				empty = empty && tokens.firstPart[word] == tokens.firstPart[word + 1];
+				continue;
+			}
+			// Add as much parts as possible to the line
+			for (int part = tokens.firstPart[word]; part < tokens.firstPart[word + 1]; part++) {
+				final int partWidth = tokens.parts[part];
+				final int extended;
+				if (empty) extended = partWidth;
+				else if (part == tokens.firstPart[word]) extended = line + tokens.space + partWidth;
+				else extended = line + partWidth;
+				if (extended < maxWidth) line = extended;
+				else {
+					// Start a new line with part
+					if (++lines > maxLines) return false;
+					line = partWidth;
+				}
+				empty = false;
 			}
 		}
-		if (start < word.length()) strings.add(word.substring(start));
-		return strings;
+		if (!empty) lines++;
+		return lines <= maxLines;
 	}
 
 	/**
-	 * @return a list of lines if text can be fit inside maxWidth and maxHeight.
-	 * If text does not fit, returns null. If font size is less than 1, then it
-	 * returns an empty list to indicate that text is impossible to be shown,
-	 * probably because image size is too small.
+	 * The widths of a text, cut into words by spaces, and words cut into parts after any character in
+	 * WORD_SPLIT_CHARS
+	 * <pre>:.-,)/+</pre>
+	 * For example, the parts of <pre>"p-T402-PAK2(213-524)"</pre> are
+	 * <pre>{"p-", "T402-", "PAK2(213-", "524)"}</pre>
+	 * All widths are computed from the width of every code point, so the text is measured only once.
 	 */
-	private static List<String> fit(String text, Font font, double maxWidth, double maxHeight) {
-		if (font.getSize() < 1) return Collections.emptyList();
-		// Test if text fits in 1 line
-		if (computeWidth(text, font) < maxWidth && computeHeight(1, font) < maxHeight)
-			return Collections.singletonList(text);
-
-		final List<String> lines = new LinkedList<>();
-		final String[] words = text.trim().split(" ");
-		String line = "";
-		String temp;
-		for (String word : words) {
-			temp = line.isEmpty() ? word : line + " " + word;
-			if (computeWidth(temp, font) < maxWidth)
-				line = temp;
-			else {
-				// Split word in smaller parts and add as much parts as possible
-				// to the line
-				final List<String> parts = split(word);
-				boolean firstPart = true;
-				for (String part : parts) {
-					// If the part can't fit a line, the text won't fit
-					if (computeWidth(part, font) > maxWidth)
-						return null;
-					if (line.isEmpty()) temp = part;
-					else if (firstPart) temp = line + " " + part;
-					else temp = line + part;
-					if (computeWidth(temp, font) < maxWidth)
-						line = temp;
-					else {
-						// Start a new line with part
-						lines.add(line);
-						line = part;
-						if (computeHeight(lines.size(), font) > maxHeight)
-							return null;
-					}
-					firstPart = false;
+	private static final class Tokens {
+		/**
+		 * Width of the whole text in one line
+		 */
+		private final int width;
+		private final int space;
+		private final int[] words;
+		/**
+		 * Parts of word i are parts[firstPart[i]] to parts[firstPart[i + 1] - 1]. Empty words have no parts.
+		 */
+		private final int[] firstPart;
+		private final int[] parts;
+		private final int widestPart;
+
+		private Tokens(String text, IntUnaryOperator codePointWidth) {
+			// prefix[i] is the width of text[0, i)
+			final int[] prefix = new int[text.length() + 1];
+			for (int i = 0; i < text.length(); ) {
+				final int codePoint = text.codePointAt(i);
+				final int next = i + Character.charCount(codePoint);
+				prefix[next] = prefix[i] + codePointWidth.applyAsInt(codePoint);
+				if (next > i + 1) prefix[i + 1] = prefix[i];
+				i = next;
+			}
+			width = prefix[text.length()];
+			space = codePointWidth.applyAsInt(' ');
+
+			// same as text.trim().split(" ")
+			int start = 0;
+			int end = text.length();
+			while (start < end && text.charAt(start) <= ' ') start++;
+			while (start < end && text.charAt(end - 1) <= ' ') end--;
+			int wordCount = 1;
+			for (int i = start; i < end; i++) if (text.charAt(i) == ' ') wordCount++;
+			words = new int[wordCount];
+			firstPart = new int[wordCount + 1];
+			int[] parts = new int[8];
+			int partCount = 0;
+			int widest = 0;
+			int word = 0;
+			int wordStart = start;
+			int partStart = start;
+			for (int i = start; i <= end; i++) {
+				final boolean endOfWord = i == end || text.charAt(i) == ' ';
+				final boolean endOfPart = i < end && WORD_SPLIT_CHARS.indexOf(text.charAt(i)) >= 0;
+				if (endOfPart || endOfWord && partStart < i) {
+					final int partEnd = endOfPart ? i + 1 : i;
+					if (partCount == parts.length) parts = Arrays.copyOf(parts, 2 * partCount);
+					parts[partCount] = prefix[partEnd] - prefix[partStart];
+					widest = Math.max(widest, parts[partCount]);
+					partCount++;
+					partStart = partEnd;
+				}
+				if (endOfWord) {
+					words[word] = prefix[i] - prefix[wordStart];
+					firstPart[++word] = partCount;
+					wordStart = partStart = i + 1;
 				}
 			}
+			this.parts = parts;
+			widestPart = widest;
+		}
+	}
+
+	/**
+	 * @return hits, misses and evictions of the dimension cache since the start of the program
+	 */
+	public static CacheStats getCacheStats() {
+		return CACHE.stats();
+	}
+
+	/**
+	 * Empties the cache, its statistics are kept
+	 */
+	public static void clearCache() {
+		CACHE.invalidateAll();
+	}
+
+	/**
+	 * Adds the dimensions saved with {@link #saveCache(File)} to the cache. Files of other versions, or not written by
+	 * {@link #saveCache(File)}, are ignored. Each font is saved with a fingerprint of its metrics, and dimensions of a
+	 * font that does not measure the same in this run (e.g. an AWT font not installed in this host) are ignored too.
+	 *
+	 * @return the number of loaded dimensions
+	 */
+	public static int loadCache(File file) throws IOException {
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (file.length() < 2 * Integer.BYTES || input.readInt() != CACHE_MAGIC || input.readInt() != CACHE_VERSION)
+				return 0;
+			final FontKey[] fonts = new FontKey[input.readInt()];
+			final boolean[] valid = new boolean[fonts.length];
+			for (int i = 0; i < fonts.length; i++) {
+				fonts[i] = new FontKey(input.readUTF(), input.readInt(), input.readFloat());
+				valid[i] = input.readLong() == fonts[i].fingerprint();
+			}
+			final int size = input.readInt();
+			int loaded = 0;
+			for (int i = 0; i < size; i++) {
+				final int font = input.readInt();
+				final String text = input.readUTF();
+				final double ratio = input.readDouble();
+				final Dimension dimension = new Dimension(input.readInt(), input.readInt());
+				if (!valid[font]) continue;
+				CACHE.put(new Key(text, fonts[font].name, fonts[font].style, fonts[font].size, ratio), dimension);
+				loaded++;
+			}
+			return loaded;
 		}
-		if (!line.isEmpty()) lines.add(line);
-		if (computeHeight(lines.size(), font) > maxHeight)
-			return null;
-		else return lines;
 	}
 
-	private static int computeHeight(int lines, Font font) {
-		return lines * GRAPHICS.getFontMetrics(font).getHeight();
+	/**
+	 * Writes the content of the cache into file, to be loaded with {@link #loadCache(File)}.
+	 */
+	public static void saveCache(File file) throws IOException {
+		final Map<Key, Dimension> entries = new HashMap<>(CACHE.asMap());
+		// writeUTF is limited to 64KB, no label is that long
+		entries.keySet().removeIf(key -> key.text.length() > 16_000);
+		// index of each font in the file
+		final Map<FontKey, Integer> fonts = new LinkedHashMap<>();
+		for (Key key : entries.keySet()) fonts.putIfAbsent(new FontKey(key.font, key.style, key.size), fonts.size());
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			output.writeInt(CACHE_MAGIC);
+			output.writeInt(CACHE_VERSION);
+			output.writeInt(fonts.size());
+			for (FontKey font : fonts.keySet()) {
+				output.writeUTF(font.name);
+				output.writeInt(font.style);
+				output.writeFloat(font.size);
+				output.writeLong(font.fingerprint());
+			}
+			output.writeInt(entries.size());
+			for (Map.Entry<Key, Dimension> entry : entries.entrySet()) {
+				final Key key = entry.getKey();
+				output.writeInt(fonts.get(new FontKey(key.font, key.style, key.size)));
+				output.writeUTF(key.text);
+				output.writeDouble(key.ratio);
+				output.writeInt(entry.getValue().width);
+				output.writeInt(entry.getValue().height);
+			}
+		}
+	}
+
+	private static FontMetrics metrics(Font font) {
+		return METRICS.computeIfAbsent(font, f -> new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics().getFontMetrics(f));
+	}
+
+	/**
+	 * Font is only described by name, style and size, so dimensions loaded from a file match any equivalent font.
+	 */
+	private static final class Key {
+		private final String text;
+		private final String font;
+		private final int style;
+		private final float size;
+		private final double ratio;
+
+		private Key(String text, String font, int style, float size, double ratio) {
+			this.text = text;
+			this.font = font;
+			this.style = style;
+			this.size = size;
+			this.ratio = ratio;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof Key)) return false;
+			final Key key = (Key) o;
+			return style == key.style
+					&& Float.compare(size, key.size) == 0
+					&& Double.compare(ratio, key.ratio) == 0
+					&& text.equals(key.text)
+					&& font.equals(key.font);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(text, font, style, size, ratio);
+		}
 	}
 
-	private static int computeWidth(String text, Font font) {
-		return GRAPHICS.getFontMetrics(font).stringWidth(text);
+	private static final class FontKey {
+		private final String name;
+		private final int style;
+		private final float size;
+
+		private FontKey(String name, int style, float size) {
+			this.name = name;
+			this.style = style;
+			this.size = size;
+		}
+
+		/**
+		 * Line height and widths of the printable ASCII characters, measured as {@link #textDimension} does, which is
+		 * enough to tell a different font, or a different version of it.
+		 */
+		private long fingerprint() {
+			final FontMetricsTable table = FontMetricsTable.getDefault();
+			final IntUnaryOperator width;
+			final int height;
+			if (name.equals(table.getName()) && style == Font.BOLD && size == table.getSize()) {
+				width = table::codePointWidth;
+				height = table.getHeight();
+			} else {
+				final FontMetrics metrics = metrics(new Font(name, style, 1).deriveFont(size));
+				width = metrics::charWidth;
+				height = metrics.getHeight();
+			}
+			long fingerprint = height;
+			for (int c = ' '; c < 127; c++) fingerprint = 31 * fingerprint + width.applyAsInt(c);
+			return fingerprint;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof FontKey)) return false;
+			final FontKey key = (FontKey) o;
+			return style == key.style && Float.compare(size, key.size) == 0 && name.equals(key.name);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(name, style, size);
+		}
 	}
 
 }
@@ -0,0 +1,61 @@
+package org.reactome.server.tools.reaction.exporter.ontology;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable copy of a compartment subtree, as returned by
+ * {@link GoTreeFactory#getTreeWithIntermediateNodes(List, GoTreeFactory.Source)}, so it can be shared by all the
+ * layouts with the same compartments. Nodes are stored in pre-order, children in the order of
+ * {@link GoTerm#getIncomingTerms()}, so node 0 is the root and parents come before their children.
+ */
+public final class CompartmentTree {
+
+    private final String[] accessions;
+    private final String[] names;
+    private final int[] parents;
+
+    CompartmentTree(GoTerm root) {
+        final List<GoTerm> nodes = new ArrayList<>();
+        final List<Integer> parents = new ArrayList<>();
+        add(root, -1, nodes, parents);
+        final int size = nodes.size();
+        this.accessions = new String[size];
+        this.names = new String[size];
+        this.parents = new int[size];
+        for (int i = 0; i < size; i++) {
+            accessions[i] = nodes.get(i).getAccession();
+            names[i] = nodes.get(i).getName();
+            this.parents[i] = parents.get(i);
+        }
+    }
+
+    private static void add(GoTerm term, int parent, List<GoTerm> nodes, List<Integer> parents) {
+        final int index = nodes.size();
+        nodes.add(term);
+        parents.add(parent);
+        for (GoTerm child : term.getIncomingTerms()) add(child, index, nodes, parents);
+    }
+
+    public int size() {
+        return accessions.length;
+    }
+
+    /**
+     * @return the GO accession of node i, without the GO: prefix
+     */
+    public String getAccession(int i) {
+        return accessions[i];
+    }
+
+    public String getName(int i) {
+        return names[i];
+    }
+
+    /**
+     * @return the index of the parent of node i, always lower than i, or -1 for the root
+     */
+    public int getParent(int i) {
+        return parents[i];
+    }
+}
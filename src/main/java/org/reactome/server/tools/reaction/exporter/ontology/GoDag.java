@@ -0,0 +1,288 @@
+package org.reactome.server.tools.reaction.exporter.ontology;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A master tree compiled into arrays, so subtrees can be extracted without walking the {@link GoTerm} objects.
+ * <p>
+ * Terms are numbered in topological order: every term has a bigger index than the terms it points to, so roots come
+ * first. The outgoing terms of every term are stored in a single array (compressed sparse rows) in the same order as
+ * {@link GoTerm#getOutgoingTerms()} returns them, and the ancestors of every term are stored as a bitset. Terms that
+ * are part of a cycle, or point to a cycle, are numbered at the end and have no ancestors, as they have no branches.
+ * <p>
+ * A compiled tree can be saved with {@link #write(OutputStream)} and loaded back with {@link #read(ByteBuffer)}, which
+ * only reads the arrays and the id, name, namespace and obsolete flag of the terms. Terms loaded from a file have no
+ * relationships, the arrays are the only source of the hierarchy.
+ * <p>
+ * Instances are immutable and can be shared by any number of threads.
+ */
+final class GoDag {
+
+    private static final int MAGIC = 0x474f4343;  // GOCC
+    private static final int VERSION = 1;
+
+    private final String[] ids;
+    private final Map<String, Integer> index;
+    private final GoTerm[] terms;
+    /**
+     * Outgoing terms of term i are out[outStart[i]] to out[outStart[i + 1] - 1]
+     */
+    private final int[] outStart;
+    private final int[] out;
+    /**
+     * Ancestors of term i are the bits of ancestors[i * words] to ancestors[(i + 1) * words - 1]
+     */
+    private final long[] ancestors;
+    private final int words;
+    /**
+     * Terms from this index are in a cycle or point to one
+     */
+    private final int acyclic;
+
+    private GoDag(String[] ids, GoTerm[] terms, int[] outStart, int[] out, int acyclic) {
+        final int n = ids.length;
+        this.ids = ids;
+        this.terms = terms;
+        this.outStart = outStart;
+        this.out = out;
+        this.acyclic = acyclic;
+        index = new HashMap<>();
+        for (int i = 0; i < n; i++) index.put(ids[i], i);
+        words = (n + 63) >>> 6;
+        ancestors = new long[n * words];
+        for (int i = 0; i < acyclic; i++) {
+            for (int e = outStart[i]; e < outStart[i + 1]; e++) {
+                final int parent = out[e];
+                ancestors[i * words + (parent >>> 6)] |= 1L << parent;
+                for (int w = 0; w < words; w++) ancestors[i * words + w] |= ancestors[parent * words + w];
+            }
+        }
+    }
+
+    /**
+     * Compiles a master tree. Terms are identified by the keys of the map.
+     */
+    static GoDag compile(Map<String, GoTerm> masterTree) {
+        final int n = masterTree.size();
+        // a first numbering, in any order
+        final String[] ids = masterTree.keySet().toArray(new String[0]);
+        final GoTerm[] byKey = new GoTerm[n];
+        for (int i = 0; i < n; i++) byKey[i] = masterTree.get(ids[i]);
+        final Map<GoTerm, Integer> keys = new HashMap<>();
+        for (int i = 0; i < n; i++) keys.put(byKey[i], i);
+        final int[][] outgoing = new int[n][];
+        final int[] pending = new int[n];
+        final int[] incomingCount = new int[n];
+        for (int i = 0; i < n; i++) {
+            final Collection<GoTerm> parents = byKey[i].getOutgoingTerms();
+            outgoing[i] = new int[parents.size()];
+            int j = 0;
+            for (GoTerm parent : parents) {
+                final Integer key = keys.get(parent);
+                if (key == null) throw new IllegalArgumentException(parent.getId() + " is not in the master tree");
+                outgoing[i][j++] = key;
+                incomingCount[key]++;
+            }
+            pending[i] = outgoing[i].length;
+        }
+        final int[][] incoming = new int[n][];
+        for (int i = 0; i < n; i++) incoming[i] = new int[incomingCount[i]];
+        final int[] filled = new int[n];
+        for (int i = 0; i < n; i++) for (int parent : outgoing[i]) incoming[parent][filled[parent]++] = i;
+
+        // Kahn's algorithm from the roots, terms get their final number when all their outgoing terms have one
+        final int[] order = new int[n];
+        final int[] number = new int[n];
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < n; i++) if (pending[i] == 0) order[tail++] = i;
+        while (head < tail) {
+            final int key = order[head++];
+            for (int child : incoming[key]) {
+                if (--pending[child] == 0) order[tail++] = child;
+            }
+        }
+        final int acyclic = tail;
+        for (int i = 0; i < n; i++) if (pending[i] > 0) order[tail++] = i;
+        for (int i = 0; i < n; i++) number[order[i]] = i;
+
+        final String[] sortedIds = new String[n];
+        final GoTerm[] terms = new GoTerm[n];
+        final int[] outStart = new int[n + 1];
+        int edges = 0;
+        for (int i = 0; i < n; i++) edges += outgoing[i].length;
+        final int[] out = new int[edges];
+        for (int i = 0; i < n; i++) {
+            final int key = order[i];
+            terms[i] = byKey[key];
+            sortedIds[i] = ids[key];
+            outStart[i + 1] = outStart[i] + outgoing[key].length;
+            for (int j = 0; j < outgoing[key].length; j++) out[outStart[i] + j] = number[outgoing[key][j]];
+        }
+        return new GoDag(sortedIds, terms, outStart, out, acyclic);
+    }
+
+    /**
+     * Writes this tree in a binary format, to be loaded with {@link #read(ByteBuffer)}.
+     */
+    void write(OutputStream outputStream) throws IOException {
+        final DataOutputStream output = new DataOutputStream(outputStream);
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeInt(ids.length);
+        output.writeInt(out.length);
+        output.writeInt(acyclic);
+        for (int i = 0; i < ids.length; i++) {
+            writeString(output, ids[i]);
+            writeString(output, terms[i].getName());
+            writeString(output, terms[i].getNamespace());
+            output.writeBoolean(terms[i].isObsolete());
+        }
+        for (int start : outStart) output.writeInt(start);
+        for (int parent : out) output.writeInt(parent);
+        output.flush();
+    }
+
+    /**
+     * Reads a tree written by {@link #write(OutputStream)}.
+     *
+     * @throws IllegalArgumentException if content is not a compiled tree of this version
+     */
+    static GoDag read(ByteBuffer content) {
+        if (content.getInt() != MAGIC) throw new IllegalArgumentException("Not a compiled GO tree");
+        final int version = content.getInt();
+        if (version != VERSION) throw new IllegalArgumentException("Unsupported compiled GO tree version: " + version);
+        final int n = content.getInt();
+        final int edges = content.getInt();
+        final int acyclic = content.getInt();
+        final String[] ids = new String[n];
+        final GoTerm[] terms = new GoTerm[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = readString(content);
+            terms[i] = new GoTerm(ids[i]);
+            terms[i].setName(readString(content));
+            terms[i].setNamespace(readString(content));
+            terms[i].setObsolete(content.get() != 0);
+        }
+        final int[] outStart = new int[n + 1];
+        content.asIntBuffer().get(outStart);
+        content.position(content.position() + 4 * outStart.length);
+        final int[] out = new int[edges];
+        content.asIntBuffer().get(out);
+        content.position(content.position() + 4 * out.length);
+        return new GoDag(ids, terms, outStart, out, acyclic);
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        if (value == null) {
+            output.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(ByteBuffer content) {
+        final int length = content.getInt();
+        if (length < 0) return null;
+        final byte[] bytes = new byte[length];
+        content.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    int size() {
+        return ids.length;
+    }
+
+    Integer indexOf(String id) {
+        return index.get(id);
+    }
+
+    GoTerm getTerm(int term) {
+        return terms[term];
+    }
+
+    /**
+     * @return the indexes of the outgoing terms of <em>term</em>, in the order of {@link GoTerm#getOutgoingTerms()}
+     */
+    int[] getOutgoingTerms(int term) {
+        return Arrays.copyOfRange(out, outStart[term], outStart[term + 1]);
+    }
+
+    /**
+     * For every term in <em>query</em>, chooses the branch, from the term to a root, with more terms of <em>query</em>
+     * and, then, the shortest one. When several branches are equally good, the first one in the order of
+     * {@link GoTerm#getOutgoingTerms()} is taken. Branches of all the terms are computed at once, with a single pass
+     * over the ancestors of the query in topological order.
+     *
+     * @param query indexes of terms
+     * @return a function to get the next term of the best branch of any term in <em>query</em> or in the branches, -1
+     * for the roots
+     * @throws IllegalStateException if any term in query points to a cycle
+     */
+    Branches getBranches(int[] query) {
+        final long[] union = new long[words];
+        final long[] marked = new long[words];
+        for (int term : query) {
+            if (term >= acyclic)
+                throw new IllegalStateException("Cycle in the ancestors of " + terms[term].getId());
+            marked[term >>> 6] |= 1L << term;
+            union[term >>> 6] |= 1L << term;
+            for (int w = 0; w < words; w++) union[w] |= ancestors[term * words + w];
+        }
+        int size = 0;
+        for (long word : union) size += Long.bitCount(word);
+        final int[] nodes = new int[size];
+        final int[] next = new int[size];
+        final int[] count = new int[size];
+        final int[] length = new int[size];
+        int k = 0;
+        for (int w = 0; w < words; w++) {
+            for (long word = union[w]; word != 0; word &= word - 1) {
+                final int term = (w << 6) + Long.numberOfTrailingZeros(word);
+                nodes[k] = term;
+                next[k] = -1;
+                // parents come first, so they are already in nodes
+                for (int e = outStart[term]; e < outStart[term + 1]; e++) {
+                    final int parent = out[e];
+                    final int p = Arrays.binarySearch(nodes, 0, k, parent);
+                    final int c = count[p] + ((marked[parent >>> 6] & 1L << parent) != 0 ? 1 : 0);
+                    final int l = length[p] + 1;
+                    if (next[k] == -1 || c > count[k] || c == count[k] && l < length[k]) {
+                        next[k] = parent;
+                        count[k] = c;
+                        length[k] = l;
+                    }
+                }
+                k++;
+            }
+        }
+        return new Branches(nodes, next);
+    }
+
+    /**
+     * The best branches of a query, as a linked list of term indexes.
+     */
+    static final class Branches {
+        private final int[] nodes;
+        private final int[] next;
+
+        private Branches(int[] nodes, int[] next) {
+            this.nodes = nodes;
+            this.next = next;
+        }
+
+        /**
+         * @return the index of the next term in the branch of <em>term</em>, or -1 if term is a root
+         */
+        int next(int term) {
+            return next[Arrays.binarySearch(nodes, term)];
+        }
+    }
+}
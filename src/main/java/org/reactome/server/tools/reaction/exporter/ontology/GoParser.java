@@ -11,7 +11,6 @@ import java.net.URL;
 import java.util.*;
 
 import static java.util.stream.Collectors.toList;
-import static java.util.stream.Collectors.toMap;
 import static org.obolibrary.oboformat.parser.OBOFormatConstants.OboFormatTag.*;
 import static org.reactome.server.tools.reaction.exporter.ontology.GoTerm.Directionality.OUTGOING;
 import static org.reactome.server.tools.reaction.exporter.ontology.RelationshipType.component_of;
@@ -29,67 +28,55 @@ public class GoParser {
     private GoParser() {
     }
 
-    private static void addOcelotTerms(Map<String, GoTerm> nodes) {
-        final OcelotParser.OcelotElement root = OcelotParser.readOcelot();
-        final Map<String, String> index = root.getChildren().stream()
-                .collect(toMap(child -> child.getChildren().get(0).getValue(), GoParser::extractGoId));
-        root.getChildren().stream()
-                .filter(elem1 -> elem1.getValue() == null)  // take elements with children
-                .forEach(child -> parseTerm(nodes, index, child.getChildren().get(2)));
-    }
-
-    private static void parseTerm(Map<String, GoTerm> terms, Map<String, String> index, OcelotParser.OcelotElement sec) {
-        final String goId = sec.getChildren().stream()
-                .filter(elem -> elem.getChildren().get(0).getValue().equals("GOID"))
-                .findFirst()
-                .map(elem -> elem.getChildren().get(1).getValue().replace("\"", "").trim())
-                .orElse(null);
-        final List<String> surroundedBy = sec.getChildren().stream()
-                .filter(elem -> elem.getChildren().get(0).getValue().equals("SURROUNDED-BY"))
-                .findFirst()
-                .map(elem -> elem.getChildren().stream().skip(1).map(OcelotParser.OcelotElement::getValue).collect(toList()))
-                .orElse(Collections.emptyList());
-        final List<String> componentOf = sec.getChildren().stream()
-                .filter(elem -> elem.getChildren().get(0).getValue().equals("COMPONENT-OF"))
-                .findFirst()
-                .map(elem -> elem.getChildren().stream().skip(1).map(OcelotParser.OcelotElement::getValue).collect(toList()))
-                .orElse(Collections.emptyList());
-        if (goId != null) {
-            final GoTerm goTerm = terms.get(goId);
+    /**
+     * Connects <em>nodes</em> with the surrounded_by and component_of relationships of the CCO frames in <em>root</em>.
+     * Package private so it can be tested with other frames.
+     */
+    static void addOcelotTerms(Map<String, GoTerm> nodes, OcelotParser.OcelotElement root) {
+        // every frame is read once, the CCO to GO index is needed before connecting the terms
+        final List<CcoFrame> frames = new ArrayList<>(root.getChildren().size());
+        final Map<String, String> index = new HashMap<>();
+        for (OcelotParser.OcelotElement child : root.getChildren()) {
+            final CcoFrame frame = new CcoFrame(child);
+            if (index.put(frame.ccoId, frame.goId == null ? "" : frame.goId) != null)
+                throw new IllegalStateException("Duplicate CCO frame: " + frame.ccoId);
+            frames.add(frame);
+        }
+        for (CcoFrame frame : frames) {
+            if (frame.goId == null) continue;
+            final GoTerm goTerm = nodes.get(frame.goId);
             if (goTerm == null) {
 //				System.err.println("Go term not found: " + goId);
-                return;
+                continue;
             }
-            for (String ccoId : surroundedBy) {
-                final GoTerm target = terms.get(index.get(ccoId));
+            for (String ccoId : frame.surroundedBy) {
+                final GoTerm target = nodes.get(index.get(ccoId));
                 if (target != null)
                     goTerm.createRelationship(OUTGOING, surrounded_by, target);
             }
-            for (String ccoId : componentOf) {
-                final GoTerm target = terms.get(index.get(ccoId));
+            for (String ccoId : frame.componentOf) {
+                final GoTerm target = nodes.get(index.get(ccoId));
                 if (target != null)
                     goTerm.createRelationship(OUTGOING, component_of, target);
             }
         }
     }
 
-    private static String extractGoId(OcelotParser.OcelotElement elem) {
-        return elem.getChildren().get(2).getChildren().stream()
-                .filter(elem1 -> elem1.getChildren().get(0).getValue().equals("GOID"))
-                .findFirst()
-                .map(elem1 -> elem1.getChildren().get(1).getValue().replace("\"", "").trim())
-                .orElse("");
+    public static Map<String, GoTerm> getGoOntology() {
+        return getGoOntology(GoParser.class.getResource(GENE_ONTOLOGY));
     }
 
-    public static Map<String, GoTerm> getGoOntology() {
+    /**
+     * Same as {@link #getGoOntology()}, but Gene Ontology is read from <em>resource</em>.
+     */
+    static Map<String, GoTerm> getGoOntology(URL resource) {
         try {
-            final URL resource = GoParser.class.getResource(GENE_ONTOLOGY);
             OBODoc obo = new OBOFormatParser().parse(Objects.requireNonNull(resource));
             final Map<String, GoTerm> index = connect(obo);
-            addOcelotTerms(index);
+            addOcelotTerms(index, OcelotParser.readOcelot());
             return index;
         } catch (IOException | NullPointerException e) {
-            LoggerFactory.getLogger("reaction-exporter").error("Missing resource: " + GENE_ONTOLOGY);
+            LoggerFactory.getLogger("reaction-exporter").error("Missing resource: " + (resource == null ? GENE_ONTOLOGY : resource));
             return Collections.emptyMap();
         }
     }
@@ -128,4 +115,39 @@ public class GoParser {
         return index;
     }
 
+    /**
+     * The slots of a CCO frame used to connect the terms: (CCO-ID T|NIL (slots...) NIL). For every slot, only its first
+     * occurrence is used.
+     */
+    private static final class CcoFrame {
+        private final String ccoId;
+        private String goId;
+        private List<String> surroundedBy = Collections.emptyList();
+        private List<String> componentOf = Collections.emptyList();
+
+        private CcoFrame(OcelotParser.OcelotElement frame) {
+            ccoId = frame.getChildren().get(0).getValue();
+            boolean surroundedByFound = false;
+            boolean componentOfFound = false;
+            for (OcelotParser.OcelotElement slot : frame.getChildren().get(2).getChildren()) {
+                final List<OcelotParser.OcelotElement> values = slot.getChildren();
+                final String name = values.get(0).getValue();
+                if (goId == null && "GOID".equals(name)) {
+                    goId = values.get(1).getValue().replace("\"", "").trim();
+                } else if (!surroundedByFound && "SURROUNDED-BY".equals(name)) {
+                    surroundedBy = valuesOf(values);
+                    surroundedByFound = true;
+                } else if (!componentOfFound && "COMPONENT-OF".equals(name)) {
+                    componentOf = valuesOf(values);
+                    componentOfFound = true;
+                }
+            }
+        }
+
+        private static List<String> valuesOf(List<OcelotParser.OcelotElement> slot) {
+            final List<String> values = new ArrayList<>(slot.size() - 1);
+            for (int i = 1; i < slot.size(); i++) values.add(slot.get(i).getValue());
+            return values;
+        }
+    }
 }
@@ -4,15 +4,30 @@ import static org.reactome.server.tools.reaction.exporter.ontology.GoTerm.Direct
 import static org.reactome.server.tools.reaction.exporter.ontology.RelationshipType.surrounded_by;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.reactome.server.graph.domain.model.Compartment;
 import org.reactome.server.tools.reaction.exporter.InvalidArgumentException;
 import org.reactome.server.tools.reaction.exporter.compartment.ReactomeCompartmentFactory;
 
 /**
  * Helper class to generate compartment trees.
+ * <p>
+ * Master trees are held as {@link OntologyRelease}s. The Gene Ontology one is loaded the first time it is used. The
+ * Reactome one needs the database, so it is only loaded through the {@link ReactomeCompartmentFactory} of the caller,
+ * with {@link #getReactomeRelease(ReactomeCompartmentFactory)}, or published from a snapshot with
+ * {@link #setReactomeMasterTree(Map)}. Until then, the methods taking {@link Source#REACTOME} throw an
+ * {@link IllegalStateException}. Then, a new Reactome release can be loaded in the background with
+ * {@link #reloadReactomeMasterTree(String, ReactomeCompartmentFactory, Executor)} and is atomically swapped in when
+ * ready, without restarting the JVM. Requests started before the swap keep the release they got from
+ * {@link #getRelease(Source)}.
  *
  * @author Pascual Lorente (plorente@ebi.ac.uk)
  */
@@ -21,13 +36,19 @@ public class GoTreeFactory {
     private static final String EXTRACELLULAR_REGION_ID = "GO:0005576";
     private static final String CELLULAR_COMPONENT_ID = "GO:0005575";
 
-    private static Map<String, GoTerm> reactomeSourcedMasterTree = null;
-    private static Map<String, GoTerm> goSourcedMasterTree = null;
+    // Releases are never modified once published, so they can be read from several threads
+    private static final AtomicReference<OntologyRelease> reactomeRelease = new AtomicReference<>();
+    private static final AtomicReference<OntologyRelease> goRelease = new AtomicReference<>();
 
+    /**
+     * Most reactions have one of a few dozen compartment combinations, so their subtrees are only built once
+     */
+    private static final int TREE_CACHE_SIZE = 10_000;
+    private static final Cache<TreeKey, CompartmentTree> TREE_CACHE = CacheBuilder.newBuilder()
+            .maximumSize(TREE_CACHE_SIZE)
+            .build();
 
-    private static GoTerm NULL_COMPARTMENT;
-    private static GoTerm extracellularRegion;
-    private static GoTerm cellBody;
+    private static final GoTerm NULL_COMPARTMENT;
 
     static {
         Compartment compartment = new Compartment();
@@ -45,71 +66,224 @@ public class GoTreeFactory {
      * them. This method uses a precomputed GO hierarchy.
      *
      * @return a copy of the components root, with a smaller copy of the tree containing <em>ids</em>
+     * @throws IllegalStateException if source is Reactome and no Reactome release has been loaded
      */
     public static GoTerm getTreeWithIntermediateNodes(List<String> goIds, Source source) {
-        Map<String, GoTerm> tree;
+        return getTreeWithIntermediateNodes(getRelease(source).getTree(), goIds);
+    }
+
+    /**
+     * Same subtree as {@link #getTreeWithIntermediateNodes(List, Source)}, as an immutable copy shared by every call
+     * with the same <em>goIds</em>, in any order, and source. The current release of source is used.
+     *
+     * @throws IllegalStateException if source is Reactome and no Reactome release has been loaded
+     */
+    public static CompartmentTree getCompartmentTree(Collection<String> goIds, Source source) {
+        return getCompartmentTree(goIds, getRelease(source));
+    }
+
+    /**
+     * Same as {@link #getCompartmentTree(Collection, Source)}, but from a given release, even if it has been replaced.
+     * Subtrees of a replaced release are built on every call, as they are no longer cached.
+     */
+    public static CompartmentTree getCompartmentTree(Collection<String> goIds, OntologyRelease release) {
+        final GoDag masterTree = release.getTree();
+        // the subtree only depends on the set of ids
+        final TreeKey key = new TreeKey(masterTree, new ArrayList<>(new TreeSet<>(goIds)));
+        CompartmentTree tree = TREE_CACHE.getIfPresent(key);
+        if (tree == null) {
+            tree = new CompartmentTree(getTreeWithIntermediateNodes(masterTree, key.ids));
+            TREE_CACHE.put(key, tree);
+            // the release can be replaced, and its subtrees purged, while this one was built
+            if (release.isReplaced()) TREE_CACHE.invalidate(key);
+        }
+        return tree;
+    }
+
+    /**
+     * @return the current release of the master tree of source. The Gene Ontology sourced tree is loaded the first time,
+     * the Reactome sourced one must have been published or loaded with {@link #getReactomeRelease(ReactomeCompartmentFactory)}
+     * @throws IllegalStateException if source is Reactome and no Reactome release has been loaded
+     */
+    public static OntologyRelease getRelease(Source source) {
         switch (source) {
             case REACTOME:
-                tree = getLazyLoadedReactomeTree();
-                break;
+                final OntologyRelease release = reactomeRelease.get();
+                if (release == null)
+                    throw new IllegalStateException("The Reactome master tree has not been loaded from a database or a snapshot");
+                return release;
             case GO:
-                tree = getLazyLoadedGoTree();
-                break;
+                return getLazyLoadedRelease(goRelease, Source.GO, () -> {
+                    final GoDag tree = OntologyCompiler.load(OntologyCompiler.GO_RESOURCE);
+                    return tree == null ? compileGoOntology() : tree;
+                });
             default:
                 throw new InvalidArgumentException("Don't know how to process tree source: " + source);
         }
-        return getTreeWithIntermediateNodes(tree, goIds);
     }
 
-    private static Map<String, GoTerm> getLazyLoadedGoTree() {
-        if (goSourcedMasterTree == null) {
-            goSourcedMasterTree = GoParser.getGoOntology().values().stream().collect(Collectors.toMap(GoTerm::getId, Function.identity()));
+    /**
+     * @param compartments where the Reactome master tree is loaded from the first time
+     * @return the current Reactome release
+     */
+    public static OntologyRelease getReactomeRelease(ReactomeCompartmentFactory compartments) {
+        return getLazyLoadedRelease(reactomeRelease, Source.REACTOME, () -> prepareReactomeTree(compartments.getMasterTree()));
+    }
+
+    private static OntologyRelease getLazyLoadedRelease(AtomicReference<OntologyRelease> reference, Source source, Supplier<GoDag> loader) {
+        OntologyRelease release = reference.get();
+        if (release == null) {
+            synchronized (reference) {
+                release = reference.get();
+                if (release == null) {
+                    // a release published while loading wins, as it is the one explicitly requested
+                    reference.compareAndSet(null, new OntologyRelease(source, null, loader.get()));
+                    release = reference.get();
+                }
+            }
         }
-        return goSourcedMasterTree;
+        return release;
+    }
+
+    /**
+     * Forgets the current Reactome release, so it is loaded from the database the next time it is needed. Package
+     * private so tests publishing their own releases can leave the factory as they found it.
+     */
+    static void clearReactomeRelease() {
+        replace(reactomeRelease.getAndSet(null));
+    }
+
+    /**
+     * Parses and compiles the Gene Ontology sourced master tree. Only used when the tree has not been compiled during
+     * the build.
+     */
+    static GoDag compileGoOntology() {
+        return GoDag.compile(GoParser.getGoOntology().values().stream().collect(Collectors.toMap(GoTerm::getId, Function.identity())));
+    }
+
+    /**
+     * Replaces the Reactome sourced master tree, which is otherwise lazily loaded from the database. Used when the
+     * hierarchy is read from a snapshot file.
+     *
+     * @param masterTree a tree as returned by {@link ReactomeCompartmentFactory#getMasterTree()}
+     */
+    public static void setReactomeMasterTree(Map<String, GoTerm> masterTree) {
+        setReactomeMasterTree(null, masterTree);
+    }
+
+    /**
+     * Compiles <em>masterTree</em> and publishes it as the current Reactome release. Layouts that already got the
+     * previous release keep using it.
+     *
+     * @param release    name of the release, like the Reactome release number
+     * @param masterTree a tree as returned by {@link ReactomeCompartmentFactory#getMasterTree()}
+     * @return the new release
+     */
+    public static OntologyRelease setReactomeMasterTree(String release, Map<String, GoTerm> masterTree) {
+        final OntologyRelease next = createReactomeRelease(release, masterTree);
+        replace(reactomeRelease.getAndSet(next));
+        return next;
     }
 
-    private static Map<String, GoTerm> getLazyLoadedReactomeTree() {
-        if (reactomeSourcedMasterTree == null) {
-            reactomeSourcedMasterTree = ReactomeCompartmentFactory.getMasterTree();
+    /**
+     * Subtrees of a replaced release are only used by the requests that already had it, so they are purged. The
+     * release is marked before the purge, so any subtree cached after it is removed by
+     * {@link #getCompartmentTree(Collection, OntologyRelease)}.
+     */
+    private static void replace(OntologyRelease previous) {
+        if (previous == null) return;
+        previous.setReplaced();
+        TREE_CACHE.asMap().keySet().removeIf(key -> key.masterTree == previous.getTree());
+    }
 
-            // NOTE: Reactome diagrams show the cell and any other compartment surrounded by the extracellular region.
-            // This is not represented in Gene Ontology. To bypass this behaviour we create the relationship:
-            //                 (cellular component)-[surrounded_by]->(extracellular_region)
-            final GoTerm cellularComponent = reactomeSourcedMasterTree.get(CELLULAR_COMPONENT_ID);
-            GoTreeFactory.extracellularRegion = reactomeSourcedMasterTree.get(EXTRACELLULAR_REGION_ID);
-//            GoTreeFactory.cellBody = reactomeSourcedMasterTree.get("GO:0044297");
+    /**
+     * Compiles <em>masterTree</em> as a Reactome release, without publishing it. Layouts created with this release, see
+     * {@link org.reactome.server.tools.reaction.exporter.layout.model.Layout#Layout(OntologyRelease)}, use it no
+     * matter which is the current release.
+     *
+     * @param release    name of the release, like the Reactome release number
+     * @param masterTree a tree as returned by {@link ReactomeCompartmentFactory#getMasterTree()}
+     */
+    public static OntologyRelease createReactomeRelease(String release, Map<String, GoTerm> masterTree) {
+        return new OntologyRelease(Source.REACTOME, release, prepareReactomeTree(masterTree));
+    }
 
+    /**
+     * Loads the Reactome master tree from the database in the background, and swaps it in when it is ready. Meanwhile,
+     * the current release is still used. When several reloads overlap, the last one to finish is the current release.
+     *
+     * @param release      name of the release, like the Reactome release number
+     * @param compartments where the tree is loaded from
+     * @param executor     where the tree is loaded and compiled
+     * @return the new release, when it has been published
+     */
+    public static CompletableFuture<OntologyRelease> reloadReactomeMasterTree(String release, ReactomeCompartmentFactory compartments, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> setReactomeMasterTree(release, compartments.getMasterTree()), executor);
+    }
 
-            cellularComponent.createRelationship(OUTGOING, surrounded_by, extracellularRegion);
+    /**
+     * Modifies the terms of <em>masterTree</em>, so it must be called before the tree is published.
+     *
+     * @return masterTree compiled
+     */
+    private static GoDag prepareReactomeTree(Map<String, GoTerm> masterTree) {
+        // NOTE: Reactome diagrams show the cell and any other compartment surrounded by the extracellular region.
+        // This is not represented in Gene Ontology. To bypass this behaviour we create the relationship:
+        //                 (cellular component)-[surrounded_by]->(extracellular_region)
+        final GoTerm cellularComponent = masterTree.get(CELLULAR_COMPONENT_ID);
+        final GoTerm extracellularRegion = masterTree.get(EXTRACELLULAR_REGION_ID);
 
-            //To avoid cycles (extracellular region) is not a (cellular component) anymore
-            // (gviteri) IMPORTANT: FOLLOWING LINE DOESN'T WORK FOR RELEASE V71 SINCE ANOTHER PARENT FOR EXTRACELLULAR REGION HAS BEEN ADDED.
-            // extracellularRegion.getParents().remove(cellularComponent);
 
-            // BUG FIX NOTE: As per release V71, extracellularRegion's parent isn't cellular component, so the line above would not work
-            //               and in the later process will lead to stackoverflow exception in the getBranches().
-            extracellularRegion.getParents().clear();
-        }
-        return reactomeSourcedMasterTree;
+        cellularComponent.createRelationship(OUTGOING, surrounded_by, extracellularRegion);
+
+        //To avoid cycles (extracellular region) is not a (cellular component) anymore
+        // (gviteri) IMPORTANT: FOLLOWING LINE DOESN'T WORK FOR RELEASE V71 SINCE ANOTHER PARENT FOR EXTRACELLULAR REGION HAS BEEN ADDED.
+        // extracellularRegion.getParents().remove(cellularComponent);
+
+        // BUG FIX NOTE: As per release V71, extracellularRegion's parent isn't cellular component, so the line above would not work
+        //               and in the later process will lead to stackoverflow exception in the getBranches().
+        extracellularRegion.getParents().clear();
+        return GoDag.compile(masterTree);
     }
 
     /**
      * Creates a subtree from the GO tree that contains the terms in <em>ids</em> are connected and those in-between
-     * them.
+     * them. The tree is compiled on every call, so prefer {@link #getTreeWithIntermediateNodes(List, Source)}.
      *
      * @param masterTree the tree where to extract the relationships
      * @param ids        a list of GO accession (without GO: prefix)
      * @return a copy of the components root, with a smaller copy of the tree containing <em>ids</em>
      */
     public static GoTerm getTreeWithIntermediateNodes(Map<String, GoTerm> masterTree, Collection<String> ids) {
+        return getTreeWithIntermediateNodes(GoDag.compile(masterTree), ids);
+    }
+
+    private static GoTerm getTreeWithIntermediateNodes(GoDag masterTree, Collection<String> ids) {
         final Map<String, GoTerm> tree = new HashMap<>();
         if (ids.isEmpty()) ids = List.of(EXTRACELLULAR_REGION_ID);
-        final List<GoTerm> terms = ids.stream().map(id -> new GoTerm(masterTree.get(id))).collect(Collectors.toList());
+        final List<GoTerm> terms = new ArrayList<>();
+        final int[] query = new int[ids.size()];
+        int i = 0;
+        for (String id : ids) {
+            final Integer index = masterTree.indexOf(id);
+            if (index == null) throw new IllegalArgumentException(id + " is not in the master tree");
+            query[i++] = index;
+            terms.add(new GoTerm(masterTree.getTerm(index)));
+        }
         for (final GoTerm term : terms) {
             tree.put(term.getId(), term);
         }
-        for (final GoTerm term : terms)
-            addToHierarchy(masterTree, tree, term, terms);
+        // the best branch of every term: the one with more terms in ids and, then, the shortest
+        final GoDag.Branches branches = masterTree.getBranches(query);
+        for (i = 0; i < query.length; i++) {
+            GoTerm aux = terms.get(i);
+            for (int parent = branches.next(query[i]); parent != -1; parent = branches.next(parent)) {
+                final GoTerm masterParent = masterTree.getTerm(parent);
+                final GoTerm copy = tree.computeIfAbsent(masterParent.getId(), id -> new GoTerm(masterParent));
+                aux.createRelationship(OUTGOING, surrounded_by, copy);
+                aux = copy;
+            }
+        }
         // Remove upper bound compartments
         GoTerm root = tree.values().stream()
                 .filter(goTerm -> goTerm.getOutgoingTerms().isEmpty())
@@ -126,40 +300,30 @@ public class GoTreeFactory {
         return findRoot(incomingTerms.iterator().next(), terms);
     }
 
-    private static void addToHierarchy(Map<String, GoTerm> masterTree, Map<String, GoTerm> tree, GoTerm term, List<GoTerm> terms) {
-        Collection<List<GoTerm>> branches = getBranches(term, masterTree);
-        final List<GoTerm> best = branches.stream()
-                .min(Comparator
-                        .comparingLong((List<GoTerm> branch) -> branch.stream().filter(terms::contains).count()).reversed()
-                        .thenComparingInt(List::size))
-                .orElse(null);
+    /**
+     * Subtrees are cached by master tree, rather than by source, so a release never gets the subtrees of another one.
+     */
+    private static final class TreeKey {
+        private final GoDag masterTree;
+        private final List<String> ids;
 
-        if (best != null) {
-            GoTerm aux = term;
-            for (final GoTerm masterParent : best) {
-                final GoTerm parent = tree.computeIfAbsent(masterParent.getId(), id -> new GoTerm(masterParent));
-                aux.createRelationship(OUTGOING, surrounded_by, parent);
-                aux = parent;
-            }
+        private TreeKey(GoDag masterTree, List<String> ids) {
+            this.masterTree = masterTree;
+            this.ids = ids;
         }
-    }
 
-    private static Collection<List<GoTerm>> getBranches(GoTerm term, Map<String, GoTerm> masterTree) {
-        final Collection<List<GoTerm>> rtn = new ArrayList<>();
-        final GoTerm masterTerm = masterTree.get(term.getId());
-        for (final GoTerm parent : masterTerm.getOutgoingTerms()) {
-            final Collection<List<GoTerm>> branches = getBranches(parent, masterTree);
-            for (final List<GoTerm> branch : branches) {
-                branch.add(0, parent);
-                rtn.add(branch);
-            }
-            if (branches.isEmpty()) {
-                final List<GoTerm> base = new ArrayList<>();
-                base.add(parent);
-                rtn.add(base);
-            }
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TreeKey)) return false;
+            final TreeKey key = (TreeKey) o;
+            return masterTree == key.masterTree && ids.equals(key.ids);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(masterTree) + ids.hashCode();
         }
-        return rtn;
     }
 
     public enum Source {
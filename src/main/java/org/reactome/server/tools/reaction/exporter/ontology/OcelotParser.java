@@ -1,67 +1,113 @@
 package org.reactome.server.tools.reaction.exporter.ontology;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.LinkedList;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Objects;
 
 /**
  * Consumes a .ocelot file.
+ * <p>
+ * The file is read in a single pass: elements are built while reading, with a stack of open elements, so nested
+ * elements are never copied. As in the Lisp reader, whitespace separates values, and it is collapsed to a single space
+ * inside quoted strings.
  *
  * @author Pascual Lorente (plorente@ebi.ac.uk)
  */
 class OcelotParser {
 
 	private static final String CCO_OCELOT = "/ontologies/cco.ocelot";
+	private static final int BUFFER_SIZE = 8192;
 
 	static OcelotElement readOcelot() {
-		final InputStream resource = OcelotParser.class.getResourceAsStream(CCO_OCELOT);
-		final String text = new BufferedReader(new InputStreamReader(resource)).lines().collect(Collectors.joining("\n")).replaceAll("\\s+", " ");
-		return parse(text);
+		final InputStream resource = Objects.requireNonNull(OcelotParser.class.getResourceAsStream(CCO_OCELOT), CCO_OCELOT);
+		try (Reader reader = new BufferedReader(new InputStreamReader(resource, StandardCharsets.UTF_8))) {
+			return parse(reader);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
 	}
 
-	private static OcelotElement parse(String text) {
-		text = text.trim();
-		if (!text.startsWith("("))
-			throw new IllegalArgumentException("OcelotElement should start with (");
-		if (!text.endsWith(")"))
-			throw new IllegalArgumentException("OcelotElement should end with )");
-		text = text.substring(1, text.length() - 1).trim();
-		OcelotElement elem = new OcelotElement();
+	/**
+	 * Reads a single element from <em>reader</em>.
+	 *
+	 * @throws IllegalArgumentException if the content is not exactly one element
+	 */
+	static OcelotElement parse(Reader reader) throws IOException {
+		final Deque<OcelotElement> open = new ArrayDeque<>();
+		final StringBuilder value = new StringBuilder();
+		final char[] buffer = new char[BUFFER_SIZE];
+		OcelotElement root = null;
 		boolean quoteContext = false;
-		int start = 0;
-		int openBrackets = 0;
-		boolean openSpaces = true;
-		for (int i = 0; i < text.length(); i++)
-			if (text.charAt(i) == '"') {
-				quoteContext = !quoteContext;
-			} else if (!quoteContext && text.charAt(i) == '(') {
-				if (openBrackets == 0) start = i;
-				openSpaces = false;
-				openBrackets++;
-			} else if (!quoteContext && text.charAt(i) == ')') {
-				openBrackets--;
-				if (openBrackets == 0) {
-					elem.getChildren().add(parse(text.substring(start, i + 1)));
-					start = i + 1;
-				}
-			} else if (!quoteContext && openBrackets == 0 && text.charAt(i) == ' ') {
-				if (openSpaces) {
-					elem.getChildren().add(new OcelotElement(text.substring(start, i)));
-					start = i + 1;
+		boolean pendingSpace = false;
+		int read;
+		while ((read = reader.read(buffer)) != -1) {
+			for (int i = 0; i < read; i++) {
+				final char c = buffer[i];
+				if (quoteContext) {
+					if (isSpace(c)) {
+						pendingSpace = true;
+						continue;
+					}
+					if (pendingSpace) value.append(' ');
+					pendingSpace = false;
+					value.append(c);
+					if (c == '"') quoteContext = false;
+				} else if (c == '"') {
+					value.append(c);
+					quoteContext = true;
+				} else if (c == '(') {
+					flush(value, open);
+					if (root != null)
+						throw new IllegalArgumentException("Unexpected content after the OcelotElement");
+					open.push(new OcelotElement());
+				} else if (c == ')') {
+					flush(value, open);
+					if (open.isEmpty())
+						throw new IllegalArgumentException("OcelotElement should start with (");
+					final OcelotElement elem = open.pop();
+					if (open.isEmpty()) root = elem;
+					else open.peek().getChildren().add(elem);
+				} else if (isSpace(c)) {
+					flush(value, open);
+				} else {
+					if (open.isEmpty())
+						throw new IllegalArgumentException(root == null
+								? "OcelotElement should start with ("
+								: "Unexpected content after the OcelotElement");
+					value.append(c);
 				}
-				openSpaces = true;
 			}
-		if (openSpaces)
-			elem.getChildren().add(new OcelotElement(text.substring(start)));
-		return elem;
+		}
+		if (root == null || !open.isEmpty() || quoteContext)
+			throw new IllegalArgumentException("OcelotElement should end with )");
+		return root;
+	}
+
+	private static void flush(StringBuilder value, Deque<OcelotElement> open) {
+		if (value.length() == 0) return;
+		open.peek().getChildren().add(new OcelotElement(value.toString()));
+		value.setLength(0);
+	}
+
+	/**
+	 * Same characters as {@code \s} in regular expressions
+	 */
+	private static boolean isSpace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
 	}
 
 	static class OcelotElement {
 		private String value;
-		private List<OcelotElement> children = new LinkedList<>();
+		private List<OcelotElement> children = new ArrayList<>();
 
 		OcelotElement() {}
 
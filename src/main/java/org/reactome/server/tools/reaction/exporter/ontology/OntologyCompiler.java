@@ -0,0 +1,100 @@
+package org.reactome.server.tools.reaction.exporter.ontology;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Compiles the Gene Ontology cellular component hierarchy into a binary resource during the build, so it is not parsed
+ * at runtime. Gene Ontology and CCO files, read by {@link GoParser}, are still the source of the hierarchy: this
+ * is run in the process-classes phase by the compile-ontology profile, which is only active when
+ * src/main/resources/ontologies/go-basic.obo exists. Otherwise, the hierarchy is parsed when first used.
+ */
+public class OntologyCompiler {
+
+    public static final String GO_RESOURCE = "/ontologies/go-cellular-component.bin";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("reaction-exporter");
+
+    private OntologyCompiler() {
+    }
+
+    /**
+     * @param args path of the output file, usually target/classes/ontologies/go-cellular-component.bin
+     * @throws IllegalArgumentException if there is not exactly one argument
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) throw new IllegalArgumentException("Usage: OntologyCompiler <output file>");
+        final long start = System.nanoTime();
+        final GoDag tree = GoTreeFactory.compileGoOntology();
+        if (tree.size() == 0) {
+            LOGGER.warn("Gene Ontology not found, " + GO_RESOURCE + " not generated");
+            return;
+        }
+        final File file = new File(args[0]);
+        write(tree, file);
+        LOGGER.info(String.format("%d terms compiled into %s in %d ms", tree.size(), file, (System.nanoTime() - start) / 1_000_000));
+    }
+
+    /**
+     * Saves a compiled tree, creating the parent directories of <em>file</em> if needed.
+     */
+    static void write(GoDag tree, File file) throws IOException {
+        if (file.getParentFile() != null) file.getParentFile().mkdirs();
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file))) {
+            tree.write(output);
+        }
+    }
+
+    /**
+     * Loads a compiled tree from the classpath. When the resource is a file, it is memory mapped instead of read.
+     *
+     * @return the tree, or null if the resource does not exist or can't be read
+     */
+    static GoDag load(String resource) {
+        final URL url = OntologyCompiler.class.getResource(resource);
+        if (url == null) return null;
+        return load(url);
+    }
+
+    /**
+     * Same as {@link #load(String)}, from any URL.
+     *
+     * @return the tree, or null if it can't be read
+     */
+    static GoDag load(URL url) {
+        try {
+            return GoDag.read(map(url));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Could not read " + url + ", the ontology will be parsed", e);
+            return null;
+        }
+    }
+
+    private static ByteBuffer map(URL url) throws IOException {
+        if ("file".equals(url.getProtocol())) {
+            final Path path;
+            try {
+                path = Paths.get(url.toURI());
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                // the mapping stays valid after the channel is closed
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+        // inside a jar
+        try (InputStream input = url.openStream()) {
+            return ByteBuffer.wrap(input.readAllBytes());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.reactome.server.tools.reaction.exporter.ontology;
+
+import org.reactome.server.tools.reaction.exporter.ontology.GoTreeFactory.Source;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A version of the master tree of a {@link Source}. The hierarchy of a release is immutable: a new master tree is
+ * published as a new release by {@link GoTreeFactory}, so whoever holds a release, like a layout being computed, keeps
+ * using the same hierarchy while the new one is swapped in. The release is only marked as replaced.
+ */
+public final class OntologyRelease {
+
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private final Source source;
+    private final String release;
+    private final long version;
+    private final GoDag tree;
+    private volatile boolean replaced;
+
+    OntologyRelease(Source source, String release, GoDag tree) {
+        this.source = source;
+        this.release = release;
+        this.tree = tree;
+        this.version = VERSIONS.incrementAndGet();
+    }
+
+    public Source getSource() {
+        return source;
+    }
+
+    /**
+     * @return the name given to this release when it was published, like the Reactome release number, or null
+     */
+    public String getRelease() {
+        return release;
+    }
+
+    /**
+     * @return a number that identifies this release in this JVM, bigger for newer releases
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the number of terms in the master tree
+     */
+    public int size() {
+        return tree.size();
+    }
+
+    GoDag getTree() {
+        return tree;
+    }
+
+    /**
+     * @return true if this release was published and a newer one has been published since
+     */
+    public boolean isReplaced() {
+        return replaced;
+    }
+
+    void setReplaced() {
+        replaced = true;
+    }
+
+    @Override
+    public String toString() {
+        return source + " " + (release == null ? "" : release + " ") + "(v" + version + ", " + size() + " terms)";
+    }
+}
@@ -0,0 +1,37 @@
+package org.reactome.server.tools.reaction.exporter.snapshot;
+
+import org.reactome.server.graph.domain.model.Compartment;
+
+/**
+ * The identifiers of a {@link Compartment} that a reaction or a participant is located in: the database identifier,
+ * the GO accession (without the "GO:" prefix) and the name. Snapshots keep these instead of the graph objects, so
+ * nothing in a snapshot refers to the graph.
+ */
+public class CompartmentSnapshot {
+
+    private final Long dbId;
+    private final String accession;
+    private final String name;
+
+    public CompartmentSnapshot(Long dbId, String accession, String name) {
+        this.dbId = dbId;
+        this.accession = accession;
+        this.name = name;
+    }
+
+    public CompartmentSnapshot(Compartment compartment) {
+        this(compartment.getDbId(), compartment.getAccession(), compartment.getDisplayName());
+    }
+
+    public Long getDbId() {
+        return dbId;
+    }
+
+    public String getAccession() {
+        return accession;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
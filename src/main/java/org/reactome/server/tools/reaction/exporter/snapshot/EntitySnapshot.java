@@ -0,0 +1,204 @@
+package org.reactome.server.tools.reaction.exporter.snapshot;
+
+import org.reactome.server.graph.domain.model.*;
+import org.reactome.server.tools.reaction.exporter.layout.common.RenderableClass;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Plain copy of everything the layout needs from a participant of a reaction: the role it plays (as returned by the
+ * layout query) and the data extracted from the underlying {@link PhysicalEntity}. Instances of this class do not hold
+ * references to the graph, so they can be stored in (and read back from) a snapshot file.
+ */
+public class EntitySnapshot {
+
+    //From the query
+    private String roleType;
+    private Integer stoichiometry;
+    private boolean drug;
+    private boolean dashed;
+
+    //From the physical entity
+    private Long dbId;
+    private String stId;
+    private String name;
+    private Boolean inDisease;
+    private String schemaClass;
+    private RenderableClass renderableClass;
+    private boolean trivial;
+    private List<CompartmentSnapshot> compartments = new ArrayList<>();
+    private List<Attachment> attachments = new ArrayList<>();
+
+    public EntitySnapshot() {
+    }
+
+    /**
+     * Extracts the information of pe. This is the only place where the physical entity is traversed, so lazy loading
+     * happens here and not during the layout.
+     *
+     * @param pe   the participant
+     * @param drug whether the layout query flagged pe as (or containing) a drug
+     */
+    public EntitySnapshot(PhysicalEntity pe, Boolean drug) {
+        this.drug = drug != null && drug;
+        this.dbId = pe.getDbId();
+        this.stId = pe.getStId();
+        this.name = pe.getName().get(0);
+        this.inDisease = pe.getInDisease();
+        this.schemaClass = pe.getSchemaClass();
+        if (pe.getCompartment() != null) {
+            for (Compartment compartment : pe.getCompartment()) compartments.add(new CompartmentSnapshot(compartment));
+        }
+
+        ReferenceEntity re = pe.fetchSingleValue("getReferenceEntity");
+        if (re instanceof ReferenceMolecule) {
+            ReferenceMolecule rm = (ReferenceMolecule) re;
+            //trivial ONLY true for trivial molecules. NULL in any other case (never false)
+            if (rm.getTrivial() != null && rm.getTrivial()) trivial = true;
+        }
+
+        Collection<AbstractModifiedResidue> modifiedResidues = pe.fetchMultiValue("getHasModifiedResidue");
+        for (AbstractModifiedResidue modifiedResidue : modifiedResidues) {
+            if (modifiedResidue instanceof TranslationalModification) {
+                final TranslationalModification tm = (TranslationalModification) modifiedResidue;
+                attachments.add(new Attachment(tm.getDbId(), tm.getSchemaClass(), tm.getLabel()));
+            }
+        }
+
+        renderableClass = RenderableClass.getRenderableClass(pe, drug);
+    }
+
+    public String getRoleType() {
+        return roleType;
+    }
+
+    public void setRoleType(String roleType) {
+        this.roleType = roleType;
+    }
+
+    public Integer getStoichiometry() {
+        return stoichiometry;
+    }
+
+    public void setStoichiometry(Integer stoichiometry) {
+        this.stoichiometry = stoichiometry;
+    }
+
+    public boolean isDrug() {
+        return drug;
+    }
+
+    public void setDrug(boolean drug) {
+        this.drug = drug;
+    }
+
+    public boolean isDashed() {
+        return dashed;
+    }
+
+    public void setDashed(boolean dashed) {
+        this.dashed = dashed;
+    }
+
+    public Long getDbId() {
+        return dbId;
+    }
+
+    public void setDbId(Long dbId) {
+        this.dbId = dbId;
+    }
+
+    public String getStId() {
+        return stId;
+    }
+
+    public void setStId(String stId) {
+        this.stId = stId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Boolean getInDisease() {
+        return inDisease;
+    }
+
+    public void setInDisease(Boolean inDisease) {
+        this.inDisease = inDisease;
+    }
+
+    public String getSchemaClass() {
+        return schemaClass;
+    }
+
+    public void setSchemaClass(String schemaClass) {
+        this.schemaClass = schemaClass;
+    }
+
+    public RenderableClass getRenderableClass() {
+        return renderableClass;
+    }
+
+    public void setRenderableClass(RenderableClass renderableClass) {
+        this.renderableClass = renderableClass;
+    }
+
+    public boolean isTrivial() {
+        return trivial;
+    }
+
+    public void setTrivial(boolean trivial) {
+        this.trivial = trivial;
+    }
+
+    public List<CompartmentSnapshot> getCompartments() {
+        return compartments;
+    }
+
+    public void setCompartments(List<CompartmentSnapshot> compartments) {
+        this.compartments = compartments;
+    }
+
+    public List<Attachment> getAttachments() {
+        return attachments;
+    }
+
+    public void setAttachments(List<Attachment> attachments) {
+        this.attachments = attachments;
+    }
+
+    /**
+     * The subset of a {@link TranslationalModification} that is drawn as an attachment.
+     */
+    public static class Attachment {
+
+        private final Long dbId;
+        private final String schemaClass;
+        private final String label;
+
+        public Attachment(Long dbId, String schemaClass, String label) {
+            this.dbId = dbId;
+            this.schemaClass = schemaClass;
+            this.label = label;
+        }
+
+        public Long getDbId() {
+            return dbId;
+        }
+
+        public String getSchemaClass() {
+            return schemaClass;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+}
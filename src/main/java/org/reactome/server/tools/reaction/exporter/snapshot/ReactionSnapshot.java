@@ -0,0 +1,150 @@
+package org.reactome.server.tools.reaction.exporter.snapshot;
+
+import org.reactome.server.graph.domain.model.Compartment;
+import org.reactome.server.graph.domain.model.ReactionLikeEvent;
+import org.reactome.server.tools.diagram.data.graph.impl.EntityNodeImpl;
+import org.reactome.server.tools.diagram.data.graph.impl.EventNodeImpl;
+import org.reactome.server.tools.reaction.exporter.layout.common.RenderableClass;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plain copy of everything the exporter needs from a single reaction like event: the reaction itself, the pathway
+ * containing it, its participants and the nodes of its graph. Together with the compartment hierarchy, this is enough
+ * to produce the layout and graph files without the database.
+ */
+public class ReactionSnapshot {
+
+    private Long dbId;
+    private String stId;
+    private String displayName;
+    private String speciesName;
+    private String schemaClass;
+    private RenderableClass renderableClass;
+    private boolean disease;
+    private List<CompartmentSnapshot> compartments = new ArrayList<>();
+
+    private String pathway;
+    private List<EntitySnapshot> participants = new ArrayList<>();
+
+    private List<EntityNodeImpl> entityNodes = new ArrayList<>();
+    private EventNodeImpl eventNode;
+
+    public ReactionSnapshot() {
+    }
+
+    public ReactionSnapshot(ReactionLikeEvent rle) {
+        dbId = rle.getDbId();
+        stId = rle.getStId();
+        displayName = rle.getDisplayName();
+        speciesName = rle.getSpeciesName();
+        schemaClass = rle.getSchemaClass();
+        disease = rle.getIsInDisease() != null && rle.getIsInDisease();
+        renderableClass = RenderableClass.getRenderableClass(rle);
+        if (rle.getCompartment() != null) {
+            for (Compartment compartment : rle.getCompartment()) compartments.add(new CompartmentSnapshot(compartment));
+        }
+    }
+
+    public Long getDbId() {
+        return dbId;
+    }
+
+    public void setDbId(Long dbId) {
+        this.dbId = dbId;
+    }
+
+    public String getStId() {
+        return stId;
+    }
+
+    public void setStId(String stId) {
+        this.stId = stId;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public void setDisplayName(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getSpeciesName() {
+        return speciesName;
+    }
+
+    public void setSpeciesName(String speciesName) {
+        this.speciesName = speciesName;
+    }
+
+    public String getSchemaClass() {
+        return schemaClass;
+    }
+
+    public void setSchemaClass(String schemaClass) {
+        this.schemaClass = schemaClass;
+    }
+
+    public RenderableClass getRenderableClass() {
+        return renderableClass;
+    }
+
+    public void setRenderableClass(RenderableClass renderableClass) {
+        this.renderableClass = renderableClass;
+    }
+
+    public boolean isDisease() {
+        return disease;
+    }
+
+    public void setDisease(boolean disease) {
+        this.disease = disease;
+    }
+
+    public List<CompartmentSnapshot> getCompartments() {
+        return compartments;
+    }
+
+    public void setCompartments(List<CompartmentSnapshot> compartments) {
+        this.compartments = compartments;
+    }
+
+    public String getPathway() {
+        return pathway;
+    }
+
+    public void setPathway(String pathway) {
+        this.pathway = pathway;
+    }
+
+    public List<EntitySnapshot> getParticipants() {
+        return participants;
+    }
+
+    public void setParticipants(List<EntitySnapshot> participants) {
+        this.participants = participants;
+    }
+
+    public List<EntityNodeImpl> getEntityNodes() {
+        return entityNodes;
+    }
+
+    public void setEntityNodes(List<EntityNodeImpl> entityNodes) {
+        this.entityNodes = entityNodes;
+    }
+
+    public EventNodeImpl getEventNode() {
+        return eventNode;
+    }
+
+    public void setEventNode(EventNodeImpl eventNode) {
+        this.eventNode = eventNode;
+    }
+
+    @Override
+    public String toString() {
+        return "ReactionSnapshot{stId='" + stId + "', participants=" + participants.size() + "}";
+    }
+}
@@ -0,0 +1,65 @@
+package org.reactome.server.tools.reaction.exporter.snapshot;
+
+import org.reactome.server.graph.domain.model.ReactionLikeEvent;
+import org.reactome.server.graph.exception.CustomQueryException;
+import org.reactome.server.graph.service.AdvancedDatabaseObjectService;
+import org.reactome.server.graph.service.DatabaseObjectService;
+import org.reactome.server.tools.reaction.exporter.graph.ReactionGraphFactory;
+import org.reactome.server.tools.reaction.exporter.layout.LayoutFactory;
+import org.reactome.server.tools.reaction.exporter.layout.result.LayoutParticipants;
+import org.reactome.server.tools.reaction.exporter.layout.result.LayoutResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Extracts from the database all the information needed to export a reaction like event into a
+ * {@link ReactionSnapshot}. It runs the same queries as {@link LayoutFactory} and {@link ReactionGraphFactory}.
+ */
+@Component
+public class SnapshotFactory {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("reaction-exporter");
+
+    private final AdvancedDatabaseObjectService ads;
+    private final DatabaseObjectService ds;
+    private final ReactionGraphFactory graphFactory;
+
+    @Autowired
+    public SnapshotFactory(AdvancedDatabaseObjectService ads, DatabaseObjectService ds) {
+        this.ads = ads;
+        this.ds = ds;
+        this.graphFactory = new ReactionGraphFactory(ads);
+    }
+
+    /**
+     * @param rle a ReactionLikeEvent
+     * @return a snapshot with all the data needed to export rle, or null if the layout query fails. The failure is
+     * logged
+     * @throws NullPointerException if rle is null
+     */
+    public ReactionSnapshot getSnapshot(ReactionLikeEvent rle) {
+        if (rle == null) throw new NullPointerException("rle cannot be null");
+        try {
+            final LayoutResult layoutResult = LayoutFactory.getLayoutResult(ads, rle);
+
+            final ReactionSnapshot snapshot = new ReactionSnapshot(ds.findByIdNoRelations(layoutResult.getReactionStId()));
+            snapshot.setPathway(layoutResult.getPathwayStId());
+            for (LayoutParticipants layoutParticipant : layoutResult.getParticipants()) {
+                final EntitySnapshot entity = new EntitySnapshot(ds.findByIdNoRelations(layoutParticipant.getPhysicalEntity()), layoutParticipant.isDrug());
+                entity.setDashed(layoutParticipant.isDashed());
+                entity.setRoleType(layoutParticipant.getRole().getType());
+                entity.setStoichiometry(layoutParticipant.getRole().getStoichiometry());
+                snapshot.getParticipants().add(entity);
+            }
+
+            snapshot.setEntityNodes(graphFactory.getEntityNodes(rle));
+            snapshot.setEventNode(graphFactory.getEventNode(rle));
+            return snapshot;
+        } catch (CustomQueryException e) {
+            LOGGER.error("Couldn't extract a snapshot of " + rle.getStId(), e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package org.reactome.server.tools.reaction.exporter.snapshot;
+
+/**
+ * Layout of a snapshot file. All values are written with {@link java.io.DataOutputStream} on top of a gzip stream:
+ * <pre>
+ * header      MAGIC, VERSION
+ * hierarchy   number of compartments, then (id, name, [parent ids], [surrounded by ids]) per compartment
+ * reactions   REACTION tag followed by the reaction, repeated
+ * end         END tag
+ * </pre>
+ * Strings are written as the length of their UTF-8 bytes (-1 for null) followed by the bytes, so they have no size
+ * limit. Reactions are self-contained, so the file can be read one reaction at a time.
+ */
+final class SnapshotFormat {
+
+    static final int MAGIC = 0x52584e53; // RXNS
+    static final short VERSION = 4;
+
+    static final byte END = 0;
+    static final byte REACTION = 1;
+
+    private SnapshotFormat() {
+    }
+}
@@ -0,0 +1,209 @@
+package org.reactome.server.tools.reaction.exporter.snapshot;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.deser.std.StringDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.reactome.server.tools.diagram.data.graph.impl.EntityNodeImpl;
+import org.reactome.server.tools.diagram.data.graph.impl.EventNodeImpl;
+import org.reactome.server.tools.reaction.exporter.layout.common.RenderableClass;
+import org.reactome.server.tools.reaction.exporter.ontology.GoTerm;
+import org.reactome.server.tools.reaction.exporter.ontology.RelationshipType;
+import org.reactome.server.tools.reaction.exporter.util.StringInterner;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+import static org.reactome.server.tools.reaction.exporter.snapshot.SnapshotFormat.*;
+
+/**
+ * Reads a snapshot file created by {@link SnapshotWriter}. The compartment hierarchy is read when the file is opened,
+ * reactions are read one at a time with {@link #read()}, so memory does not depend on the size of the file.
+ * <p>
+ * Names, identifiers and classes of entities and compartments are repeated in many reactions, so they go through
+ * {@link StringInterner}, as do the strings of the entity nodes. The identifier and name of the reaction are unique
+ * and are not pooled, neither are the strings of the event node, which holds them too.
+ */
+public class SnapshotReader implements Closeable {
+
+    private static final TypeReference<List<EntityNodeImpl>> ENTITY_NODES = new TypeReference<>() {
+    };
+
+    private final ObjectMapper entityMapper = new ObjectMapper()
+            .registerModule(new SimpleModule().addDeserializer(String.class, new InterningDeserializer()));
+    private final ObjectMapper eventMapper = new ObjectMapper();
+    private final DataInputStream in;
+    private final Map<String, GoTerm> masterTree;
+    private boolean finished = false;
+
+    public SnapshotReader(File file) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+        if (in.readInt() != MAGIC) {
+            in.close();
+            throw new IOException(file + " is not a reaction exporter snapshot");
+        }
+        final short version = in.readShort();
+        if (version != VERSION) {
+            in.close();
+            throw new IOException(String.format("Unsupported snapshot version %d (expected %d)", version, VERSION));
+        }
+        masterTree = readHierarchy();
+    }
+
+    /**
+     * @return the compartment hierarchy stored in the snapshot, in the same form as
+     * {@link org.reactome.server.tools.reaction.exporter.compartment.ReactomeCompartmentFactory#getMasterTree()}
+     */
+    public Map<String, GoTerm> getMasterTree() {
+        return masterTree;
+    }
+
+    private Map<String, GoTerm> readHierarchy() throws IOException {
+        final int size = in.readInt();
+        final Map<String, GoTerm> rtn = new HashMap<>();
+        final Map<String, List<String>> parents = new HashMap<>();
+        final Map<String, List<String>> surroundedBy = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            final GoTerm term = new GoTerm(readString());
+            term.setName(readString());
+            term.setNamespace("cellular_component");
+            rtn.put(term.getId(), term);
+            parents.put(term.getId(), readIds());
+            surroundedBy.put(term.getId(), readIds());
+        }
+        // roots have no parents, and ids that are not in the hierarchy are skipped, as in the database query
+        for (GoTerm goTerm : rtn.values()) {
+            for (String id : parents.get(goTerm.getId())) {
+                final GoTerm parent = rtn.get(id);
+                if (parent != null) goTerm.addParent(parent);
+            }
+            for (String id : surroundedBy.get(goTerm.getId())) {
+                final GoTerm sb = rtn.get(id);
+                if (sb != null) goTerm.createRelationship(GoTerm.Directionality.OUTGOING, RelationshipType.surrounded_by, sb);
+            }
+        }
+        return rtn;
+    }
+
+    private List<String> readIds() throws IOException {
+        final int size = in.readInt();
+        final List<String> ids = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) ids.add(readString());
+        return ids;
+    }
+
+    /**
+     * @return the next reaction in the snapshot, or null if there are no more reactions
+     */
+    public ReactionSnapshot read() throws IOException {
+        if (finished) return null;
+        final byte tag = in.readByte();
+        if (tag == END) {
+            finished = true;
+            return null;
+        }
+        if (tag != REACTION) throw new IOException("Corrupted snapshot: unexpected tag " + tag);
+
+        final ReactionSnapshot reaction = new ReactionSnapshot();
+        reaction.setDbId(readLong());
+        reaction.setStId(readUniqueString());
+        reaction.setDisplayName(readUniqueString());
+        reaction.setSpeciesName(readString());
+        reaction.setSchemaClass(readString());
+        reaction.setRenderableClass(RenderableClass.get(readString()));
+        reaction.setDisease(in.readBoolean());
+        reaction.setCompartments(readCompartments());
+        reaction.setPathway(readString());
+
+        final int size = in.readInt();
+        final List<EntitySnapshot> participants = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) participants.add(readParticipant());
+        reaction.setParticipants(participants);
+
+        final byte[] nodes = readBytes();
+        if (nodes != null) reaction.setEntityNodes(entityMapper.readValue(nodes, ENTITY_NODES));
+        final byte[] event = readBytes();
+        if (event != null) reaction.setEventNode(eventMapper.readValue(event, EventNodeImpl.class));
+        return reaction;
+    }
+
+    private EntitySnapshot readParticipant() throws IOException {
+        final EntitySnapshot entity = new EntitySnapshot();
+        entity.setRoleType(readString());
+        entity.setStoichiometry(readInteger());
+        entity.setDrug(in.readBoolean());
+        entity.setDashed(in.readBoolean());
+
+        entity.setDbId(readLong());
+        entity.setStId(readString());
+        entity.setName(readString());
+        entity.setInDisease(readBoolean());
+        entity.setSchemaClass(readString());
+        entity.setRenderableClass(RenderableClass.get(readString()));
+        entity.setTrivial(in.readBoolean());
+        entity.setCompartments(readCompartments());
+
+        final int size = in.readInt();
+        final List<EntitySnapshot.Attachment> attachments = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            attachments.add(new EntitySnapshot.Attachment(readLong(), readString(), readString()));
+        }
+        entity.setAttachments(attachments);
+        return entity;
+    }
+
+    private List<CompartmentSnapshot> readCompartments() throws IOException {
+        final int size = in.readInt();
+        final List<CompartmentSnapshot> compartments = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            compartments.add(new CompartmentSnapshot(readLong(), readString(), readString()));
+        }
+        return compartments;
+    }
+
+    private byte[] readBytes() throws IOException {
+        final int length = in.readInt();
+        if (length < 0) return null;
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private String readString() throws IOException {
+        return StringInterner.intern(readUniqueString());
+    }
+
+    private String readUniqueString() throws IOException {
+        final byte[] bytes = readBytes();
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private Long readLong() throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    private Integer readInteger() throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+
+    private Boolean readBoolean() throws IOException {
+        final byte value = in.readByte();
+        return value < 0 ? null : value == 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private static class InterningDeserializer extends StringDeserializer {
+        @Override
+        public String deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            return StringInterner.intern(super.deserialize(p, ctxt));
+        }
+    }
+}
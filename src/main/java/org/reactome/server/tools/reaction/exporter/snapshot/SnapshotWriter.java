@@ -0,0 +1,200 @@
+package org.reactome.server.tools.reaction.exporter.snapshot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.reactome.server.tools.reaction.exporter.compartment.CompartmentResult;
+import org.reactome.server.tools.reaction.exporter.compartment.ReactomeCompartmentFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.reactome.server.tools.reaction.exporter.snapshot.SnapshotFormat.*;
+
+/**
+ * Writes a snapshot file sequentially. The compartment hierarchy is written when the file is opened, then every call
+ * to {@link #write(ReactionSnapshot)} appends one reaction, so only one reaction has to be kept in memory at any time.
+ * <p>
+ * The END tag is only written by {@link #close()} if every write succeeded, so a file with a reaction cut in the
+ * middle is rejected by {@link SnapshotReader} instead of read up to the broken reaction.
+ */
+public class SnapshotWriter implements Closeable {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final DataOutputStream out;
+    private int count = 0;
+    private boolean failed = false;
+
+    /**
+     * Creates the snapshot file and writes the compartment hierarchy
+     *
+     * @param file         destination file, overwritten if it exists
+     * @param compartments the compartment hierarchy, as returned by
+     *                     {@link ReactomeCompartmentFactory#getCompartmentResults()}
+     */
+    public SnapshotWriter(File file, Collection<CompartmentResult> compartments) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))));
+        try {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            writeHierarchy(compartments);
+        } catch (IOException | RuntimeException e) {
+            try {
+                out.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    private void writeHierarchy(Collection<CompartmentResult> compartments) throws IOException {
+        out.writeInt(compartments.size());
+        for (CompartmentResult component : compartments) {
+            writeString(component.getId());
+            writeString(component.getName());
+            writeIds(component.getParents());
+            writeIds(component.getSurroundedBy());
+        }
+    }
+
+    private void writeIds(List<String> ids) throws IOException {
+        if (ids == null) {
+            out.writeInt(0);
+            return;
+        }
+        out.writeInt(ids.size());
+        for (String id : ids) {
+            writeString(id);
+        }
+    }
+
+    /**
+     * Appends reaction to the file. If it fails, the reaction is left incomplete, so no more reactions can be written
+     * and the file is not terminated.
+     *
+     * @throws IllegalStateException if a previous write failed
+     */
+    public void write(ReactionSnapshot reaction) throws IOException {
+        if (failed) throw new IllegalStateException("A previous write failed, the snapshot is incomplete");
+        failed = true;
+        writeReaction(reaction);
+        failed = false;
+        count++;
+    }
+
+    private void writeReaction(ReactionSnapshot reaction) throws IOException {
+        out.writeByte(REACTION);
+        writeLong(reaction.getDbId());
+        writeString(reaction.getStId());
+        writeString(reaction.getDisplayName());
+        writeString(reaction.getSpeciesName());
+        writeString(reaction.getSchemaClass());
+        writeString(reaction.getRenderableClass() == null ? null : reaction.getRenderableClass().getName());
+        out.writeBoolean(reaction.isDisease());
+        writeCompartments(reaction.getCompartments());
+        writeString(reaction.getPathway());
+
+        out.writeInt(reaction.getParticipants().size());
+        for (EntitySnapshot participant : reaction.getParticipants()) {
+            writeParticipant(participant);
+        }
+
+        writeJson(reaction.getEntityNodes());
+        writeJson(reaction.getEventNode());
+    }
+
+    private void writeParticipant(EntitySnapshot entity) throws IOException {
+        writeString(entity.getRoleType());
+        writeInteger(entity.getStoichiometry());
+        out.writeBoolean(entity.isDrug());
+        out.writeBoolean(entity.isDashed());
+
+        writeLong(entity.getDbId());
+        writeString(entity.getStId());
+        writeString(entity.getName());
+        writeBoolean(entity.getInDisease());
+        writeString(entity.getSchemaClass());
+        writeString(entity.getRenderableClass() == null ? null : entity.getRenderableClass().getName());
+        out.writeBoolean(entity.isTrivial());
+        writeCompartments(entity.getCompartments());
+
+        out.writeInt(entity.getAttachments().size());
+        for (EntitySnapshot.Attachment attachment : entity.getAttachments()) {
+            writeLong(attachment.getDbId());
+            writeString(attachment.getSchemaClass());
+            writeString(attachment.getLabel());
+        }
+    }
+
+    private void writeCompartments(List<CompartmentSnapshot> compartments) throws IOException {
+        out.writeInt(compartments.size());
+        for (CompartmentSnapshot compartment : compartments) {
+            writeLong(compartment.getDbId());
+            writeString(compartment.getAccession());
+            writeString(compartment.getName());
+        }
+    }
+
+    private void writeJson(Object value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = mapper.writeValueAsBytes(value);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Strings are written as their UTF-8 bytes, preceded by the length, or -1 for null. Unlike
+     * {@link DataOutputStream#writeUTF(String)}, there is no limit in the length of the string.
+     */
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeLong(Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeLong(value);
+    }
+
+    private void writeInteger(Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeInt(value);
+    }
+
+    private void writeBoolean(Boolean value) throws IOException {
+        out.writeByte(value == null ? -1 : value ? 1 : 0);
+    }
+
+    /**
+     * @return number of reactions written so far
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return true if a write failed, so the file is incomplete and will not be terminated
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!failed) out.writeByte(END);
+        } finally {
+            out.close();
+        }
+    }
+}
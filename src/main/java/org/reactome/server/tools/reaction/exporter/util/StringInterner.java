@@ -0,0 +1,51 @@
+package org.reactome.server.tools.reaction.exporter.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Shares the strings repeated across reactions (entity names and identifiers, schema classes, compartments, species...)
+ * so every reaction of a run points to the same instance instead of keeping its own copy.
+ * <p>
+ * Unlike {@link String#intern()}, the pool is bounded, so unique strings cannot make it grow forever, and can be emptied
+ * with {@link #clear()} when a run finishes. It is safe to use from any number of threads.
+ */
+public final class StringInterner {
+
+    private static final int MAX_SIZE = 200_000;
+    private static final Cache<String, String> POOL = CacheBuilder.newBuilder()
+            .maximumSize(MAX_SIZE)
+            .recordStats()
+            .build();
+
+    private StringInterner() {
+    }
+
+    /**
+     * @return a string equal to value, shared with any other call with the same text, or value if it was not in the
+     * pool. Null for null.
+     */
+    public static String intern(String value) {
+        if (value == null) return null;
+        final String pooled = POOL.getIfPresent(value);
+        if (pooled != null) return pooled;
+        final String previous = POOL.asMap().putIfAbsent(value, value);
+        return previous == null ? value : previous;
+    }
+
+    public static long size() {
+        return POOL.size();
+    }
+
+    public static CacheStats getStats() {
+        return POOL.stats();
+    }
+
+    /**
+     * Empties the pool. Strings already shared are not affected.
+     */
+    public static void clear() {
+        POOL.invalidateAll();
+    }
+}
@@ -18,6 +18,7 @@ import org.reactome.server.tools.diagram.exporter.pptx.PowerPointExporter;
 import org.reactome.server.tools.diagram.exporter.raster.RasterExporter;
 import org.reactome.server.tools.diagram.exporter.raster.api.RasterArgs;
 import org.reactome.server.tools.diagram.exporter.sbgn.SbgnConverter;
+import org.reactome.server.tools.reaction.exporter.compartment.ReactomeCompartmentFactory;
 import org.reactome.server.tools.reaction.exporter.diagram.ReactionDiagramFactory;
 import org.reactome.server.tools.reaction.exporter.graph.ReactionGraphFactory;
 import org.reactome.server.tools.reaction.exporter.layout.DiagramTest;
@@ -118,7 +119,7 @@ public class AppTest extends BaseTest {
             ReactionLikeEvent rle = databaseObjectService.findById(stId);
             final String pStId = rle.getEventOf().isEmpty() ? stId : rle.getEventOf().get(0).getStId();
 
-            final LayoutFactory layoutFactory = new LayoutFactory(ads, databaseObjectService);
+            final LayoutFactory layoutFactory = new LayoutFactory(ads, databaseObjectService, new ReactomeCompartmentFactory(schemaService, ads));
             final Layout layout = layoutFactory.getReactionLikeEventLayout(rle, LayoutFactory.Style.BOX);
             final Diagram diagram = ReactionDiagramFactory.get(layout);
 
@@ -7,7 +7,6 @@ import org.reactome.server.graph.aop.LazyFetchAspect;
 import org.reactome.server.graph.service.GeneralService;
 import org.reactome.server.graph.service.SchemaService;
 import org.reactome.server.graph.utils.ReactomeGraphCore;
-import org.reactome.server.tools.reaction.exporter.compartment.ReactomeCompartmentFactory;
 import org.reactome.server.tools.reaction.exporter.config.ReactomeNeo4jConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,6 +54,5 @@ public abstract class BaseTest {
             checkedOnce = true;
         }
         assumeTrue(isFit);
-        ReactomeCompartmentFactory.setSchemaService(schemaService);
     }
 }
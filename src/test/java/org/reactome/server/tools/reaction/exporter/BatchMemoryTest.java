@@ -0,0 +1,203 @@
+package org.reactome.server.tools.reaction.exporter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.reactome.server.graph.domain.model.ReactionLikeEvent;
+import org.reactome.server.tools.diagram.data.graph.Graph;
+import org.reactome.server.tools.diagram.data.layout.Diagram;
+import org.reactome.server.tools.reaction.exporter.ontology.GoTreeFactory;
+import org.reactome.server.tools.reaction.exporter.snapshot.ReactionSnapshot;
+import org.reactome.server.tools.reaction.exporter.snapshot.SnapshotFactory;
+import org.reactome.server.tools.reaction.exporter.snapshot.SnapshotReader;
+import org.reactome.server.tools.reaction.exporter.snapshot.SnapshotWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Converts every reaction of the embedded database, with the same batch loops as {@link Main}, and checks that nothing
+ * of a reaction is reachable once it is written: the layouts and graphs of the last pass must be collected.
+ * <p>
+ * The soak tests also check that the heap left after a full collection does not grow from one pass to the next. They
+ * take several minutes and heap sizes depend on the JVM and its collector, so they only run with
+ * <code>-Dsoak=true</code>, which also makes the embedded database thousands of reactions, see
+ * {@link EmbeddedGraphTest#REACTIONS}. The first pass fills the caches of label sizes, strings, layout topologies and
+ * compartment trees, which are bounded, so it is not measured.
+ * <p>
+ * Layouts and graphs are serialized as they would be to the files, but nothing is written, so the passes only measure
+ * the conversion.
+ */
+public class BatchMemoryTest extends EmbeddedGraphTest {
+
+    private static final int PASSES = 2;
+    private static final int HEAP_PASSES = 8;
+    private static final int SAMPLES = 5;
+    /**
+     * Keeping as little as 1 KB per reaction in the last passes would go over this
+     */
+    private static final long MAX_GROWTH = 2 * 1024 * 1024;
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    @Test
+    public void testGraphCoreResultsAreCollected() throws InterruptedException {
+        final List<Long> targets = Main.getTargets(new String[]{"all"});
+        final List<Long> expected = new ArrayList<>(getGraph().getReactionDbIds());
+        Collections.sort(expected);
+        assertEquals(expected, targets);
+        checkCollected(targets.size(), graphCorePass(targets));
+    }
+
+    @Test
+    public void testSnapshotResultsAreCollected(@TempDir File dir) throws IOException, InterruptedException {
+        final List<String> stIds = getGraph().getReactionStIds();
+        checkCollected(stIds.size(), snapshotPass(writeSnapshot(dir, stIds)));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "soak", matches = "true")
+    public void testGraphCoreHeapStaysFlat() throws InterruptedException {
+        final List<Long> targets = Main.getTargets(new String[]{"all"});
+        checkHeapStaysFlat("graph-core", targets.size(), graphCorePass(targets));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "soak", matches = "true")
+    public void testSnapshotHeapStaysFlat(@TempDir File dir) throws IOException, InterruptedException {
+        final List<String> stIds = getGraph().getReactionStIds();
+        checkHeapStaysFlat("snapshot", stIds.size(), snapshotPass(writeSnapshot(dir, stIds)));
+    }
+
+    private Pass graphCorePass(List<Long> targets) {
+        return output -> Main.generateJsonFiles(targets, ads, ds, compartmentFactory, output);
+    }
+
+    private Pass snapshotPass(File file) {
+        // the snapshot is written from the same database, so its hierarchy is the one of the compartment factory
+        GoTreeFactory.getReactomeRelease(compartmentFactory);
+        return output -> {
+            try (SnapshotReader reader = new SnapshotReader(file)) {
+                ReactionSnapshot reaction;
+                while ((reaction = reader.read()) != null) Main.generateJsonFiles(reaction, output);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    private File writeSnapshot(File dir, List<String> stIds) throws IOException {
+        final File file = new File(dir, "reactions.snapshot");
+        final SnapshotFactory snapshotFactory = new SnapshotFactory(ads, ds);
+        try (SnapshotWriter writer = new SnapshotWriter(file, compartmentFactory.getCompartmentResults())) {
+            for (String stId : stIds) {
+                final ReactionLikeEvent rle = ds.findByIdNoRelations(stId);
+                writer.write(snapshotFactory.getSnapshot(rle));
+            }
+        }
+        return file;
+    }
+
+    private static void checkCollected(int reactions, Pass pass) throws InterruptedException {
+        final Sink sink = new Sink();
+        for (int p = 0; p < PASSES; p++) {
+            sink.follow(p == PASSES - 1);
+            pass.run(sink);
+        }
+        assertEquals(PASSES * reactions, sink.count);
+        // a single collection is not always a full one
+        for (int i = 0; i < SAMPLES && !sink.isCollected(); i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        assertTrue(sink.isCollected(), () -> String.format("%d layouts or graphs of the last pass are still reachable", sink.reachable()));
+    }
+
+    private void checkHeapStaysFlat(String name, int reactions, Pass pass) throws InterruptedException {
+        final long[] heap = new long[HEAP_PASSES];
+        final Sink sink = new Sink();
+        for (int p = 0; p < HEAP_PASSES; p++) {
+            pass.run(sink);
+            heap[p] = retainedHeap();
+        }
+        logger.info(String.format("%s heap after each pass of %d reactions (MB): %s", name, reactions,
+                Arrays.toString(Arrays.stream(heap).mapToObj(h -> String.format("%.1f", h / 1024.0 / 1024)).toArray())));
+
+        // the first pass is the warm up, the median of a few passes is not affected by a collection that is not full
+        final long early = median(Arrays.copyOfRange(heap, 1, 4));
+        final long late = median(Arrays.copyOfRange(heap, HEAP_PASSES - 3, HEAP_PASSES));
+        assertTrue(late - early < MAX_GROWTH, () -> String.format("Heap grew %.1f MB in %d passes", (late - early) / 1024.0 / 1024, HEAP_PASSES - 4));
+    }
+
+    /**
+     * @return the smallest heap in use after several explicit collections, as a single one is not always a full one
+     */
+    private long retainedHeap() throws InterruptedException {
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < SAMPLES; i++) {
+            System.gc();
+            Thread.sleep(100);
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+
+    private static long median(long[] values) {
+        final long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private interface Pass {
+        void run(Main.Output output);
+    }
+
+    /**
+     * Serializes every layout and graph, as {@link Main} does before writing them, and discards the bytes
+     */
+    private static class Sink implements Main.Output {
+
+        private final ObjectMapper mapper = new ObjectMapper();
+        private final List<WeakReference<Object>> followed = new ArrayList<>();
+        private boolean follow;
+        private int count;
+
+        void follow(boolean follow) {
+            this.follow = follow;
+        }
+
+        @Override
+        public void save(String stId, Long dbId, Diagram diagram, Graph graph) {
+            try {
+                mapper.writeValueAsBytes(diagram);
+                mapper.writeValueAsBytes(graph);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            count++;
+            if (follow) {
+                followed.add(new WeakReference<>(diagram));
+                followed.add(new WeakReference<>(graph));
+            }
+        }
+
+        long reachable() {
+            return followed.stream().filter(reference -> reference.get() != null).count();
+        }
+
+        boolean isCollected() {
+            return reachable() == 0;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package org.reactome.server.tools.reaction.exporter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.reactome.server.graph.domain.model.ReactionLikeEvent;
+import org.reactome.server.tools.diagram.data.graph.EntityNode;
+import org.reactome.server.tools.diagram.data.graph.EventNode;
+import org.reactome.server.tools.diagram.data.graph.Graph;
+import org.reactome.server.tools.diagram.data.graph.impl.EntityNodeImpl;
+import org.reactome.server.tools.diagram.data.graph.impl.EventNodeImpl;
+import org.reactome.server.tools.diagram.data.graph.impl.GraphImpl;
+import org.reactome.server.tools.diagram.data.layout.*;
+import org.reactome.server.tools.diagram.data.layout.impl.*;
+import org.reactome.server.tools.reaction.exporter.diagram.ReactionDiagramFactory;
+import org.reactome.server.tools.reaction.exporter.graph.ReactionGraphFactory;
+import org.reactome.server.tools.reaction.exporter.layout.LayoutFactory.Style;
+import org.reactome.server.tools.reaction.exporter.layout.common.Bounds;
+import org.reactome.server.tools.reaction.exporter.layout.compact.CompactLayout;
+import org.reactome.server.tools.reaction.exporter.layout.model.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the diagram and graph written from a {@link CompactLayout} are the same, as JSON, as the ones the
+ * serializers wrote from the {@link Layout} before it was introduced, and that compacting a layout does not modify it.
+ */
+public class CompactLayoutTest extends EmbeddedGraphTest {
+
+    private static final Coordinate GWU_CORRECTION = CoordinateFactory.get(14, 18);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testSameJsonAsLayout() throws JsonProcessingException {
+        final ReactionGraphFactory graphFactory = new ReactionGraphFactory(ads);
+        for (String stId : getGraph().getReactionStIds()) {
+            final ReactionLikeEvent rle = ds.findByIdNoRelations(stId);
+            final Layout layout = layoutFactory.getReactionLikeEventLayout(rle, Style.BOX);
+            final CompactLayout compact = CompactLayout.of(layout);
+            for (EntityGlyph entity : layout.getEntities()) {
+                for (Connector connector : entity.getConnector()) {
+                    assertNull(connector.getEdgeId(), stId);
+                    assertNull(connector.getIsDisease(), stId);
+                    assertNull(connector.getIsFadeOut(), stId);
+                }
+            }
+            final String diagram = mapper.writeValueAsString(ReactionDiagramFactory.get(compact));
+            final String graph = mapper.writeValueAsString(graphFactory.getGraph(rle, compact));
+            // a compact layout can be written any number of times
+            assertEquals(diagram, mapper.writeValueAsString(ReactionDiagramFactory.get(compact)), stId);
+            // the previous serializers link the connectors of the layout
+            assertEquals(mapper.writeValueAsString(getDiagramFromLayout(layout)), diagram, stId);
+            assertEquals(mapper.writeValueAsString(getGraphFromLayout(rle, layout, graphFactory)), graph, stId);
+        }
+    }
+
+    // The serializers before CompactLayout, working on the Layout
+
+    private static Graph getGraphFromLayout(ReactionLikeEvent rle, Layout layout, ReactionGraphFactory graphFactory) {
+        final Map<Long, List<Long>> map = new HashMap<>();
+        for (EntityGlyph entity : layout.getEntities())
+            map.computeIfAbsent(entity.getDbId(), k -> new ArrayList<>()).add(entity.getId());
+        final List<EntityNodeImpl> entityNodes = graphFactory.getEntityNodes(rle);
+        entityNodes.forEach(node -> node.setDiagramIds(map.get(node.getDbId())));
+        final EventNodeImpl eventNode = graphFactory.getEventNode(rle);
+        eventNode.setDiagramIds(Collections.singletonList(layout.getReaction().getDbId()));
+        return new GraphImpl(rle.getDbId(), rle.getStId(), rle.getDisplayName(), rle.getSpeciesName(),
+                new ArrayList<EntityNode>(entityNodes), Collections.<EventNode>singletonList(eventNode), new ArrayList<>());
+    }
+
+    private static Diagram getDiagramFromLayout(Layout rxnLayout) {
+        final DiagramImpl diagram = new DiagramImpl();
+        final ReactionGlyph reaction = rxnLayout.getReaction();
+        diagram.setStableId(rxnLayout.getPathway());
+        diagram.setDisease(reaction.isDisease());
+        diagram.setDisplayName(reaction.getName());
+        diagram.setDbId(reaction.getDbId());
+        diagram.setCompartments(getCompartments(rxnLayout));
+        diagram.setEdges(getEdges(rxnLayout));
+        diagram.setMaxX((int) rxnLayout.getBounds().getMaxX());
+        diagram.setMaxY((int) rxnLayout.getBounds().getMaxY());
+        diagram.setMinX((int) rxnLayout.getBounds().getX());
+        diagram.setMinY((int) rxnLayout.getBounds().getY());
+        diagram.setNodes(getNodes(rxnLayout));
+        diagram.setNotes(Collections.emptyList());
+        diagram.setShadows(Collections.emptyList());
+        diagram.setLinks(Collections.emptyList());
+        return diagram;
+    }
+
+    private static List<Compartment> getCompartments(Layout rxnLayout) {
+        final List<Compartment> compartments = new ArrayList<>();
+        for (CompartmentGlyph comp : rxnLayout.getCompartments()) {
+            final List<Long> ids = new ArrayList<>();
+            for (Glyph glyph : comp.getContainedGlyphs()) {
+                ids.add(glyph.getId());
+            }
+            for (final CompartmentGlyph child : comp.getChildren()) {
+                ids.add(child.getId());
+            }
+            final CompartmentImpl compartment = new CompartmentImpl(ids);
+            compartments.add(compartment);
+            copyGlyphToDatabaseObject(comp, compartment);
+            final Bounds bounds = comp.getBounds();
+            compartment.setProp(getProp(bounds));
+            compartment.setTextPosition(comp.getLabelPosition().minus(GWU_CORRECTION));
+        }
+        return compartments;
+    }
+
+    private static void copyGlyphToDatabaseObject(Glyph glyph, DiagramObjectImpl object) {
+        final Bounds bounds = glyph.getBounds();
+        object.setId(glyph.getId());
+        object.setMinX(bounds.getX());
+        object.setMinY(bounds.getY());
+        object.setMaxX(bounds.getMaxX());
+        object.setMaxY(bounds.getMaxY());
+        object.setDisplayName(glyph.getName());
+        object.setRenderableClass(glyph.getRenderableClass().toString());
+        object.setSchemaClass(glyph.getSchemaClass());
+        object.setReactomeId(glyph.getDbId());
+        object.setPosition(new CoordinateImpl(bounds.getCenterX(), bounds.getCenterY()));
+    }
+
+    private static List<Edge> getEdges(Layout rxnLayout) {
+        final ReactionGlyph reaction = rxnLayout.getReaction();
+        final EdgeImpl edge = new EdgeImpl();
+        copyGlyphToDatabaseObject(reaction, edge);
+        edge.setReactionShape(getReactionShape(reaction));
+        edge.setSegments(reaction.getSegments());
+        edge.setDisease(reaction.isDisease());
+        final List<ReactionPart> activators = new ArrayList<>();
+        final List<ReactionPart> catalyst = new ArrayList<>();
+        final List<ReactionPart> inhibitors = new ArrayList<>();
+        final List<ReactionPart> inputs = new ArrayList<>();
+        final List<ReactionPart> outputs = new ArrayList<>();
+        for (EntityGlyph entity : rxnLayout.getEntities()) {
+            if (entity.isCrossed() != null && entity.isCrossed()) continue;
+            for (Role role : entity.getRoles()) {
+                final ReactionPartImpl reactionPart = new ReactionPartImpl();
+                reactionPart.setId(entity.getId());
+                reactionPart.setStoichiometry(role.getStoichiometry());
+                switch (role.getType()) {
+                    case INPUT:
+                        inputs.add(reactionPart);
+                        break;
+                    case OUTPUT:
+                        outputs.add(reactionPart);
+                        break;
+                    case CATALYST:
+                        catalyst.add(reactionPart);
+                        break;
+                    case NEGATIVE_REGULATOR:
+                        inhibitors.add(reactionPart);
+                        break;
+                    case POSITIVE_REGULATOR:
+                        activators.add(reactionPart);
+                        break;
+                }
+            }
+        }
+        edge.setActivators(activators);
+        edge.setCatalysts(catalyst);
+        edge.setInhibitors(inhibitors);
+        edge.setInputs(inputs);
+        edge.setOutputs(outputs);
+        edge.setRenderableClass("Reaction");
+        return Collections.singletonList(edge);
+    }
+
+    private static Shape getReactionShape(ReactionGlyph reaction) {
+        final Bounds bounds = reaction.getBounds();
+        final Coordinate a;
+        final Coordinate b;
+        final Coordinate c;
+        switch (reaction.getRenderableClass()) {
+            case DISSOCIATION_REACTION:
+                c = new CoordinateImpl(bounds.getCenterX(), bounds.getCenterY());
+                return new DoubleCircleImpl(c, 6., 4.);
+            case OMITTED_REACTION:
+                a = new CoordinateImpl(bounds.getX(), bounds.getY());
+                b = new CoordinateImpl(bounds.getMaxX(), bounds.getMaxY());
+                return new BoxImpl(a, b, true, "\\\\");
+            case UNCERTAIN_REACTION:
+                a = new CoordinateImpl(bounds.getX(), bounds.getY());
+                b = new CoordinateImpl(bounds.getMaxX(), bounds.getMaxY());
+                return new BoxImpl(a, b, true, "?");
+            case BINDING_REACTION:
+                c = new CoordinateImpl(bounds.getCenterX(), bounds.getCenterY());
+                return new CircleImpl(c, 6., null, null);
+            case TRANSITION_REACTION:
+            default:
+                a = new CoordinateImpl(bounds.getX(), bounds.getY());
+                b = new CoordinateImpl(bounds.getMaxX(), bounds.getMaxY());
+                return new BoxImpl(a, b, true, null);
+        }
+    }
+
+    private static List<Node> getNodes(Layout rxnLayout) {
+        List<Node> nodes = new ArrayList<>();
+        for (EntityGlyph entity : rxnLayout.getEntities()) {
+            final NodeImpl node = new NodeImpl();
+            copyGlyphToDatabaseObject(entity, node);
+            node.setTrivial(entity.isTrivial() ? true : null);
+            node.setDisease(entity.isDisease() ? true : null);
+            node.setFadeOut(entity.isFadeOut() ? true : null);
+            node.setCrossed(entity.isCrossed() ? true : null);
+            node.setNeedDashBorder(entity.isDashed() ? true : null);
+            final Bounds bounds = entity.getBounds();
+            node.setProp(getProp(bounds));
+            node.setConnectors(new ArrayList<>(entity.getConnector()));
+            for (Connector c : entity.getConnector()) {
+                ConnectorImpl connector = (ConnectorImpl) c;
+                connector.setEdgeId(rxnLayout.getReaction().getId());
+                connector.setDisease(rxnLayout.getReaction().isDisease() ? true : null);
+                connector.setFadeOut(entity.isFadeOut() ? true : null);
+            }
+            List<NodeAttachment> attachments = new ArrayList<>();
+            for (AttachmentGlyph attachment : entity.getAttachments()) {
+                final NodeAttachmentImpl nodeAttachment = new NodeAttachmentImpl();
+                nodeAttachment.setLabel(attachment.getName());
+                nodeAttachment.setReactomeId(attachment.getDbId());
+                nodeAttachment.setShape(getAttachmentShape(attachment));
+                attachments.add(nodeAttachment);
+            }
+            node.setNodeAttachments(attachments);
+            nodes.add(node);
+        }
+        return nodes;
+    }
+
+    private static Shape getAttachmentShape(AttachmentGlyph attachment) {
+        final Bounds bounds = attachment.getBounds();
+        final Coordinate a = new CoordinateImpl(bounds.getX(), bounds.getY());
+        final Coordinate b = new CoordinateImpl(bounds.getMaxX(), bounds.getMaxY());
+        return new BoxImpl(a, b, true, attachment.getName());
+    }
+
+    private static NodeProperties getProp(Bounds bounds) {
+        return NodePropertiesFactory.get(bounds.getX(), bounds.getY(), bounds.getWidth(), bounds.getHeight());
+    }
+}
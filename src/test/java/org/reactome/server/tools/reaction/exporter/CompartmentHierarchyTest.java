@@ -0,0 +1,112 @@
+package org.reactome.server.tools.reaction.exporter;
+
+import org.junit.jupiter.api.Test;
+import org.reactome.server.graph.domain.model.GO_CellularComponent;
+import org.reactome.server.graph.exception.CustomQueryException;
+import org.reactome.server.tools.reaction.exporter.compartment.CompartmentResult;
+import org.reactome.server.tools.reaction.exporter.compartment.ReactomeCompartmentFactory;
+import org.reactome.server.tools.reaction.exporter.ontology.GoTerm;
+import org.reactome.server.tools.reaction.exporter.ontology.GoTreeFactory;
+import org.reactome.server.tools.reaction.exporter.ontology.OntologyRelease;
+import org.reactome.server.tools.reaction.exporter.ontology.RelationshipType;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the master tree loaded with {@link ReactomeCompartmentFactory#HIERARCHY_QUERY} is the same one loaded
+ * through graph-core, with {@link ReactomeCompartmentFactory#getMasterTree(Collection)}, parents in the same order
+ * included. The synthetic graph links the parents of the organelles in reverse order, so only the order property of
+ * the relationships gives the right one.
+ * <p>
+ * A release reloaded from the database is only published once it is loaded.
+ */
+public class CompartmentHierarchyTest extends EmbeddedGraphTest {
+
+    @Test
+    public void testSameTreeAsGraphCore() throws CustomQueryException {
+        final Collection<GO_CellularComponent> compartments = compartmentFactory.getCellularComponents();
+        final Collection<CompartmentResult> rows = ads.getCustomQueryResults(CompartmentResult.class, ReactomeCompartmentFactory.HIERARCHY_QUERY);
+        assertEquals(compartments.size(), rows.size());
+        final List<String> expected = describe(ReactomeCompartmentFactory.getMasterTree(compartments));
+        assertEquals(expected, describe(ReactomeCompartmentFactory.getMasterTreeFromResults(rows)));
+        assertEquals(expected, describe(compartmentFactory.getMasterTree()));
+        // some terms have more than one parent, or the order would not be tested
+        assertTrue(rows.stream().anyMatch(row -> row.getParents().size() > 1));
+    }
+
+    @Test
+    public void testSameRowsAsGraphCore() throws CustomQueryException {
+        // snapshots are written from the rows, built from graph-core when the query fails
+        final Collection<CompartmentResult> rows = ads.getCustomQueryResults(CompartmentResult.class, ReactomeCompartmentFactory.HIERARCHY_QUERY);
+        final List<String> built = new ArrayList<>();
+        for (GO_CellularComponent component : compartmentFactory.getCellularComponents())
+            built.add(describe(ReactomeCompartmentFactory.getCompartmentResult(component)));
+        final List<String> queried = new ArrayList<>();
+        rows.forEach(row -> queried.add(describe(row)));
+        Collections.sort(built);
+        Collections.sort(queried);
+        assertEquals(queried, built);
+        assertEquals(queried.size(), compartmentFactory.getCompartmentResults().size());
+    }
+
+    @Test
+    public void testReloadPublishesWhenDone() throws ExecutionException, InterruptedException {
+        final OntologyRelease current = GoTreeFactory.getReactomeRelease(compartmentFactory);
+        final List<Runnable> tasks = new ArrayList<>();
+        final CompletableFuture<OntologyRelease> reload = GoTreeFactory.reloadReactomeMasterTree("reloaded", compartmentFactory, tasks::add);
+        // meanwhile, the current release is used
+        assertFalse(reload.isDone());
+        assertSame(current, GoTreeFactory.getRelease(GoTreeFactory.Source.REACTOME));
+
+        tasks.forEach(Runnable::run);
+        final OntologyRelease reloaded = reload.get();
+        assertSame(reloaded, GoTreeFactory.getRelease(GoTreeFactory.Source.REACTOME));
+        assertEquals("reloaded", reloaded.getRelease());
+        assertEquals(current.size(), reloaded.size());
+        assertTrue(current.isReplaced());
+    }
+
+    @Test
+    public void testRowsWithoutParents() {
+        // a root, a parent that is not a row, and a row with no lists at all
+        final List<CompartmentResult> rows = List.of(
+                createRow("GO:1", List.of(), List.of()),
+                createRow("GO:2", Arrays.asList("GO:1", null, "GO:9"), Arrays.asList("GO:1", null)),
+                createRow("GO:3", null, null));
+        final Map<String, GoTerm> tree = ReactomeCompartmentFactory.getMasterTreeFromResults(rows);
+        assertEquals(List.of("GO:1 1 [] []", "GO:2 2 [GO:1] [GO:1]", "GO:3 3 [] []"), describe(tree));
+    }
+
+    private static CompartmentResult createRow(String id, List<String> parents, List<String> surroundedBy) {
+        final CompartmentResult row = new CompartmentResult();
+        row.setId(id);
+        row.setName(id.substring(3));
+        row.setParents(parents);
+        row.setSurroundedBy(surroundedBy);
+        return row;
+    }
+
+    private static String describe(CompartmentResult row) {
+        return row.getId() + " " + row.getName() + " " + row.getParents() + " " + new TreeSet<>(row.getSurroundedBy());
+    }
+
+    /**
+     * One line per term, with the parents in order, as the order is used to choose a branch of the tree
+     */
+    private static List<String> describe(Map<String, GoTerm> masterTree) {
+        final List<String> lines = new ArrayList<>();
+        for (GoTerm term : masterTree.values()) {
+            final StringJoiner parents = new StringJoiner(",", "[", "]");
+            term.getParents().forEach(parent -> parents.add(parent.getId()));
+            final Set<String> surroundedBy = new TreeSet<>();
+            term.getRelationships(GoTerm.Directionality.OUTGOING, RelationshipType.surrounded_by).forEach(t -> surroundedBy.add(t.getId()));
+            lines.add(term.getId() + " " + term.getName() + " " + parents + " " + surroundedBy);
+        }
+        Collections.sort(lines);
+        return lines;
+    }
+}
@@ -0,0 +1,133 @@
+package org.reactome.server.tools.reaction.exporter;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.reactome.server.tools.reaction.exporter.layout.algorithm.box.BoxAlgorithm;
+import org.reactome.server.tools.reaction.exporter.layout.model.Layout;
+import org.reactome.server.tools.reaction.exporter.ontology.OntologyRelease;
+import org.reactome.server.tools.reaction.exporter.snapshot.ReactionSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Lays out the same reactions from many threads at the same time, starting with cold caches, and checks that every
+ * thread gets exactly the same layouts, identifiers included, as a single threaded run. No database is needed: every
+ * layout gets its compartments from the same {@link SyntheticReactions#createRelease() release}, which is never
+ * published, so nothing global is read or changed.
+ * <p>
+ * As every thread reuses its own working memory for all of its layouts, the same test also checks that nothing leaks
+ * from one layout to the next. The memory allocated per layout is measured, and logged, in a benchmark that must be run
+ * manually.
+ */
+public class ConcurrentLayoutTest {
+
+    private static final Logger logger = LoggerFactory.getLogger("testLogger");
+
+    private static final int REACTIONS = 20;
+    private static final int COMPARTMENTS = 5;
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 5;
+    /**
+     * Bytes allocated by the calling thread, see com.sun.management.ThreadMXBean#getCurrentThreadAllocatedBytes()
+     */
+    private static final String ALLOCATED_BYTES = "CurrentThreadAllocatedBytes";
+
+    @Test
+    public void testConcurrentLayouts() throws Exception {
+        final OntologyRelease release = SyntheticReactions.createRelease();
+        final List<ReactionSnapshot> reactions = createReactions();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<List<String>>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                final long seed = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    final List<Integer> order = new ArrayList<>();
+                    for (int round = 0; round < ROUNDS; round++)
+                        for (int i = 0; i < REACTIONS; i++) order.add(i);
+                    Collections.shuffle(order, new Random(seed));
+                    final String[] results = new String[REACTIONS];
+                    for (final Integer i : order) {
+                        final String description = LayoutDescription.describe(layout(reactions.get(i), release));
+                        if (results[i] == null) results[i] = description;
+                        else assertEquals(results[i], description, "Reaction " + i + " changed between rounds");
+                    }
+                    return Arrays.asList(results);
+                }));
+            }
+            start.countDown();
+            final List<String> expected = new ArrayList<>();
+            for (final ReactionSnapshot reaction : reactions) expected.add(LayoutDescription.describe(layout(reaction, release)));
+            for (final Future<List<String>> future : futures)
+                assertEquals(expected, future.get(5, TimeUnit.MINUTES));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @Disabled("Not intended for automatic testing, allocations depend on the JVM and its JIT")
+    public void testAllocationRate() throws JMException {
+        // read through JMX, as the attribute is only in the HotSpot extension of ThreadMXBean
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName threading = new ObjectName(ManagementFactory.THREAD_MXBEAN_NAME);
+        Assumptions.assumeTrue(isAttribute(server, threading, ALLOCATED_BYTES), "Allocated bytes are not available in this JVM");
+        final OntologyRelease release = SyntheticReactions.createRelease();
+        final List<ReactionSnapshot> reactions = createReactions();
+        // warm up: caches, JIT and the working memory of this thread
+        for (int round = 0; round < ROUNDS; round++)
+            for (final ReactionSnapshot reaction : reactions) layout(reaction, release);
+
+        final int rounds = 50;
+        long bytes = 0;
+        long time = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (final ReactionSnapshot reaction : reactions) {
+                // only the algorithm is measured, not the creation of the glyphs
+                final Layout layout = SyntheticReactions.createLayout(reaction, release);
+                final long start = System.nanoTime();
+                final long allocated = (long) server.getAttribute(threading, ALLOCATED_BYTES);
+                new BoxAlgorithm(layout).compute();
+                bytes += (long) server.getAttribute(threading, ALLOCATED_BYTES) - allocated;
+                time += System.nanoTime() - start;
+            }
+        }
+        final int layouts = rounds * REACTIONS;
+        logger.info(String.format("BoxAlgorithm: %.1f KB and %.1f us per layout, %.1f MB/s",
+                bytes / 1024.0 / layouts, time / 1000.0 / layouts, bytes / 1024.0 / 1024.0 / (time / 1e9)));
+    }
+
+    private static boolean isAttribute(MBeanServer server, ObjectName name, String attribute) throws JMException {
+        for (MBeanAttributeInfo info : server.getMBeanInfo(name).getAttributes())
+            if (info.getName().equals(attribute)) return true;
+        return false;
+    }
+
+    private static List<ReactionSnapshot> createReactions() {
+        final Random random = new Random(42);
+        final List<ReactionSnapshot> reactions = new ArrayList<>();
+        for (int i = 0; i < REACTIONS; i++)
+            reactions.add(SyntheticReactions.createReaction(i + 1, random, 2 + random.nextInt(7), COMPARTMENTS));
+        return reactions;
+    }
+
+    private static Layout layout(ReactionSnapshot reaction, OntologyRelease release) {
+        final Layout layout = SyntheticReactions.createLayout(reaction, release);
+        new BoxAlgorithm(layout).compute();
+        return layout;
+    }
+}
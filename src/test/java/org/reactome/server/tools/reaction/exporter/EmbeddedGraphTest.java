@@ -0,0 +1,94 @@
+package org.reactome.server.tools.reaction.exporter;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.neo4j.harness.Neo4j;
+import org.neo4j.harness.Neo4jBuilders;
+import org.reactome.server.graph.service.AdvancedDatabaseObjectService;
+import org.reactome.server.graph.service.DatabaseObjectService;
+import org.reactome.server.graph.service.SchemaService;
+import org.reactome.server.graph.utils.ReactomeGraphCore;
+import org.reactome.server.tools.reaction.exporter.compartment.ReactomeCompartmentFactory;
+import org.reactome.server.tools.reaction.exporter.config.ReactomeNeo4jConfig;
+import org.reactome.server.tools.reaction.exporter.layout.LayoutFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+/**
+ * Same as {@link BaseTest}, but graph-core is connected to an embedded neo4j with a {@link SyntheticReactomeGraph}
+ * instead of a Reactome database, so these tests always run.
+ * <p>
+ * The database is created once and shared by every subclass, as is the spring context, and it is closed when the JVM
+ * exits. Subclasses must not modify it.
+ */
+@SpringBootTest
+@ContextConfiguration(classes = ReactomeNeo4jConfig.class)
+public abstract class EmbeddedGraphTest {
+
+    static final Logger logger = LoggerFactory.getLogger("testLogger");
+
+    private static final String USER = "neo4j";
+    private static final String PASSWORD = "neo4j";
+    private static final String DATABASE = "neo4j";
+
+    /**
+     * Runs the soak tests, see {@link BatchMemoryTest}, with <code>-Dsoak=true</code>. The graph is then big enough for
+     * them, and every other test uses the big graph too
+     */
+    static final boolean SOAK = Boolean.getBoolean("soak");
+    static final int REACTIONS = SOAK ? 5_000 : 500;
+    private static final int COMPLEX_DEPTH = 3;
+    private static final long SEED = 42;
+
+    private static Neo4j neo4j;
+    private static SyntheticReactomeGraph graph;
+
+    @Autowired
+    protected AdvancedDatabaseObjectService ads;
+
+    @Autowired
+    protected DatabaseObjectService ds;
+
+    @Autowired
+    protected SchemaService schemaService;
+
+    /**
+     * Reads the compartments of the embedded database, created for every test, so no test changes what others use
+     */
+    protected ReactomeCompartmentFactory compartmentFactory;
+
+    protected LayoutFactory layoutFactory;
+
+    @DynamicPropertySource
+    static void neo4jProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.neo4j.uri", () -> getNeo4j().boltURI().toString());
+        registry.add("spring.neo4j.authentication.username", () -> USER);
+        registry.add("spring.neo4j.authentication.password", () -> PASSWORD);
+        registry.add("spring.data.neo4j.database", () -> DATABASE);
+    }
+
+    private static synchronized Neo4j getNeo4j() {
+        if (neo4j == null) {
+            neo4j = Neo4jBuilders.newInProcessBuilder().withDisabledServer().build();
+            Runtime.getRuntime().addShutdownHook(new Thread(neo4j::close));
+            graph = SyntheticReactomeGraph.create(neo4j.defaultDatabaseService(), REACTIONS, COMPLEX_DEPTH, SEED);
+            ReactomeGraphCore.initialise(neo4j.boltURI().toString(), USER, PASSWORD, DATABASE);
+        }
+        return neo4j;
+    }
+
+    static SyntheticReactomeGraph getGraph() {
+        getNeo4j();
+        return graph;
+    }
+
+    @BeforeEach
+    public void setUp() {
+        compartmentFactory = new ReactomeCompartmentFactory(schemaService, ads);
+        layoutFactory = new LayoutFactory(ads, ds, compartmentFactory);
+    }
+}
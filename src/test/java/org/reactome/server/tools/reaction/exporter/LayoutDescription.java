@@ -0,0 +1,84 @@
+package org.reactome.server.tools.reaction.exporter;
+
+import org.reactome.server.tools.diagram.data.layout.Connector;
+import org.reactome.server.tools.diagram.data.layout.Coordinate;
+import org.reactome.server.tools.diagram.data.layout.Segment;
+import org.reactome.server.tools.reaction.exporter.layout.common.Bounds;
+import org.reactome.server.tools.reaction.exporter.layout.model.CompartmentGlyph;
+import org.reactome.server.tools.reaction.exporter.layout.model.EntityGlyph;
+import org.reactome.server.tools.reaction.exporter.layout.model.Glyph;
+import org.reactome.server.tools.reaction.exporter.layout.model.Layout;
+import org.reactome.server.tools.reaction.exporter.layout.model.ReactionGlyph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.function.Function;
+
+/**
+ * A text version of a layout, with the identifiers, names and geometry of every glyph, so tests can check that two
+ * layouts are exactly the same and, if not, show where they differ.
+ */
+public final class LayoutDescription {
+
+    private LayoutDescription() {
+    }
+
+    /**
+     * Glyphs are described in the order of the layout collections, so the order must be the same too.
+     */
+    public static String describe(Layout layout) {
+        return describe(layout, true);
+    }
+
+    /**
+     * @param identifiers when false, identifiers and names are left out, so layouts of reactions with the same
+     *                    structure can be compared too. Compartments are still described by their accession, and
+     *                    entities by their position in the layout.
+     */
+    public static String describe(Layout layout, boolean identifiers) {
+        final List<Glyph> entities = new ArrayList<>(layout.getEntities());
+        final Function<Glyph, String> label = identifiers
+                ? glyph -> String.valueOf(glyph.getId())
+                : glyph -> label(glyph, entities);
+        final List<String> lines = new ArrayList<>();
+        lines.add("layout " + (identifiers ? layout.getReaction().getStId() + " " : "") + describe(layout.getBounds()));
+        final StringJoiner segments = new StringJoiner(" ");
+        layout.getReaction().getSegments().forEach(segment -> segments.add(describe(segment)));
+        lines.add("reaction " + label.apply(layout.getReaction()) + " of " + layout.getReaction().getCompartment().getAccession()
+                + " " + describe(layout.getReaction().getBounds()) + " " + segments);
+        for (CompartmentGlyph compartment : layout.getCompartments()) {
+            final StringJoiner content = new StringJoiner(",", "[", "]");
+            compartment.getContainedGlyphs().forEach(glyph -> content.add(label.apply(glyph)));
+            compartment.getChildren().forEach(child -> content.add(label.apply(child)));
+            lines.add("compartment " + label.apply(compartment) + " " + compartment.getAccession()
+                    + (identifiers ? " " + compartment.getName() : "") + " " + describe(compartment.getBounds()) + " " + content);
+        }
+        for (EntityGlyph entity : layout.getEntities()) {
+            final StringJoiner connectors = new StringJoiner(" ");
+            for (Connector connector : entity.getConnector())
+                for (Segment segment : connector.getSegments()) connectors.add(describe(segment));
+            lines.add("entity " + label.apply(entity) + (identifiers ? " " + entity.getName() : "")
+                    + " " + describe(entity.getBounds()) + " " + connectors);
+        }
+        return String.join("\n", lines);
+    }
+
+    private static String label(Glyph glyph, List<Glyph> entities) {
+        if (glyph instanceof ReactionGlyph) return "reaction";
+        if (glyph instanceof CompartmentGlyph) return ((CompartmentGlyph) glyph).getAccession();
+        return "entity" + entities.indexOf(glyph);
+    }
+
+    private static String describe(Bounds bounds) {
+        return bounds.getX() + "," + bounds.getY() + " " + bounds.getWidth() + "x" + bounds.getHeight();
+    }
+
+    private static String describe(Segment segment) {
+        return describe(segment.getFrom()) + "-" + describe(segment.getTo());
+    }
+
+    private static String describe(Coordinate coordinate) {
+        return coordinate.getX() + "," + coordinate.getY();
+    }
+}
@@ -0,0 +1,87 @@
+package org.reactome.server.tools.reaction.exporter;
+
+import org.junit.jupiter.api.Test;
+import org.reactome.server.tools.reaction.exporter.diagram.ReactionDiagramFactory;
+import org.reactome.server.tools.reaction.exporter.layout.DiagramTest;
+import org.reactome.server.tools.reaction.exporter.layout.LayoutFactory;
+import org.reactome.server.tools.reaction.exporter.layout.LayoutFactory.Style;
+import org.reactome.server.tools.reaction.exporter.layout.Portfolio;
+import org.reactome.server.tools.reaction.exporter.layout.algorithm.box.BoxAlgorithm;
+import org.reactome.server.tools.reaction.exporter.layout.model.Layout;
+import org.reactome.server.tools.reaction.exporter.ontology.OntologyRelease;
+import org.reactome.server.tools.reaction.exporter.snapshot.ReactionSnapshot;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link Portfolio} only replaces the box layout with a better one, so, by {@link DiagramTest#score()}, it is never
+ * worse than {@link BoxAlgorithm}. No database is needed.
+ */
+public class PortfolioTest {
+
+    private static final OntologyRelease RELEASE = SyntheticReactions.createRelease();
+    private static final int REACTIONS = 200;
+    private static final Duration TIME_LIMIT = Duration.ofMillis(100);
+
+    @Test
+    public void testNeverWorseThanBox() {
+        final Random random = new Random(42);
+        for (int i = 0; i < REACTIONS; i++) {
+            final ReactionSnapshot reaction = SyntheticReactions.createReaction(i, random, 1 + random.nextInt(12), 4);
+            final Layout box = SyntheticReactions.createLayout(reaction, RELEASE);
+            new BoxAlgorithm(box).compute();
+            final Layout portfolio = SyntheticReactions.createLayout(reaction, RELEASE);
+            new Portfolio(portfolio, TIME_LIMIT).compute();
+            final int expected = score(box);
+            final int actual = score(portfolio);
+            assertTrue(actual <= expected, () -> String.format("%s scores %d, box scores %d%n%s", reaction.getStId(), actual, expected,
+                    String.join("\n", getErrors(portfolio, reaction.getStId()))));
+        }
+    }
+
+    /**
+     * Layouts are usually computed in parallel streams, so every thread of the common pool can be waiting for a
+     * search while the searches need the common pool for their branches
+     */
+    @Test
+    public void testFromCommonPool() {
+        final int reactions = 2 * ForkJoinPool.getCommonPoolParallelism();
+        final List<ReactionSnapshot> snapshots = new ArrayList<>();
+        final Random random = new Random(7);
+        for (int i = 0; i < reactions; i++) snapshots.add(SyntheticReactions.createReaction(i, random, 4 + random.nextInt(6), 4));
+        assertTimeoutPreemptively(TIME_LIMIT.multipliedBy(reactions + 10), () -> snapshots.parallelStream().forEach(reaction -> {
+            final Layout box = SyntheticReactions.createLayout(reaction, RELEASE);
+            new BoxAlgorithm(box).compute();
+            final Layout portfolio = SyntheticReactions.createLayout(reaction, RELEASE);
+            new Portfolio(portfolio, TIME_LIMIT).compute();
+            assertTrue(score(portfolio) <= score(box), reaction.getStId());
+        }));
+    }
+
+    @Test
+    public void testNegativeTimeLimit() {
+        final ReactionSnapshot reaction = SyntheticReactions.createReaction(1, new Random(1), 2, 1);
+        assertThrows(IllegalArgumentException.class, () -> LayoutFactory.getSnapshotLayout(reaction, Style.PORTFOLIO, Duration.ofMillis(-1)));
+    }
+
+    private static int score(Layout layout) {
+        return new DiagramTest(ReactionDiagramFactory.get(layout)).score();
+    }
+
+    /**
+     * @return a line per error counted by {@link DiagramTest#score()}, overlapping elements included
+     */
+    private static List<String> getErrors(Layout layout, String name) {
+        final DiagramTest test = new DiagramTest(ReactionDiagramFactory.get(layout));
+        test.runTests(name);
+        test.runOverlapTest(name);
+        return test.getLogs().getOrDefault(DiagramTest.Level.ERROR, Collections.emptyList());
+    }
+}
@@ -0,0 +1,200 @@
+package org.reactome.server.tools.reaction.exporter;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.neo4j.graphdb.ExecutionPlanDescription;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.harness.Neo4j;
+import org.neo4j.harness.Neo4jBuilders;
+import org.reactome.server.tools.reaction.exporter.graph.ReactionGraphFactory;
+import org.reactome.server.tools.reaction.exporter.layout.LayoutFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs the queries used by the exporter against a synthetic graph in an embedded neo4j, so they can be compared with
+ * rewritten versions without a Reactome database. Every query is run in three flavours when possible:
+ * <ul>
+ *     <li><b>original</b>: the query as used by the exporter, one reaction per call</li>
+ *     <li><b>rewritten</b>: the drug detection uses an existential subquery instead of expanding the whole
+ *     hasComponent/hasMember/hasCandidate tree of every participant</li>
+ *     <li><b>batched</b>: the rewritten query taking a list of reactions, so the exporter can ask for a chunk of
+ *     reactions in one round trip</li>
+ * </ul>
+ * Timings and db hits are logged. The small test checks that all flavours return the same data, the big one is only
+ * for manual profiling.
+ */
+public class QueryBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger("testLogger");
+
+    private static final String DRUG_MATCH = "OPTIONAL MATCH (pe)-[:hasComponent|hasMember|hasCandidate|proteinMarker|RNAMarker*]->(d:Drug) ";
+    private static final String DRUG_TEST = "(pe:Drug) OR NOT d IS NULL";
+    private static final String DRUG_EXISTS = "(pe:Drug) OR exists((pe)-[:hasComponent|hasMember|hasCandidate|proteinMarker|RNAMarker*]->(:Drug))";
+
+    private static final String LAYOUT_REWRITTEN = replace(replace(LayoutFactory.QUERY, DRUG_MATCH, ""), DRUG_TEST, DRUG_EXISTS);
+    private static final String LAYOUT_BATCHED = replace(replace(LAYOUT_REWRITTEN,
+                    "MATCH (rle:ReactionLikeEvent{stId:$stId}) ",
+                    "UNWIND $stIds AS stId MATCH (rle:ReactionLikeEvent{stId:stId}) "),
+            "RETURN p.stId AS pathway, rle.stId AS reactionLikeEvent, ps AS participants LIMIT 1",
+            "WITH rle, ps, head(collect(p.stId)) AS pathway RETURN pathway, rle.stId AS reactionLikeEvent, ps AS participants");
+
+    private static final String ENTITY_NODES_BATCHED = replace(replace(replace(ReactionGraphFactory.ENTITY_NODES_QUERY,
+                            "MATCH (rle:ReactionLikeEvent{dbId:$dbId})",
+                            "UNWIND $dbIds AS reaction MATCH (rle:ReactionLikeEvent{dbId:reaction})"),
+                    "WITH COLLECT(DISTINCT pe) AS pes ",
+                    "WITH reaction, COLLECT(DISTINCT pe) AS pes "),
+            "RETURN DISTINCT pe.dbId AS dbId",
+            "RETURN DISTINCT reaction, pe.dbId AS dbId");
+
+    // the aggregation in the event node query is already grouped by the reaction properties
+    private static final String EVENT_NODE_BATCHED = replace(ReactionGraphFactory.EVENT_NODE_QUERY,
+            "MATCH (rle:ReactionLikeEvent {dbId:$dbId}) ",
+            "UNWIND $dbIds AS reaction MATCH (rle:ReactionLikeEvent {dbId:reaction}) ");
+
+    private static final int WARM_UP = 2;
+    private static final int RUNS = 5;
+    private static final int BATCH_SIZE = 50;
+
+    private static Neo4j neo4j;
+    private static GraphDatabaseService db;
+
+    @BeforeAll
+    public static void setUpClass() {
+        logger.info("Running " + QueryBenchmarkTest.class.getName());
+        neo4j = Neo4jBuilders.newInProcessBuilder().withDisabledServer().build();
+        db = neo4j.defaultDatabaseService();
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+        if (neo4j != null) neo4j.close();
+    }
+
+    @Test
+    public void testVariantsReturnSameData() {
+        final SyntheticReactomeGraph graph = SyntheticReactomeGraph.create(db, 100, 3, 42);
+        final List<String> stIds = graph.getReactionStIds();
+        final List<Long> dbIds = graph.getReactionDbIds();
+
+        final Map<String, Set<Object>> batched = new HashMap<>();
+        for (Map<String, Object> row : query(LAYOUT_BATCHED, Map.of("stIds", stIds)))
+            batched.put((String) row.get("reactionLikeEvent"), participants(row));
+        for (String stId : stIds) {
+            final Set<Object> original = participants(query(LayoutFactory.QUERY, Map.of("stId", stId)).get(0));
+            assertEquals(original, participants(query(LAYOUT_REWRITTEN, Map.of("stId", stId)).get(0)), stId);
+            assertEquals(original, batched.get(stId), stId);
+        }
+
+        final Map<Object, Set<Map<String, Object>>> nodes = new HashMap<>();
+        for (Map<String, Object> row : query(ENTITY_NODES_BATCHED, Map.of("dbIds", dbIds)))
+            nodes.computeIfAbsent(row.remove("reaction"), k -> new HashSet<>()).add(row);
+        final Map<Object, Map<String, Object>> events = new HashMap<>();
+        for (Map<String, Object> row : query(EVENT_NODE_BATCHED, Map.of("dbIds", dbIds)))
+            events.put(row.get("dbId"), row);
+        for (Long dbId : dbIds) {
+            assertEquals(new HashSet<>(query(ReactionGraphFactory.ENTITY_NODES_QUERY, Map.of("dbId", dbId))), nodes.get(dbId), "" + dbId);
+            assertEquals(query(ReactionGraphFactory.EVENT_NODE_QUERY, Map.of("dbId", dbId)).get(0), events.get(dbId), "" + dbId);
+        }
+    }
+
+    @Test
+    @Disabled("Not intended for automatic testing, takes several minutes")
+    public void benchmark() {
+        final SyntheticReactomeGraph graph = SyntheticReactomeGraph.create(db, 5000, 5, 42);
+        final List<String> stIds = graph.getReactionStIds().subList(0, 500);
+        final List<Long> dbIds = graph.getReactionDbIds().subList(0, 500);
+
+        final List<String> lines = new ArrayList<>();
+        lines.add(String.format("%-22s %12s %12s %14s", "query", "ms/reaction", "total (ms)", "db hits"));
+        lines.add(benchmark("layout", LayoutFactory.QUERY, single("stId", stIds)));
+        lines.add(benchmark("layout rewritten", LAYOUT_REWRITTEN, single("stId", stIds)));
+        lines.add(benchmark("layout batched", LAYOUT_BATCHED, batches("stIds", stIds)));
+        lines.add(benchmark("entity nodes", ReactionGraphFactory.ENTITY_NODES_QUERY, single("dbId", dbIds)));
+        lines.add(benchmark("entity nodes batched", ENTITY_NODES_BATCHED, batches("dbIds", dbIds)));
+        lines.add(benchmark("event node", ReactionGraphFactory.EVENT_NODE_QUERY, single("dbId", dbIds)));
+        lines.add(benchmark("event node batched", EVENT_NODE_BATCHED, batches("dbIds", dbIds)));
+        logger.info(String.format("%d reactions%n%s", stIds.size(), String.join(System.lineSeparator(), lines)));
+    }
+
+    /**
+     * Runs the query once per parameter map. Timings are taken from the median run, as time per reaction and total
+     * time for all the reactions. Db hits are measured in a separate, profiled, pass.
+     */
+    private String benchmark(String name, String query, List<Map<String, Object>> params) {
+        for (int i = 0; i < WARM_UP; i++) params.forEach(p -> query(query, p));
+        final long[] times = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            final long start = System.nanoTime();
+            params.forEach(p -> query(query, p));
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        long dbHits = 0;
+        for (Map<String, Object> p : params) dbHits += profile(query, p);
+        final int reactions = params.stream().mapToInt(p -> p.values().iterator().next() instanceof Collection
+                ? ((Collection<?>) p.values().iterator().next()).size()
+                : 1).sum();
+        return String.format("%-22s %12.3f %12.1f %14d", name,
+                times[RUNS / 2] / 1e6 / reactions,
+                times[RUNS / 2] / 1e6,
+                dbHits);
+    }
+
+    private static List<Map<String, Object>> query(String query, Map<String, Object> params) {
+        try (Transaction tx = db.beginTx(); Result result = tx.execute(query, params)) {
+            final List<Map<String, Object>> rows = new ArrayList<>();
+            while (result.hasNext()) {
+                final Map<String, Object> row = new HashMap<>(result.next());
+                // array properties (e.g. geneName) do not implement equals
+                row.replaceAll((k, v) -> v instanceof Object[] ? Arrays.asList((Object[]) v) : v);
+                rows.add(row);
+            }
+            return rows;
+        }
+    }
+
+    private static long profile(String query, Map<String, Object> params) {
+        try (Transaction tx = db.beginTx(); Result result = tx.execute("PROFILE " + query, params)) {
+            result.accept(row -> true);
+            return dbHits(result.getExecutionPlanDescription());
+        }
+    }
+
+    private static long dbHits(ExecutionPlanDescription plan) {
+        long hits = plan.hasProfilerStatistics() ? plan.getProfilerStatistics().getDbHits() : 0;
+        for (ExecutionPlanDescription child : plan.getChildren()) hits += dbHits(child);
+        return hits;
+    }
+
+    private static Set<Object> participants(Map<String, Object> row) {
+        return new HashSet<>((Collection<?>) row.get("participants"));
+    }
+
+    private static List<Map<String, Object>> single(String key, List<?> values) {
+        final List<Map<String, Object>> rtn = new ArrayList<>();
+        for (Object value : values) rtn.add(Map.of(key, value));
+        return rtn;
+    }
+
+    private static List<Map<String, Object>> batches(String key, List<?> values) {
+        final List<Map<String, Object>> rtn = new ArrayList<>();
+        for (int i = 0; i < values.size(); i += BATCH_SIZE)
+            rtn.add(Map.of(key, values.subList(i, Math.min(values.size(), i + BATCH_SIZE))));
+        return rtn;
+    }
+
+    private static String replace(String query, String target, String replacement) {
+        if (!query.contains(target))
+            throw new IllegalStateException("Query has changed, cannot find '" + target + "'");
+        return query.replace(target, replacement);
+    }
+}
@@ -0,0 +1,217 @@
+package org.reactome.server.tools.reaction.exporter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.reactome.server.graph.domain.model.ReactionLikeEvent;
+import org.reactome.server.tools.reaction.exporter.compartment.CompartmentResult;
+import org.reactome.server.tools.reaction.exporter.layout.LayoutFactory;
+import org.reactome.server.tools.reaction.exporter.layout.LayoutFactory.Style;
+import org.reactome.server.tools.reaction.exporter.ontology.GoTerm;
+import org.reactome.server.tools.reaction.exporter.ontology.RelationshipType;
+import org.reactome.server.tools.reaction.exporter.snapshot.CompartmentSnapshot;
+import org.reactome.server.tools.reaction.exporter.snapshot.EntitySnapshot;
+import org.reactome.server.tools.reaction.exporter.snapshot.ReactionSnapshot;
+import org.reactome.server.tools.reaction.exporter.snapshot.SnapshotFactory;
+import org.reactome.server.tools.reaction.exporter.snapshot.SnapshotReader;
+import org.reactome.server.tools.reaction.exporter.snapshot.SnapshotWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Dumps reactions of the embedded database into a snapshot and checks that the layouts created from the snapshot, with
+ * no database access, are the same as the ones created from the database.
+ */
+public class SnapshotTest extends EmbeddedGraphTest {
+
+    @Test
+    public void testSameLayoutAsDatabase(@TempDir File dir) throws IOException {
+        final SnapshotFactory snapshotFactory = new SnapshotFactory(ads, ds);
+        final File file = new File(dir, "reactions.snapshot");
+
+        final List<String> expected = new ArrayList<>();
+        try (SnapshotWriter writer = new SnapshotWriter(file, compartmentFactory.getCompartmentResults())) {
+            for (String stId : getGraph().getReactionStIds()) {
+                final ReactionLikeEvent rle = ds.findByIdNoRelations(stId);
+                expected.add(LayoutDescription.describe(layoutFactory.getReactionLikeEventLayout(rle, Style.BOX)));
+                writer.write(snapshotFactory.getSnapshot(rle));
+            }
+            assertEquals(expected.size(), writer.getCount());
+        }
+
+        final List<String> actual = new ArrayList<>();
+        try (SnapshotReader reader = new SnapshotReader(file)) {
+            assertEquals(describe(compartmentFactory.getMasterTree()), describe(reader.getMasterTree()));
+            ReactionSnapshot reaction;
+            while ((reaction = reader.read()) != null)
+                actual.add(LayoutDescription.describe(LayoutFactory.getSnapshotLayout(reaction, Style.BOX)));
+        }
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testLongStrings(@TempDir File dir) throws IOException {
+        // longer than the 64 KB of DataOutputStream.writeUTF
+        final String name = "\u03b2-catenin ".repeat(10_000);
+        final ReactionSnapshot reaction = new ReactionSnapshot();
+        reaction.setDbId(1L);
+        reaction.setStId("R-HSA-1");
+        reaction.setDisplayName(name);
+        reaction.setCompartments(Collections.emptyList());
+
+        final File file = new File(dir, "long.snapshot");
+        try (SnapshotWriter writer = new SnapshotWriter(file, Collections.emptyList())) {
+            writer.write(reaction);
+        }
+        try (SnapshotReader reader = new SnapshotReader(file)) {
+            final ReactionSnapshot read = reader.read();
+            assertEquals(name, read.getDisplayName());
+            assertNull(read.getSpeciesName());
+            assertNull(reader.read());
+        }
+    }
+
+    @Test
+    public void testFailedWrite(@TempDir File dir) throws IOException {
+        final ReactionSnapshot complete = new ReactionSnapshot();
+        complete.setDbId(1L);
+        complete.setStId("R-HSA-1");
+        complete.setCompartments(Collections.emptyList());
+        // no participants, fails after the first fields have been written
+        final ReactionSnapshot broken = new ReactionSnapshot();
+        broken.setDbId(2L);
+        broken.setStId("R-HSA-2");
+        broken.setParticipants(null);
+
+        final File file = new File(dir, "failed.snapshot");
+        try (SnapshotWriter writer = new SnapshotWriter(file, Collections.emptyList())) {
+            writer.write(complete);
+            assertThrows(NullPointerException.class, () -> writer.write(broken));
+            assertTrue(writer.isFailed());
+            assertThrows(IllegalStateException.class, () -> writer.write(complete));
+            assertEquals(1, writer.getCount());
+        }
+        // with no END tag, the broken reaction is not taken for the end of the snapshot
+        try (SnapshotReader reader = new SnapshotReader(file)) {
+            assertEquals("R-HSA-1", reader.read().getStId());
+            assertThrows(IOException.class, reader::read);
+        }
+    }
+
+    @Test
+    public void testParticipantsAndHierarchy(@TempDir File dir) throws IOException {
+        final ReactionSnapshot reaction = new ReactionSnapshot();
+        reaction.setDbId(1L);
+        reaction.setStId("R-HSA-1");
+        reaction.setCompartments(List.of(new CompartmentSnapshot(70101L, "0005829", "cytosol")));
+        reaction.setParticipants(List.of(createParticipant(null), createParticipant(2)));
+
+        final File file = new File(dir, "participants.snapshot");
+        final List<CompartmentResult> rows = List.of(
+                createRow("GO:0005575", List.of(), List.of()),
+                createRow("GO:0005829", Arrays.asList("GO:0005575", "GO:0000000", null), List.of("GO:0000000")));
+        try (SnapshotWriter writer = new SnapshotWriter(file, rows)) {
+            writer.write(reaction);
+        }
+        try (SnapshotReader reader = new SnapshotReader(file)) {
+            // the root is read with no parents, and the parent that is not in the hierarchy is left out
+            assertEquals(List.of("GO:0005575 0005575 [] []", "GO:0005829 0005829 [GO:0005575] []"), describe(reader.getMasterTree()));
+            final ReactionSnapshot read = reader.read();
+            final CompartmentSnapshot compartment = read.getCompartments().get(0);
+            assertEquals(70101L, compartment.getDbId());
+            assertEquals("0005829", compartment.getAccession());
+            assertEquals("cytosol", compartment.getName());
+            assertNull(read.getParticipants().get(0).getStoichiometry());
+            assertEquals(2, read.getParticipants().get(1).getStoichiometry());
+            assertNull(read.getParticipants().get(1).getCompartments().get(0).getDbId());
+        }
+    }
+
+    @Test
+    public void testSharedStrings(@TempDir File dir) throws IOException {
+        // synthetic entities build their names and identifiers for every participant, so equal texts are copies
+        final Random random = new Random(48);
+        final List<ReactionSnapshot> reactions = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+            reactions.add(SyntheticReactions.createReaction(i, random, 10, SyntheticReactions.MAX_COMPARTMENTS));
+        final File file = new File(dir, "shared.snapshot");
+        try (SnapshotWriter writer = new SnapshotWriter(file, Collections.emptyList())) {
+            for (ReactionSnapshot reaction : reactions) writer.write(reaction);
+        }
+        for (EntitySnapshot[] pair : getRepeated(reactions)) {
+            assertNotSame(pair[0].getStId(), pair[1].getStId());
+            assertNotSame(pair[0].getName(), pair[1].getName());
+        }
+        final List<ReactionSnapshot> read = new ArrayList<>();
+        try (SnapshotReader reader = new SnapshotReader(file)) {
+            ReactionSnapshot reaction;
+            while ((reaction = reader.read()) != null) read.add(reaction);
+        }
+        assertEquals(reactions.size(), read.size());
+        // once loaded, the same entity in two reactions holds the very same strings
+        final List<EntitySnapshot[]> repeated = getRepeated(read);
+        assertTrue(repeated.size() > reactions.size(), repeated.size() + " repeated participants");
+        for (EntitySnapshot[] pair : repeated) {
+            assertSame(pair[0].getStId(), pair[1].getStId());
+            assertSame(pair[0].getName(), pair[1].getName());
+            final CompartmentSnapshot compartment = pair[0].getCompartments().get(0);
+            final CompartmentSnapshot other = pair[1].getCompartments().get(0);
+            assertSame(compartment.getAccession(), other.getAccession());
+            assertSame(compartment.getName(), other.getName());
+        }
+    }
+
+    /**
+     * @return every participant, paired with the first participant with the same identifier in an earlier reaction
+     */
+    private static List<EntitySnapshot[]> getRepeated(List<ReactionSnapshot> reactions) {
+        final Map<String, EntitySnapshot> first = new HashMap<>();
+        final List<EntitySnapshot[]> repeated = new ArrayList<>();
+        for (ReactionSnapshot reaction : reactions) {
+            final Map<String, EntitySnapshot> current = new HashMap<>();
+            for (EntitySnapshot participant : reaction.getParticipants()) {
+                current.putIfAbsent(participant.getStId(), participant);
+                final EntitySnapshot other = first.get(participant.getStId());
+                if (other != null) repeated.add(new EntitySnapshot[]{other, participant});
+            }
+            current.forEach(first::putIfAbsent);
+        }
+        return repeated;
+    }
+
+    private static EntitySnapshot createParticipant(Integer stoichiometry) {
+        final EntitySnapshot participant = new EntitySnapshot();
+        participant.setRoleType("input");
+        participant.setStoichiometry(stoichiometry);
+        participant.setCompartments(List.of(new CompartmentSnapshot(null, "0005829", "cytosol")));
+        return participant;
+    }
+
+    private static CompartmentResult createRow(String id, List<String> parents, List<String> surroundedBy) {
+        final CompartmentResult row = new CompartmentResult();
+        row.setId(id);
+        row.setName(id.substring(3));
+        row.setParents(parents);
+        row.setSurroundedBy(surroundedBy);
+        return row;
+    }
+
+    /**
+     * One line per term, with the parents in order, as the order is used to choose a branch of the tree
+     */
+    private static List<String> describe(Map<String, GoTerm> masterTree) {
+        final List<String> lines = new ArrayList<>();
+        for (GoTerm term : masterTree.values()) {
+            final StringJoiner parents = new StringJoiner(",", "[", "]");
+            term.getParents().forEach(parent -> parents.add(parent.getId()));
+            final Set<String> surroundedBy = new TreeSet<>();
+            term.getRelationships(GoTerm.Directionality.OUTGOING, RelationshipType.surrounded_by).forEach(t -> surroundedBy.add(t.getId()));
+            lines.add(term.getId() + " " + term.getName() + " " + parents + " " + surroundedBy);
+        }
+        Collections.sort(lines);
+        return lines;
+    }
+}
@@ -0,0 +1,139 @@
+package org.reactome.server.tools.reaction.exporter;
+
+import org.reactome.server.tools.reaction.exporter.layout.common.RenderableClass;
+import org.reactome.server.tools.reaction.exporter.layout.model.EntityGlyph;
+import org.reactome.server.tools.reaction.exporter.layout.model.Layout;
+import org.reactome.server.tools.reaction.exporter.layout.model.Role;
+import org.reactome.server.tools.reaction.exporter.ontology.GoTerm;
+import org.reactome.server.tools.reaction.exporter.ontology.GoTreeFactory;
+import org.reactome.server.tools.reaction.exporter.ontology.OntologyRelease;
+import org.reactome.server.tools.reaction.exporter.ontology.RelationshipType;
+import org.reactome.server.tools.reaction.exporter.snapshot.CompartmentSnapshot;
+import org.reactome.server.tools.reaction.exporter.snapshot.EntitySnapshot;
+import org.reactome.server.tools.reaction.exporter.snapshot.ReactionSnapshot;
+
+import java.util.*;
+
+/**
+ * Random reactions, as read from a snapshot, to test the layout algorithms with no database. Compartments come from a
+ * small Reactome-like hierarchy, extracellular region, plasma membrane, cytosol, nucleus and some organelles inside
+ * the cytosol, that is never published: layouts use their own {@link OntologyRelease}, see {@link #createRelease()}.
+ */
+public final class SyntheticReactions {
+
+    private static final String[][] COMPARTMENTS = {
+            {"0005576", "extracellular region"},
+            {"0005886", "plasma membrane"},
+            {"0005829", "cytosol"},
+            {"0005634", "nucleus"}
+    };
+    /**
+     * Compartments, including the organelles
+     */
+    public static final int MAX_COMPARTMENTS = COMPARTMENTS.length + 20;
+    private static final String[] ROLES = {"input", "output", "catalyst", "negative", "positive"};
+    private static final RenderableClass[] CLASSES = {RenderableClass.CHEMICAL, RenderableClass.PROTEIN, RenderableClass.COMPLEX, RenderableClass.ENTITY_SET};
+    private static final int ENTITIES = 300;
+
+    private SyntheticReactions() {
+    }
+
+    /**
+     * @return a release with the synthetic hierarchy. It is not published, so it does not change the current release
+     */
+    public static OntologyRelease createRelease() {
+        return GoTreeFactory.createReactomeRelease("synthetic", createMasterTree());
+    }
+
+    /**
+     * @return a new copy of the synthetic hierarchy, as returned by the database
+     */
+    public static Map<String, GoTerm> createMasterTree() {
+        final Map<String, GoTerm> terms = new HashMap<>();
+        final GoTerm root = new GoTerm("GO:0005575");
+        root.setName("cellular_component");
+        terms.put(root.getId(), root);
+        for (int i = 0; i < MAX_COMPARTMENTS; i++) {
+            final GoTerm term = new GoTerm("GO:" + getAccession(i));
+            term.setName(getName(i));
+            term.addParent(root);
+            terms.put(term.getId(), term);
+        }
+        terms.get("GO:0005829").createRelationship(GoTerm.Directionality.OUTGOING, RelationshipType.surrounded_by, terms.get("GO:0005886"));
+        terms.get("GO:0005634").createRelationship(GoTerm.Directionality.OUTGOING, RelationshipType.surrounded_by, terms.get("GO:0005829"));
+        for (int i = COMPARTMENTS.length; i < MAX_COMPARTMENTS; i++)
+            terms.get("GO:" + getAccession(i)).createRelationship(GoTerm.Directionality.OUTGOING, RelationshipType.surrounded_by, terms.get("GO:0005829"));
+        return terms;
+    }
+
+    /**
+     * A reaction with <em>participants</em> entities, each one in one of the first <em>compartments</em>
+     * compartments. Entities are taken from a pool of a few hundred, so names and compartments repeat across reactions.
+     *
+     * @param compartments how many compartments can be used, up to {@link #MAX_COMPARTMENTS}
+     */
+    public static ReactionSnapshot createReaction(long id, Random random, int participants, int compartments) {
+        final List<CompartmentSnapshot> list = new ArrayList<>();
+        for (int i = 0; i < compartments; i++) list.add(createCompartment(i));
+        final ReactionSnapshot reaction = new ReactionSnapshot();
+        reaction.setDbId(id);
+        reaction.setStId("R-HSA-" + id);
+        reaction.setDisplayName("reaction " + id);
+        reaction.setSpeciesName("Homo sapiens");
+        reaction.setSchemaClass("Reaction");
+        reaction.setRenderableClass(RenderableClass.PROCESS_NODE);
+        reaction.setCompartments(Collections.singletonList(list.get(random.nextInt(list.size()))));
+        reaction.setPathway("R-HSA-" + random.nextInt(50));
+        final List<EntitySnapshot> entities = new ArrayList<>();
+        for (int i = 0; i < participants; i++) {
+            final int entity = random.nextInt(ENTITIES);
+            final EntitySnapshot participant = new EntitySnapshot();
+            participant.setDbId((long) 1_000_000 + entity);
+            participant.setStId("R-ALL-" + entity);
+            participant.setName("entity " + entity);
+            participant.setSchemaClass("SimpleEntity");
+            participant.setRenderableClass(CLASSES[entity % CLASSES.length]);
+            participant.setInDisease(false);
+            participant.setCompartments(Collections.singletonList(list.get(entity % list.size())));
+            participant.setAttachments(new ArrayList<>());
+            participant.setRoleType(ROLES[random.nextInt(ROLES.length)]);
+            participant.setStoichiometry(1);
+            entities.add(participant);
+        }
+        reaction.setParticipants(entities);
+        return reaction;
+    }
+
+    /**
+     * Same as {@link org.reactome.server.tools.reaction.exporter.layout.LayoutFactory#getSnapshotLayout}, but the
+     * layout is not computed and its compartments come from <em>release</em>.
+     */
+    public static Layout createLayout(ReactionSnapshot reaction, OntologyRelease release) {
+        final Layout layout = new Layout(release);
+        layout.setPathway(reaction.getPathway());
+        layout.setReaction(reaction);
+        final Collection<EntityGlyph> participants = new ArrayList<>();
+        for (EntitySnapshot participant : reaction.getParticipants()) {
+            final EntityGlyph glyph = new EntityGlyph();
+            glyph.setDrug(participant.isDrug());
+            glyph.setDashed(participant.isDashed());
+            glyph.setEntity(participant);
+            glyph.setRole(new Role(participant.getRoleType(), participant.getStoichiometry()));
+            participants.add(glyph);
+        }
+        layout.setParticipants(participants);
+        return layout;
+    }
+
+    private static CompartmentSnapshot createCompartment(int i) {
+        return new CompartmentSnapshot(null, getAccession(i), getName(i));
+    }
+
+    private static String getAccession(int i) {
+        return i < COMPARTMENTS.length ? COMPARTMENTS[i][0] : String.format("99%05d", i);
+    }
+
+    private static String getName(int i) {
+        return i < COMPARTMENTS.length ? COMPARTMENTS[i][1] : "organelle " + (i - COMPARTMENTS.length + 1);
+    }
+}
@@ -0,0 +1,288 @@
+package org.reactome.server.tools.reaction.exporter;
+
+import org.neo4j.graphdb.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Populates a neo4j database with a random graph that follows the shape of the Reactome data model, so the queries in
+ * the exporter can be run without a Reactome database. The graph contains:
+ * <ul>
+ *     <li>a GO cellular component hierarchy, with instanceOf and surroundedBy relationships</li>
+ *     <li>a pathway hierarchy, with nested pathways with and without diagram</li>
+ *     <li>reactions with inputs, outputs, catalysts, positive and negative regulations and preceding events</li>
+ *     <li>failed reactions pointing to a normal reaction, with entity functional status</li>
+ *     <li>physical entities shared between reactions: chemicals, proteins, drugs, and complexes and sets with deep
+ *     hasComponent/hasMember/hasCandidate trees</li>
+ * </ul>
+ * The same seed always produces the same graph.
+ */
+class SyntheticReactomeGraph {
+
+    private static final String[] COMPARTMENTS = {
+            "0005576", "extracellular region",
+            "0005886", "plasma membrane",
+            "0005829", "cytosol",
+            "0005654", "nucleoplasm",
+            "0005739", "mitochondrion",
+            "0005783", "endoplasmic reticulum"
+    };
+    /**
+     * The first ones are cellular components, the rest are also organelles, surrounded by the cytosol
+     */
+    private static final int CELLULAR_COMPONENTS = 3;
+    private static final int REACTIONS_PER_PATHWAY = 20;
+    private static final int PATHWAYS_PER_DIAGRAM = 5;
+
+    private final Transaction tx;
+    private final Random random;
+    private final int complexDepth;
+
+    private final List<Node> compartments = new ArrayList<>();
+    private final List<Node> entities = new ArrayList<>();
+    private final List<Node> reactions = new ArrayList<>();
+    private final List<Node> failedReactions = new ArrayList<>();
+    private Node species;
+    private long dbId = 1;
+
+    private SyntheticReactomeGraph(Transaction tx, long seed, int complexDepth) {
+        this.tx = tx;
+        this.random = new Random(seed);
+        this.complexDepth = complexDepth;
+    }
+
+    /**
+     * @param db           the database. Any previous content is deleted
+     * @param reactions    number of reactions. 10% more failed reactions are added on top
+     * @param complexDepth maximum depth of complexes and sets
+     * @param seed         random seed
+     */
+    static SyntheticReactomeGraph create(GraphDatabaseService db, int reactions, int complexDepth, long seed) {
+        try (Transaction tx = db.beginTx()) {
+            tx.execute("MATCH (n) DETACH DELETE n");
+            tx.commit();
+        }
+        try (Transaction tx = db.beginTx()) {
+            tx.execute("CREATE INDEX rle_stId IF NOT EXISTS FOR (n:ReactionLikeEvent) ON (n.stId)");
+            tx.execute("CREATE INDEX rle_dbId IF NOT EXISTS FOR (n:ReactionLikeEvent) ON (n.dbId)");
+            tx.commit();
+        }
+        try (Transaction tx = db.beginTx()) {
+            tx.execute("CALL db.awaitIndexes()");
+            tx.commit();
+        }
+        final SyntheticReactomeGraph graph;
+        try (Transaction tx = db.beginTx()) {
+            graph = new SyntheticReactomeGraph(tx, seed, complexDepth);
+            graph.populate(reactions);
+            tx.commit();
+        }
+        return graph;
+    }
+
+    List<String> getReactionStIds() {
+        final List<String> rtn = new ArrayList<>();
+        for (Node reaction : reactions) rtn.add((String) reaction.getProperty("stId"));
+        for (Node reaction : failedReactions) rtn.add((String) reaction.getProperty("stId"));
+        return rtn;
+    }
+
+    List<Long> getReactionDbIds() {
+        final List<Long> rtn = new ArrayList<>();
+        for (Node reaction : reactions) rtn.add((Long) reaction.getProperty("dbId"));
+        for (Node reaction : failedReactions) rtn.add((Long) reaction.getProperty("dbId"));
+        return rtn;
+    }
+
+    private void populate(int n) {
+        species = node("Homo sapiens", "Species", "Taxon");
+        compartments();
+        // Reactome reuses physical entities across reactions
+        for (int i = 0; i < 2 * n; i++) entities.add(entity(complexDepth));
+
+        Node previous = null;
+        for (int i = 0; i < n; i++) {
+            final Node reaction = reaction("Reaction");
+            if (previous != null && random.nextDouble() < 0.7)
+                reaction.createRelationshipTo(previous, type("precedingEvent"));
+            reactions.add(reaction);
+            previous = reaction;
+        }
+        for (int i = 0; i < n / 10; i++) failedReactions.add(failedReaction(pick(reactions)));
+        pathways();
+    }
+
+    private void compartments() {
+        final Node cellularComponent = compartment("0005575", "cellular_component");
+        final Node organelle = compartment("0043226", "organelle");
+        instanceOf(organelle, cellularComponent);
+        for (int i = 0; i < COMPARTMENTS.length; i += 2) compartments.add(compartment(COMPARTMENTS[i], COMPARTMENTS[i + 1]));
+        for (int i = 0; i < compartments.size(); i++) {
+            if (i < CELLULAR_COMPONENTS) instanceOf(compartments.get(i), cellularComponent);
+            else {
+                instanceOf(compartments.get(i), organelle, cellularComponent);
+                surroundedBy(compartments.get(i), compartments.get(2));
+            }
+        }
+        surroundedBy(compartments.get(2), compartments.get(1));
+    }
+
+    private Node compartment(String accession, String name) {
+        final Node compartment = node(name, "Compartment", "GO_CellularComponent", "GO_Term");
+        compartment.setProperty("accession", accession);
+        compartment.setProperty("databaseName", "GO");
+        return compartment;
+    }
+
+    /**
+     * Parents are linked in reverse order, so only the order property gives the order of the list
+     */
+    private void instanceOf(Node compartment, Node... parents) {
+        for (int i = parents.length - 1; i >= 0; i--)
+            compartment.createRelationshipTo(parents[i], type("instanceOf")).setProperty("order", i);
+    }
+
+    private void surroundedBy(Node compartment, Node surrounding) {
+        compartment.createRelationshipTo(surrounding, type("surroundedBy")).setProperty("order", 0);
+    }
+
+    private Node reaction(String schemaClass) {
+        final Node reaction = node("reaction " + dbId, schemaClass, "ReactionLikeEvent", "Event");
+        reaction.createRelationshipTo(pick(compartments), type("compartment"));
+        reaction.createRelationshipTo(species, type("species"));
+        for (int i = 0, inputs = 1 + random.nextInt(3); i < inputs; i++)
+            reaction.createRelationshipTo(pick(entities), type("input")).setProperty("stoichiometry", 1 + random.nextInt(2));
+        for (int i = 0, outputs = 1 + random.nextInt(3); i < outputs; i++)
+            reaction.createRelationshipTo(pick(entities), type("output")).setProperty("stoichiometry", 1 + random.nextInt(2));
+        if (random.nextDouble() < 0.6) {
+            final Node catalyst = node("catalyst activity", "CatalystActivity");
+            catalyst.createRelationshipTo(pick(entities), type("physicalEntity"));
+            reaction.createRelationshipTo(catalyst, type("catalystActivity"));
+        }
+        if (random.nextDouble() < 0.3) regulation(reaction, "NegativeRegulation");
+        if (random.nextDouble() < 0.3) regulation(reaction, "PositiveRegulation");
+        return reaction;
+    }
+
+    private void regulation(Node reaction, String schemaClass) {
+        final Node regulation = node(schemaClass, schemaClass, "Regulation");
+        regulation.createRelationshipTo(pick(entities), type("regulator"));
+        reaction.createRelationshipTo(regulation, type("regulatedBy"));
+    }
+
+    private Node failedReaction(Node normal) {
+        final Node failed = node("failed reaction " + dbId, "FailedReaction", "ReactionLikeEvent", "Event");
+        failed.setProperty("isInDisease", true);
+        failed.createRelationshipTo(normal, type("normalReaction"));
+        failed.createRelationshipTo(pick(compartments), type("compartment"));
+        failed.createRelationshipTo(species, type("species"));
+        // the failed reaction keeps some of the normal inputs, and one of them is replaced by a mutated entity
+        Node normalEntity = null;
+        for (Relationship input : normal.getRelationships(Direction.OUTGOING, type("input"))) {
+            if (normalEntity == null) normalEntity = input.getEndNode();
+            else failed.createRelationshipTo(input.getEndNode(), type("input")).setProperty("stoichiometry", input.getProperty("stoichiometry"));
+        }
+        final Node mutated = entity(complexDepth);
+        mutated.setProperty("isInDisease", true);
+        failed.createRelationshipTo(mutated, type("input")).setProperty("stoichiometry", 1);
+        final Node efs = node("entity functional status", "EntityFunctionalStatus");
+        efs.createRelationshipTo(mutated, type("diseaseEntity"));
+        if (normalEntity != null) efs.createRelationshipTo(normalEntity, type("normalEntity"));
+        failed.createRelationshipTo(efs, type("entityFunctionalStatus"));
+        return failed;
+    }
+
+    private void pathways() {
+        final List<Node> all = new ArrayList<>(reactions);
+        all.addAll(failedReactions);
+        final List<Node> subpathways = new ArrayList<>();
+        for (int i = 0; i < all.size(); i += REACTIONS_PER_PATHWAY) {
+            final Node pathway = pathway(random.nextDouble() < 0.3);
+            for (Node reaction : all.subList(i, Math.min(all.size(), i + REACTIONS_PER_PATHWAY)))
+                pathway.createRelationshipTo(reaction, type("hasEvent"));
+            subpathways.add(pathway);
+        }
+        final Node top = pathway(true);
+        for (int i = 0; i < subpathways.size(); i += PATHWAYS_PER_DIAGRAM) {
+            final Node diagram = pathway(true);
+            for (Node pathway : subpathways.subList(i, Math.min(subpathways.size(), i + PATHWAYS_PER_DIAGRAM)))
+                diagram.createRelationshipTo(pathway, type("hasEvent"));
+            top.createRelationshipTo(diagram, type("hasEvent"));
+        }
+    }
+
+    private Node pathway(boolean hasDiagram) {
+        final Node pathway = node("pathway " + dbId, "Pathway", "Event");
+        pathway.setProperty("hasDiagram", hasDiagram);
+        pathway.createRelationshipTo(species, type("species"));
+        return pathway;
+    }
+
+    private Node entity(int depth) {
+        final double p = random.nextDouble();
+        if (depth > 0 && p < 0.25) return complex(depth);
+        if (depth > 0 && p < 0.40) return set(depth);
+        if (p < 0.45) return physicalEntity("ChemicalDrug", "Drug");
+        if (p < 0.70) {
+            final Node chemical = physicalEntity("SimpleEntity");
+            final Node molecule = node("molecule", "ReferenceMolecule", "ReferenceEntity");
+            molecule.setProperty("identifier", "CHEBI:" + dbId);
+            molecule.setProperty("trivial", random.nextDouble() < 0.1);
+            chemical.createRelationshipTo(molecule, type("referenceEntity"));
+            return chemical;
+        }
+        final Node protein = physicalEntity("EntityWithAccessionedSequence", "GenomeEncodedEntity");
+        final Node product = node("protein", "ReferenceGeneProduct", "ReferenceSequence", "ReferenceEntity");
+        product.setProperty("identifier", "P" + dbId);
+        product.setProperty("geneName", new String[]{"GENE" + dbId});
+        protein.createRelationshipTo(product, type("referenceEntity"));
+        return protein;
+    }
+
+    private Node complex(int depth) {
+        final Node complex = physicalEntity("Complex");
+        for (int i = 0, components = 2 + random.nextInt(3); i < components; i++)
+            complex.createRelationshipTo(entity(depth - 1), type("hasComponent")).setProperty("stoichiometry", 1);
+        return complex;
+    }
+
+    private Node set(int depth) {
+        final boolean candidates = random.nextDouble() < 0.3;
+        final Node set = physicalEntity(candidates ? "CandidateSet" : "DefinedSet", "EntitySet");
+        for (int i = 0, members = 2 + random.nextInt(4); i < members; i++)
+            set.createRelationshipTo(entity(depth - 1), type(candidates && i > 0 ? "hasCandidate" : "hasMember"));
+        return set;
+    }
+
+    private Node physicalEntity(String schemaClass, String... labels) {
+        final String[] all = new String[labels.length + 1];
+        all[0] = "PhysicalEntity";
+        System.arraycopy(labels, 0, all, 1, labels.length);
+        final Node entity = node(schemaClass.toLowerCase() + " " + dbId, schemaClass, all);
+        entity.setProperty("isInDisease", false);
+        entity.createRelationshipTo(pick(compartments), type("compartment"));
+        entity.createRelationshipTo(species, type("species"));
+        return entity;
+    }
+
+    private Node node(String name, String schemaClass, String... labels) {
+        final Node node = tx.createNode(Label.label(schemaClass), Label.label("DatabaseObject"));
+        for (String label : labels) node.addLabel(Label.label(label));
+        final long id = dbId++;
+        node.setProperty("dbId", id);
+        node.setProperty("stId", "R-HSA-" + id);
+        node.setProperty("displayName", name);
+        node.setProperty("schemaClass", schemaClass);
+        return node;
+    }
+
+    private Node pick(List<Node> nodes) {
+        return nodes.get(random.nextInt(nodes.size()));
+    }
+
+    private static RelationshipType type(String name) {
+        return RelationshipType.withName(name);
+    }
+}
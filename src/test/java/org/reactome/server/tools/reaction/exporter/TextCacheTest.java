@@ -0,0 +1,119 @@
+package org.reactome.server.tools.reaction.exporter;
+
+import com.google.common.cache.CacheStats;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.reactome.server.tools.reaction.exporter.layout.text.TextUtils;
+
+import java.awt.geom.Dimension2D;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the cache of label sizes of {@link TextUtils}: hits and misses, and that a saved cache is only loaded by the
+ * same version with the same fonts.
+ */
+public class TextCacheTest {
+
+    private static final String[] NAMES = {"ATP", "H2O", "ADP", "Pi", "cytosol", "plasma membrane", "ATP synthase",
+            "p-T402-PAK2(213-524)", "NADPH oxidase complex", "extracellular region", "CD28:B7-1", "Ca2+"};
+
+    @AfterEach
+    public void tearDown() {
+        TextUtils.clearCache();
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        TextUtils.clearCache();
+        CacheStats before = TextUtils.getCacheStats();
+        for (String name : NAMES) TextUtils.textDimension(name);
+        CacheStats stats = TextUtils.getCacheStats().minus(before);
+        assertEquals(NAMES.length, stats.missCount());
+        assertEquals(0, stats.hitCount());
+
+        before = TextUtils.getCacheStats();
+        for (String name : NAMES) TextUtils.textDimension(name);
+        stats = TextUtils.getCacheStats().minus(before);
+        assertEquals(0, stats.missCount());
+        assertEquals(NAMES.length, stats.hitCount());
+    }
+
+    @Test
+    public void testSaveAndLoad(@TempDir File dir) throws IOException {
+        final File file = new File(dir, "labels.cache");
+        TextUtils.clearCache();
+        final List<Dimension2D> expected = measure();
+        TextUtils.saveCache(file);
+        TextUtils.clearCache();
+
+        assertEquals(NAMES.length, TextUtils.loadCache(file));
+        final CacheStats before = TextUtils.getCacheStats();
+        assertEquals(expected, measure());
+        final CacheStats stats = TextUtils.getCacheStats().minus(before);
+        assertEquals(0, stats.missCount());
+        assertEquals(NAMES.length, stats.hitCount());
+    }
+
+    @Test
+    public void testIgnoreOtherFiles(@TempDir File dir) throws IOException {
+        // the format before the header was added: number of entries, then entries
+        final File old = new File(dir, "old.cache");
+        try (DataOutputStream output = new DataOutputStream(new FileOutputStream(old))) {
+            output.writeInt(1);
+            output.writeUTF("ATP");
+            output.writeUTF("Arial");
+            output.writeInt(1);
+            output.writeFloat(8);
+            output.writeDouble(7. / 3);
+            output.writeInt(1);
+            output.writeInt(1);
+        }
+        assertEquals(0, TextUtils.loadCache(old));
+
+        final File empty = new File(dir, "empty.cache");
+        new FileOutputStream(empty).close();
+        assertEquals(0, TextUtils.loadCache(empty));
+    }
+
+    @Test
+    public void testIgnoreOtherFonts(@TempDir File dir) throws IOException {
+        final File file = new File(dir, "labels.cache");
+        TextUtils.clearCache();
+        final List<Dimension2D> expected = measure();
+        TextUtils.saveCache(file);
+        TextUtils.clearCache();
+
+        // as if the font had changed since the file was saved
+        try (RandomAccessFile access = new RandomAccessFile(file, "rw")) {
+            access.readInt(); // magic
+            access.readInt(); // version
+            assertEquals(1, access.readInt());
+            access.readUTF();
+            access.readInt();
+            access.readFloat();
+            final long position = access.getFilePointer();
+            final long fingerprint = access.readLong();
+            access.seek(position);
+            access.writeLong(fingerprint + 1);
+        }
+        assertEquals(0, TextUtils.loadCache(file));
+        final CacheStats before = TextUtils.getCacheStats();
+        assertEquals(expected, measure());
+        assertEquals(NAMES.length, TextUtils.getCacheStats().minus(before).missCount());
+    }
+
+    private static List<Dimension2D> measure() {
+        final List<Dimension2D> dimensions = new ArrayList<>();
+        for (String name : NAMES) dimensions.add(TextUtils.textDimension(name));
+        return dimensions;
+    }
+}
@@ -0,0 +1,211 @@
+package org.reactome.server.tools.reaction.exporter;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.reactome.server.tools.reaction.exporter.layout.text.FontMetricsTable;
+import org.reactome.server.tools.reaction.exporter.layout.text.TextUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that {@link FontMetricsTable} measures the same as AWT with the bundled font, and that labels wrapped by
+ * {@link TextUtils} get the same size as with the previous wrapping, which tried 2, 3, 4... lines re-measuring the
+ * text. Their speed is compared, and logged, in a benchmark that must be run manually.
+ * <p>
+ * The hinted advances file is generated with the main method of this class, which must be run again if the bundled
+ * font or its size change.
+ */
+public class TextMetricsTest {
+
+    private static final Logger logger = LoggerFactory.getLogger("testLogger");
+    private static final int LABELS = 200_000;
+    /**
+     * Letters, digits, split characters, spaces and tabs, and a supplementary character (U+1D6C2, mathematical alpha)
+     */
+    private static final String[] LABEL_PARTS = {"a", "e", "K", "W", "m", "1", "9", "(", ")", "[", "]", ":", ".", "-",
+            ",", "/", "+", " ", " ", " ", "  ", "\t", "\u03b2", "\ud835\udec2"};
+    private static final String[] NAMES = {"ATP", "H2O", "ADP", "Pi", "cytosol", "plasma membrane", "ATP synthase",
+            "p-T402-PAK2(213-524)", "NADPH oxidase complex", "extracellular region", "CD28:B7-1", "Ca2+", "\u03b1-KG",
+            "\u03b2-catenin:TCF/LEF", "mitochondrial inner membrane", "L-Glu [mitochondrial matrix]"};
+
+    @Test
+    public void testSameAsAwt() {
+        final FontMetrics awt = awtMetrics();
+        final FontMetricsTable table = FontMetricsTable.getDefault();
+        assertEquals(awt.getHeight(), table.getHeight());
+        assertEquals(awt.getAscent(), table.getAscent());
+        assertEquals(awt.getDescent(), table.getDescent());
+        for (char c = 0; c < Character.MIN_SURROGATE; c++)
+            assertEquals(awt.charWidth(c), table.charWidth(c), "U+" + Integer.toHexString(c));
+        for (String name : NAMES) assertEquals(awt.stringWidth(name), table.stringWidth(name), name);
+
+        // combining marks and scripts that need shaping (Arabic, Hebrew...) are measured differently by AWT
+        final List<Character> characters = new ArrayList<>();
+        for (char c = ' '; c < 0x0300; c++) characters.add(c);
+        for (char c = 0x0370; c < 0x0590; c++) characters.add(c);
+        for (char c = 0x2010; c < 0x2028; c++) characters.add(c);
+        final Random random = new Random(36);
+        for (int i = 0; i < 10_000; i++) {
+            final StringBuilder text = new StringBuilder();
+            for (int j = random.nextInt(60); j > 0; j--) text.append(characters.get(random.nextInt(characters.size())));
+            assertEquals(awt.stringWidth(text.toString()), table.stringWidth(text.toString()), text.toString());
+        }
+    }
+
+    @Test
+    public void testTextDimension() {
+        assertEquals(new Dimension(47, 20), TextUtils.textDimension("ATP"));
+        assertEquals(new Dimension(70, 30), TextUtils.textDimension("p-T402-PAK2(213-524)"));
+        assertEquals(new Dimension(70, 30), TextUtils.textDimension("NADPH oxidase complex"));
+        assertEquals(new Dimension(70, 30), TextUtils.textDimension("L-Glu [mitochondrial matrix]"));
+        assertEquals(new Dimension(117, 50), TextUtils.textDimension("2-oxo-".repeat(24)));
+    }
+
+    @Test
+    public void testSameDimensionAsPreviousWrapping() {
+        final FontMetricsTable table = FontMetricsTable.getDefault();
+        final Random random = new Random(37);
+        for (int i = 0; i < LABELS; i++) {
+            final StringBuilder label = new StringBuilder();
+            // mostly names, some very long chemical names
+            final int parts = random.nextInt(100) == 0 ? 200 + random.nextInt(1500) : 1 + random.nextInt(60);
+            for (int j = 0; j < parts; j++) {
+                if (random.nextInt(4) == 0) label.append(NAMES[random.nextInt(NAMES.length)]);
+                else label.append(LABEL_PARTS[random.nextInt(LABEL_PARTS.length)]);
+            }
+            final String text = label.toString();
+            final Dimension expected = PreviousWrapping.computeDimension(text, table::stringWidth, table.getHeight(), TextUtils.RATIO);
+            assertEquals(expected, TextUtils.textDimension(text), text);
+        }
+    }
+
+    @Test
+    @Disabled("Not intended for automatic testing, timings depend on the host")
+    public void testSpeed() {
+        final FontMetrics awt = awtMetrics();
+        final FontMetricsTable table = FontMetricsTable.getDefault();
+        final int repetitions = 200_000;
+        long width = 0;
+        // warm up
+        for (int i = 0; i < repetitions; i++) width += awt.stringWidth(NAMES[i % NAMES.length]) + table.stringWidth(NAMES[i % NAMES.length]);
+        long start = System.nanoTime();
+        for (int i = 0; i < repetitions; i++) width += awt.stringWidth(NAMES[i % NAMES.length]);
+        final long awtTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < repetitions; i++) width += table.stringWidth(NAMES[i % NAMES.length]);
+        final long tableTime = System.nanoTime() - start;
+        logger.info(String.format("stringWidth: AWT %.1f ns, table %.1f ns (%d)",
+                (double) awtTime / repetitions, (double) tableTime / repetitions, width));
+    }
+
+    private static FontMetrics awtMetrics() {
+        try (InputStream resource = TextMetricsTest.class.getResourceAsStream(FontMetricsTable.DEFAULT_FONT)) {
+            final Font font = Font.createFont(Font.TRUETYPE_FONT, resource).deriveFont((float) FontMetricsTable.DEFAULT_SIZE);
+            return new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics().getFontMetrics(font);
+        } catch (FontFormatException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The wrapping of TextUtils before labels were measured once, kept to check that dimensions have not changed
+     */
+    private static final class PreviousWrapping {
+
+        private static final String WORD_SPLIT_CHARS = ":.-,)/+";
+
+        private static Dimension computeDimension(String text, ToIntFunction<String> width, int height, double ratio) {
+            double h = 2 * height;
+            double w = h * ratio;
+            while (fit(text, width, height, w, h) == null) {
+                h += height;
+                w = h * ratio;
+            }
+            w = h * ratio;
+            return new Dimension((int) Math.ceil(w), (int) Math.ceil(h));
+        }
+
+        private static List<String> split(String word) {
+            final List<String> strings = new ArrayList<>();
+            int start = 0;
+            for (int i = 0; i < word.length(); i++) {
+                if (WORD_SPLIT_CHARS.indexOf(word.charAt(i)) >= 0) {
+                    strings.add(word.substring(start, i + 1));
+                    start = i + 1;
+                }
+            }
+            if (start < word.length()) strings.add(word.substring(start));
+            return strings;
+        }
+
+        private static List<String> fit(String text, ToIntFunction<String> width, int height, double maxWidth, double maxHeight) {
+            if (width.applyAsInt(text) < maxWidth && height < maxHeight)
+                return Collections.singletonList(text);
+            final List<String> lines = new ArrayList<>();
+            final String[] words = text.trim().split(" ");
+            String line = "";
+            String temp;
+            for (String word : words) {
+                temp = line.isEmpty() ? word : line + " " + word;
+                if (width.applyAsInt(temp) < maxWidth)
+                    line = temp;
+                else {
+                    boolean firstPart = true;
+                    for (String part : split(word)) {
+                        if (width.applyAsInt(part) > maxWidth)
+                            return null;
+                        if (line.isEmpty()) temp = part;
+                        else if (firstPart) temp = line + " " + part;
+                        else temp = line + part;
+                        if (width.applyAsInt(temp) < maxWidth)
+                            line = temp;
+                        else {
+                            lines.add(line);
+                            line = part;
+                            if (lines.size() * height > maxHeight)
+                                return null;
+                        }
+                        firstPart = false;
+                    }
+                }
+            }
+            if (!line.isEmpty()) lines.add(line);
+            if (lines.size() * height > maxHeight)
+                return null;
+            else return lines;
+        }
+    }
+
+    /**
+     * Writes the hinted advances of the default font that differ from the scaled ones, as measured by AWT.
+     *
+     * @param args path of the hinting file, usually src/main/resources/fonts/arialbd.hinting
+     */
+    public static void main(String[] args) throws IOException {
+        final FontMetrics awt = awtMetrics();
+        final FontMetricsTable scaled = FontMetricsTable.fromResource(FontMetricsTable.DEFAULT_FONT, null, FontMetricsTable.DEFAULT_SIZE);
+        try (PrintWriter writer = new PrintWriter(args[0])) {
+            writer.println("# Hinted advances of arialbd.ttf that differ from the scaled hmtx advances: size (px), code point (hex), advance (px)");
+            writer.println("# Generated by TextMetricsTest.main");
+            for (char c = 0; c < Character.MIN_SURROGATE; c++)
+                if (awt.charWidth(c) != scaled.charWidth(c))
+                    writer.printf("%d %04X %d%n", FontMetricsTable.DEFAULT_SIZE, (int) c, awt.charWidth(c));
+            for (int c = Character.MAX_SURROGATE + 1; c <= Character.MAX_VALUE; c++)
+                if (awt.charWidth((char) c) != scaled.charWidth((char) c))
+                    writer.printf("%d %04X %d%n", FontMetricsTable.DEFAULT_SIZE, c, awt.charWidth((char) c));
+        }
+    }
+}
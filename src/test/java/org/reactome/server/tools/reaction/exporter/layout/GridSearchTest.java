@@ -0,0 +1,312 @@
+package org.reactome.server.tools.reaction.exporter.layout;
+
+import com.google.common.collect.Collections2;
+import org.junit.jupiter.api.Test;
+import org.reactome.server.tools.reaction.exporter.SyntheticReactions;
+import org.reactome.server.tools.reaction.exporter.layout.algorithm.box.Div;
+import org.reactome.server.tools.reaction.exporter.layout.algorithm.box.Grid;
+import org.reactome.server.tools.reaction.exporter.layout.algorithm.box.Occupancy;
+import org.reactome.server.tools.reaction.exporter.layout.algorithm.box.Place;
+import org.reactome.server.tools.reaction.exporter.layout.model.EntityGlyph;
+import org.reactome.server.tools.reaction.exporter.layout.model.Layout;
+import org.reactome.server.tools.reaction.exporter.ontology.OntologyRelease;
+import org.reactome.server.tools.reaction.exporter.snapshot.EntitySnapshot;
+import org.reactome.server.tools.reaction.exporter.snapshot.ReactionSnapshot;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks {@link GridSearch} against the definition of a valid grid, {@link BruteForce#testGrid(Grid)}, on small
+ * synthetic reactions. Up to {@link #MAX_DIVS} divs, every pair of permutations can be tested, as the search did
+ * before pruning.
+ * <p>
+ * Grids are compared by the position of each div, the reaction first and the rest in the order of
+ * {@link BruteForce#getDivs()}, which is the order the search places them.
+ */
+public class GridSearchTest {
+
+    private static final OntologyRelease RELEASE = SyntheticReactions.createRelease();
+    private static final int REACTIONS = 120;
+    private static final int COMPARTMENTS = 4;
+    /**
+     * 14400 pairs of permutations
+     */
+    private static final int MAX_DIVS = 5;
+    /**
+     * Largest search that can be fully explored in a few milliseconds
+     */
+    private static final int MAX_EXPLORED_DIVS = 6;
+    private static final Duration TIME_LIMIT = Duration.ofMillis(200);
+    /**
+     * Time to notice the deadline and to build the grid
+     */
+    private static final Duration MARGIN = Duration.ofMillis(100);
+
+    @Test
+    public void testEveryGridIsValid() {
+        int tested = 0;
+        for (Case test : createCases(MAX_EXPLORED_DIVS)) {
+            final Set<List<Integer>> grids = explore(test);
+            for (List<Integer> grid : grids)
+                assertTrue(test.bruteForce.testGrid(test.toGrid(grid)), () -> test.name + " " + grid);
+            final Grid<Div> first = test.search().run();
+            if (first != null) assertTrue(test.bruteForce.testGrid(first), test.name);
+            final GridSearch search = test.search();
+            final Grid<Div> best = search.run(System.nanoTime() + 60_000_000_000L);
+            if (best != null) assertTrue(test.bruteForce.testGrid(best), test.name);
+            assertEquals(first == null, best == null, test.name);
+            assertTrue(search.isExhausted(), test.name);
+            if (!grids.isEmpty()) tested++;
+        }
+        assertTrue(tested > 0);
+    }
+
+    @Test
+    public void testSameGridsAsPermutations() {
+        int tested = 0;
+        for (Case test : createCases(MAX_DIVS)) {
+            final Set<List<Integer>> expected = new HashSet<>();
+            final List<Integer> indices = IntStream.range(0, test.divs.size()).boxed().collect(Collectors.toList());
+            for (List<Integer> rows : Collections2.permutations(indices))
+                for (List<Integer> cols : Collections2.permutations(indices)) {
+                    final List<Integer> grid = new ArrayList<>();
+                    for (int k = 0; k < indices.size(); k++) {
+                        grid.add(rows.get(k));
+                        grid.add(cols.get(k));
+                    }
+                    if (test.bruteForce.testGrid(test.toGrid(grid))) expected.add(grid);
+                }
+            assertEquals(expected, explore(test), test.name);
+
+            // the first one in lexicographic order
+            final Grid<Div> first = test.search().run();
+            if (expected.isEmpty()) assertNull(first, test.name);
+            else {
+                final List<Integer> min = Collections.min(expected, GridSearchTest::compare);
+                assertEquals(min, test.positions(first), test.name);
+                tested++;
+            }
+        }
+        assertTrue(tested > 0);
+    }
+
+    @Test
+    public void testDeterministic() {
+        for (Case test : createCases(MAX_EXPLORED_DIVS + 2)) {
+            final Grid<Div> first = test.search().run();
+            final List<Integer> expected = first == null ? null : test.positions(first);
+            for (int i = 0; i < 5; i++) {
+                final Grid<Div> grid = test.search().run();
+                assertEquals(expected, grid == null ? null : test.positions(grid), test.name);
+            }
+        }
+        // when the whole tree is explored
+        for (Case test : createCases(MAX_EXPLORED_DIVS)) {
+            final Grid<Div> best = test.search().run(System.nanoTime() + 60_000_000_000L);
+            final List<Integer> expected = best == null ? null : test.positions(best);
+            for (int i = 0; i < 3; i++) {
+                final Grid<Div> grid = test.search().run(System.nanoTime() + 60_000_000_000L);
+                assertEquals(expected, grid == null ? null : test.positions(grid), test.name);
+            }
+        }
+    }
+
+    @Test
+    public void testDeadline() {
+        final Random random = new Random(42);
+        // too many divs to explore every grid, and more divs than bits in a long
+        for (int participants : new int[]{40, 300}) {
+            final Layout layout = SyntheticReactions.createLayout(SyntheticReactions.createReaction(0, random, participants, SyntheticReactions.MAX_COMPARTMENTS), RELEASE);
+            final Case test = new Case("R-HSA-0", layout);
+            final GridSearch search = test.search();
+            final long start = System.nanoTime();
+            Grid<Div> grid = search.run(start + TIME_LIMIT.toNanos());
+            final long searched = System.nanoTime();
+            // no grid does not mean there is no valid one
+            assertFalse(search.isExhausted(), participants + " participants");
+            if (grid == null) grid = search.approximate(start + 2 * TIME_LIMIT.toNanos());
+            final long approximated = System.nanoTime();
+            assertTrue(searched - start < TIME_LIMIT.plus(MARGIN).toNanos(), participants + " participants");
+            assertTrue(approximated - start < TIME_LIMIT.multipliedBy(2).plus(MARGIN).toNanos(), participants + " participants");
+            // every div in its own row and column
+            final List<Integer> positions = test.positions(grid);
+            final Set<Integer> rows = new HashSet<>();
+            final Set<Integer> cols = new HashSet<>();
+            for (int k = 0; k < test.divs.size(); k++) {
+                assertTrue(rows.add(positions.get(2 * k)));
+                assertTrue(cols.add(positions.get(2 * k + 1)));
+            }
+        }
+    }
+
+    @Test
+    public void testTooBigForSearch() {
+        final Layout layout = SyntheticReactions.createLayout(SyntheticReactions.createReaction(0, new Random(42), 300, SyntheticReactions.MAX_COMPARTMENTS), RELEASE);
+        final BruteForce bruteForce = new BruteForce(layout, TIME_LIMIT);
+        assertTrue(bruteForce.getDivs().size() > Long.SIZE);
+        bruteForce.compute();
+        assertNotNull(layout.getReaction().getBounds());
+    }
+
+    @Test
+    public void testTooBigForExactSearch() {
+        final Layout layout = createLayout(GridSearch.MAX_EXACT_DIVS + 1);
+        final BruteForce bruteForce = new BruteForce(layout);
+        final GridSearch search = new GridSearch(bruteForce.getDivs(), layout.getCompartmentRoot(), bruteForce::testGrid);
+        assertTrue(search.canSearch());
+        assertFalse(search.canSearchExactly());
+        assertThrows(IllegalArgumentException.class, search::run);
+        // approximated, the exact search could take hours
+        final long start = System.nanoTime();
+        bruteForce.compute();
+        assertTrue(System.nanoTime() - start < TIME_LIMIT.toNanos());
+        for (EntityGlyph entity : layout.getEntities())
+            assertTrue(entity.getBounds().getWidth() > 0 && entity.getBounds().getHeight() > 0, entity.getName());
+        assertTrue(layout.getReaction().getBounds().getWidth() > 0);
+    }
+
+    @Test
+    public void testAnytimeAtSearchLimit() {
+        // the biggest reaction that can be searched is searched until the deadline
+        final Layout largest = createLayout(Long.SIZE);
+        final BruteForce searched = new BruteForce(largest, TIME_LIMIT);
+        final GridSearch search = new GridSearch(searched.getDivs(), largest.getCompartmentRoot(), searched::testGrid);
+        assertTrue(search.canSearch());
+        final long start = System.nanoTime();
+        search.run(start + TIME_LIMIT.toNanos());
+        assertTrue(System.nanoTime() - start < TIME_LIMIT.plus(MARGIN).toNanos());
+
+        // one more div, and it is approximated
+        final Layout layout = createLayout(Long.SIZE + 1);
+        final BruteForce bruteForce = new BruteForce(layout, TIME_LIMIT);
+        final GridSearch tooBig = new GridSearch(bruteForce.getDivs(), layout.getCompartmentRoot(), bruteForce::testGrid);
+        assertFalse(tooBig.canSearch());
+        assertNull(tooBig.run(System.nanoTime() + TIME_LIMIT.toNanos()));
+        assertFalse(tooBig.isExhausted());
+        bruteForce.compute();
+        for (EntityGlyph entity : layout.getEntities())
+            assertTrue(entity.getBounds().getWidth() > 0 && entity.getBounds().getHeight() > 0, entity.getName());
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException {
+        // the search would take hours
+        final Layout layout = SyntheticReactions.createLayout(SyntheticReactions.createReaction(0, new Random(42), 40, SyntheticReactions.MAX_COMPARTMENTS), RELEASE);
+        final BruteForce bruteForce = new BruteForce(layout, Duration.ofHours(2));
+        final Thread thread = new Thread(bruteForce::compute);
+        thread.start();
+        thread.join(TIME_LIMIT.toMillis());
+        assertTrue(thread.isAlive());
+        bruteForce.cancel();
+        thread.join(MARGIN.toMillis());
+        assertFalse(thread.isAlive());
+        // the fork/join tasks too
+        assertTrue(ForkJoinPool.commonPool().awaitQuiescence(MARGIN.toMillis(), TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * @return every complete grid reached by the search. The validator rejects them all, so no branch is cut short
+     */
+    private static Set<List<Integer>> explore(Case test) {
+        final Set<List<Integer>> grids = ConcurrentHashMap.newKeySet();
+        new GridSearch(test.divs, test.layout.getCompartmentRoot(), grid -> {
+            grids.add(test.positions(grid));
+            return false;
+        }).run();
+        return grids;
+    }
+
+    private static int compare(List<Integer> a, List<Integer> b) {
+        for (int i = 0; i < a.size(); i++) {
+            final int c = Integer.compare(a.get(i), b.get(i));
+            if (c != 0) return c;
+        }
+        return 0;
+    }
+
+    /**
+     * A layout with exactly <em>divs</em> divs. Participants of a big reaction are added one at a time, and each one
+     * adds, at most, one div: its compartment and place. So every number of divs up to the one of the whole reaction
+     * is reached.
+     */
+    private static Layout createLayout(int divs) {
+        final ReactionSnapshot reaction = SyntheticReactions.createReaction(0, new Random(42), 300, SyntheticReactions.MAX_COMPARTMENTS);
+        final List<EntitySnapshot> participants = reaction.getParticipants();
+        for (int p = 1; p <= participants.size(); p++) {
+            reaction.setParticipants(new ArrayList<>(participants.subList(0, p)));
+            final int size = new BruteForce(SyntheticReactions.createLayout(reaction, RELEASE)).getDivs().size();
+            if (size == divs) return SyntheticReactions.createLayout(reaction, RELEASE);
+        }
+        return fail("No reaction with " + divs + " divs");
+    }
+
+    /**
+     * Reactions with 2 to <em>maxDivs</em> divs
+     */
+    private static List<Case> createCases(int maxDivs) {
+        final Random random = new Random(42);
+        final List<Case> cases = new ArrayList<>();
+        for (int i = 0; i < REACTIONS; i++) {
+            final Layout layout = SyntheticReactions.createLayout(SyntheticReactions.createReaction(i, random, 1 + random.nextInt(maxDivs + 1), COMPARTMENTS), RELEASE);
+            final Case test = new Case("R-HSA-" + i, layout);
+            if (test.divs.size() >= 2 && test.divs.size() <= maxDivs) cases.add(test);
+        }
+        return cases;
+    }
+
+    private static class Case {
+
+        private final String name;
+        private final Layout layout;
+        private final BruteForce bruteForce;
+        /** in search order: the reaction first */
+        private final List<Div> divs;
+
+        Case(String name, Layout layout) {
+            this.name = name;
+            this.layout = layout;
+            this.bruteForce = new BruteForce(layout);
+            divs = new ArrayList<>(bruteForce.getDivs());
+            divs.sort(Comparator.comparing(div -> !Occupancy.contains(div.getOccupancy(), Place.CENTER)));
+        }
+
+        GridSearch search() {
+            return new GridSearch(divs, layout.getCompartmentRoot(), bruteForce::testGrid);
+        }
+
+        /**
+         * @return row and column of each div
+         */
+        List<Integer> positions(Grid<Div> grid) {
+            final Map<Div, Integer> rows = new IdentityHashMap<>();
+            final Map<Div, Integer> cols = new IdentityHashMap<>();
+            for (int r = 0; r < grid.getRows(); r++)
+                for (int c = 0; c < grid.getColumns(); c++) {
+                    final Div div = grid.get(r, c);
+                    if (div == null) continue;
+                    rows.put(div, r);
+                    cols.put(div, c);
+                }
+            final List<Integer> positions = new ArrayList<>();
+            for (Div div : divs) {
+                positions.add(rows.get(div));
+                positions.add(cols.get(div));
+            }
+            return positions;
+        }
+
+        Grid<Div> toGrid(List<Integer> positions) {
+            final Grid<Div> grid = new Grid<>(Div.class, divs.size(), divs.size());
+            for (int k = 0; k < divs.size(); k++) grid.set(positions.get(2 * k), positions.get(2 * k + 1), divs.get(k));
+            return grid;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package org.reactome.server.tools.reaction.exporter.layout.algorithm.box;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks {@link Grid} against a plain list of rows, which inserts and removes rows and columns by copying, and checks
+ * that row and column views follow their line and see every change in the grid.
+ */
+public class GridTest {
+
+    private static final int OPERATIONS = 20_000;
+
+    @Test
+    public void testAgainstLists() {
+        final Random random = new Random(28);
+        final Grid<Element> grid = new Grid<>(Element.class);
+        final List<List<Element>> expected = new ArrayList<>();
+        int columns = 0;
+        for (int i = 0; i < OPERATIONS; i++) {
+            final int rows = expected.size();
+            switch (random.nextInt(6)) {
+                case 0:
+                case 1: {
+                    // set, sometimes out of the grid, so it grows
+                    final int row = random.nextInt(rows + 2);
+                    final int column = random.nextInt(columns + 2);
+                    final Element element = random.nextInt(4) == 0 ? null : new Element(i);
+                    grid.set(row, column, element);
+                    columns = Math.max(columns, column + 1);
+                    while (expected.size() <= row) expected.add(new ArrayList<>());
+                    for (List<Element> line : expected) while (line.size() < columns) line.add(null);
+                    expected.get(row).set(column, element);
+                    break;
+                }
+                case 2: {
+                    final int index = random.nextInt(rows + 1);
+                    final int n = 1 + random.nextInt(3);
+                    grid.insertRows(index, n);
+                    for (int k = 0; k < n; k++) expected.add(index, new ArrayList<>(Collections.nCopies(columns, null)));
+                    break;
+                }
+                case 3: {
+                    final int index = random.nextInt(columns + 1);
+                    final int n = 1 + random.nextInt(3);
+                    grid.insertColumns(index, n);
+                    for (List<Element> line : expected) line.addAll(index, Collections.nCopies(n, null));
+                    columns += n;
+                    break;
+                }
+                case 4: {
+                    if (rows == 0) break;
+                    final int index = random.nextInt(rows);
+                    final int n = 1 + random.nextInt(3);
+                    grid.removeRows(index, n);
+                    expected.subList(index, Math.min(rows, index + n)).clear();
+                    break;
+                }
+                default: {
+                    if (columns == 0) break;
+                    final int index = random.nextInt(columns);
+                    final int n = Math.min(columns - index, 1 + random.nextInt(3));
+                    grid.removeColumns(index, n);
+                    for (List<Element> line : expected) line.subList(index, index + n).clear();
+                    columns -= n;
+                    break;
+                }
+            }
+            assertSameContent(expected, columns, grid);
+        }
+    }
+
+    @Test
+    public void testCopies() {
+        final Random random = new Random(29);
+        final Grid<Element> grid = new Grid<>(Element.class, 5, 5);
+        for (int i = 0; i < 20; i++) grid.set(random.nextInt(8), random.nextInt(8), new Element(i));
+        grid.removeRows(1, 2);
+        grid.insertColumns(3, 2);
+        final List<List<Element>> expected = toLists(grid);
+
+        assertSameContent(expected, grid.getColumns(), new Grid<>(grid));
+        final Grid<Element> reused = new Grid<>(Element.class, 20, 20);
+        reused.set(19, 19, new Element(-1));
+        reused.copy(grid);
+        assertSameContent(expected, grid.getColumns(), reused);
+    }
+
+    @Test
+    public void testRowViewFollowsRow() {
+        final Grid<Element> grid = createGrid(3, 3);
+        final Element[] row = {grid.get(1, 0), grid.get(1, 1), grid.get(1, 2)};
+        final Grid.Line<Element> view = grid.getRow(1);
+        assertSame(view, grid.getRow(1));
+
+        grid.insertRows(0, 2);
+        assertSame(view, grid.getRow(3));
+        for (int c = 0; c < row.length; c++) assertSame(row[c], view.get(c));
+
+        final Element element = new Element(100);
+        grid.set(3, 2, element);
+        assertSame(element, view.get(2));
+
+        grid.insertColumns(1, 1);
+        assertEquals(4, view.size());
+        assertNull(view.get(1));
+        assertSame(element, view.get(3));
+
+        grid.removeRows(0, 3);
+        assertSame(view, grid.getRow(0));
+        assertSame(row[0], view.get(0));
+
+        grid.removeColumns(0, 1);
+        assertEquals(3, view.size());
+        assertNull(view.get(0));
+        assertSame(element, view.get(2));
+    }
+
+    @Test
+    public void testColumnViewFollowsColumn() {
+        final Grid<Element> grid = createGrid(3, 3);
+        final Element[] column = {grid.get(0, 2), grid.get(1, 2), grid.get(2, 2)};
+        final Grid.Line<Element> view = grid.getColumn(2);
+
+        grid.insertColumns(1, 3);
+        assertSame(view, grid.getColumn(5));
+        for (int r = 0; r < column.length; r++) assertSame(column[r], view.get(r));
+
+        grid.insertRow(0);
+        assertEquals(4, view.size());
+        assertNull(view.get(0));
+        assertSame(column[0], view.get(1));
+
+        final Element element = new Element(100);
+        grid.set(0, 5, element);
+        assertSame(element, view.get(0));
+
+        grid.removeColumns(0, 2);
+        assertSame(view, grid.getColumn(3));
+        assertSame(column[2], view.get(3));
+    }
+
+    /**
+     * Inserting many rows and columns runs out of free slots, so the grid is compacted. Views must survive it.
+     */
+    @Test
+    public void testViewsAfterCompaction() {
+        final Grid<Element> grid = createGrid(4, 4);
+        final Grid.Line<Element> row = grid.getRow(2);
+        final Grid.Line<Element> column = grid.getColumn(2);
+        final Element element = grid.get(2, 2);
+        for (int i = 0; i < 50; i++) {
+            // removed rows and columns leave their physical slots unused
+            grid.insertRows(0, 2);
+            grid.removeRows(0, 1);
+            grid.insertColumns(0, 2);
+            grid.removeColumns(0, 1);
+        }
+        // 2 is now 52
+        assertEquals(54, grid.getRows());
+        assertSame(row, grid.getRow(52));
+        assertSame(column, grid.getColumn(52));
+        assertSame(element, row.get(52));
+        assertSame(element, column.get(52));
+        assertTrue(grid.getRow(0).isEmpty());
+        assertFalse(row.isEmpty());
+    }
+
+    @Test
+    public void testOutOfGridViews() {
+        final Grid<Element> grid = createGrid(2, 3);
+        assertNull(grid.getRow(2));
+        assertNull(grid.getColumn(3));
+    }
+
+    private static Grid<Element> createGrid(int rows, int columns) {
+        final Grid<Element> grid = new Grid<>(Element.class, rows, columns);
+        for (int r = 0; r < rows; r++)
+            for (int c = 0; c < columns; c++)
+                grid.set(r, c, new Element(r * columns + c));
+        return grid;
+    }
+
+    private static List<List<Element>> toLists(Grid<Element> grid) {
+        final List<List<Element>> rtn = new ArrayList<>();
+        for (int r = 0; r < grid.getRows(); r++) {
+            final List<Element> row = new ArrayList<>();
+            for (int c = 0; c < grid.getColumns(); c++) row.add(grid.get(r, c));
+            rtn.add(row);
+        }
+        return rtn;
+    }
+
+    private static void assertSameContent(List<List<Element>> expected, int columns, Grid<Element> grid) {
+        assertEquals(expected.size(), grid.getRows());
+        assertEquals(columns, grid.getColumns());
+        final Element[][] array = grid.getGrid();
+        for (int r = 0; r < expected.size(); r++) {
+            final Grid.Line<Element> row = grid.getRow(r);
+            assertEquals(columns, row.size());
+            for (int c = 0; c < columns; c++) {
+                final Element element = expected.get(r).get(c);
+                assertSame(element, grid.get(r, c));
+                assertSame(element, array[r][c]);
+                assertSame(element, row.get(c));
+                assertSame(element, grid.getColumn(c).get(r));
+            }
+        }
+    }
+
+    static final class Element implements HasInitial, HasOccupancy {
+
+        private final int id;
+        private final int occupancy;
+
+        Element(int id) {
+            this(id, 0);
+        }
+
+        Element(int id, int occupancy) {
+            this.id = id;
+            this.occupancy = occupancy;
+        }
+
+        @Override
+        public Character getInitial() {
+            return (char) ('a' + id % 26);
+        }
+
+        @Override
+        public int getOccupancy() {
+            return occupancy;
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(id);
+        }
+    }
+}
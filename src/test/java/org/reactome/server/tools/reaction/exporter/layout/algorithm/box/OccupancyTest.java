@@ -0,0 +1,135 @@
+package org.reactome.server.tools.reaction.exporter.layout.algorithm.box;
+
+import org.junit.jupiter.api.Test;
+import org.reactome.server.tools.reaction.exporter.layout.algorithm.box.GridTest.Element;
+import org.reactome.server.tools.reaction.exporter.layout.common.EntityRole;
+
+import java.util.EnumSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the masks of {@link Occupancy} against the role and place collections they replaced, and the occupancy kept
+ * by {@link Grid} against scanning the line, which is what the compaction did before. Masks are ints, so the bits at
+ * the ends of the word, 0 and 31, are used, and the grid is big enough to have lines 63 and 64.
+ */
+public class OccupancyTest {
+
+    private static final int SIZE = 66;
+    private static final int OPERATIONS = 5_000;
+    private static final int LOW = 1;
+    private static final int HIGH = 1 << 31;
+    private static final int[] MASKS = {LOW, 1 << 1, 1 << 30, HIGH, LOW | HIGH, (1 << 30) | HIGH, Occupancy.ROLES_MASK | Occupancy.PLACES_MASK};
+
+    @Test
+    public void testSameAsCollections() {
+        final EntityRole[] roles = EntityRole.values();
+        assertEquals(0, Occupancy.ROLES_MASK & Occupancy.PLACES_MASK);
+        assertTrue(roles.length + Place.values().length <= Integer.SIZE);
+        for (int subset = 0; subset < 1 << roles.length; subset++) {
+            final EnumSet<EntityRole> set = EnumSet.noneOf(EntityRole.class);
+            for (int i = 0; i < roles.length; i++) if ((subset & 1 << i) != 0) set.add(roles[i]);
+            final int mask = Occupancy.ofRoles(set);
+            assertEquals(set, Occupancy.getRoles(mask));
+            assertEquals(EnumSet.noneOf(Place.class), Occupancy.getPlaces(mask));
+            assertEquals(Occupancy.ofRoles(PlacePositioner.simplify(set)), Occupancy.simplify(mask), set.toString());
+            int withPlaces = Occupancy.NONE;
+            for (EntityRole role : set) withPlaces |= Occupancy.withPlace(role);
+            assertEquals(set, Occupancy.getRoles(withPlaces));
+            assertEquals(PlacePositioner.getPlaces(set), Occupancy.getPlaces(withPlaces));
+        }
+        for (Place place : Place.values()) {
+            assertEquals(EnumSet.of(place), Occupancy.getPlaces(Occupancy.of(place)));
+            assertTrue(Occupancy.contains(Occupancy.of(place), place));
+        }
+    }
+
+    @Test
+    public void testWordBoundaries() {
+        final Grid<Element> grid = new Grid<>(Element.class, SIZE, SIZE);
+        grid.set(63, 64, new Element(1, HIGH));
+        grid.set(64, 63, new Element(2, LOW));
+        assertEquals(HIGH, grid.getRowOccupancy(63));
+        assertEquals(LOW, grid.getRowOccupancy(64));
+        assertEquals(LOW, grid.getColumnOccupancy(63));
+        assertEquals(HIGH, grid.getColumnOccupancy(64));
+        assertEquals(1, grid.getRow(63).count(HIGH));
+        assertEquals(0, grid.getRow(63).count(LOW));
+
+        // counted from now on
+        grid.set(63, 63, new Element(3, LOW | HIGH));
+        assertEquals(LOW | HIGH, grid.getRowOccupancy(63));
+        assertEquals(2, grid.getColumn(63).count(LOW));
+        assertEquals(1, grid.getColumn(63).count(LOW | HIGH));
+
+        grid.removeRows(63, 1);
+        assertEquals(LOW, grid.getRowOccupancy(63));
+        assertEquals(LOW, grid.getColumnOccupancy(63));
+        assertEquals(0, grid.getColumnOccupancy(64));
+
+        grid.set(63, 63, null);
+        assertEquals(0, grid.getRowOccupancy(63));
+        assertEquals(0, grid.getColumnOccupancy(63));
+        assertTrue(grid.getRow(63).isEmpty());
+    }
+
+    @Test
+    public void testSameAsScanning() {
+        final Random random = new Random(29);
+        final Grid<Element> grid = new Grid<>(Element.class, SIZE, SIZE);
+        for (int i = 0; i < SIZE * SIZE / 4; i++)
+            grid.set(random.nextInt(SIZE), random.nextInt(SIZE), new Element(i, MASKS[random.nextInt(MASKS.length)]));
+        assertSameAsScanning(grid, random);
+        for (int i = 0; i < OPERATIONS; i++) {
+            switch (random.nextInt(5)) {
+                case 0:
+                    grid.insertRows(random.nextInt(grid.getRows() + 1), 1 + random.nextInt(2));
+                    break;
+                case 1:
+                    grid.insertColumns(random.nextInt(grid.getColumns() + 1), 1 + random.nextInt(2));
+                    break;
+                case 2:
+                    if (grid.getRows() > SIZE) grid.removeRows(random.nextInt(grid.getRows()), 1 + random.nextInt(2));
+                    break;
+                case 3:
+                    if (grid.getColumns() > SIZE) grid.removeColumns(random.nextInt(grid.getColumns()), 1 + random.nextInt(2));
+                    break;
+                default:
+                    final Element element = random.nextInt(3) == 0 ? null : new Element(i, MASKS[random.nextInt(MASKS.length)]);
+                    grid.set(random.nextInt(grid.getRows()), random.nextInt(grid.getColumns()), element);
+            }
+            assertSameAsScanning(grid, random);
+        }
+    }
+
+    private static void assertSameAsScanning(Grid<Element> grid, Random random) {
+        final int[] rows = {0, 31, 32, 63, 64, grid.getRows() - 1, random.nextInt(grid.getRows())};
+        final int[] columns = {0, 31, 32, 63, 64, grid.getColumns() - 1, random.nextInt(grid.getColumns())};
+        for (int row : rows) {
+            int occupancy = 0;
+            for (int c = 0; c < grid.getColumns(); c++) occupancy |= occupancy(grid.get(row, c));
+            assertEquals(occupancy, grid.getRowOccupancy(row), "row " + row);
+            assertEquals(occupancy, grid.getRow(row).getOccupancy(), "row " + row);
+            for (int mask : MASKS) {
+                int count = 0;
+                for (int c = 0; c < grid.getColumns(); c++) if ((occupancy(grid.get(row, c)) & mask) == mask) count++;
+                assertEquals(count, grid.getRow(row).count(mask), "row " + row + " mask " + Integer.toHexString(mask));
+            }
+        }
+        for (int column : columns) {
+            int occupancy = 0;
+            for (int r = 0; r < grid.getRows(); r++) occupancy |= occupancy(grid.get(r, column));
+            assertEquals(occupancy, grid.getColumnOccupancy(column), "column " + column);
+            for (int mask : MASKS) {
+                int count = 0;
+                for (int r = 0; r < grid.getRows(); r++) if ((occupancy(grid.get(r, column)) & mask) == mask) count++;
+                assertEquals(count, grid.getColumn(column).count(mask), "column " + column + " mask " + Integer.toHexString(mask));
+            }
+        }
+    }
+
+    private static int occupancy(Element element) {
+        return element == null ? 0 : element.getOccupancy();
+    }
+}
@@ -0,0 +1,217 @@
+package org.reactome.server.tools.reaction.exporter.layout.algorithm.box;
+
+import org.junit.jupiter.api.Test;
+import org.reactome.server.tools.reaction.exporter.LayoutDescription;
+import org.reactome.server.tools.reaction.exporter.SyntheticReactions;
+import org.reactome.server.tools.reaction.exporter.layout.algorithm.common.LayoutIndex;
+import org.reactome.server.tools.reaction.exporter.layout.common.RenderableClass;
+import org.reactome.server.tools.reaction.exporter.layout.model.*;
+import org.reactome.server.tools.reaction.exporter.ontology.OntologyRelease;
+import org.reactome.server.tools.reaction.exporter.snapshot.CompartmentSnapshot;
+import org.reactome.server.tools.reaction.exporter.snapshot.EntitySnapshot;
+import org.reactome.server.tools.reaction.exporter.snapshot.ReactionSnapshot;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that a layout built from a cached {@link Topology} is the same as the one built by positioning and
+ * compaction. Every reaction has a twin with the same structure but other identifiers and names, so other sizes: the
+ * twin is laid out with an empty cache and once the reaction has filled it, and the bounds of both layouts must be
+ * identical.
+ */
+public class TopologyTest {
+
+    private static final OntologyRelease RELEASE = SyntheticReactions.createRelease();
+    private static final int REACTIONS = 300;
+    /**
+     * BOX cannot lay out reactions spread over many sibling organelles
+     */
+    private static final int COMPARTMENTS = 4;
+
+    private static final String[] CYTOSOL = {"0005829", "cytosol"};
+    private static final String[] NUCLEUS = {"0005634", "nucleus"};
+
+    @Test
+    public void testSameBoundsFromCache() {
+        final Random random = new Random(50);
+        long hits = 0;
+        for (int i = 0; i < REACTIONS; i++) {
+            final ReactionSnapshot reaction = SyntheticReactions.createReaction(i, random, 2 + random.nextInt(12), 1 + random.nextInt(COMPARTMENTS));
+            final long before = Topology.getCacheStats().hitCount();
+            assertSameFromCache(reaction);
+            hits += Topology.getCacheStats().hitCount() - before;
+        }
+        // the rest are grids that cannot be described as a topology
+        assertTrue(hits > REACTIONS / 2, hits + " layouts from the cache");
+    }
+
+    @Test
+    public void testCatalystInInputsByCompartment() {
+        // both have an input/catalyst in the nucleus, and an input and a catalyst in the cytosol, which are the same
+        // entity only in the first one. Only the occupancy of the inputs of the cytosol tells them apart.
+        final ReactionSnapshot catalystInput = createReaction(1, CYTOSOL,
+                participant(1, "input", CYTOSOL), participant(1, "catalyst", CYTOSOL), participant(3, "catalyst", CYTOSOL),
+                participant(2, "input", NUCLEUS), participant(2, "catalyst", NUCLEUS), participant(4, "output", CYTOSOL));
+        final ReactionSnapshot separated = createReaction(2, CYTOSOL,
+                participant(1, "input", CYTOSOL), participant(5, "catalyst", CYTOSOL), participant(3, "catalyst", CYTOSOL),
+                participant(2, "input", NUCLEUS), participant(2, "catalyst", NUCLEUS), participant(4, "output", CYTOSOL));
+
+        final Layout first = SyntheticReactions.createLayout(catalystInput, RELEASE);
+        final Layout second = SyntheticReactions.createLayout(separated, RELEASE);
+        final LayoutIndex firstIndex = new LayoutIndex(first);
+        final LayoutIndex secondIndex = new LayoutIndex(second);
+        assertTrue(firstIndex.hasCatalystInInputs());
+        assertTrue(secondIndex.hasCatalystInInputs());
+        assertTrue(firstIndex.hasCatalystInInputs(getCompartment(first, CYTOSOL)));
+        assertFalse(secondIndex.hasCatalystInInputs(getCompartment(second, CYTOSOL)));
+        assertNotEquals(Topology.key(first.getCompartmentRoot(), first.getReaction(), firstIndex, new ArrayList<>()),
+                Topology.key(second.getCompartmentRoot(), second.getReaction(), secondIndex, new ArrayList<>()));
+
+        // the topology of one is not used for the other
+        Topology.clearCache();
+        final String cold = LayoutDescription.describe(layout(separated));
+        Topology.clearCache();
+        layout(catalystInput);
+        assertEquals(cold, LayoutDescription.describe(layout(separated)));
+    }
+
+    @Test
+    public void testMovedReaction() {
+        // the nucleus takes the four sides of the cytosol, so the reaction is moved into the nucleus
+        final ReactionSnapshot reaction = createReaction(1, CYTOSOL,
+                participant(1, "input", NUCLEUS), participant(2, "output", NUCLEUS),
+                participant(3, "catalyst", NUCLEUS), participant(4, "negative", NUCLEUS));
+        final Layout cold = layout(reaction);
+        assertSame(getCompartment(cold, NUCLEUS), getContainer(cold));
+
+        final Layout cached = assertSameFromCache(reaction);
+        assertSame(getCompartment(cached, NUCLEUS), getContainer(cached));
+        assertEquals(cold.getReaction().getCompartment().getAccession(), cached.getReaction().getCompartment().getAccession());
+    }
+
+    @Test
+    public void testStableViews() {
+        // topologies identify the group of a div by the list it holds
+        final Random random = new Random(42);
+        for (int i = 0; i < REACTIONS; i++) {
+            final ReactionSnapshot reaction = SyntheticReactions.createReaction(i, random, 2 + random.nextInt(12), 1 + random.nextInt(COMPARTMENTS));
+            final Layout layout = SyntheticReactions.createLayout(reaction, RELEASE);
+            final LayoutIndex index = new LayoutIndex(layout);
+            for (CompartmentGlyph compartment : layout.getCompartments()) {
+                assertSame(index.filterInputs(compartment), index.filterInputs(compartment));
+                assertSame(index.filterOutputs(compartment), index.filterOutputs(compartment));
+                assertSame(index.filterCatalysts(compartment), index.filterCatalysts(compartment));
+                assertSame(index.filterRegulators(compartment), index.filterRegulators(compartment));
+                assertSame(index.filterInputs(compartment), new VerticalLayout(index.filterInputs(compartment)).getGlyphs());
+                assertSame(index.filterCatalysts(compartment), new HorizontalLayout(index.filterCatalysts(compartment)).getGlyphs());
+            }
+        }
+    }
+
+    /**
+     * Lays out a twin of reaction with an empty cache, and again once reaction is in the cache, and checks that both
+     * layouts are the same.
+     *
+     * @return the layout of the twin built from the cache
+     */
+    private static Layout assertSameFromCache(ReactionSnapshot reaction) {
+        final ReactionSnapshot twin = createTwin(reaction);
+        Topology.clearCache();
+        final String cold = LayoutDescription.describe(layout(twin), false);
+        Topology.clearCache();
+        final String original = LayoutDescription.describe(layout(reaction), false);
+        final Layout cached = layout(twin);
+        assertEquals(cold, LayoutDescription.describe(cached, false), reaction.getStId());
+        // names are longer, so sizes are not the same as in the original reaction
+        assertNotEquals(original, LayoutDescription.describe(cached, false), reaction.getStId());
+        return cached;
+    }
+
+    private static Layout layout(ReactionSnapshot reaction) {
+        final Layout layout = SyntheticReactions.createLayout(reaction, RELEASE);
+        new BoxAlgorithm(layout).compute();
+        return layout;
+    }
+
+    /**
+     * @return a reaction with the same structure, but other identifiers and names
+     */
+    private static ReactionSnapshot createTwin(ReactionSnapshot reaction) {
+        final ReactionSnapshot twin = new ReactionSnapshot();
+        twin.setDbId(reaction.getDbId() + 10_000_000);
+        twin.setStId("R-MMU-" + reaction.getDbId());
+        twin.setDisplayName("inferred " + reaction.getDisplayName());
+        twin.setSpeciesName("Mus musculus");
+        twin.setSchemaClass(reaction.getSchemaClass());
+        twin.setRenderableClass(reaction.getRenderableClass());
+        twin.setCompartments(reaction.getCompartments());
+        twin.setPathway(reaction.getPathway());
+        final List<EntitySnapshot> participants = new ArrayList<>();
+        for (EntitySnapshot participant : reaction.getParticipants()) {
+            final EntitySnapshot copy = new EntitySnapshot();
+            copy.setDbId(participant.getDbId() + 10_000_000);
+            copy.setStId(participant.getStId().replace("R-ALL-", "R-MMU-"));
+            copy.setName("inferred " + participant.getName() + " from Homo sapiens");
+            copy.setSchemaClass(participant.getSchemaClass());
+            copy.setRenderableClass(participant.getRenderableClass());
+            copy.setTrivial(participant.isTrivial());
+            copy.setDrug(participant.isDrug());
+            copy.setDashed(participant.isDashed());
+            copy.setInDisease(participant.getInDisease());
+            copy.setCompartments(participant.getCompartments());
+            copy.setAttachments(participant.getAttachments());
+            copy.setRoleType(participant.getRoleType());
+            copy.setStoichiometry(participant.getStoichiometry());
+            participants.add(copy);
+        }
+        twin.setParticipants(participants);
+        return twin;
+    }
+
+    private static ReactionSnapshot createReaction(long id, String[] compartment, EntitySnapshot... participants) {
+        final ReactionSnapshot reaction = new ReactionSnapshot();
+        reaction.setDbId(id);
+        reaction.setStId("R-HSA-" + id);
+        reaction.setDisplayName("reaction " + id);
+        reaction.setSpeciesName("Homo sapiens");
+        reaction.setSchemaClass("Reaction");
+        reaction.setRenderableClass(RenderableClass.PROCESS_NODE);
+        reaction.setCompartments(Collections.singletonList(createCompartment(compartment)));
+        reaction.setPathway("R-HSA-0");
+        reaction.setParticipants(Arrays.asList(participants));
+        return reaction;
+    }
+
+    private static EntitySnapshot participant(int entity, String role, String[] compartment) {
+        final EntitySnapshot participant = new EntitySnapshot();
+        participant.setDbId((long) 1_000_000 + entity);
+        participant.setStId("R-ALL-" + entity);
+        participant.setName("entity " + entity);
+        participant.setSchemaClass("SimpleEntity");
+        participant.setRenderableClass(RenderableClass.PROTEIN);
+        participant.setInDisease(false);
+        participant.setCompartments(Collections.singletonList(createCompartment(compartment)));
+        participant.setAttachments(new ArrayList<>());
+        participant.setRoleType(role);
+        participant.setStoichiometry(1);
+        return participant;
+    }
+
+    private static CompartmentSnapshot createCompartment(String[] compartment) {
+        return new CompartmentSnapshot(null, compartment[0], compartment[1]);
+    }
+
+    private static CompartmentGlyph getCompartment(Layout layout, String[] compartment) {
+        return layout.getCompartments().stream()
+                .filter(glyph -> compartment[0].equals(glyph.getAccession()))
+                .findFirst().orElseThrow();
+    }
+
+    private static CompartmentGlyph getContainer(Layout layout) {
+        return layout.getCompartments().stream()
+                .filter(glyph -> glyph.getContainedGlyphs().contains(layout.getReaction()))
+                .findFirst().orElse(null);
+    }
+}
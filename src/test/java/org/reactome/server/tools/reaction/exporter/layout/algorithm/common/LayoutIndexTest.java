@@ -0,0 +1,183 @@
+package org.reactome.server.tools.reaction.exporter.layout.algorithm.common;
+
+import org.junit.jupiter.api.Test;
+import org.reactome.server.tools.reaction.exporter.SyntheticReactions;
+import org.reactome.server.tools.reaction.exporter.layout.common.EntityRole;
+import org.reactome.server.tools.reaction.exporter.layout.common.GlyphUtils;
+import org.reactome.server.tools.reaction.exporter.layout.common.RenderableClass;
+import org.reactome.server.tools.reaction.exporter.layout.model.*;
+import org.reactome.server.tools.reaction.exporter.ontology.OntologyRelease;
+import org.reactome.server.tools.reaction.exporter.snapshot.EntitySnapshot;
+import org.reactome.server.tools.reaction.exporter.snapshot.ReactionSnapshot;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the packed sort keys of {@link LayoutIndex} give the same lists as the comparator chains it replaced,
+ * which are copied here. Entities get any trivial flag, null included, and any {@link RenderableClass}, null and
+ * classes out of the placement order included, so every part of the key is compared.
+ */
+public class LayoutIndexTest {
+
+    private static final OntologyRelease RELEASE = SyntheticReactions.createRelease();
+    private static final int LAYOUTS = 2_000;
+    private static final Boolean[] TRIVIAL = {null, false, true};
+
+    private static final List<RenderableClass> CLASS_ORDER = Arrays.asList(
+            RenderableClass.PROCESS_NODE,
+            RenderableClass.ENCAPSULATED_NODE,
+            RenderableClass.COMPLEX,
+            RenderableClass.ENTITY_SET,
+            RenderableClass.PROTEIN,
+            RenderableClass.RNA,
+            RenderableClass.CHEMICAL,
+            RenderableClass.GENE,
+            RenderableClass.CELL,
+            RenderableClass.ENTITY);
+    private static final Comparator<Boolean> FALSE_FIRST = Comparator.nullsFirst((o1, o2) -> o1.equals(o2) ? 0 : o1 ? 1 : -1);
+    private static final Comparator<Boolean> TRUE_FIRST = Comparator.nullsLast(((o1, o2) -> o1.equals(o2) ? 0 : o1 ? -1 : 1));
+
+    @Test
+    public void testSameOrderAsComparators() {
+        final Random random = new Random(44);
+        int catalystInInputs = 0;
+        for (int i = 0; i < LAYOUTS; i++) {
+            final Layout layout = createLayout(random, i);
+            final LayoutIndex index = new LayoutIndex(layout);
+            final Expected expected = new Expected(layout);
+            final String name = layout.getReaction().getStId();
+            assertEquals(expected.inputs, index.getInputs(), name);
+            assertEquals(expected.outputs, index.getOutputs(), name);
+            assertEquals(expected.catalysts, index.getCatalysts(), name);
+            assertEquals(expected.regulators, index.getRegulators(), name);
+            assertEquals(expected.inputs.stream().anyMatch(entity -> GlyphUtils.hasRole(entity, EntityRole.CATALYST)), index.hasCatalystInInputs(), name);
+            for (CompartmentGlyph compartment : layout.getCompartments()) {
+                final List<EntityGlyph> inputs = filter(expected.inputs, compartment);
+                assertEquals(inputs, index.filterInputs(compartment), name);
+                assertEquals(filter(expected.outputs, compartment), index.filterOutputs(compartment), name);
+                assertEquals(filter(expected.catalysts, compartment), index.filterCatalysts(compartment), name);
+                assertEquals(filter(expected.regulators, compartment), index.filterRegulators(compartment), name);
+                final boolean catalystInput = inputs.stream().anyMatch(entity -> GlyphUtils.hasRole(entity, EntityRole.CATALYST));
+                assertEquals(catalystInput, index.hasCatalystInInputs(compartment), name);
+                if (catalystInput) catalystInInputs++;
+            }
+        }
+        assertTrue(catalystInInputs > 0);
+    }
+
+    @Test
+    public void testOtherCompartment() {
+        final Layout layout = createLayout(new Random(42), 0);
+        final LayoutIndex index = new LayoutIndex(layout);
+        // compartments are identified by their glyph, so the ones of other layouts have no entities in this one
+        final CompartmentGlyph other = createLayout(new Random(42), 1).getCompartmentRoot();
+        assertTrue(index.filterInputs(other).isEmpty());
+        assertTrue(index.filterOutputs(other).isEmpty());
+        assertTrue(index.filterCatalysts(other).isEmpty());
+        assertTrue(index.filterRegulators(other).isEmpty());
+        assertFalse(index.hasCatalystInInputs(other));
+        assertThrows(UnsupportedOperationException.class, () -> index.getInputs().clear());
+        assertThrows(UnsupportedOperationException.class, () -> index.filterOutputs(layout.getEntities().iterator().next().getCompartment()).clear());
+    }
+
+    /**
+     * Same as {@link SyntheticReactions#createLayout(ReactionSnapshot, OntologyRelease)}, but the trivial flag and the
+     * class of the entities are chosen at random.
+     */
+    private static Layout createLayout(Random random, int id) {
+        final ReactionSnapshot reaction = SyntheticReactions.createReaction(id, random, 2 + random.nextInt(20), 1 + random.nextInt(4));
+        final Layout layout = new Layout(RELEASE);
+        layout.setPathway(reaction.getPathway());
+        layout.setReaction(reaction);
+        final Map<String, EntityGlyph> entities = new HashMap<>();
+        final Collection<EntityGlyph> participants = new ArrayList<>();
+        for (EntitySnapshot participant : reaction.getParticipants()) {
+            // the same entity must have the same keys in every role
+            final EntityGlyph known = entities.get(participant.getStId());
+            final Boolean trivial = known == null ? TRIVIAL[random.nextInt(TRIVIAL.length)] : known.isTrivial();
+            final RenderableClass renderableClass = known != null ? known.getRenderableClass()
+                    : random.nextInt(10) == 0 ? null
+                    : RenderableClass.values()[random.nextInt(RenderableClass.values().length)];
+            final EntityGlyph glyph = new EntityGlyph() {
+                @Override
+                public Boolean isTrivial() {
+                    return trivial;
+                }
+
+                @Override
+                public RenderableClass getRenderableClass() {
+                    return renderableClass;
+                }
+            };
+            glyph.setEntity(participant);
+            glyph.setRole(new Role(participant.getRoleType(), participant.getStoichiometry()));
+            entities.putIfAbsent(participant.getStId(), glyph);
+            participants.add(glyph);
+        }
+        layout.setParticipants(participants);
+        return layout;
+    }
+
+    private static List<EntityGlyph> filter(List<EntityGlyph> entities, CompartmentGlyph compartment) {
+        return entities.stream()
+                .filter(entity -> entity.getCompartment() == compartment)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * The lists of the index before the sort keys were packed
+     */
+    private static class Expected {
+        private final List<EntityGlyph> inputs = new ArrayList<>();
+        private final List<EntityGlyph> outputs = new ArrayList<>();
+        private final List<EntityGlyph> catalysts = new ArrayList<>();
+        private final List<EntityGlyph> regulators = new ArrayList<>();
+
+        Expected(Layout layout) {
+            final List<EntityGlyph> activators = new ArrayList<>();
+            final List<EntityGlyph> inhibitors = new ArrayList<>();
+            for (EntityGlyph entity : layout.getEntities()) {
+                for (Role role : entity.getRoles()) {
+                    switch (role.getType()) {
+                        case INPUT:
+                            inputs.add(entity);
+                            break;
+                        case OUTPUT:
+                            outputs.add(entity);
+                            break;
+                        case CATALYST:
+                            catalysts.add(entity);
+                            break;
+                        case NEGATIVE_REGULATOR:
+                            inhibitors.add(entity);
+                            break;
+                        case POSITIVE_REGULATOR:
+                            activators.add(entity);
+                            break;
+                    }
+                }
+            }
+            regulators.addAll(inhibitors);
+            regulators.addAll(activators);
+
+            final Comparator<EntityGlyph> order = Comparator
+                    .comparingInt((EntityGlyph e) -> e.getRoles().size()).reversed()
+                    .thenComparing(EntityGlyph::isTrivial, FALSE_FIRST)
+                    .thenComparingInt(e -> CLASS_ORDER.indexOf(e.getRenderableClass()))
+                    .thenComparing(EntityGlyph::getName);
+            inputs.sort(order);
+            outputs.sort(order);
+            catalysts.sort(order);
+            regulators.sort(Comparator
+                    .comparingInt((EntityGlyph e) -> e.getRoles().size()).reversed()
+                    .thenComparing(e -> e.getRoles().stream().anyMatch(role -> role.getType() == EntityRole.NEGATIVE_REGULATOR), TRUE_FIRST)
+                    .thenComparing(EntityGlyph::isTrivial, FALSE_FIRST)
+                    .thenComparingInt(e -> CLASS_ORDER.indexOf(e.getRenderableClass()))
+                    .thenComparing(EntityGlyph::getName));
+            catalysts.removeIf(entityGlyph -> entityGlyph.getRoles().stream().anyMatch(role -> role.getType() == EntityRole.INPUT));
+        }
+    }
+}
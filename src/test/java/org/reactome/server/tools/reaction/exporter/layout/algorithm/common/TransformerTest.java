@@ -0,0 +1,145 @@
+package org.reactome.server.tools.reaction.exporter.layout.algorithm.common;
+
+import org.junit.jupiter.api.Test;
+import org.reactome.server.tools.diagram.data.layout.Connector;
+import org.reactome.server.tools.diagram.data.layout.Coordinate;
+import org.reactome.server.tools.diagram.data.layout.Segment;
+import org.reactome.server.tools.diagram.data.layout.Shape;
+import org.reactome.server.tools.diagram.data.layout.impl.ShapeImpl;
+import org.reactome.server.tools.reaction.exporter.SyntheticReactions;
+import org.reactome.server.tools.reaction.exporter.layout.algorithm.box.BoxAlgorithm;
+import org.reactome.server.tools.reaction.exporter.layout.common.Bounds;
+import org.reactome.server.tools.reaction.exporter.layout.model.*;
+import org.reactome.server.tools.reaction.exporter.ontology.OntologyRelease;
+import org.reactome.server.tools.reaction.exporter.snapshot.ReactionSnapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Moving a compartment with its content must land every glyph, attachment, segment, shape and label at the same
+ * coordinates as before moves used primitive offsets, when each coordinate was added a {@link Coordinate} delta.
+ * Both add the offset to each value once, so the results are compared exactly.
+ */
+public class TransformerTest {
+
+    private static final OntologyRelease RELEASE = SyntheticReactions.createRelease();
+    private static final int LAYOUTS = 200;
+    private static final double DX = 12.3;
+    private static final double DY = -45.6;
+    private static final int MAX_COMPARTMENTS = 4;
+
+    @Test
+    public void testMoveSubtree() {
+        final Random random = new Random(45);
+        for (int i = 0; i < LAYOUTS; i++) {
+            // with more sibling compartments, Box cannot always find a cell for the reaction, which has nothing to do
+            // with moves
+            final ReactionSnapshot reaction = SyntheticReactions.createReaction(i, random, 1 + random.nextInt(12), 1 + random.nextInt(MAX_COMPARTMENTS));
+            final Layout layout = SyntheticReactions.createLayout(reaction, RELEASE);
+            new BoxAlgorithm(layout).compute();
+            final List<double[]> positions = getPositions(layout.getCompartmentRoot());
+            final List<double[]> sizes = getSizes(layout.getCompartmentRoot());
+
+            Transformer.move(layout.getCompartmentRoot(), DX, DY, true);
+
+            final List<double[]> moved = getPositions(layout.getCompartmentRoot());
+            assertEquals(positions.size(), moved.size(), reaction.getStId());
+            for (int p = 0; p < positions.size(); p++) {
+                assertEquals(positions.get(p)[0] + DX, moved.get(p)[0], reaction.getStId());
+                assertEquals(positions.get(p)[1] + DY, moved.get(p)[1], reaction.getStId());
+            }
+            final List<double[]> movedSizes = getSizes(layout.getCompartmentRoot());
+            for (int s = 0; s < sizes.size(); s++) {
+                assertEquals(sizes.get(s)[0], movedSizes.get(s)[0], reaction.getStId());
+                assertEquals(sizes.get(s)[1], movedSizes.get(s)[1], reaction.getStId());
+            }
+        }
+    }
+
+    @Test
+    public void testMoveWithoutContent() {
+        final ReactionSnapshot reaction = SyntheticReactions.createReaction(1, new Random(1), 6, 3);
+        final Layout layout = SyntheticReactions.createLayout(reaction, RELEASE);
+        new BoxAlgorithm(layout).compute();
+        final CompartmentGlyph root = layout.getCompartmentRoot();
+        final List<double[]> positions = getPositions(root);
+
+        Transformer.move(root, DX, DY, false);
+
+        final List<double[]> moved = getPositions(root);
+        // the bounds and the label of the compartment come first, the content does not move
+        assertEquals(positions.get(0)[0] + DX, moved.get(0)[0]);
+        assertEquals(positions.get(0)[1] + DY, moved.get(0)[1]);
+        for (int p = root.getLabelPosition() == null ? 1 : 2; p < positions.size(); p++) {
+            assertEquals(positions.get(p)[0], moved.get(p)[0]);
+            assertEquals(positions.get(p)[1], moved.get(p)[1]);
+        }
+    }
+
+    /**
+     * Every coordinate that moves with the compartment, always in the same order
+     */
+    private static List<double[]> getPositions(CompartmentGlyph compartment) {
+        final List<double[]> positions = new ArrayList<>();
+        addPositions(compartment, positions);
+        return positions;
+    }
+
+    private static void addPositions(CompartmentGlyph compartment, List<double[]> positions) {
+        add(compartment.getBounds(), positions);
+        if (compartment.getLabelPosition() != null) add(compartment.getLabelPosition(), positions);
+        for (Glyph glyph : compartment.getContainedGlyphs()) {
+            add(glyph.getBounds(), positions);
+            if (glyph instanceof ReactionGlyph) {
+                for (Segment segment : ((ReactionGlyph) glyph).getSegments()) add(segment, positions);
+            } else if (glyph instanceof EntityGlyph) {
+                final EntityGlyph entity = (EntityGlyph) glyph;
+                for (AttachmentGlyph attachment : entity.getAttachments()) add(attachment.getBounds(), positions);
+                for (Connector connector : entity.getConnector()) {
+                    for (Segment segment : connector.getSegments()) add(segment, positions);
+                    add(connector.getEndShape(), positions);
+                    if (connector.getStoichiometry() != null) add(connector.getStoichiometry().getShape(), positions);
+                }
+            }
+        }
+        for (CompartmentGlyph child : compartment.getChildren()) addPositions(child, positions);
+    }
+
+    private static List<double[]> getSizes(CompartmentGlyph compartment) {
+        final List<double[]> sizes = new ArrayList<>();
+        addSizes(compartment, sizes);
+        return sizes;
+    }
+
+    private static void addSizes(CompartmentGlyph compartment, List<double[]> sizes) {
+        sizes.add(new double[]{compartment.getBounds().getWidth(), compartment.getBounds().getHeight()});
+        for (Glyph glyph : compartment.getContainedGlyphs())
+            sizes.add(new double[]{glyph.getBounds().getWidth(), glyph.getBounds().getHeight()});
+        for (CompartmentGlyph child : compartment.getChildren()) addSizes(child, sizes);
+    }
+
+    private static void add(Bounds bounds, List<double[]> positions) {
+        positions.add(new double[]{bounds.getX(), bounds.getY()});
+    }
+
+    private static void add(Segment segment, List<double[]> positions) {
+        add(segment.getFrom(), positions);
+        add(segment.getTo(), positions);
+    }
+
+    private static void add(Shape s, List<double[]> positions) {
+        if (s == null) return;
+        final ShapeImpl shape = (ShapeImpl) s;
+        if (shape.getA() != null) add(shape.getA(), positions);
+        if (shape.getB() != null) add(shape.getB(), positions);
+        if (shape.getC() != null) add(shape.getC(), positions);
+    }
+
+    private static void add(Coordinate coordinate, List<double[]> positions) {
+        positions.add(new double[]{coordinate.getX(), coordinate.getY()});
+    }
+}
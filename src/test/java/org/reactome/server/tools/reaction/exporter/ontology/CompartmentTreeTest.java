@@ -0,0 +1,102 @@
+package org.reactome.server.tools.reaction.exporter.ontology;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.reactome.server.tools.reaction.exporter.ontology.GoTerm.Directionality.OUTGOING;
+import static org.reactome.server.tools.reaction.exporter.ontology.RelationshipType.part_of;
+
+/**
+ * Checks the cache of {@link GoTreeFactory#getCompartmentTree(Collection, OntologyRelease)}: subtrees are shared by
+ * the queries with the same set of ids on the same master tree, and a shared subtree is the same one that would be
+ * built for the query. Releases are never published, so the current ones are not modified.
+ */
+public class CompartmentTreeTest {
+
+    private static final int HIERARCHIES = 200;
+    private static final int QUERIES = 30;
+
+    @Test
+    public void testSameTreeAsBuilt() {
+        final Random random = new Random(39);
+        for (int h = 0; h < HIERARCHIES; h++) {
+            final Map<String, GoTerm> masterTree = createMasterTree(random, 10 + random.nextInt(60));
+            final List<String> keys = new ArrayList<>(new TreeSet<>(masterTree.keySet()));
+            final OntologyRelease release = GoTreeFactory.createReactomeRelease(null, masterTree);
+            for (int q = 0; q < QUERIES; q++) {
+                final List<String> ids = GoDagTest.createQuery(random, keys);
+                final List<String> expected = describe(new CompartmentTree(GoTreeFactory.getTreeWithIntermediateNodes(masterTree, ids)));
+                assertEquals(expected, describe(GoTreeFactory.getCompartmentTree(ids, release)), ids::toString);
+                // and once cached
+                assertEquals(expected, describe(GoTreeFactory.getCompartmentTree(ids, release)), ids::toString);
+            }
+        }
+    }
+
+    @Test
+    public void testKey() {
+        final Random random = new Random(42);
+        final long seed = random.nextLong();
+        final OntologyRelease release = GoTreeFactory.createReactomeRelease(null, createMasterTree(new Random(seed), 60));
+        final List<String> keys = new ArrayList<>(new TreeSet<>(createMasterTree(new Random(seed), 60).keySet()));
+        for (int q = 0; q < QUERIES; q++) {
+            final List<String> ids = GoDagTest.createQuery(random, keys);
+            final CompartmentTree tree = GoTreeFactory.getCompartmentTree(ids, release);
+            // the order and repetitions of ids do not matter
+            final List<String> shuffled = new ArrayList<>(ids);
+            shuffled.addAll(ids.subList(0, 1));
+            Collections.shuffle(shuffled, random);
+            assertSame(tree, GoTreeFactory.getCompartmentTree(shuffled, release), ids::toString);
+            assertSame(tree, GoTreeFactory.getCompartmentTree(new TreeSet<>(ids), release), ids::toString);
+            // other ids are a different key
+            final String other = keys.stream().filter(id -> !ids.contains(id)).findFirst().orElseThrow();
+            final List<String> more = new ArrayList<>(ids);
+            more.add(other);
+            assertNotSame(tree, GoTreeFactory.getCompartmentTree(more, release), ids::toString);
+        }
+    }
+
+    @Test
+    public void testKeyIsMasterTree() {
+        // same hierarchy, compiled twice
+        final OntologyRelease release = GoTreeFactory.createReactomeRelease(null, createMasterTree(new Random(42), 60));
+        final OntologyRelease other = GoTreeFactory.createReactomeRelease(null, createMasterTree(new Random(42), 60));
+        final List<String> keys = new ArrayList<>(new TreeSet<>(createMasterTree(new Random(42), 60).keySet()));
+        final Random random = new Random(42);
+        for (int q = 0; q < QUERIES; q++) {
+            final List<String> ids = GoDagTest.createQuery(random, keys);
+            final CompartmentTree tree = GoTreeFactory.getCompartmentTree(ids, release);
+            final CompartmentTree otherTree = GoTreeFactory.getCompartmentTree(ids, other);
+            assertNotSame(tree, otherTree, ids::toString);
+            assertEquals(describe(tree), describe(otherTree), ids::toString);
+        }
+    }
+
+    /**
+     * A random hierarchy below the cellular component, with the extracellular region, as it comes from the database
+     */
+    private static Map<String, GoTerm> createMasterTree(Random random, int size) {
+        final Map<String, GoTerm> masterTree = GoDagTest.createHierarchy(random, size);
+        final GoTerm cellularComponent = new GoTerm("GO:0005575");
+        cellularComponent.setName("cellular_component");
+        final GoTerm extracellularRegion = new GoTerm("GO:0005576");
+        extracellularRegion.setName("extracellular region");
+        for (GoTerm term : masterTree.values())
+            if (term.getOutgoingTerms().isEmpty()) term.createRelationship(OUTGOING, part_of, cellularComponent);
+        masterTree.put(cellularComponent.getId(), cellularComponent);
+        masterTree.put(extracellularRegion.getId(), extracellularRegion);
+        return masterTree;
+    }
+
+    /**
+     * One line per node, in the order of the tree
+     */
+    private static List<String> describe(CompartmentTree tree) {
+        final List<String> lines = new ArrayList<>();
+        for (int i = 0; i < tree.size(); i++)
+            lines.add(tree.getAccession(i) + " " + tree.getName(i) + " " + tree.getParent(i));
+        return lines;
+    }
+}
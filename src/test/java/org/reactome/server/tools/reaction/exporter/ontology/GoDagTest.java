@@ -0,0 +1,211 @@
+package org.reactome.server.tools.reaction.exporter.ontology;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.reactome.server.tools.reaction.exporter.ontology.GoTerm.Directionality.OUTGOING;
+import static org.reactome.server.tools.reaction.exporter.ontology.RelationshipType.*;
+
+/**
+ * Checks {@link GoDag} against the implementation it replaced, which enumerated every branch from a term to a root
+ * through {@link GoTerm#getOutgoingTerms()} and kept the one with more requested terms and, then, the shortest one.
+ * Hierarchies are random, with relationships of every type and inherited ones through is_a parents.
+ */
+public class GoDagTest {
+
+    private static final int HIERARCHIES = 300;
+    private static final int QUERIES = 30;
+    private static final int MAX_QUERY_SIZE = 6;
+    private static final RelationshipType[] TYPES = {surrounded_by, part_of, component_of};
+
+    @Test
+    public void testSameSubtreesAsBranchEnumeration() {
+        final Random random = new Random(38);
+        for (int h = 0; h < HIERARCHIES; h++) {
+            // bigger hierarchies are slow for the enumeration
+            final Map<String, GoTerm> masterTree = createHierarchy(random, 5 + random.nextInt(h < 200 ? 40 : 200));
+            final List<String> keys = new ArrayList<>(new TreeSet<>(masterTree.keySet()));
+            for (int q = 0; q < QUERIES; q++) {
+                final List<String> ids = createQuery(random, keys);
+                final String expected = describe(getTreeByEnumeration(masterTree, ids));
+                assertEquals(expected, describe(GoTreeFactory.getTreeWithIntermediateNodes(masterTree, ids)), ids::toString);
+            }
+        }
+    }
+
+    @Test
+    public void testSameBranchesWhenRead() throws IOException {
+        final Random random = new Random(42);
+        for (int h = 0; h < HIERARCHIES; h++) {
+            final GoDag compiled = GoDag.compile(createHierarchy(random, 5 + random.nextInt(200)));
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            compiled.write(bytes);
+            final GoDag read = GoDag.read(ByteBuffer.wrap(bytes.toByteArray()));
+            assertEquals(compiled.size(), read.size());
+            for (int i = 0; i < compiled.size(); i++) {
+                assertEquals(compiled.getTerm(i).getId(), read.getTerm(i).getId());
+                assertEquals(compiled.getTerm(i).getName(), read.getTerm(i).getName());
+                assertEquals(Integer.valueOf(i), read.indexOf(read.getTerm(i).getId()));
+            }
+            for (int q = 0; q < QUERIES; q++) {
+                final int[] query = random.ints(1 + random.nextInt(MAX_QUERY_SIZE), 0, compiled.size()).distinct().toArray();
+                assertEquals(getBranches(compiled, query), getBranches(read, query), () -> Arrays.toString(query));
+            }
+        }
+    }
+
+    @Test
+    public void testCycle() {
+        final Map<String, GoTerm> masterTree = createHierarchy(new Random(42), 20);
+        final GoTerm a = new GoTerm("GO:1000001");
+        final GoTerm b = new GoTerm("GO:1000002");
+        final GoTerm c = new GoTerm("GO:1000003");
+        a.createRelationship(OUTGOING, part_of, b);
+        b.createRelationship(OUTGOING, part_of, a);
+        c.createRelationship(OUTGOING, surrounded_by, a);
+        for (GoTerm term : List.of(a, b, c)) masterTree.put(term.getId(), term);
+        final GoDag dag = GoDag.compile(masterTree);
+        assertEquals(masterTree.size(), dag.size());
+        for (GoTerm term : List.of(a, b, c))
+            assertThrows(IllegalStateException.class, () -> dag.getBranches(new int[]{dag.indexOf(term.getId())}));
+        // the rest of the hierarchy is still usable
+        final List<String> ids = masterTree.keySet().stream().filter(id -> !id.startsWith("GO:1")).limit(3).collect(Collectors.toList());
+        final int[] query = ids.stream().mapToInt(dag::indexOf).toArray();
+        assertNotNull(dag.getBranches(query));
+    }
+
+    /**
+     * A random hierarchy, with no cycles: terms only point to terms created before them
+     */
+    static Map<String, GoTerm> createHierarchy(Random random, int size) {
+        final Map<String, GoTerm> masterTree = new HashMap<>();
+        final GoTerm[] terms = new GoTerm[size];
+        for (int i = 0; i < size; i++) {
+            final GoTerm term = new GoTerm(String.format("GO:%07d", random.nextInt(1_000_000)));
+            if (masterTree.containsKey(term.getId())) {
+                i--;
+                continue;
+            }
+            term.setName("term " + i);
+            masterTree.put(term.getId(), term);
+            terms[i] = term;
+        }
+        for (int i = 1; i < size; i++) {
+            final int relationships = random.nextInt(4);
+            for (int j = 0; j < relationships; j++) {
+                final GoTerm target = terms[random.nextInt(i)];
+                if (random.nextInt(3) == 0) {
+                    if (!terms[i].getParents().contains(target)) terms[i].addParent(target);
+                } else terms[i].createRelationship(OUTGOING, TYPES[random.nextInt(TYPES.length)], target);
+            }
+        }
+        return masterTree;
+    }
+
+    static List<String> createQuery(Random random, List<String> keys) {
+        final int size = 1 + random.nextInt(MAX_QUERY_SIZE);
+        final List<String> ids = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            final String id = keys.get(random.nextInt(keys.size()));
+            if (!ids.contains(id)) ids.add(id);
+        }
+        return ids;
+    }
+
+    /**
+     * @return the next term of every term in the branches of the query
+     */
+    private static Map<String, String> getBranches(GoDag dag, int[] query) {
+        final GoDag.Branches branches = dag.getBranches(query);
+        final Map<String, String> next = new TreeMap<>();
+        for (int term : query) {
+            for (int t = term; t != -1; t = branches.next(t)) {
+                final int parent = branches.next(t);
+                next.put(dag.getTerm(t).getId(), parent == -1 ? null : dag.getTerm(parent).getId());
+            }
+        }
+        return next;
+    }
+
+    /**
+     * The subtree, one term per line, indented below the term it points to. Children are sorted, so the description
+     * does not depend on the order of the sets.
+     */
+    private static String describe(GoTerm root) {
+        final StringBuilder builder = new StringBuilder();
+        describe(root, builder, 0, new HashSet<>());
+        return builder.toString();
+    }
+
+    private static void describe(GoTerm term, StringBuilder builder, int depth, Set<String> visited) {
+        builder.append(" ".repeat(depth)).append(term.getId()).append(" ").append(term.getName()).append('\n');
+        if (!visited.add(term.getId())) return;
+        for (GoTerm child : new TreeSet<>(term.getIncomingTerms())) describe(child, builder, depth + 1, visited);
+    }
+
+    // The implementation before GoDag
+
+    private static GoTerm getTreeByEnumeration(Map<String, GoTerm> masterTree, Collection<String> ids) {
+        final Map<String, GoTerm> tree = new HashMap<>();
+        final List<GoTerm> terms = ids.stream().map(id -> new GoTerm(masterTree.get(id))).collect(Collectors.toList());
+        for (final GoTerm term : terms) {
+            tree.put(term.getId(), term);
+        }
+        for (final GoTerm term : terms)
+            addToHierarchy(masterTree, tree, term, terms);
+        GoTerm root = tree.values().stream()
+                .filter(goTerm -> goTerm.getOutgoingTerms().isEmpty())
+                .findFirst()
+                .orElse(null);
+        return findRoot(root, terms);
+    }
+
+    private static GoTerm findRoot(GoTerm root, List<GoTerm> terms) {
+        if (terms.contains(root)) return root;
+        final Collection<GoTerm> incomingTerms = root.getIncomingTerms();
+        if (incomingTerms.size() != 1) return root;
+        return findRoot(incomingTerms.iterator().next(), terms);
+    }
+
+    private static void addToHierarchy(Map<String, GoTerm> masterTree, Map<String, GoTerm> tree, GoTerm term, List<GoTerm> terms) {
+        Collection<List<GoTerm>> branches = getBranches(term, masterTree);
+        final List<GoTerm> best = branches.stream()
+                .min(Comparator
+                        .comparingLong((List<GoTerm> branch) -> branch.stream().filter(terms::contains).count()).reversed()
+                        .thenComparingInt(List::size))
+                .orElse(null);
+
+        if (best != null) {
+            GoTerm aux = term;
+            for (final GoTerm masterParent : best) {
+                final GoTerm parent = tree.computeIfAbsent(masterParent.getId(), id -> new GoTerm(masterParent));
+                aux.createRelationship(OUTGOING, surrounded_by, parent);
+                aux = parent;
+            }
+        }
+    }
+
+    private static Collection<List<GoTerm>> getBranches(GoTerm term, Map<String, GoTerm> masterTree) {
+        final Collection<List<GoTerm>> rtn = new ArrayList<>();
+        final GoTerm masterTerm = masterTree.get(term.getId());
+        for (final GoTerm parent : masterTerm.getOutgoingTerms()) {
+            final Collection<List<GoTerm>> branches = getBranches(parent, masterTree);
+            for (final List<GoTerm> branch : branches) {
+                branch.add(0, parent);
+                rtn.add(branch);
+            }
+            if (branches.isEmpty()) {
+                final List<GoTerm> base = new ArrayList<>();
+                base.add(parent);
+                rtn.add(base);
+            }
+        }
+        return rtn;
+    }
+}
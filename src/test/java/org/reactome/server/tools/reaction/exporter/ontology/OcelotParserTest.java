@@ -0,0 +1,104 @@
+package org.reactome.server.tools.reaction.exporter.ontology;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.reactome.server.tools.reaction.exporter.ontology.GoTerm.Directionality.OUTGOING;
+import static org.reactome.server.tools.reaction.exporter.ontology.RelationshipType.component_of;
+import static org.reactome.server.tools.reaction.exporter.ontology.RelationshipType.surrounded_by;
+
+/**
+ * Parses small fragments of ocelot, as found in cco.ocelot, and checks the elements and the relationships that
+ * {@link GoParser} creates from the CCO frames.
+ */
+public class OcelotParserTest {
+
+    private static final String FRAMES = String.join("\n",
+            "(",
+            "(CCO-NUCLEUS T",
+            "  ((GOID \"GO:0005634\")",
+            "   (COMMENT \"the   nucleus,",
+            "\t\tsurrounded by the cytosol\")",
+            "   (SURROUNDED-BY CCO-CYTOSOL)",
+            "   (COMPONENT-OF CCO-CELL CCO-CYTOSOL)",
+            "   (SURROUNDED-BY CCO-PM))",
+            "  NIL)",
+            "(CCO-CYTOSOL T ((GOID \"GO:0005829\")(SURROUNDED-BY CCO-PM CCO-UNKNOWN))NIL)",
+            "(CCO-PM T ((GOID \"GO:0005886\")) NIL)",
+            "(CCO-CELL T ((COMMENT \"no GO term\")) NIL)",
+            "(CCO-MISSING T ((GOID \"GO:9999999\") (SURROUNDED-BY CCO-PM)) NIL)",
+            ")");
+
+    @Test
+    public void testNestedElements() throws IOException {
+        final OcelotParser.OcelotElement root = parse("(a (b (c d))e (f)g)");
+        assertEquals("[a, [b, [c, d]], e, [f], g]", describe(root));
+        assertNull(root.getValue());
+        assertEquals("d", root.getChildren().get(1).getChildren().get(1).getChildren().get(1).getValue());
+    }
+
+    @Test
+    public void testQuotedStrings() throws IOException {
+        // whitespace is collapsed, and quoted parentheses are part of the value
+        assertEquals("[\"a b c\", \"(d)\", e]", describe(parse("(\"a   b\n\t c\" \"(d)\" e)")));
+        assertEquals("[\" leading and trailing \"]", describe(parse("(\"  leading and\r\ntrailing  \")")));
+    }
+
+    @Test
+    public void testWhitespace() throws IOException {
+        assertEquals("[a, [], b]", describe(parse(" \n(\ta\r\n( )\fb\u000B) \n")));
+    }
+
+    @Test
+    public void testMalformed() {
+        for (String malformed : new String[]{"", "  ", "a", "a (b)", "(a) b", "(a)(b)", "(a (b)", "(a \"b)", ")", "(a))"})
+            assertThrows(IllegalArgumentException.class, () -> parse(malformed), malformed);
+    }
+
+    @Test
+    public void testFrames() throws IOException {
+        final OcelotParser.OcelotElement root = parse(FRAMES);
+        assertEquals(5, root.getChildren().size());
+        assertEquals("[COMMENT, \"the nucleus, surrounded by the cytosol\"]",
+                describe(root.getChildren().get(0).getChildren().get(2).getChildren().get(1)));
+
+        final Map<String, GoTerm> nodes = new HashMap<>();
+        for (String id : List.of("GO:0005634", "GO:0005829", "GO:0005886")) nodes.put(id, new GoTerm(id));
+        GoParser.addOcelotTerms(nodes, root);
+
+        // only the first SURROUNDED-BY of the nucleus is used
+        assertEquals(Set.of("GO:0005829"), getIds(nodes.get("GO:0005634"), surrounded_by));
+        // frames without a GO term, like the cell, are not connected
+        assertEquals(Set.of("GO:0005829"), getIds(nodes.get("GO:0005634"), component_of));
+        // values after a nested element, and unknown frames
+        assertEquals(Set.of("GO:0005886"), getIds(nodes.get("GO:0005829"), surrounded_by));
+        assertEquals(Set.of(), getIds(nodes.get("GO:0005886"), surrounded_by));
+    }
+
+    @Test
+    public void testDuplicateFrames() throws IOException {
+        final OcelotParser.OcelotElement root = parse("((CCO-PM T ((GOID \"GO:0005886\")) NIL) (CCO-PM T () NIL))");
+        assertThrows(IllegalStateException.class, () -> GoParser.addOcelotTerms(new HashMap<>(), root));
+    }
+
+    private static OcelotParser.OcelotElement parse(String content) throws IOException {
+        return OcelotParser.parse(new StringReader(content));
+    }
+
+    /**
+     * Values, and elements as lists of their children
+     */
+    private static String describe(OcelotParser.OcelotElement element) {
+        if (element.getValue() != null) return element.getValue();
+        return element.getChildren().stream().map(OcelotParserTest::describe).collect(Collectors.joining(", ", "[", "]"));
+    }
+
+    private static Set<String> getIds(GoTerm term, RelationshipType type) {
+        return term.getRelationships(OUTGOING, type).stream().map(GoTerm::getId).collect(Collectors.toSet());
+    }
+}
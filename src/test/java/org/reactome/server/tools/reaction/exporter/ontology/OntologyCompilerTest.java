@@ -0,0 +1,203 @@
+package org.reactome.server.tools.reaction.exporter.ontology;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compiles a small fragment of Gene Ontology, as the build does with go-basic.obo, and checks that the tree loaded
+ * from the binary file has the same terms and relationships as the one parsed from the OBO file.
+ */
+public class OntologyCompilerTest {
+
+    private static final String FRAGMENT = String.join("\n",
+            "format-version: 1.2",
+            "ontology: go",
+            "",
+            "[Term]",
+            "id: GO:0005575",
+            "name: cellular_component",
+            "namespace: cellular_component",
+            "",
+            "[Term]",
+            "id: GO:0110165",
+            "name: cellular anatomical entity",
+            "namespace: cellular_component",
+            "is_a: GO:0005575 ! cellular_component",
+            "",
+            "[Term]",
+            "id: GO:0005622",
+            "name: intracellular anatomical structure",
+            "namespace: cellular_component",
+            "is_a: GO:0005575 ! cellular_component",
+            "",
+            "[Term]",
+            "id: GO:0005576",
+            "name: extracellular region",
+            "namespace: cellular_component",
+            "is_a: GO:0110165 ! cellular anatomical entity",
+            "",
+            "[Term]",
+            "id: GO:0071944",
+            "name: cell periphery",
+            "namespace: cellular_component",
+            "is_a: GO:0110165 ! cellular anatomical entity",
+            "",
+            "[Term]",
+            "id: GO:0016020",
+            "name: membrane",
+            "namespace: cellular_component",
+            "is_a: GO:0110165 ! cellular anatomical entity",
+            "",
+            "[Term]",
+            "id: GO:0005886",
+            "name: plasma membrane",
+            "namespace: cellular_component",
+            "is_a: GO:0016020 ! membrane",
+            "relationship: part_of GO:0071944 ! cell periphery",
+            "",
+            "[Term]",
+            "id: GO:0005737",
+            "name: cytoplasm",
+            "namespace: cellular_component",
+            "is_a: GO:0110165 ! cellular anatomical entity",
+            "relationship: part_of GO:0005622 ! intracellular anatomical structure",
+            "",
+            "[Term]",
+            "id: GO:0005829",
+            "name: cytosol",
+            "namespace: cellular_component",
+            "is_a: GO:0110165 ! cellular anatomical entity",
+            "relationship: part_of GO:0005737 ! cytoplasm",
+            "",
+            "[Term]",
+            "id: GO:0043226",
+            "name: organelle",
+            "namespace: cellular_component",
+            "is_a: GO:0110165 ! cellular anatomical entity",
+            "",
+            "[Term]",
+            "id: GO:0043229",
+            "name: intracellular organelle",
+            "namespace: cellular_component",
+            "is_a: GO:0043226 ! organelle",
+            "relationship: part_of GO:0005622 ! intracellular anatomical structure",
+            "",
+            "[Term]",
+            "id: GO:0005634",
+            "name: nucleus",
+            "namespace: cellular_component",
+            "is_a: GO:0043229 ! intracellular organelle",
+            "",
+            "[Term]",
+            "id: GO:0005635",
+            "name: nuclear envelope",
+            "namespace: cellular_component",
+            "is_a: GO:0110165 ! cellular anatomical entity",
+            "relationship: part_of GO:0005634 ! nucleus",
+            "",
+            "[Term]",
+            "id: GO:0031965",
+            "name: nuclear membrane",
+            "namespace: cellular_component",
+            "is_a: GO:0016020 ! membrane",
+            "relationship: part_of GO:0005635 ! nuclear envelope",
+            "",
+            "[Term]",
+            "id: GO:0005739",
+            "name: mitochondrion",
+            "namespace: cellular_component",
+            "is_a: GO:0043229 ! intracellular organelle",
+            "relationship: part_of GO:0005737 ! cytoplasm",
+            "",
+            "[Term]",
+            "id: GO:0005574",
+            "name: obsolete DNA",
+            "namespace: cellular_component",
+            "is_obsolete: true",
+            "",
+            "[Term]",
+            "id: GO:0008150",
+            "name: biological_process",
+            "namespace: biological_process",
+            "",
+            "[Typedef]",
+            "id: part_of",
+            "name: part of",
+            "");
+
+    @Test
+    public void testRoundTrip(@TempDir File dir) throws IOException {
+        final File obo = new File(dir, "go-basic.obo");
+        Files.writeString(obo.toPath(), FRAGMENT, StandardCharsets.UTF_8);
+        final Map<String, GoTerm> ontology = GoParser.getGoOntology(obo.toURI().toURL());
+        // biological process is not a cellular component
+        assertEquals(16, ontology.size());
+        assertFalse(ontology.containsKey("GO:0008150"));
+
+        final GoDag compiled = GoDag.compile(ontology);
+        final File file = new File(dir, "ontologies/go-cellular-component.bin");
+        OntologyCompiler.write(compiled, file);
+        final GoDag loaded = OntologyCompiler.load(file.toURI().toURL());
+        assertNotNull(loaded);
+        assertEquals(ontology.size(), loaded.size());
+        for (GoTerm term : ontology.values()) {
+            final Integer index = loaded.indexOf(term.getId());
+            assertNotNull(index, term.getId());
+            final GoTerm read = loaded.getTerm(index);
+            assertEquals(term.getName(), read.getName());
+            assertEquals(term.getNamespace(), read.getNamespace());
+            assertEquals(term.isObsolete(), read.isObsolete());
+            // relationships, the ones inherited through is_a included, in the order used to choose a branch
+            final List<String> expected = term.getOutgoingTerms().stream().map(GoTerm::getId).collect(Collectors.toList());
+            assertEquals(expected, getOutgoingTerms(loaded, index), term.getId());
+            assertEquals(expected, getOutgoingTerms(compiled, compiled.indexOf(term.getId())), term.getId());
+        }
+        // part_of through the is_a parents, surrounded_by from CCO
+        final List<String> nucleus = getOutgoingTerms(loaded, loaded.indexOf("GO:0005634"));
+        assertTrue(nucleus.contains("GO:0005622"), nucleus::toString);
+        assertTrue(nucleus.contains("GO:0005737"), nucleus::toString);
+        assertTrue(loaded.getTerm(loaded.indexOf("GO:0005574")).isObsolete());
+
+        // and so, the same subtrees
+        final OntologyRelease release = new OntologyRelease(GoTreeFactory.Source.GO, null, loaded);
+        final List<String> keys = new ArrayList<>(new TreeSet<>(ontology.keySet()));
+        final Random random = new Random(40);
+        for (int q = 0; q < 100; q++) {
+            final List<String> ids = GoDagTest.createQuery(random, keys);
+            final CompartmentTree expected = new CompartmentTree(GoTreeFactory.getTreeWithIntermediateNodes(ontology, ids));
+            assertEquals(describe(expected), describe(GoTreeFactory.getCompartmentTree(ids, release)), ids::toString);
+        }
+    }
+
+    @Test
+    public void testNoArguments() {
+        assertThrows(IllegalArgumentException.class, () -> OntologyCompiler.main(new String[0]));
+    }
+
+    @Test
+    public void testNotCompiled(@TempDir File dir) throws IOException {
+        final File file = new File(dir, "go-basic.obo");
+        Files.writeString(file.toPath(), FRAGMENT, StandardCharsets.UTF_8);
+        assertNull(OntologyCompiler.load(file.toURI().toURL()));
+    }
+
+    private static List<String> getOutgoingTerms(GoDag dag, int term) {
+        return Arrays.stream(dag.getOutgoingTerms(term)).mapToObj(t -> dag.getTerm(t).getId()).collect(Collectors.toList());
+    }
+
+    private static List<String> describe(CompartmentTree tree) {
+        final List<String> lines = new ArrayList<>();
+        for (int i = 0; i < tree.size(); i++)
+            lines.add(tree.getAccession(i) + " " + tree.getName(i) + " " + tree.getParent(i));
+        return lines;
+    }
+}
@@ -0,0 +1,174 @@
+package org.reactome.server.tools.reaction.exporter.ontology;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.reactome.server.tools.reaction.exporter.SyntheticReactions;
+import org.reactome.server.tools.reaction.exporter.layout.LayoutFactory;
+import org.reactome.server.tools.reaction.exporter.layout.LayoutFactory.Style;
+import org.reactome.server.tools.reaction.exporter.layout.common.RenderableClass;
+import org.reactome.server.tools.reaction.exporter.layout.model.CompartmentGlyph;
+import org.reactome.server.tools.reaction.exporter.layout.model.Layout;
+import org.reactome.server.tools.reaction.exporter.ontology.GoTreeFactory.Source;
+import org.reactome.server.tools.reaction.exporter.snapshot.CompartmentSnapshot;
+import org.reactome.server.tools.reaction.exporter.snapshot.EntitySnapshot;
+import org.reactome.server.tools.reaction.exporter.snapshot.ReactionSnapshot;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the hot swap of the Reactome master tree with {@link GoTreeFactory#setReactomeMasterTree(String, Map)}. Every
+ * release names the cytosol after itself, so a subtree or a layout tells which release it comes from. The current
+ * release is forgotten after each test, so it is loaded again from the database when needed.
+ */
+public class ReleaseSwapTest {
+
+    private static final String CYTOSOL = "GO:0005829";
+    private static final List<String> IDS = List.of(CYTOSOL, "GO:0005634");
+    private static final int RELEASES = 50;
+    private static final int READERS = 4;
+
+    @AfterEach
+    public void tearDown() {
+        GoTreeFactory.clearReactomeRelease();
+    }
+
+    @Test
+    public void testSwap() {
+        final OntologyRelease first = GoTreeFactory.setReactomeMasterTree("1", createMasterTree("1"));
+        assertSame(first, GoTreeFactory.getRelease(Source.REACTOME));
+        final OntologyRelease second = GoTreeFactory.setReactomeMasterTree("2", createMasterTree("2"));
+        assertSame(second, GoTreeFactory.getRelease(Source.REACTOME));
+        assertEquals("2", second.getRelease());
+        assertTrue(second.getVersion() > first.getVersion());
+        assertTrue(first.isReplaced());
+        assertFalse(second.isReplaced());
+        assertEquals("cytosol 2", getCytosol(GoTreeFactory.getCompartmentTree(IDS, Source.REACTOME)));
+    }
+
+    @Test
+    public void testConcurrentSwap() throws InterruptedException, ExecutionException {
+        // readers only see published releases, newer every time, each one with its own subtrees
+        final ExecutorService executor = Executors.newFixedThreadPool(READERS);
+        final AtomicBoolean done = new AtomicBoolean();
+        GoTreeFactory.setReactomeMasterTree("0", createMasterTree("0"));
+        try {
+            final List<Future<Integer>> readers = new ArrayList<>();
+            for (int r = 0; r < READERS; r++)
+                readers.add(executor.submit(() -> {
+                    long version = 0;
+                    int reads = 0;
+                    while (!done.get()) {
+                        final OntologyRelease release = GoTreeFactory.getRelease(Source.REACTOME);
+                        assertTrue(release.getVersion() >= version);
+                        version = release.getVersion();
+                        assertEquals("cytosol " + release.getRelease(), getCytosol(GoTreeFactory.getCompartmentTree(IDS, release)));
+                        reads++;
+                    }
+                    return reads;
+                }));
+            for (int i = 1; i <= RELEASES; i++) GoTreeFactory.setReactomeMasterTree(String.valueOf(i), createMasterTree(String.valueOf(i)));
+            done.set(true);
+            for (Future<Integer> reader : readers) assertTrue(reader.get() > 0);
+        } finally {
+            done.set(true);
+            executor.shutdown();
+        }
+        assertEquals(String.valueOf(RELEASES), GoTreeFactory.getRelease(Source.REACTOME).getRelease());
+    }
+
+    @Test
+    public void testLayoutKeepsRelease() {
+        GoTreeFactory.setReactomeMasterTree("1", createMasterTree("1"));
+        final ReactionSnapshot reaction = createReaction();
+        final Layout layout = LayoutFactory.getSnapshotLayout(reaction, Style.BOX);
+        assertEquals("cytosol 1", getCytosol(layout));
+
+        GoTreeFactory.setReactomeMasterTree("2", createMasterTree("2"));
+        // copies are laid out with the release of the original layout
+        assertEquals("cytosol 1", getCytosol(layout.copy()));
+        assertEquals("cytosol 2", getCytosol(LayoutFactory.getSnapshotLayout(reaction, Style.BOX)));
+    }
+
+    @Test
+    public void testCachePurge() {
+        final OntologyRelease first = GoTreeFactory.setReactomeMasterTree("1", createMasterTree("1"));
+        final CompartmentTree tree = GoTreeFactory.getCompartmentTree(IDS, first);
+        assertSame(tree, GoTreeFactory.getCompartmentTree(IDS, first));
+
+        final OntologyRelease second = GoTreeFactory.setReactomeMasterTree("2", createMasterTree("2"));
+        final CompartmentTree purged = GoTreeFactory.getCompartmentTree(IDS, first);
+        assertNotSame(tree, purged);
+        assertEquals("cytosol 1", getCytosol(purged));
+        // requests that still have the first release do not fill the cache again
+        assertNotSame(purged, GoTreeFactory.getCompartmentTree(IDS, first));
+
+        final CompartmentTree current = GoTreeFactory.getCompartmentTree(IDS, second);
+        assertSame(current, GoTreeFactory.getCompartmentTree(IDS, second));
+        assertEquals("cytosol 2", getCytosol(current));
+    }
+
+    /**
+     * @return a reaction with participants in the nucleus and the plasma membrane, so the cytosol is only in its
+     * layout because it is in between, and it takes the name from the release
+     */
+    private static ReactionSnapshot createReaction() {
+        final ReactionSnapshot reaction = new ReactionSnapshot();
+        reaction.setDbId(1L);
+        reaction.setStId("R-HSA-1");
+        reaction.setDisplayName("reaction 1");
+        reaction.setSpeciesName("Homo sapiens");
+        reaction.setSchemaClass("Reaction");
+        reaction.setRenderableClass(RenderableClass.PROCESS_NODE);
+        reaction.setCompartments(List.of(createCompartment("0005634", "nucleus")));
+        reaction.setPathway("R-HSA-0");
+        reaction.setParticipants(List.of(
+                createParticipant(1, "input", createCompartment("0005886", "plasma membrane")),
+                createParticipant(2, "output", createCompartment("0005634", "nucleus"))));
+        return reaction;
+    }
+
+    private static EntitySnapshot createParticipant(long id, String role, CompartmentSnapshot compartment) {
+        final EntitySnapshot participant = new EntitySnapshot();
+        participant.setDbId(id);
+        participant.setStId("R-ALL-" + id);
+        participant.setName("entity " + id);
+        participant.setSchemaClass("SimpleEntity");
+        participant.setRenderableClass(RenderableClass.PROTEIN);
+        participant.setInDisease(false);
+        participant.setCompartments(List.of(compartment));
+        participant.setAttachments(new ArrayList<>());
+        participant.setRoleType(role);
+        participant.setStoichiometry(1);
+        return participant;
+    }
+
+    private static CompartmentSnapshot createCompartment(String accession, String name) {
+        return new CompartmentSnapshot(null, accession, name);
+    }
+
+    /**
+     * @return the synthetic hierarchy, with the cytosol named after <em>release</em>
+     */
+    private static Map<String, GoTerm> createMasterTree(String release) {
+        final Map<String, GoTerm> masterTree = SyntheticReactions.createMasterTree();
+        masterTree.get(CYTOSOL).setName("cytosol " + release);
+        return masterTree;
+    }
+
+    private static String getCytosol(CompartmentTree tree) {
+        for (int i = 0; i < tree.size(); i++)
+            if (CYTOSOL.equals("GO:" + tree.getAccession(i))) return tree.getName(i);
+        return null;
+    }
+
+    private static String getCytosol(Layout layout) {
+        return layout.getCompartments().stream()
+                .filter(compartment -> CYTOSOL.equals("GO:" + compartment.getAccession()))
+                .map(CompartmentGlyph::getName)
+                .findFirst().orElse(null);
+    }
+}